@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2014, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ * All rights reserved.
+ *
+ * The Java Pathfinder core (jpf-core) platform is licensed under the
+ * Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0. 
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+
+/**
+ * a micro benchmark for virtual and interface calls with polymorphic call
+ * sites, i.e. sites that see 1, 2, 4 or 8 different receiver types
+ * (first argument). Run it with the JPF versions to be compared, and look at
+ * the elapsed time and the instructions of the JPF statistics
+ */
+public class PolymorphicCalls {
+
+  interface Shape {
+    int id();
+  }
+
+  static abstract class Base implements Shape {
+    abstract int area();
+  }
+
+  static class S0 extends Base { @Override int area(){ return 1; } @Override public int id(){ return 10; } }
+  static class S1 extends Base { @Override int area(){ return 2; } @Override public int id(){ return 11; } }
+  static class S2 extends Base { @Override int area(){ return 3; } @Override public int id(){ return 12; } }
+  static class S3 extends Base { @Override int area(){ return 4; } @Override public int id(){ return 13; } }
+  static class S4 extends Base { @Override int area(){ return 5; } @Override public int id(){ return 14; } }
+  static class S5 extends Base { @Override int area(){ return 6; } @Override public int id(){ return 15; } }
+  static class S6 extends Base { @Override int area(){ return 7; } @Override public int id(){ return 16; } }
+  static class S7 extends Base { @Override int area(){ return 8; } @Override public int id(){ return 17; } }
+
+  static Base[] createShapes (int nTypes, int n){
+    Base[] types = { new S0(), new S1(), new S2(), new S3(), new S4(), new S5(), new S6(), new S7() };
+    Base[] a = new Base[n];
+    for (int i=0; i<n; i++){
+      a[i] = types[i % nTypes];
+    }
+    return a;
+  }
+
+  static int sumAreas (Base[] a){
+    int sum = 0;
+    for (int i=0; i<a.length; i++){
+      sum += a[i].area(); // invokevirtual
+    }
+    return sum;
+  }
+
+  static int sumIds (Shape[] a){
+    int sum = 0;
+    for (int i=0; i<a.length; i++){
+      sum += a[i].id(); // invokeinterface
+    }
+    return sum;
+  }
+
+  public static void main (String[] args){
+    int nTypes = (args.length > 0) ? Integer.parseInt(args[0]) : 8;
+    int nRounds = (args.length > 1) ? Integer.parseInt(args[1]) : 2000;
+
+    Base[] a = createShapes(nTypes, 64);
+    long sum = 0;
+
+    for (int i=0; i<nRounds; i++){
+      sum += sumAreas(a) + sumIds(a);
+    }
+
+    System.out.println(nTypes + "-way call sites, sum=" + sum);
+  }
+}
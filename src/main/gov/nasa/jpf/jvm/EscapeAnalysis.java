@@ -0,0 +1,776 @@
+/*
+ * Copyright (C) 2014, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ * All rights reserved.
+ *
+ * The Java Pathfinder core (jpf-core) platform is licensed under the
+ * Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0. 
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+package gov.nasa.jpf.jvm;
+
+import gov.nasa.jpf.Config;
+import gov.nasa.jpf.jvm.bytecode.GOTO;
+import gov.nasa.jpf.jvm.bytecode.GOTO_W;
+import gov.nasa.jpf.jvm.bytecode.IfInstruction;
+import gov.nasa.jpf.jvm.bytecode.JVMInvokeInstruction;
+import gov.nasa.jpf.jvm.bytecode.JVMLocalVariableInstruction;
+import gov.nasa.jpf.jvm.bytecode.MULTIANEWARRAY;
+import gov.nasa.jpf.jvm.bytecode.NEW;
+import gov.nasa.jpf.jvm.bytecode.SwitchInstruction;
+import gov.nasa.jpf.vm.ClassInfo;
+import gov.nasa.jpf.vm.ClassLoaderInfo;
+import gov.nasa.jpf.vm.ExceptionHandler;
+import gov.nasa.jpf.vm.Heap;
+import gov.nasa.jpf.vm.Instruction;
+import gov.nasa.jpf.vm.MJIEnv;
+import gov.nasa.jpf.vm.MethodInfo;
+import gov.nasa.jpf.vm.StackFrame;
+import gov.nasa.jpf.vm.ThreadInfo;
+import gov.nasa.jpf.vm.Types;
+import gov.nasa.jpf.vm.bytecode.FieldInstruction;
+
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+
+/**
+ * a conservative, intra-procedural escape analysis of JVM bytecode that is
+ * used to release objects which were allocated by a method and never left its
+ * stack frame, once this frame returns. Such objects are garbage as soon as
+ * the method returns, i.e. they don't have to survive until the next gc.
+ *
+ * Abstract values are bit sets of allocation sites (NEW, NEWARRAY, ANEWARRAY)
+ * and reference parameters of the analyzed method. Values escape if they are
+ * stored in fields or arrays, returned, thrown, locked, or passed to methods
+ * that are native, can't be resolved without loading classes, or let the
+ * corresponding parameter escape (which is computed recursively, and cached
+ * as a MethodInfo attribute). Methods that contain instructions we don't
+ * model (e.g. jsr or invokedynamic) don't release anything.
+ *
+ * At a return instruction, all local and operand slots that can only hold
+ * non-escaping objects of this frame's allocation sites (or null) are released
+ * (see Heap.releaseLocal())
+ */
+public class EscapeAnalysis {
+
+  static final long OTHER = 1L << 63;  // any value that is not from a tracked source
+  static final int MAX_SOURCES = 63;
+  static final int MAX_CALL_DEPTH = 8;
+
+  static final int[] NO_SLOTS = new int[0];
+
+  static boolean releaseLocals;
+
+  public static boolean init (Config config) {
+    releaseLocals = config.getBoolean("vm.gc.release_locals", false);
+    return true;
+  }
+
+  public static boolean isEnabled() {
+    return releaseLocals;
+  }
+
+  /**
+   * the per method analysis result, stored as a MethodInfo attribute
+   */
+  public static class Summary {
+    boolean isComputed;
+
+    // parameter slots that might escape (bit 63 stands for all slots >= 63)
+    long escapingParams = -1L;
+
+    // slots to release, indexed by the instruction index of return instructions
+    int[][] releaseSlots;
+
+    public int[] getReleaseSlots (int insnIdx) {
+      if (releaseSlots != null) {
+        int[] slots = releaseSlots[insnIdx];
+        if (slots != null) {
+          return slots;
+        }
+      }
+      return NO_SLOTS;
+    }
+  }
+
+  /**
+   * release all non-escaping objects that were allocated by the frame of
+   * 'returnInsn', which is about to return normally
+   */
+  public static void releaseLocals (ThreadInfo ti, StackFrame frame, Instruction returnInsn) {
+    MethodInfo mi = frame.getMethodInfo();
+    Summary summary = getSummary(mi, 0);
+
+    if (summary != null) {
+      int[] slots = summary.getReleaseSlots(returnInsn.getInstructionIndex());
+      if (slots.length > 0) {
+        Heap heap = ti.getHeap();
+        int top = frame.getTopPos();
+
+        for (int i = 0; i < slots.length; i++) {
+          int idx = slots[i];
+          if (idx <= top && frame.isReferenceSlot(idx)) {
+            int ref = frame.getSlot(idx);
+            if (ref != MJIEnv.NULL) { // the heap checks for pending finalizers
+              heap.releaseLocal(ti, ref);
+            }
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * @return null if the summary can't be computed (yet)
+   */
+  public static Summary getSummary (MethodInfo mi, int depth) {
+    Summary summary = mi.getAttr(Summary.class);
+
+    if (summary == null) {
+      if (depth > MAX_CALL_DEPTH) {
+        return null;
+      }
+
+      summary = new Summary();
+      mi.addAttr(summary); // recursive calls see all params as escaping
+
+      new EscapeAnalysis(mi, depth).analyze(summary);
+    }
+
+    return summary.isComputed ? summary : null;
+  }
+
+  //--- the analysis of one method
+
+  protected final MethodInfo mi;
+  protected final int depth;
+
+  protected final int nLocals;
+  protected final int nSlots;
+
+  // entry states per instruction index: the slot values, and the stack height
+  protected long[][] values;
+  protected int[] heights;
+
+  // the allocation site (insn index) per source bit, or -1 for parameters
+  protected int[] sources = new int[MAX_SOURCES];
+  protected int nSources;
+  protected long paramMask;
+  protected long[] paramSources; // per parameter slot
+
+  protected long escaped;
+
+  // the state we currently process
+  protected long[] v;
+  protected int sp;
+
+  protected int[] worklist;
+  protected boolean[] isQueued;
+  protected int nQueued;
+
+  protected EscapeAnalysis (MethodInfo mi, int depth) {
+    this.mi = mi;
+    this.depth = depth;
+
+    nLocals = mi.getMaxLocals();
+    nSlots = nLocals + mi.getMaxStack();
+  }
+
+  protected void analyze (Summary summary) {
+    int nInsns = mi.getNumberOfInstructions();
+
+    if (nInsns == 0 || mi.isNative() || mi.isMJI()) {
+      summary.isComputed = true; // all params escape, nothing to release
+      return;
+    }
+
+    values = new long[nInsns][];
+    heights = new int[nInsns];
+    worklist = new int[nInsns];
+    isQueued = new boolean[nInsns];
+
+    long[] entry = new long[nSlots];
+    initParams(entry);
+    merge(0, entry, 0);
+
+    while (nQueued > 0) {
+      int idx = worklist[--nQueued];
+      isQueued[idx] = false;
+
+      v = values[idx].clone();
+      sp = heights[idx];
+
+      if (!interpret(mi.getInstruction(idx))) {
+        summary.isComputed = true; // give up, all params escape
+        return;
+      }
+    }
+
+    // everything that can escape did escape at this point
+    long escapingParams = 0;
+    for (int i = 0; i < paramSources.length; i++) {
+      if ((paramSources[i] & (escaped | OTHER)) != 0) {
+        escapingParams |= (1L << Math.min(i, MAX_SOURCES));
+      }
+    }
+    if (mi.isSynchronized() && !mi.isStatic()) {
+      escapingParams |= 1L; // 'this' is locked
+    }
+
+    long localMask = ~(escaped | paramMask | OTHER);
+    int[][] releaseSlots = null;
+
+    for (int i = 0; i < nInsns; i++) {
+      if (values[i] != null && isReturn(mi.getInstruction(i).getByteCode())) {
+        int[] slots = getLocalObjectSlots(values[i], heights[i], localMask);
+        if (slots != null) {
+          if (releaseSlots == null) {
+            releaseSlots = new int[nInsns][];
+          }
+          releaseSlots[i] = slots;
+        }
+      }
+    }
+
+    summary.escapingParams = escapingParams;
+    summary.releaseSlots = releaseSlots;
+    summary.isComputed = true;
+  }
+
+  protected void initParams (long[] entry) {
+    int slot = 0;
+    paramSources = new long[mi.getArgumentsSize() + (mi.isStatic() ? 0 : 1)];
+
+    if (!mi.isStatic()) {
+      entry[slot++] = newSource(-1);
+    }
+
+    for (byte t : mi.getArgumentTypes()) {
+      if (t == Types.T_REFERENCE || t == Types.T_ARRAY) {
+        entry[slot++] = newSource(-1);
+      } else if (t == Types.T_LONG || t == Types.T_DOUBLE) {
+        entry[slot++] = OTHER;
+        entry[slot++] = OTHER;
+      } else {
+        entry[slot++] = OTHER;
+      }
+    }
+
+    for (int i = 0; i < slot; i++) {
+      paramSources[i] = entry[i];
+      if (entry[i] != OTHER) {
+        paramMask |= entry[i];
+      }
+    }
+  }
+
+  protected long newSource (int insnIdx) {
+    if (nSources < MAX_SOURCES) {
+      sources[nSources] = insnIdx;
+      return 1L << nSources++;
+    } else {
+      return OTHER;
+    }
+  }
+
+  protected long getSource (int insnIdx) {
+    for (int i = 0; i < nSources; i++) {
+      if (sources[i] == insnIdx) {
+        return 1L << i;
+      }
+    }
+    return newSource(insnIdx);
+  }
+
+  protected int[] getLocalObjectSlots (long[] state, int height, long localMask) {
+    int n = 0;
+    int[] slots = null;
+
+    for (int i = 0; i < nLocals + height; i++) {
+      long val = state[i];
+      if (val != 0 && (val & ~localMask) == 0) {
+        if (slots == null) {
+          slots = new int[nSlots];
+        }
+        slots[n++] = i;
+      }
+    }
+
+    return (slots != null) ? Arrays.copyOf(slots, n) : null;
+  }
+
+  static boolean isReturn (int opcode) {
+    return opcode >= 0xac && opcode <= 0xb1;
+  }
+
+  //--- state propagation
+
+  protected void merge (int insnIdx, long[] state, int height) {
+    long[] old = values[insnIdx];
+
+    if (old == null) {
+      values[insnIdx] = state.clone();
+      heights[insnIdx] = height;
+      enqueue(insnIdx);
+
+    } else {
+      boolean changed = false;
+      for (int i = 0; i < nLocals + height; i++) {
+        long val = old[i] | state[i];
+        if (val != old[i]) {
+          old[i] = val;
+          changed = true;
+        }
+      }
+      if (changed) {
+        enqueue(insnIdx);
+      }
+    }
+  }
+
+  protected void enqueue (int insnIdx) {
+    if (!isQueued[insnIdx]) {
+      isQueued[insnIdx] = true;
+      worklist[nQueued++] = insnIdx;
+    }
+  }
+
+  protected void flowTo (Instruction insn) {
+    merge(insn.getInstructionIndex(), v, sp);
+  }
+
+  protected void flowToPosition (int position) {
+    flowTo(mi.getInstructionAt(position));
+  }
+
+  protected void flowToHandlers (Instruction insn) {
+    ExceptionHandler[] handlers = mi.getExceptions();
+    if (handlers != null) {
+      int pos = insn.getPosition();
+
+      for (ExceptionHandler h : handlers) {
+        if (pos >= h.getBegin() && pos < h.getEnd()) {
+          long[] state = v.clone();
+          Arrays.fill(state, nLocals, nSlots, 0);
+          state[nLocals] = OTHER; // the exception object
+          merge(mi.getInstructionAt(h.getHandler()).getInstructionIndex(), state, 1);
+        }
+      }
+    }
+  }
+
+  //--- operand stack
+
+  protected void push (long val) {
+    v[nLocals + sp++] = val;
+  }
+
+  protected void pushOther (int size) {
+    for (int i = 0; i < size; i++) {
+      v[nLocals + sp++] = OTHER;
+    }
+  }
+
+  protected long pop () {
+    long val = v[nLocals + --sp];
+    v[nLocals + sp] = 0;
+    return val;
+  }
+
+  protected void pop (int n) {
+    for (int i = 0; i < n; i++) {
+      pop();
+    }
+  }
+
+  protected void popEscaping (int n) {
+    for (int i = 0; i < n; i++) {
+      escaped |= pop();
+    }
+  }
+
+  protected void popPush (int nPop, int nPush) {
+    pop(nPop);
+    pushOther(nPush);
+  }
+
+  /**
+   * compute the successor states of insn, which starts with state 'v'
+   *
+   * @return false if we can't handle this instruction
+   */
+  protected boolean interpret (Instruction insn) {
+    int opcode = insn.getByteCode();
+    boolean hasNext = true;
+
+    flowToHandlers(insn);
+
+    switch (opcode) {
+      case 0x00: // nop
+      case 0xc4: // wide (prefix, the next insn has the index)
+        break;
+
+      case 0x01: // aconst_null
+        push(0);
+        break;
+
+      case 0x02: case 0x03: case 0x04: case 0x05: case 0x06: case 0x07: case 0x08: // iconst
+      case 0x0b: case 0x0c: case 0x0d: // fconst
+      case 0x10: case 0x11: // bipush, sipush
+      case 0x12: case 0x13: // ldc, ldc_w
+        pushOther(1);
+        break;
+
+      case 0x09: case 0x0a: // lconst
+      case 0x0e: case 0x0f: // dconst
+      case 0x14: // ldc2_w
+        pushOther(2);
+        break;
+
+      case 0x15: case 0x17: // iload, fload
+      case 0x1a: case 0x1b: case 0x1c: case 0x1d:
+      case 0x22: case 0x23: case 0x24: case 0x25:
+        pushOther(1);
+        break;
+
+      case 0x16: case 0x18: // lload, dload
+      case 0x1e: case 0x1f: case 0x20: case 0x21:
+      case 0x26: case 0x27: case 0x28: case 0x29:
+        pushOther(2);
+        break;
+
+      case 0x19: // aload
+      case 0x2a: case 0x2b: case 0x2c: case 0x2d:
+        push(v[((JVMLocalVariableInstruction)insn).getLocalVariableIndex()]);
+        break;
+
+      case 0x2e: case 0x30: case 0x32: case 0x33: case 0x34: case 0x35: // xaload
+        popPush(2, 1);
+        break;
+
+      case 0x2f: case 0x31: // laload, daload
+        popPush(2, 2);
+        break;
+
+      case 0x36: case 0x38: case 0x3a: // istore, fstore, astore
+      case 0x3b: case 0x3c: case 0x3d: case 0x3e:
+      case 0x43: case 0x44: case 0x45: case 0x46:
+      case 0x4b: case 0x4c: case 0x4d: case 0x4e:
+        v[((JVMLocalVariableInstruction)insn).getLocalVariableIndex()] = pop();
+        break;
+
+      case 0x37: case 0x39: // lstore, dstore
+      case 0x3f: case 0x40: case 0x41: case 0x42:
+      case 0x47: case 0x48: case 0x49: case 0x4a: {
+        int idx = ((JVMLocalVariableInstruction)insn).getLocalVariableIndex();
+        pop(2);
+        v[idx] = OTHER;
+        v[idx+1] = OTHER;
+        break;
+      }
+
+      case 0x4f: case 0x51: case 0x54: case 0x55: case 0x56: // xastore
+        pop(3);
+        break;
+
+      case 0x50: case 0x52: // lastore, dastore
+        pop(4);
+        break;
+
+      case 0x53: // aastore
+        popEscaping(1);
+        pop(2);
+        break;
+
+      case 0x57: // pop
+        pop(1);
+        break;
+
+      case 0x58: // pop2
+        pop(2);
+        break;
+
+      case 0x59: { // dup
+        long v1 = pop();
+        push(v1); push(v1);
+        break;
+      }
+      case 0x5a: { // dup_x1
+        long v1 = pop(), v2 = pop();
+        push(v1); push(v2); push(v1);
+        break;
+      }
+      case 0x5b: { // dup_x2
+        long v1 = pop(), v2 = pop(), v3 = pop();
+        push(v1); push(v3); push(v2); push(v1);
+        break;
+      }
+      case 0x5c: { // dup2
+        long v1 = pop(), v2 = pop();
+        push(v2); push(v1); push(v2); push(v1);
+        break;
+      }
+      case 0x5d: { // dup2_x1
+        long v1 = pop(), v2 = pop(), v3 = pop();
+        push(v2); push(v1); push(v3); push(v2); push(v1);
+        break;
+      }
+      case 0x5e: { // dup2_x2
+        long v1 = pop(), v2 = pop(), v3 = pop(), v4 = pop();
+        push(v2); push(v1); push(v4); push(v3); push(v2); push(v1);
+        break;
+      }
+      case 0x5f: { // swap
+        long v1 = pop(), v2 = pop();
+        push(v1); push(v2);
+        break;
+      }
+
+      case 0x60: case 0x62: case 0x64: case 0x66: case 0x68: case 0x6a: // int/float arithmetic
+      case 0x6c: case 0x6e: case 0x70: case 0x72:
+      case 0x78: case 0x7a: case 0x7c: case 0x7e: case 0x80: case 0x82:
+      case 0x95: case 0x96: // fcmpl, fcmpg
+        popPush(2, 1);
+        break;
+
+      case 0x61: case 0x63: case 0x65: case 0x67: case 0x69: case 0x6b: // long/double arithmetic
+      case 0x6d: case 0x6f: case 0x71: case 0x73:
+      case 0x7f: case 0x81: case 0x83:
+        popPush(4, 2);
+        break;
+
+      case 0x79: case 0x7b: case 0x7d: // lshl, lshr, lushr
+        popPush(3, 2);
+        break;
+
+      case 0x74: case 0x76: // ineg, fneg
+      case 0x86: case 0x8b: // i2f, f2i
+      case 0x91: case 0x92: case 0x93: // i2b, i2c, i2s
+        popPush(1, 1);
+        break;
+
+      case 0x75: case 0x77: // lneg, dneg
+      case 0x8a: case 0x8f: // l2d, d2l
+        popPush(2, 2);
+        break;
+
+      case 0x84: // iinc
+        break;
+
+      case 0x85: case 0x87: case 0x8c: case 0x8d: // i2l, i2d, f2l, f2d
+        popPush(1, 2);
+        break;
+
+      case 0x88: case 0x89: case 0x8e: case 0x90: // l2i, l2f, d2i, d2f
+        popPush(2, 1);
+        break;
+
+      case 0x94: case 0x97: case 0x98: // lcmp, dcmpl, dcmpg
+        popPush(4, 1);
+        break;
+
+      case 0x99: case 0x9a: case 0x9b: case 0x9c: case 0x9d: case 0x9e: // if<cond>
+      case 0xc6: case 0xc7: // ifnull, ifnonnull
+        pop(1);
+        flowTo(((IfInstruction)insn).getTarget());
+        break;
+
+      case 0x9f: case 0xa0: case 0xa1: case 0xa2: case 0xa3: case 0xa4: // if_icmp<cond>
+      case 0xa5: case 0xa6: // if_acmpeq, if_acmpne
+        pop(2);
+        flowTo(((IfInstruction)insn).getTarget());
+        break;
+
+      case 0xa7: // goto
+        flowTo(((GOTO)insn).getTarget());
+        hasNext = false;
+        break;
+
+      case 0xc8: // goto_w
+        flowTo(((GOTO_W)insn).getTarget());
+        hasNext = false;
+        break;
+
+      case 0xaa: case 0xab: { // tableswitch, lookupswitch
+        SwitchInstruction sw = (SwitchInstruction)insn;
+        pop(1);
+        flowToPosition(sw.getTarget());
+        for (int pos : sw.getTargets()) {
+          flowToPosition(pos);
+        }
+        hasNext = false;
+        break;
+      }
+
+      case 0xac: case 0xae: // ireturn, freturn
+      case 0xad: case 0xaf: // lreturn, dreturn
+      case 0xb1: // return
+        hasNext = false;
+        break;
+
+      case 0xb0: // areturn
+        popEscaping(1);
+        hasNext = false;
+        break;
+
+      case 0xb2: // getstatic
+        pushOther(((FieldInstruction)insn).getFieldSize());
+        break;
+
+      case 0xb3: // putstatic
+        popEscaping(((FieldInstruction)insn).getFieldSize());
+        break;
+
+      case 0xb4: // getfield
+        popPush(1, ((FieldInstruction)insn).getFieldSize());
+        break;
+
+      case 0xb5: // putfield
+        popEscaping(((FieldInstruction)insn).getFieldSize());
+        pop(1);
+        break;
+
+      case 0xb6: case 0xb7: case 0xb8: case 0xb9: // invokevirtual, invokespecial, invokestatic, invokeinterface
+        interpretInvoke((JVMInvokeInstruction)insn, opcode);
+        break;
+
+      case 0xbb: // new
+        push(getSource(insn.getInstructionIndex()));
+        break;
+
+      case 0xbc: case 0xbd: // newarray, anewarray
+        pop(1);
+        push(getSource(insn.getInstructionIndex()));
+        break;
+
+      case 0xbe: // arraylength
+        popPush(1, 1);
+        break;
+
+      case 0xbf: // athrow
+        popEscaping(1);
+        hasNext = false;
+        break;
+
+      case 0xc0: // checkcast
+        break;
+
+      case 0xc1: // instanceof
+        popPush(1, 1);
+        break;
+
+      case 0xc2: // monitorenter
+        popEscaping(1);
+        break;
+
+      case 0xc3: // monitorexit
+        pop(1);
+        break;
+
+      case 0xc5: // multianewarray
+        popPush(((MULTIANEWARRAY)insn).getDimensions(), 1);
+        break;
+
+      default: // jsr, ret, invokedynamic and JPF specific instructions
+        return false;
+    }
+
+    if (hasNext) {
+      flowTo(insn.getNext());
+    }
+
+    return true;
+  }
+
+  protected void interpretInvoke (JVMInvokeInstruction call, int opcode) {
+    int argSize = call.getArgSize();
+    long[] args = new long[argSize];
+    for (int i = argSize-1; i >= 0; i--) {
+      args[i] = pop();
+    }
+
+    long tracked = 0;
+    for (long arg : args) {
+      tracked |= arg;
+    }
+
+    if ((tracked & ~OTHER) != 0) {
+      long escapingArgs = getEscapingArgs(call, opcode, args);
+
+      for (int i = 0; i < argSize; i++) {
+        if ((escapingArgs & (1L << Math.min(i, MAX_SOURCES))) != 0) {
+          escaped |= args[i];
+        }
+      }
+    }
+
+    String sig = call.getInvokedMethodSignature();
+    byte retType = Types.getReturnBuiltinType(sig);
+    if (retType != Types.T_VOID) {
+      pushOther(Types.getTypeSize(retType));
+    }
+  }
+
+  /**
+   * @return bit set of argument slots that might escape the callee(s)
+   */
+  protected long getEscapingArgs (JVMInvokeInstruction call, int opcode, long[] args) {
+    ClassLoaderInfo cl = mi.getClassInfo().getClassLoaderInfo();
+    String uniqueName = call.getInvokedMethodName(); // includes the signature
+    ClassInfo ci = cl.findResolvedClassInfo(call.getInvokedMethodClassName());
+
+    if (ci == null) {
+      return -1L;
+    }
+
+    if (opcode == 0xb6 || opcode == 0xb9) { // virtual call
+      long recv = args[0];
+
+      if (recv != 0 && (recv & (OTHER | paramMask)) == 0) {
+        // we know the exact type of the receiver
+        long escapingArgs = 0;
+        for (int i = 0; i < nSources; i++) {
+          if ((recv & (1L << i)) != 0) {
+            Instruction site = mi.getInstruction(sources[i]);
+            if (!(site instanceof NEW)) {
+              return -1L; // arrays
+            }
+            ClassInfo rci = cl.findResolvedClassInfo(((NEW)site).getClassName());
+            escapingArgs |= getEscapingArgs( (rci != null) ? rci.getMethod(uniqueName, true) : null);
+          }
+        }
+        return escapingArgs;
+
+      } else {
+        MethodInfo callee = ci.getMethod(uniqueName, true);
+        if (callee != null && (callee.isPrivate() || Modifier.isFinal(callee.getModifiers())
+                               || Modifier.isFinal(ci.getModifiers()))) {
+          return getEscapingArgs(callee);
+        } else {
+          return -1L;
+        }
+      }
+
+    } else { // static or special call
+      return getEscapingArgs(ci.getMethod(uniqueName, true));
+    }
+  }
+
+  protected long getEscapingArgs (MethodInfo callee) {
+    if (callee != null) {
+      Summary summary = getSummary(callee, depth + 1);
+      if (summary != null) {
+        return summary.escapingParams;
+      }
+    }
+    return -1L;
+  }
+}
@@ -19,6 +19,7 @@
 package gov.nasa.jpf.jvm;
 
 import gov.nasa.jpf.JPFException;
+import gov.nasa.jpf.jvm.bytecode.SUPERINSN;
 import gov.nasa.jpf.util.Invocation;
 import gov.nasa.jpf.vm.ClassInfo;
 import gov.nasa.jpf.vm.Instruction;
@@ -53,6 +54,9 @@ public class JVMCodeBuilder implements JVMByteCodeReader {
 
   // flag to remember wide immediate operand modification
   boolean isWide;
+
+  // do we replace straight-line sequences of thread local insns with SUPERINSNs
+  protected boolean fuseBasicBlocks;
   
   //--- for testing purposes
   protected JVMCodeBuilder (JVMInstructionFactory ifact){
@@ -84,11 +88,37 @@ public class JVMCodeBuilder implements JVMByteCodeReader {
     code.add(insn);
   }
 
+  public void setFuseBasicBlocks (boolean cond){
+    fuseBasicBlocks = cond;
+  }
+
   public void installCode(){
     Instruction[] a = code.toArray( new Instruction[code.size()]);
+    if (fuseBasicBlocks){
+      fuseBasicBlocks(a);
+    }
     mi.setCode(a);
   }
 
+  /**
+   * attach a SUPERINSN to the first insn of each sequence of at least two fusable
+   * insns. The code array itself is not changed, and we don't have to care about
+   * jump targets within a sequence since those just execute the original insns
+   */
+  protected void fuseBasicBlocks (Instruction[] a){
+    for (int i=0; i<a.length; ){
+      int j = i;
+      while (j < a.length && SUPERINSN.isFusable(a[j])){
+        j++;
+      }
+
+      if (j - i > 1){
+        a[i].setSuperInstruction( new SUPERINSN(a, i, j - i));
+      }
+      i = j + 1;
+    }
+  }
+
   public int getCodeSize(){
     return code.size();
   }
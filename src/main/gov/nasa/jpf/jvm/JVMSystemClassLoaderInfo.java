@@ -45,6 +45,7 @@ public class JVMSystemClassLoaderInfo extends SystemClassLoaderInfo {
     defaultCodeBuilder = createDefaultCodeBuilder(config, appId);
 
     JVMClassInfo.init(config);
+    EscapeAnalysis.init(config);
 
     // now we can notify
     vm.registerClassLoader(this);
@@ -56,7 +57,9 @@ public class JVMSystemClassLoaderInfo extends SystemClassLoaderInfo {
   protected JVMCodeBuilder createDefaultCodeBuilder (Config config, int appId) {
     String key = config.getIndexableKey("jvm.insn_factory.class", appId);
     JVMInstructionFactory insnFactory = config.getEssentialInstance(key, JVMInstructionFactory.class);
-    return new JVMCodeBuilder(insnFactory);
+    JVMCodeBuilder cb = new JVMCodeBuilder(insnFactory);
+    cb.setFuseBasicBlocks( config.getBoolean("jvm.fuse_basic_blocks", false));
+    return cb;
   }
 
   @Override
@@ -126,6 +129,8 @@ public class JVMSystemClassLoaderInfo extends SystemClassLoaderInfo {
     Config conf = vm.getConfig();
     File[] pathElements;
 
+    JarClassFileContainer.init(conf); // before we create any containers
+
     // explicit "classpath[.id]" settings have precedence
     pathElements = getPathElements(conf, "classpath", appId);
     if (pathElements != null) {
@@ -18,13 +18,17 @@
 
 package gov.nasa.jpf.jvm;
 
+import gov.nasa.jpf.Config;
 import gov.nasa.jpf.util.FileUtils;
 import gov.nasa.jpf.vm.ClassFileMatch;
 import gov.nasa.jpf.vm.ClassParseException;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.lang.ref.SoftReference;
 import java.net.MalformedURLException;
+import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 
@@ -32,8 +36,59 @@ import java.util.jar.JarFile;
  * a ClassFileContainer that loads classes from jar files
  */
 public class JarClassFileContainer extends JVMClassFileContainer {
+
+  /**
+   * classfile contents we already read from a jar, which are kept between JPF runs
+   * within the same host VM (e.g. for all test methods of a TestJPF). Since the same
+   * system classes are loaded in each run, this saves us from repeatedly inflating them.
+   * Cached data is only used as long as the jar file does not change, and is
+   * only softly reachable from the cache, i.e. it gets dropped if memory gets tight
+   */
+  static class CachedJar {
+    long lastModified;
+    long length;
+    ConcurrentHashMap<String,byte[]> data = new ConcurrentHashMap<String,byte[]>();
+
+    CachedJar (File file){
+      lastModified = file.lastModified();
+      length = file.length();
+    }
+
+    boolean isValidFor (File file){
+      return (lastModified == file.lastModified()) && (length == file.length());
+    }
+  }
+
+  static boolean cacheData;
+  static HashMap<String,SoftReference<CachedJar>> cachedJars = new HashMap<String,SoftReference<CachedJar>>();
+
+  public static void init (Config config){
+    cacheData = config.getBoolean("vm.cache_class_data", false);
+    if (!cacheData){
+      clearCache();
+    }
+  }
+
+  public static synchronized void clearCache(){
+    cachedJars.clear();
+  }
+
+  static synchronized CachedJar getCachedJar (File file){
+    String key = file.getAbsolutePath();
+    SoftReference<CachedJar> ref = cachedJars.get(key);
+    CachedJar cj = (ref != null) ? ref.get() : null;
+
+    if (cj == null || !cj.isValidFor(file)){
+      cj = new CachedJar(file);
+      cachedJars.put(key, new SoftReference<CachedJar>(cj));
+    }
+
+    return cj;
+  }
+
   protected JarFile jar;
   protected String pathPrefix; // optional
+  protected CachedJar cache; // null if we don't cache data
 
   static String getContainerUrl (File file){
     try {
@@ -46,6 +101,10 @@ public class JarClassFileContainer extends JVMClassFileContainer {
   public JarClassFileContainer (File file) throws IOException {
     super(file.getPath(), getContainerUrl(file));
     jar = new JarFile(file);
+
+    if (cacheData){
+      cache = getCachedJar(file);
+    }
   }
 
   public JarClassFileContainer (File file, String pathPrefix) throws IOException {
@@ -53,6 +112,10 @@ public class JarClassFileContainer extends JVMClassFileContainer {
 
     jar = new JarFile(file);
     this.pathPrefix = getNormalizedPathPrefix(pathPrefix);
+
+    if (cacheData){
+      cache = getCachedJar(file);
+    }
   }
   
   /**
@@ -119,7 +182,14 @@ public class JarClassFileContainer extends JVMClassFileContainer {
     if (pathPrefix != null){
       pn = pathPrefix + pn;
     }
-    
+
+    if (cache != null){
+      byte[] data = cache.data.get(pn);
+      if (data != null){
+        return new JVMClassFileMatch(clsName, getClassURL(clsName), data);
+      }
+    }
+
     JarEntry e = jar.getJarEntry(pn);
 
     if (e != null) {
@@ -135,6 +205,10 @@ public class JarClassFileContainer extends JVMClassFileContainer {
         byte[] data = new byte[(int) len];
         FileUtils.getContents(is, data);
 
+        if (cache != null){
+          cache.data.put(pn, data);
+        }
+
         return new JVMClassFileMatch(clsName, getClassURL(clsName), data);
 
       } catch (IOException iox) {
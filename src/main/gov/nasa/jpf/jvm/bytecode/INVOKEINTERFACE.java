@@ -17,6 +17,9 @@
  */
 package gov.nasa.jpf.jvm.bytecode;
 
+import gov.nasa.jpf.vm.ClassInfo;
+import gov.nasa.jpf.vm.MethodInfo;
+
 
 /**
  * Invoke interface method
@@ -40,6 +43,39 @@ public class INVOKEINTERFACE extends VirtualInvocation {
     return 0xB9;
   }
 
+  /**
+   * dispatch through the interface that declares our method, not through the class
+   * of the first callee (which other implementors usually don't extend)
+   */
+  @Override
+  protected void initDispatch (ClassInfo cci, MethodInfo callee){
+    for (ClassInfo ifc : cci.getAllInterfaces()){
+      if (ifc.getName().equals(cname)){
+        if (initInterfaceDispatch(ifc)){
+          return;
+        }
+        for (ClassInfo superIfc : ifc.getAllInterfaces()){
+          if (initInterfaceDispatch(superIfc)){
+            return;
+          }
+        }
+      }
+    }
+
+    super.initDispatch(cci, callee);
+  }
+
+  protected boolean initInterfaceDispatch (ClassInfo ifc){
+    MethodInfo mi = ifc.getMethod(mname, false);
+    if (mi != null){
+      ifc.getVTable(); // make sure it has an index
+      dispatchCi = ifc;
+      dispatchIdx = mi.getVTableIndex();
+      return true;
+    }
+    return false;
+  }
+
   @Override
   public String toString() {
     // methodInfo not set outside real call context (requires target object)
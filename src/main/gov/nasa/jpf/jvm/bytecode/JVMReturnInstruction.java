@@ -17,6 +17,7 @@
  */
 package gov.nasa.jpf.jvm.bytecode;
 
+import gov.nasa.jpf.jvm.EscapeAnalysis;
 import gov.nasa.jpf.vm.Instruction;
 import gov.nasa.jpf.vm.ElementInfo;
 import gov.nasa.jpf.vm.StackFrame;
@@ -151,6 +152,11 @@ public abstract class JVMReturnInstruction extends ReturnInstruction implements
 
     StackFrame frame = ti.getModifiableTopFrame();
     returnFrame = frame;
+
+    if (EscapeAnalysis.isEnabled()) {
+      EscapeAnalysis.releaseLocals(ti, frame, this);
+    }
+
     Object attr = getReturnedOperandAttr(frame); // the return attr - get this before we pop
     getAndSaveReturnValue(frame);
     
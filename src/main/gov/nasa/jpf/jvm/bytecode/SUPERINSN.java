@@ -0,0 +1,209 @@
+/*
+ * Copyright (C) 2014, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ * All rights reserved.
+ *
+ * The Java Pathfinder core (jpf-core) platform is licensed under the
+ * Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0. 
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+package gov.nasa.jpf.jvm.bytecode;
+
+import gov.nasa.jpf.vm.FusedInstruction;
+import gov.nasa.jpf.vm.Instruction;
+import gov.nasa.jpf.vm.MJIEnv;
+import gov.nasa.jpf.vm.StackFrame;
+import gov.nasa.jpf.vm.ThreadInfo;
+
+/**
+ * a synthetic instruction that executes a sequence of thread local JVM bytecodes
+ * (local variable access, constants, int/long arithmetic without division, and stack
+ * manipulation) directly on the top StackFrame, without going through their execute()
+ * methods and ThreadInfo.executeInstruction()
+ *
+ * SUPERINSNs are created by the JVMCodeBuilder if 'jvm.fuse_basic_blocks' is set.
+ * We only fuse instructions of our own concrete classes - an InstructionFactory that
+ * returns subclasses (e.g. to propagate symbolic attributes) does not get them fused
+ */
+public class SUPERINSN extends FusedInstruction implements JVMInstruction {
+
+  // our internal operations (the fused bytecodes are normalized to these)
+  static final int OP_LOAD = 1, OP_LLOAD = 2, OP_STORE = 3, OP_LSTORE = 4;
+  static final int OP_PUSH = 5, OP_LPUSH = 6, OP_PUSHNULL = 7, OP_IINC = 8;
+  static final int OP_IADD = 10, OP_ISUB = 11, OP_IMUL = 12, OP_INEG = 13, OP_IAND = 14, OP_IOR = 15, OP_IXOR = 16;
+  static final int OP_ISHL = 17, OP_ISHR = 18, OP_IUSHR = 19;
+  static final int OP_LADD = 20, OP_LSUB = 21, OP_LMUL = 22, OP_LNEG = 23, OP_LAND = 24, OP_LOR = 25, OP_LXOR = 26;
+  static final int OP_LSHL = 27, OP_LSHR = 28, OP_LUSHR = 29;
+  static final int OP_I2L = 30, OP_L2I = 31, OP_I2B = 32, OP_I2C = 33, OP_I2S = 34;
+  static final int OP_DUP = 40, OP_POP = 41, OP_POP2 = 42, OP_SWAP = 43, OP_NOP = 44;
+
+  // the operations and their (index or constant) arguments, these are shared between clones
+  protected int[] ops;
+  protected int[] args;
+
+  public SUPERINSN (Instruction[] code, int start, int nFused){
+    super(code[start], nFused);
+
+    ops = new int[nFused];
+    args = new int[nFused];
+
+    for (int i=0; i<nFused; i++){
+      Instruction insn = code[start + i];
+      ops[i] = getOperation(insn);
+      args[i] = getArgument(insn);
+    }
+  }
+
+  /**
+   * return the operation for insn, or 0 if it can't be fused. Note that we check
+   * for exact classes since subclasses might execute differently
+   */
+  public static int getOperation (Instruction insn){
+    Class<?> cls = insn.getClass();
+
+    if (cls == ILOAD.class || cls == FLOAD.class || cls == ALOAD.class) return OP_LOAD;
+    if (cls == LLOAD.class || cls == DLOAD.class) return OP_LLOAD;
+    if (cls == ISTORE.class || cls == FSTORE.class || cls == ASTORE.class) return OP_STORE;
+    if (cls == LSTORE.class || cls == DSTORE.class) return OP_LSTORE;
+
+    if (cls == ICONST.class || cls == BIPUSH.class || cls == SIPUSH.class) return OP_PUSH;
+    if (cls == LCONST.class) return OP_LPUSH;
+    if (cls == ACONST_NULL.class) return OP_PUSHNULL;
+    if (cls == IINC.class) return OP_IINC;
+
+    if (cls == IADD.class) return OP_IADD;
+    if (cls == ISUB.class) return OP_ISUB;
+    if (cls == IMUL.class) return OP_IMUL;
+    if (cls == INEG.class) return OP_INEG;
+    if (cls == IAND.class) return OP_IAND;
+    if (cls == IOR.class) return OP_IOR;
+    if (cls == IXOR.class) return OP_IXOR;
+    if (cls == ISHL.class) return OP_ISHL;
+    if (cls == ISHR.class) return OP_ISHR;
+    if (cls == IUSHR.class) return OP_IUSHR;
+
+    if (cls == LADD.class) return OP_LADD;
+    if (cls == LSUB.class) return OP_LSUB;
+    if (cls == LMUL.class) return OP_LMUL;
+    if (cls == LNEG.class) return OP_LNEG;
+    if (cls == LAND.class) return OP_LAND;
+    if (cls == LOR.class) return OP_LOR;
+    if (cls == LXOR.class) return OP_LXOR;
+    if (cls == LSHL.class) return OP_LSHL;
+    if (cls == LSHR.class) return OP_LSHR;
+    if (cls == LUSHR.class) return OP_LUSHR;
+
+    if (cls == I2L.class) return OP_I2L;
+    if (cls == L2I.class) return OP_L2I;
+    if (cls == I2B.class) return OP_I2B;
+    if (cls == I2C.class) return OP_I2C;
+    if (cls == I2S.class) return OP_I2S;
+
+    if (cls == DUP.class) return OP_DUP;
+    if (cls == POP.class) return OP_POP;
+    if (cls == POP2.class) return OP_POP2;
+    if (cls == SWAP.class) return OP_SWAP;
+    if (cls == NOP.class) return OP_NOP;
+
+    return 0;
+  }
+
+  public static boolean isFusable (Instruction insn){
+    return getOperation(insn) != 0;
+  }
+
+  protected static int getArgument (Instruction insn){
+    if (insn instanceof JVMLocalVariableInstruction){
+      return ((JVMLocalVariableInstruction)insn).getLocalVariableIndex();
+    } else if (insn instanceof ICONST){
+      return ((ICONST)insn).getValue();
+    } else if (insn instanceof BIPUSH){
+      return ((BIPUSH)insn).getValue();
+    } else if (insn instanceof SIPUSH){
+      return ((SIPUSH)insn).getValue();
+    } else if (insn instanceof LCONST){
+      return (int)((LCONST)insn).getValue();
+    } else if (insn instanceof IINC){
+      // index and increment, both of which are 16 bit at most (wide)
+      IINC iinc = (IINC)insn;
+      return (iinc.getIndex() << 16) | (iinc.getIncrement() & 0xffff);
+    } else {
+      return 0;
+    }
+  }
+
+  @Override
+  protected void executeFused (ThreadInfo ti) {
+    StackFrame frame = ti.getModifiableTopFrame();
+    int[] ops = this.ops;
+    int[] args = this.args;
+
+    for (int i=0; i<ops.length; i++){
+      int v1, v2;
+      long l1, l2;
+
+      switch (ops[i]){
+        case OP_LOAD:      frame.pushLocal(args[i]); break;
+        case OP_LLOAD:     frame.pushLongLocal(args[i]); break;
+        case OP_STORE:     frame.storeOperand(args[i]); break;
+        case OP_LSTORE:    frame.storeLongOperand(args[i]); break;
+
+        case OP_PUSH:      frame.push(args[i]); break;
+        case OP_LPUSH:     frame.pushLong(args[i]); break;
+        case OP_PUSHNULL:  frame.pushRef(MJIEnv.NULL); break;
+        case OP_IINC:
+          v1 = args[i] >>> 16;
+          frame.setLocalVariable(v1, frame.getLocalVariable(v1) + (short)args[i], false);
+          break;
+
+        case OP_IADD:  v1 = frame.pop(); v2 = frame.pop(); frame.push(v1 + v2); break;
+        case OP_ISUB:  v1 = frame.pop(); v2 = frame.pop(); frame.push(v2 - v1); break;
+        case OP_IMUL:  v1 = frame.pop(); v2 = frame.pop(); frame.push(v1 * v2); break;
+        case OP_INEG:  frame.push(-frame.pop()); break;
+        case OP_IAND:  v1 = frame.pop(); v2 = frame.pop(); frame.push(v1 & v2); break;
+        case OP_IOR:   v1 = frame.pop(); v2 = frame.pop(); frame.push(v1 | v2); break;
+        case OP_IXOR:  v1 = frame.pop(); v2 = frame.pop(); frame.push(v1 ^ v2); break;
+        case OP_ISHL:  v1 = frame.pop(); v2 = frame.pop(); frame.push(v2 << v1); break;
+        case OP_ISHR:  v1 = frame.pop(); v2 = frame.pop(); frame.push(v2 >> v1); break;
+        case OP_IUSHR: v1 = frame.pop(); v2 = frame.pop(); frame.push(v2 >>> v1); break;
+
+        case OP_LADD:  l1 = frame.popLong(); l2 = frame.popLong(); frame.pushLong(l1 + l2); break;
+        case OP_LSUB:  l1 = frame.popLong(); l2 = frame.popLong(); frame.pushLong(l2 - l1); break;
+        case OP_LMUL:  l1 = frame.popLong(); l2 = frame.popLong(); frame.pushLong(l1 * l2); break;
+        case OP_LNEG:  frame.pushLong(-frame.popLong()); break;
+        case OP_LAND:  l1 = frame.popLong(); l2 = frame.popLong(); frame.pushLong(l1 & l2); break;
+        case OP_LOR:   l1 = frame.popLong(); l2 = frame.popLong(); frame.pushLong(l1 | l2); break;
+        case OP_LXOR:  l1 = frame.popLong(); l2 = frame.popLong(); frame.pushLong(l1 ^ l2); break;
+        case OP_LSHL:  v1 = frame.pop(); l2 = frame.popLong(); frame.pushLong(l2 << v1); break;
+        case OP_LSHR:  v1 = frame.pop(); l2 = frame.popLong(); frame.pushLong(l2 >> v1); break;
+        case OP_LUSHR: v1 = frame.pop(); l2 = frame.popLong(); frame.pushLong(l2 >>> v1); break;
+
+        case OP_I2L:   frame.pushLong(frame.pop()); break;
+        case OP_L2I:   frame.push((int)frame.popLong()); break;
+        case OP_I2B:   frame.push((byte)frame.pop(), false); break;
+        case OP_I2C:   frame.push((char)frame.pop(), false); break;
+        case OP_I2S:   frame.push((short)frame.pop()); break;
+
+        case OP_DUP:   frame.dup(); break;
+        case OP_POP:   frame.pop(); break;
+        case OP_POP2:  frame.pop(2); break;
+        case OP_SWAP:  frame.swap(); break;
+        case OP_NOP:   break;
+      }
+    }
+  }
+
+  @Override
+  public void accept (JVMInstructionVisitor insVisitor) {
+    // visitors analyze code, for which we are just the first fused bytecode
+    ((JVMInstruction)first).accept(insVisitor);
+  }
+}
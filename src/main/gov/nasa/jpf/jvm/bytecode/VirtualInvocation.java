@@ -37,6 +37,18 @@ public abstract class VirtualInvocation extends InstanceInvocation {
   
   ClassInfo lastCalleeCi; // cached for performance
 
+  // polymorphic inline cache for the last PIC_SIZE callee classes that we have seen
+  static final int PIC_SIZE = 4;
+  ClassInfo[] cachedCalleeCis;
+  MethodInfo[] cachedMethods;
+  int nextCacheIdx;
+  boolean isMegamorphic; // more callee classes than PIC_SIZE, don't bother caching
+
+  // the class or interface whose vtable index we use to look up callees that are not
+  // cached, which is set upon the first resolution of our method (see initDispatch())
+  ClassInfo dispatchCi;
+  int dispatchIdx;
+
   protected VirtualInvocation () {}
 
   protected VirtualInvocation (String clsDescriptor, String methodName, String signature){
@@ -159,14 +171,16 @@ public abstract class VirtualInvocation extends InstanceInvocation {
 
       if (lastCalleeCi != cci) { // callee ClassInfo has changed
         lastCalleeCi = cci;
-        invokedMethod = cci.getMethod(mname, true);
+        invokedMethod = getCachedMethod(cci);
 
         if (invokedMethod == null) {
-          invokedMethod = cci.getDefaultMethod(mname);
-                    
+          invokedMethod = dispatchMethod(cci);
+
           if (invokedMethod == null){
             lastObj = MJIEnv.NULL;
             lastCalleeCi = null;
+          } else {
+            cacheMethod(cci, invokedMethod);
           }
         }
       }
@@ -180,6 +194,78 @@ public abstract class VirtualInvocation extends InstanceInvocation {
     return invokedMethod;
   }
 
+  protected MethodInfo getCachedMethod (ClassInfo cci){
+    ClassInfo[] cis = cachedCalleeCis;
+    if (cis != null && !isMegamorphic){
+      for (int i=0; i<cis.length; i++){
+        if (cis[i] == cci){
+          return cachedMethods[i];
+        }
+      }
+    }
+    return null;
+  }
+
+  protected void cacheMethod (ClassInfo cci, MethodInfo callee){
+    if (cachedCalleeCis == null){
+      cachedCalleeCis = new ClassInfo[PIC_SIZE];
+      cachedMethods = new MethodInfo[PIC_SIZE];
+
+    } else if (nextCacheIdx == PIC_SIZE){
+      // megamorphic sites go directly to the dispatch tables
+      isMegamorphic = true;
+      return;
+    }
+
+    cachedCalleeCis[nextCacheIdx] = cci;
+    cachedMethods[nextCacheIdx] = callee;
+    nextCacheIdx++;
+  }
+
+  /**
+   * look up the callee for a receiver of type cci that is not in our inline cache
+   */
+  protected MethodInfo dispatchMethod (ClassInfo cci){
+    if (dispatchCi != null){
+      MethodInfo[] table = dispatchCi.isInterface() ? cci.getITable(dispatchCi) : cci.getVTable();
+
+      if (table != null && dispatchIdx < table.length){
+        MethodInfo callee = table[dispatchIdx];
+        // this also takes care of receivers that are not subtypes of dispatchCi
+        if (callee != null && callee.getUniqueName().equals(mname)){
+          return callee;
+        }
+      }
+    }
+
+    // the slow path, which walks the superclass chain and the interfaces
+    MethodInfo callee = cci.getMethod(mname, true);
+    if (callee == null) {
+      callee = cci.getDefaultMethod(mname);
+    }
+
+    if (callee != null && dispatchCi == null){
+      initDispatch(cci, callee);
+    }
+
+    return callee;
+  }
+
+  /**
+   * determine which vtable index to use for subsequent callee lookups. This is
+   * the index of the first resolved callee, which is valid for all subclasses of
+   * its declaring class (or implementors of its declaring interface)
+   */
+  protected void initDispatch (ClassInfo cci, MethodInfo callee){
+    ClassInfo ci = callee.getClassInfo();
+    ci.getVTable(); // make sure it has an index
+
+    if (callee.getVTableIndex() >= 0){
+      dispatchCi = ci;
+      dispatchIdx = callee.getVTableIndex();
+    }
+  }
+
   @Override
   public Object getFieldValue (String id, ThreadInfo ti){
     int objRef = getCalleeThis(ti);
@@ -211,6 +297,11 @@ public abstract class VirtualInvocation extends InstanceInvocation {
 
       clone.lastCalleeCi = null;
       clone.invokedMethod = null;
+      clone.cachedCalleeCis = null;
+      clone.cachedMethods = null;
+      clone.nextCacheIdx = 0;
+      clone.isMegamorphic = false;
+      clone.dispatchCi = null;
     } catch (CloneNotSupportedException e) {
       e.printStackTrace();
     }
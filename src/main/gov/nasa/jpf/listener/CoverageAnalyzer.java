@@ -36,6 +36,7 @@ import gov.nasa.jpf.vm.ClassInfoException;
 import gov.nasa.jpf.vm.ClassLoaderInfo;
 import gov.nasa.jpf.vm.ExceptionHandler;
 import gov.nasa.jpf.vm.Instruction;
+import gov.nasa.jpf.vm.InstructionInterest;
 import gov.nasa.jpf.vm.VM;
 import gov.nasa.jpf.vm.MethodInfo;
 import gov.nasa.jpf.vm.ThreadInfo;
@@ -66,7 +67,7 @@ import java.util.logging.Logger;
  * i.e. there is more to coverage than what hits the eye of a static analyzer
  * (exceptions, data and thread CGs)
  */
-public class CoverageAnalyzer extends ListenerAdapter implements PublisherExtension {
+public class CoverageAnalyzer extends ListenerAdapter implements PublisherExtension, InstructionInterest {
 
   static Logger log = JPF.getLogger("gov.nasa.jpf.listener.CoverageAnalyzer");
 
@@ -810,6 +811,12 @@ public class CoverageAnalyzer extends ListenerAdapter implements PublisherExtens
     return mi.getAnnotation("gov.nasa.jpf.Requirement");
   }
 
+  @Override
+  public boolean isInterestedIn (Instruction insn) {
+    // classes are registered when they get loaded, i.e. before any of their insns get executed
+    return (getMethodCoverage(insn) != null);
+  }
+
   @Override
   public void instructionExecuted(VM vm, ThreadInfo ti, Instruction nextInsn, Instruction executedInsn) {
     MethodCoverage mc = getMethodCoverage(executedInsn);
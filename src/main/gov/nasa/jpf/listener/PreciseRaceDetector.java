@@ -28,6 +28,7 @@ import gov.nasa.jpf.vm.ChoiceGenerator;
 import gov.nasa.jpf.vm.ElementInfo;
 import gov.nasa.jpf.vm.FieldInfo;
 import gov.nasa.jpf.vm.Instruction;
+import gov.nasa.jpf.vm.InstructionInterest;
 import gov.nasa.jpf.vm.VM;
 import gov.nasa.jpf.vm.MethodInfo;
 import gov.nasa.jpf.vm.bytecode.ReadOrWriteInstruction;
@@ -60,7 +61,7 @@ import java.io.StringWriter;
  *
  */
 
-public class PreciseRaceDetector extends PropertyListenerAdapter {
+public class PreciseRaceDetector extends PropertyListenerAdapter implements InstructionInterest {
 
   static class Race {
     Race prev;   // linked list
@@ -270,10 +271,18 @@ public class PreciseRaceDetector extends PropertyListenerAdapter {
 
     if (newCG instanceof ThreadChoiceFromSet) {
       ThreadInfo[] threads = ((ThreadChoiceFromSet)newCG).getAllThreadChoices();
-      checkRace(threads);
+      if (checkRace(threads)) {
+        vm.resetInstructionInterest(); // now we want to see the next insn
+      }
     }
   }
 
+  @Override
+  public boolean isInterestedIn (Instruction insn) {
+    // we only have to break the transition once we found a race
+    return (race != null);
+  }
+
   @Override
   public void executeInstruction (VM vm, ThreadInfo ti, Instruction insnToExecute) {
     if (race != null) {
@@ -368,15 +368,26 @@ public class ConsolePublisher extends Publisher {
     pw.println("elapsed time:       " + formatHMS(reporter.getElapsedTime()));
     pw.println("states:             new=" + stat.newStates + ",visited=" + stat.visitedStates
             + ",backtracked=" + stat.backtracked + ",end=" + stat.endStates);
+    if (stat.omissionProbability >= 0){
+      pw.println("state storage:      omission probability=" + stat.omissionProbability);
+    }
     pw.println("search:             maxDepth=" + stat.maxDepth + ",constraints=" + stat.constraints);
     pw.println("choice generators:  thread=" + stat.threadCGs
             + " (signal=" + stat.signalCGs + ",lock=" + stat.monitorCGs + ",sharedRef=" + stat.sharedAccessCGs
             + ",threadApi=" + stat.threadApiCGs + ",reschedule=" + stat.breakTransitionCGs
             + "), data=" + stat.dataCGs);
+    if (stat.prunedTransitions > 0){
+      pw.println("sleep sets:         pruned=" + stat.prunedTransitions);
+    }
     pw.println("heap:               " + "new=" + stat.nNewObjects
             + ",released=" + stat.nReleasedObjects
             + ",maxLive=" + stat.maxLiveObjects
             + ",gcCycles=" + stat.gcCycles);
+    if (stat.nLocalReleasedObjects > 0 || stat.nMinorGcReleasedObjects > 0){
+      pw.println("released objects:   local=" + stat.nLocalReleasedObjects
+              + ",minorGc=" + stat.nMinorGcReleasedObjects
+              + ",fullGc=" + (stat.nReleasedObjects - stat.nLocalReleasedObjects - stat.nMinorGcReleasedObjects));
+    }
     pw.println("instructions:       " + stat.insns);
     pw.println("max memory:         " + (stat.maxUsed >> 20) + "MB");
 
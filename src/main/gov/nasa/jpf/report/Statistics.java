@@ -27,11 +27,16 @@ import gov.nasa.jpf.search.Search;
 import gov.nasa.jpf.vm.ChoiceGenerator;
 import gov.nasa.jpf.vm.ClassInfo;
 import gov.nasa.jpf.vm.ElementInfo;
+import gov.nasa.jpf.vm.GenericHeap;
+import gov.nasa.jpf.vm.Heap;
 import gov.nasa.jpf.vm.Instruction;
+import gov.nasa.jpf.vm.LossyStateSet;
+import gov.nasa.jpf.vm.StateSet;
 import gov.nasa.jpf.vm.ThreadInfo;
 import gov.nasa.jpf.vm.VM;
 import gov.nasa.jpf.vm.MethodInfo;
 import gov.nasa.jpf.vm.ThreadChoiceGenerator;
+import gov.nasa.jpf.vm.choice.ThreadChoiceFromSet;
 
 /**
  * simple structure to hold statistics info created by Reporters/Publishers
@@ -70,10 +75,16 @@ public class Statistics extends ListenerAdapter implements Cloneable {
   public int threadApiCGs = 0;
   public int breakTransitionCGs = 0;
   public int dataCGs = 0;
+  public long prunedTransitions = 0; // sleeping thread choices (vm.sleep_sets)
   public long nNewObjects = 0;
   public long nReleasedObjects = 0;
+  public long nLocalReleasedObjects = 0;   // released by the fast path (vm.gc.release_locals)
+  public long nMinorGcReleasedObjects = 0; // released by minor gcs (vm.gc.generational)
   public int maxLiveObjects = 0;
 
+  // estimated probability that states were missed by a LossyStateSet (<0 if n/a)
+  public double omissionProbability = -1;
+
   @Override
   public Statistics clone() {
     try {
@@ -83,6 +94,91 @@ public class Statistics extends ListenerAdapter implements Cloneable {
     }
   }
   
+  /**
+   * answer the counters as an array that can be stored or transferred to
+   * another VM instance (e.g. by checkpoints or parallel searches)
+   */
+  public synchronized long[] getData (){
+    return new long[] {
+      maxUsed, newStates, backtracked, restored, processed,
+      constraints, visitedStates, endStates, maxDepth,
+      gcCycles, insns, threadCGs, sharedAccessCGs, monitorCGs,
+      signalCGs, threadApiCGs, breakTransitionCGs, dataCGs,
+      nNewObjects, nReleasedObjects, maxLiveObjects, prunedTransitions,
+      nLocalReleasedObjects, nMinorGcReleasedObjects
+    };
+  }
+
+  public synchronized void setData (long[] d){
+    maxUsed = d[0];
+    newStates = d[1];
+    backtracked = d[2];
+    restored = d[3];
+    processed = (int)d[4];
+    constraints = (int)d[5];
+    visitedStates = d[6];
+    endStates = d[7];
+    maxDepth = (int)d[8];
+    gcCycles = (int)d[9];
+    insns = d[10];
+    threadCGs = (int)d[11];
+    sharedAccessCGs = (int)d[12];
+    monitorCGs = (int)d[13];
+    signalCGs = (int)d[14];
+    threadApiCGs = (int)d[15];
+    breakTransitionCGs = (int)d[16];
+    dataCGs = (int)d[17];
+    nNewObjects = d[18];
+    nReleasedObjects = d[19];
+    maxLiveObjects = (int)d[20];
+    prunedTransitions = d[21];
+    if (d.length > 23){ // not in older checkpoints
+      nLocalReleasedObjects = d[22];
+      nMinorGcReleasedObjects = d[23];
+    }
+  }
+
+  /**
+   * reset the counters to data that was obtained by a previous getData() call,
+   * discarding everything that was counted since then. This is used if the VM
+   * re-executes transitions that were already explored (e.g. to replay states)
+   */
+  public synchronized void resetData (long[] d, VM vm){
+    setData(d);
+    lastInsns = vm.getNumberOfExecutedInstructions();
+  }
+
+  /**
+   * merge the counters of another search (e.g. a parallel worker) into ours.
+   * Maxima are combined, everything else is summed up
+   */
+  public synchronized void add (Statistics other){
+    maxUsed = Math.max(maxUsed, other.maxUsed);
+    newStates += other.newStates;
+    backtracked += other.backtracked;
+    restored += other.restored;
+    processed += other.processed;
+    constraints += other.constraints;
+    visitedStates += other.visitedStates;
+    endStates += other.endStates;
+    maxDepth = Math.max(maxDepth, other.maxDepth);
+    gcCycles += other.gcCycles;
+    insns += other.insns;
+    threadCGs += other.threadCGs;
+    sharedAccessCGs += other.sharedAccessCGs;
+    monitorCGs += other.monitorCGs;
+    signalCGs += other.signalCGs;
+    threadApiCGs += other.threadApiCGs;
+    breakTransitionCGs += other.breakTransitionCGs;
+    dataCGs += other.dataCGs;
+    nNewObjects += other.nNewObjects;
+    nReleasedObjects += other.nReleasedObjects;
+    maxLiveObjects = Math.max(maxLiveObjects, other.maxLiveObjects);
+    prunedTransitions += other.prunedTransitions;
+    nLocalReleasedObjects += other.nLocalReleasedObjects;
+    nMinorGcReleasedObjects += other.nMinorGcReleasedObjects;
+  }
+
   @Override
   public void gcBegin (VM vm) {
     int heapSize = vm.getHeap().size();
@@ -93,9 +189,14 @@ public class Statistics extends ListenerAdapter implements Cloneable {
     gcCycles++;
   }
   
-  @Override
-  public void instructionExecuted (VM vm, ThreadInfo ti, Instruction nextInsn, Instruction executedInsn){
-    insns++;
+  // the VM instruction count of our last insns update. We don't count the insns
+  // ourselves since that would require instructionExecuted() notifications
+  protected long lastInsns;
+
+  protected void updateInsns (VM vm){
+    long n = vm.getNumberOfExecutedInstructions();
+    insns += (n - lastInsns);
+    lastInsns = n;
   }
 
   @Override
@@ -104,6 +205,10 @@ public class Statistics extends ListenerAdapter implements Cloneable {
     if (cg instanceof ThreadChoiceGenerator){
       threadCGs++;
 
+      if (cg instanceof ThreadChoiceFromSet){
+        prunedTransitions += ((ThreadChoiceFromSet)cg).getNumberOfSleepingChoices();
+      }
+
       Instruction insn = cg.getInsn();
       if (insn instanceof JVMFieldInstruction) {
         sharedAccessCGs++;
@@ -142,10 +247,21 @@ public class Statistics extends ListenerAdapter implements Cloneable {
   @Override
   public void objectReleased (VM vm, ThreadInfo ti, ElementInfo ei){
     nReleasedObjects++;
+
+    Heap heap = vm.getHeap();
+    if (heap instanceof GenericHeap){
+      if (((GenericHeap)heap).isLocalRelease()){
+        nLocalReleasedObjects++;
+      } else if (((GenericHeap)heap).isMinorGc()){
+        nMinorGcReleasedObjects++;
+      }
+    }
   }
   
   @Override
   public void stateAdvanced (Search search){
+    updateInsns(search.getVM());
+
     long m = Runtime.getRuntime().totalMemory();
     if (m > maxUsed) {
       maxUsed = m;
@@ -182,7 +298,30 @@ public class Statistics extends ListenerAdapter implements Cloneable {
   
   @Override
   public void searchConstraintHit (Search search){
+    updateInsns(search.getVM());
     constraints++;
   }
 
+  // the notifications that are followed by publishing (we are notified before the Reporter)
+
+  @Override
+  public void searchProbed (Search search){
+    updateInsns(search.getVM());
+  }
+
+  @Override
+  public void propertyViolated (Search search){
+    updateInsns(search.getVM());
+  }
+
+  @Override
+  public void searchFinished (Search search){
+    updateInsns(search.getVM());
+
+    StateSet stateSet = search.getVM().getStateSet();
+    if (stateSet instanceof LossyStateSet){
+      omissionProbability = ((LossyStateSet)stateSet).getOmissionProbability();
+    }
+  }
+
 }
@@ -271,6 +271,12 @@ public class XMLPublisher extends Publisher {
     out.println("    <visited-states>" + stat.visitedStates + "</visited-states>");
     out.println("    <backtracked-states>" + stat.backtracked + "</backtracked-states>");
     out.println("    <end-states>" + stat.endStates + "</end-states>");
+    if (stat.omissionProbability >= 0){
+      out.println("    <omission-probability>" + stat.omissionProbability + "</omission-probability>");
+    }
+    if (stat.prunedTransitions > 0){
+      out.println("    <pruned-transitions>" + stat.prunedTransitions + "</pruned-transitions>");
+    }
     out.println("    <max-memory unit=\"MB\">" + (stat.maxUsed >>20) + "</max-memory>");
     out.println("  </statistics>");
   }
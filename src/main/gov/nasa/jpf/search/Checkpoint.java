@@ -0,0 +1,194 @@
+/*
+ * Copyright (C) 2014, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ * All rights reserved.
+ *
+ * The Java Pathfinder core (jpf-core) platform is licensed under the
+ * Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0. 
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+package gov.nasa.jpf.search;
+
+import gov.nasa.jpf.JPFException;
+import gov.nasa.jpf.vm.CheckpointableStateSet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * the persistent state of a search that can be resumed by a new JPF process,
+ * consisting of the choice trail that leads to the current state, the
+ * Statistics counters, the names of the stable class and method ids that
+ * were used to serialize states, and the visited states.
+ *
+ * Checkpoints are written into a temporary file that replaces the previous
+ * checkpoint once it is complete, i.e. a process that crashes while writing
+ * a checkpoint still leaves the last one intact. The format is
+ * <pre>
+ *   int magic, int version, UTF target,
+ *   boolean isExplored, int trailLength, int[] trail,
+ *   int nStatistics, long[] statistics,
+ *   int nIdNames, UTF[] idNames,
+ *   (state set data)
+ * </pre>
+ * If 'isExplored' is set, the state at the end of the trail has already
+ * been explored (e.g. because it was visited before), and the resuming search
+ * has to backtrack from it. Otherwise it is a new state that is not contained
+ * in the stored state set
+ */
+public class Checkpoint {
+
+  static final int MAGIC = 0x4a504643; // "JPFC"
+  static final int VERSION = 2;
+
+  protected String target;
+  protected boolean isExplored;
+  protected int[] trail;
+  protected long[] statistics;
+  protected String[] idNames; // of the NameIdMap used for stable ids, in id order
+
+  public Checkpoint (String target, boolean isExplored, int[] trail, long[] statistics, String[] idNames){
+    this.target = target;
+    this.isExplored = isExplored;
+    this.trail = trail;
+    this.statistics = statistics;
+    this.idNames = idNames;
+  }
+
+  protected Checkpoint (){
+    // for read()
+  }
+
+  public String getTarget(){
+    return target;
+  }
+
+  public boolean isExplored(){
+    return isExplored;
+  }
+
+  public int[] getTrail(){
+    return trail;
+  }
+
+  public long[] getStatistics(){
+    return statistics;
+  }
+
+  public String[] getIdNames(){
+    return idNames;
+  }
+
+  /**
+   * write this checkpoint together with the first 'nStates' states of the state set
+   */
+  public void write (File file, CheckpointableStateSet stateSet, int nStates){
+    File tmp = new File(file.getPath() + ".tmp");
+
+    try {
+      DataOutputStream out = new DataOutputStream( new BufferedOutputStream( new FileOutputStream(tmp), 65536));
+      try {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeUTF(target != null ? target : "");
+
+        out.writeBoolean(isExplored);
+        out.writeInt(trail.length);
+        for (int c : trail){
+          out.writeInt(c);
+        }
+
+        out.writeInt(statistics != null ? statistics.length : 0);
+        if (statistics != null){
+          for (long v : statistics){
+            out.writeLong(v);
+          }
+        }
+
+        out.writeInt(idNames != null ? idNames.length : 0);
+        if (idNames != null){
+          for (String name : idNames){
+            out.writeUTF(name);
+          }
+        }
+
+        stateSet.store(out, nStates);
+
+      } finally {
+        out.close();
+      }
+
+      // File.renameTo does not replace existing files on all platforms
+      if (file.exists() && !file.delete()){
+        throw new IOException("cannot replace " + file);
+      }
+      if (!tmp.renameTo(file)){
+        throw new IOException("cannot rename " + tmp + " to " + file);
+      }
+
+    } catch (IOException iox){
+      throw new JPFException("writing checkpoint failed: " + iox);
+    }
+  }
+
+  /**
+   * read a checkpoint, adding the stored states to 'stateSet'
+   */
+  public static Checkpoint read (File file, CheckpointableStateSet stateSet){
+    Checkpoint cp = new Checkpoint();
+
+    try {
+      DataInputStream in = new DataInputStream( new BufferedInputStream( new FileInputStream(file), 65536));
+      try {
+        if (in.readInt() != MAGIC){
+          throw new JPFException("not a checkpoint file: " + file);
+        }
+        int version = in.readInt();
+        if (version != VERSION){
+          throw new JPFException("unsupported checkpoint version " + version + " in " + file);
+        }
+        cp.target = in.readUTF();
+
+        cp.isExplored = in.readBoolean();
+        cp.trail = new int[in.readInt()];
+        for (int i=0; i<cp.trail.length; i++){
+          cp.trail[i] = in.readInt();
+        }
+
+        cp.statistics = new long[in.readInt()];
+        for (int i=0; i<cp.statistics.length; i++){
+          cp.statistics[i] = in.readLong();
+        }
+
+        cp.idNames = new String[in.readInt()];
+        for (int i=0; i<cp.idNames.length; i++){
+          cp.idNames[i] = in.readUTF();
+        }
+
+        stateSet.load(in);
+
+      } finally {
+        in.close();
+      }
+
+    } catch (IOException iox){
+      throw new JPFException("reading checkpoint failed: " + iox);
+    }
+
+    return cp;
+  }
+}
@@ -19,17 +19,65 @@ package gov.nasa.jpf.search;
 
 
 import gov.nasa.jpf.Config;
+import gov.nasa.jpf.JPFConfigException;
+import gov.nasa.jpf.JPFException;
+import gov.nasa.jpf.report.Statistics;
+import gov.nasa.jpf.util.NameIdMap;
+import gov.nasa.jpf.vm.CheckpointableStateSet;
+import gov.nasa.jpf.vm.StateSerializer;
+import gov.nasa.jpf.vm.StateSet;
 import gov.nasa.jpf.vm.VM;
+import gov.nasa.jpf.vm.serialize.FilteringSerializer;
+
+import java.io.File;
 
 
 /**
  * standard depth first model checking (but can be bounded by search depth
  * and/or explicit Verify.ignoreIf)
+ *
+ * If search.checkpoint is set, the search periodically (search.checkpoint.interval)
+ * writes a Checkpoint to this file, from which a subsequent JPF process can
+ * resume the search by means of search.resume. This requires a
+ * CheckpointableStateSet and load order independent serialization
+ * (vm.serializer.stable_ids), since the states of different processes are compared
  */
 public class DFSearch extends Search {
 
+  protected File checkpointFile;
+  protected long checkpointInterval;
+  protected long lastCheckpoint;
+
+  protected File resumeFile;
+  protected TrailReplayer replayer;
+
   public DFSearch (Config config, VM vm) {
   	super(config,vm);
+
+    checkpointFile = config.getPath("search.checkpoint");
+    checkpointInterval = config.getDuration("search.checkpoint.interval", 600000);
+    resumeFile = config.getPath("search.resume");
+
+    if (checkpointFile != null || resumeFile != null){
+      StateSet stateSet = vm.getStateSet();
+      if (!(stateSet instanceof CheckpointableStateSet)){
+        throw new JPFConfigException("search checkpoints require a CheckpointableStateSet, found: "
+                                     + ((stateSet != null) ? stateSet.getClass().getName() : "none"));
+      }
+      if (config.getBoolean("vm.sleep_sets", false)){
+        // checkpoints don't include the sleep sets of visited states
+        throw new JPFConfigException("search checkpoints do not support vm.sleep_sets");
+      }
+      if (!config.getBoolean("vm.serializer.stable_ids", false)){
+        log.warning("search checkpoints without vm.serializer.stable_ids can cause states to be re-explored");
+      }
+
+      if (resumeFile != null){
+        // has to see the CGs before anybody else
+        replayer = new TrailReplayer();
+        vm.addListener(replayer);
+      }
+    }
   }
 
   @Override
@@ -65,6 +113,11 @@ public class DFSearch extends Search {
 
     notifySearchStarted();
 
+    if (resumeFile != null){
+      resume();
+    }
+    lastCheckpoint = System.currentTimeMillis();
+
     while (!done) {
       if (checkAndResetBacktrackRequest() || !isNewState() || isEndState() || isIgnoredState() || depthLimitReached ) {
         if (!backtrack()) { // backtrack not possible, done
@@ -98,10 +151,17 @@ public class DFSearch extends Search {
 
         if (!checkStateSpaceLimit()) {
           notifySearchConstraintHit("memory limit reached: " + minFreeMemory);
+          if (checkpointFile != null){
+            writeCheckpoint();
+          }
           // can't go on, we exhausted our memory
           break;
         }
 
+        if (checkpointFile != null && (System.currentTimeMillis() - lastCheckpoint) >= checkpointInterval){
+          writeCheckpoint();
+        }
+
       } else { // forward did not execute any instructions
         notifyStateProcessed();
       }
@@ -111,6 +171,106 @@ public class DFSearch extends Search {
   }
 
 
+  //--- checkpoints
+
+  /**
+   * write a checkpoint for the current state. If this is a new state that
+   * still has to be explored, it is not stored as visited, so that the
+   * resumed search (which re-executes the path to it) sees it as new
+   */
+  protected void writeCheckpoint (){
+    CheckpointableStateSet stateSet = (CheckpointableStateSet) vm.getStateSet();
+    boolean isExplored = !isNewState() || isEndState() || isIgnoredState();
+    int nStates = isExplored ? stateSet.size() : vm.getStateId();
+
+    Checkpoint cp = new Checkpoint(config.getTarget(), isExplored, TrailReplayer.getTrail(vm),
+                                   getStatisticsData(), getStableIdNames());
+    cp.write(checkpointFile, stateSet, nStates);
+
+    lastCheckpoint = System.currentTimeMillis();
+    log.info("wrote checkpoint ", checkpointFile, " at depth ", depth);
+  }
+
+  /**
+   * read the checkpoint, and move the VM along its trail to the state
+   * from which the checkpointing search would have continued
+   */
+  protected void resume (){
+    CheckpointableStateSet stateSet = (CheckpointableStateSet) vm.getStateSet();
+    Checkpoint cp = Checkpoint.read(resumeFile, stateSet);
+
+    String target = config.getTarget();
+    if (target != null && !target.equals(cp.getTarget())){
+      log.warning("checkpoint was written for different target: ", cp.getTarget());
+    }
+
+    // has to happen before the first state is serialized
+    setStableIdNames(cp.getIdNames());
+
+    replayer.start(cp.getTrail(), true);
+    while (replayer.isReplaying()){
+      if (!vm.forward()){
+        throw new JPFException("failed to replay checkpoint trail: " + resumeFile);
+      }
+    }
+    depth = vm.getPathLength();
+
+    setStatisticsData(cp.getStatistics());
+
+    if (cp.isExplored()){
+      requestBacktrack();
+    }
+  }
+
+  /**
+   * the stable class and method ids are handed out in the order in which they
+   * are used, which can differ for the resuming process, so we have to store them
+   */
+  protected String[] getStableIdNames (){
+    StateSerializer serializer = vm.getSerializer();
+    if (serializer instanceof FilteringSerializer){
+      NameIdMap ids = ((FilteringSerializer)serializer).getStableIds();
+      if (ids != null){
+        return ids.getNames();
+      }
+    }
+    return null;
+  }
+
+  protected void setStableIdNames (String[] names){
+    StateSerializer serializer = vm.getSerializer();
+    if (serializer instanceof FilteringSerializer && names != null && names.length > 0){
+      NameIdMap ids = new NameIdMap();
+      for (String name : names){
+        ids.getId(name);
+      }
+      ((FilteringSerializer)serializer).setStableIds(ids);
+    }
+  }
+
+  protected long[] getStatisticsData (){
+    if (reporter != null){
+      Statistics stat = reporter.getStatistics();
+      if (stat != null){
+        return stat.getData();
+      }
+    }
+    return null;
+  }
+
+  /**
+   * this discards what was counted while replaying the checkpoint trail,
+   * including the instructions that were executed so far
+   */
+  protected void setStatisticsData (long[] data){
+    if (reporter != null && data != null && data.length > 0){
+      Statistics stat = reporter.getStatistics();
+      if (stat != null){
+        stat.resetData(data, vm);
+      }
+    }
+  }
+
   @Override
   public boolean supportsBacktrack () {
     return true;
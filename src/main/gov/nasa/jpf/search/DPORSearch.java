@@ -0,0 +1,500 @@
+/*
+ * Copyright (C) 2014, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ * All rights reserved.
+ *
+ * The Java Pathfinder core (jpf-core) platform is licensed under the
+ * Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0. 
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+package gov.nasa.jpf.search;
+
+import gov.nasa.jpf.Config;
+import gov.nasa.jpf.ListenerAdapter;
+import gov.nasa.jpf.jvm.bytecode.EXECUTENATIVE;
+import gov.nasa.jpf.jvm.bytecode.INVOKESTATIC;
+import gov.nasa.jpf.jvm.bytecode.InstanceInvocation;
+import gov.nasa.jpf.jvm.bytecode.JVMArrayElementInstruction;
+import gov.nasa.jpf.jvm.bytecode.MONITORENTER;
+import gov.nasa.jpf.vm.ChoiceGenerator;
+import gov.nasa.jpf.vm.ElementInfo;
+import gov.nasa.jpf.vm.FieldInfo;
+import gov.nasa.jpf.vm.Footprint;
+import gov.nasa.jpf.vm.Instruction;
+import gov.nasa.jpf.vm.MJIEnv;
+import gov.nasa.jpf.vm.StackFrame;
+import gov.nasa.jpf.vm.ThreadChoiceGenerator;
+import gov.nasa.jpf.vm.ThreadInfo;
+import gov.nasa.jpf.vm.VM;
+import gov.nasa.jpf.vm.bytecode.FieldInstruction;
+import gov.nasa.jpf.vm.bytecode.InstanceFieldInstruction;
+import gov.nasa.jpf.vm.choice.DPORThreadChoice;
+import gov.nasa.jpf.vm.choice.ThreadChoiceFromSet;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * a stateless depth first search with dynamic partial order reduction (DPOR,
+ * Flanagan/Godefroid 2005).
+ *
+ * Scheduling points (ThreadChoiceFromSet) are replaced by DPORThreadChoices,
+ * which initially only explore the thread that was already running (or the
+ * first runnable one). Each executed transition records the objects it
+ * accessed (fields, array elements and locks). Happens-before between
+ * transitions is tracked with vector clocks. After each transition, we check
+ * the next step of each live thread p (the one it just executed, and the
+ * pending instructions of all others, including blocked ones). If it conflicts
+ * with an earlier transition i of another thread that does not happen-before
+ * p, p is added to the backtrack set of the scheduling point that preceded i,
+ * or all runnables if p was not runnable there.
+ *
+ * Lock releases, waits and notifications order transitions, but are not
+ * treated as conflicts since they can't be co-enabled with a lock acquisition
+ * of another thread. Races between critical sections are detected between
+ * their lock acquisitions instead.
+ *
+ * Since DPOR is not sound in combination with state matching, this search
+ * does not use the state set. To avoid the overhead of storing states, it
+ * should be configured with an empty 'vm.storage.class'. Note that stateless
+ * search can re-explore the same states many times, i.e. for programs with
+ * few distinct states a stateful DFSearch is usually much faster.
+ *
+ * Accesses within transitions that start without a scheduling point are
+ * attributed to the previous scheduling point, and pending steps are only
+ * approximated by their first instruction
+ */
+public class DPORSearch extends Search {
+
+  /**
+   * what we know about a transition on the current path
+   */
+  static class Transition {
+    int threadId;
+    ThreadInfo thread;
+    DPORThreadChoice schedulingPoint; // that selected this transition, or null
+
+    Footprint footprint; // all accesses, which determine happens-before
+    Footprint conflicts; // accesses that can race, i.e. without lock releases
+    int[] clock; // vector clock, transition indices are 1-based
+
+    int[] startedThreads;
+  }
+
+  /**
+   * the VMListener that replaces scheduling points and records accesses
+   */
+  class AccessTracker extends ListenerAdapter {
+
+    @Override
+    public void choiceGeneratorRegistered (VM vm, ChoiceGenerator<?> nextCG, ThreadInfo ti, Instruction executedInsn) {
+      if (nextCG.getClass() == ThreadChoiceFromSet.class){
+        ThreadChoiceFromSet cg = (ThreadChoiceFromSet)nextCG;
+        if (cg.isSchedulingPoint()){
+          DPORThreadChoice dporCG = new DPORThreadChoice(cg, ti);
+          dporCG.setAttr(cg.getAttr());
+
+          vm.getSystemState().replaceNextChoiceGenerator(dporCG);
+        }
+      }
+    }
+
+    @Override
+    public void instructionExecuted (VM vm, ThreadInfo ti, Instruction nextInsn, Instruction executedInsn) {
+      if (executedInsn instanceof FieldInstruction){
+        if (executedInsn.isCompleted(ti)){
+          FieldInstruction finsn = (FieldInstruction)executedInsn;
+          FieldInfo fi = finsn.getFieldInfo();
+
+          if (finsn instanceof InstanceFieldInstruction){
+            int ref = ((InstanceFieldInstruction)finsn).getLastThis();
+            accesses.addFieldAccess( ref, fi.getFieldIndex(), !finsn.isRead());
+            conflicts.addFieldAccess( ref, fi.getFieldIndex(), !finsn.isRead());
+          } else {
+            int ref = fi.getClassInfo().getClassObjectRef();
+            accesses.addStaticFieldAccess( ref, fi.getFieldIndex(), !finsn.isRead());
+            conflicts.addStaticFieldAccess( ref, fi.getFieldIndex(), !finsn.isRead());
+          }
+        }
+
+      } else if (executedInsn instanceof JVMArrayElementInstruction){
+        if (executedInsn.isCompleted(ti)){
+          JVMArrayElementInstruction ainsn = (JVMArrayElementInstruction)executedInsn;
+          accesses.addArrayAccess( ainsn.getArrayRef(ti), ainsn.getIndex(ti), !ainsn.isRead());
+          conflicts.addArrayAccess( ainsn.getArrayRef(ti), ainsn.getIndex(ti), !ainsn.isRead());
+        }
+      }
+    }
+
+    @Override
+    public void objectLocked (VM vm, ThreadInfo ti, ElementInfo ei) {
+      accesses.addLockAccess( ei.getObjectRef());
+      conflicts.addLockAccess( ei.getObjectRef());
+    }
+
+    @Override
+    public void objectUnlocked (VM vm, ThreadInfo ti, ElementInfo ei) {
+      accesses.addLockAccess( ei.getObjectRef());
+    }
+
+    @Override
+    public void objectWait (VM vm, ThreadInfo ti, ElementInfo ei) {
+      accesses.addLockAccess( ei.getObjectRef());
+    }
+
+    @Override
+    public void objectNotify (VM vm, ThreadInfo ti, ElementInfo ei) {
+      accesses.addLockAccess( ei.getObjectRef());
+    }
+
+    @Override
+    public void objectNotifyAll (VM vm, ThreadInfo ti, ElementInfo ei) {
+      accesses.addLockAccess( ei.getObjectRef());
+    }
+
+    @Override
+    public void threadStarted (VM vm, ThreadInfo ti) {
+      addStartedThread(ti.getId());
+    }
+  }
+
+  //--- the current path
+  protected ArrayList<Transition> path = new ArrayList<Transition>();
+
+  //--- accesses of the transition that is currently executed
+  protected Footprint.Recorder accesses = new Footprint.Recorder();
+  protected Footprint.Recorder conflicts = new Footprint.Recorder();
+  protected int[] startedThreads = new int[4];
+  protected int nStartedThreads;
+
+  //--- the next step of a thread that is not executed yet
+  protected Footprint.Recorder pending = new Footprint.Recorder();
+
+  //--- statistics
+  protected long nRaces;
+  protected long nBacktracks;
+
+  public DPORSearch (Config config, VM vm) {
+    super(config,vm);
+
+    if (vm.getStateSet() != null){
+      log.info("DPORSearch does not match states, use empty 'vm.storage.class' to avoid storing them");
+    }
+
+    // has to see the scheduling points before anybody else
+    vm.addListener( new AccessTracker());
+  }
+
+  @Override
+  public boolean requestBacktrack () {
+    doBacktrack = true;
+    return true;
+  }
+
+  @Override
+  public boolean supportsBacktrack () {
+    return true;
+  }
+
+  public long getNumberOfRaces(){
+    return nRaces;
+  }
+
+  public long getNumberOfAddedBacktracks(){
+    return nBacktracks;
+  }
+
+  /**
+   * the same loop as DFSearch, except of not backtracking from visited states
+   */
+  @Override
+  public void search () {
+    boolean depthLimitReached = false;
+    boolean isExhausted = false; // no more choices in the current state
+
+    depth = 0;
+    path.clear();
+
+    notifySearchStarted();
+
+    while (!done) {
+      if (checkAndResetBacktrackRequest() || isExhausted || isEndState() || isIgnoredState() || depthLimitReached ) {
+        if (!backtrack()) { // backtrack not possible, done
+          break;
+        }
+
+        depthLimitReached = false;
+        depth--;
+        path.remove(path.size()-1);
+        notifyStateBacktracked();
+      }
+
+      resetAccesses();
+
+      if (forward()) {
+        isExhausted = false;
+        addTransition();
+        addPendingBacktracks();
+
+        depth++;
+        notifyStateAdvanced();
+
+        if (currentError != null){
+          notifyPropertyViolated();
+
+          if (hasPropertyTermination()) {
+            break;
+          }
+        }
+
+        if (depth >= depthLimit) {
+          depthLimitReached = true;
+          notifySearchConstraintHit("depth limit reached: " + depthLimit);
+          continue;
+        }
+
+        if (!checkStateSpaceLimit()) {
+          notifySearchConstraintHit("memory limit reached: " + minFreeMemory);
+          // can't go on, we exhausted our memory
+          break;
+        }
+
+      } else { // forward did not execute any instructions
+        isExhausted = true;
+        notifyStateProcessed();
+      }
+    }
+
+    log.info("DPOR races: ", Long.toString(nRaces), ", added backtracks: ", Long.toString(nBacktracks));
+
+    notifySearchFinished();
+  }
+
+  //--- access recording
+
+  protected void resetAccesses (){
+    accesses.reset();
+    conflicts.reset();
+    nStartedThreads = 0;
+  }
+
+  protected void addStartedThread (int id){
+    if (nStartedThreads == startedThreads.length){
+      startedThreads = Arrays.copyOf(startedThreads, nStartedThreads * 2);
+    }
+    startedThreads[nStartedThreads++] = id;
+  }
+
+  //--- race detection
+
+  /**
+   * add the transition that was just executed to the path, detect races with
+   * earlier transitions and compute its vector clock
+   */
+  protected void addTransition (){
+    ThreadInfo ti = vm.getCurrentThread();
+    int n = path.size(); // index of the new transition, clock values are n+1
+
+    Transition t = new Transition();
+    t.thread = ti;
+    t.threadId = ti.getId();
+    t.footprint = accesses.getFootprint(false);
+    t.conflicts = conflicts.getFootprint(false);
+    t.startedThreads = Arrays.copyOf(startedThreads, nStartedThreads);
+
+    ThreadChoiceGenerator tcg = vm.getSystemState().getCurrentSchedulingPoint();
+    if (tcg instanceof DPORThreadChoice){
+      t.schedulingPoint = (DPORThreadChoice)tcg;
+    }
+
+    int[] clock = getThreadClock(t.threadId, n);
+
+    int idx = getLastRace(t.threadId, clock, t.conflicts);
+    if (idx >= 0){
+      nRaces++;
+      addBacktrack(idx, ti);
+    }
+
+    //--- compute the vector clock of the new transition
+    for (int i=n-1; i>=0; i--){
+      Transition ti_ = path.get(i);
+      if (ti_.footprint.isDependent(t.footprint)){
+        clock = join(clock, ti_.clock);
+      }
+    }
+    clock = setClockValue(clock, t.threadId, n+1);
+    t.clock = clock;
+
+    path.add(t);
+  }
+
+  /**
+   * the last transition of another thread that conflicts with the accesses
+   * 'fp' of thread 'threadId' and does not happen-before its transition with
+   * vector clock 'clock', or -1 if there is none
+   */
+  protected int getLastRace (int threadId, int[] clock, Footprint fp){
+    for (int i=path.size()-1; i>=0; i--){
+      Transition t = path.get(i);
+      if (t.threadId != threadId && t.conflicts.isDependent(fp)){
+        if (getClockValue(clock, t.threadId) < i+1){
+          return i;
+        }
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * check the next steps of all live threads for races. We can't wait until
+   * they are executed since this might never happen on the current path, e.g.
+   * if the thread is blocked on a lock, or if the path ends with an error
+   */
+  protected void addPendingBacktracks (){
+    for (ThreadInfo ti : vm.getThreadList()){
+      Footprint fp = getPendingFootprint(ti);
+      if (fp != null){
+        int id = ti.getId();
+        int idx = getLastRace(id, getThreadClock(id, path.size()), fp);
+        if (idx >= 0){
+          addBacktrack(idx, ti);
+        }
+      }
+    }
+  }
+
+  /**
+   * approximate the next step of a thread that is not executed yet by its
+   * pending instruction, which is usually the one that caused its last
+   * scheduling point. Answer null if it doesn't access shared objects
+   */
+  protected Footprint getPendingFootprint (ThreadInfo ti){
+    if (!ti.isAlive()){
+      return null;
+    }
+
+    pending.reset();
+
+    int lockRef = ti.getLockRef();
+    if (lockRef != MJIEnv.NULL){ // blocked or waiting, has to (re)acquire this lock
+      pending.addLockAccess(lockRef);
+      return pending.getFootprint(false);
+    }
+
+    Instruction insn = ti.getPC();
+
+    if (insn instanceof FieldInstruction){
+      FieldInstruction finsn = (FieldInstruction)insn;
+      FieldInfo fi = finsn.peekFieldInfo();
+      if (fi == null){ // not resolved yet, so we don't know what it accesses
+        return Footprint.GLOBAL;
+      }
+
+      if (fi.isStatic()){
+        int ref = fi.getClassInfo().getClassObjectRef();
+        pending.addStaticFieldAccess( ref, fi.getFieldIndex(), !finsn.isRead());
+      } else {
+        ElementInfo ei = finsn.peekElementInfo(ti);
+        if (ei == null){ // NullPointerException
+          return null;
+        }
+        pending.addFieldAccess( ei.getObjectRef(), fi.getFieldIndex(), !finsn.isRead());
+      }
+
+    } else if (insn instanceof JVMArrayElementInstruction){
+      JVMArrayElementInstruction ainsn = (JVMArrayElementInstruction)insn;
+      pending.addArrayAccess( ainsn.peekArrayRef(ti), ainsn.peekIndex(ti), !ainsn.isRead());
+
+    } else if (insn instanceof MONITORENTER){
+      pending.addLockAccess( ti.getTopFrame().peek());
+
+    } else if (insn instanceof InstanceInvocation){ // might be synchronized
+      pending.addLockAccess( ((InstanceInvocation)insn).getCalleeThis(ti));
+
+    } else if (insn instanceof INVOKESTATIC){
+      // might be synchronized, but we don't want to resolve the callee class
+      return Footprint.GLOBAL;
+
+    } else if (insn instanceof EXECUTENATIVE){ // e.g. Thread.join() or Object.wait()
+      StackFrame frame = ti.getTopFrame();
+      if (frame.getMethodInfo().isStatic()){
+        return null;
+      }
+      pending.addLockAccess( frame.getThis());
+
+    } else {
+      return null;
+    }
+
+    return pending.getFootprint(false);
+  }
+
+  /**
+   * the vector clock of the last transition of this thread, or of the
+   * transition that started it
+   */
+  protected int[] getThreadClock (int threadId, int n){
+    for (int i=n-1; i>=0; i--){
+      Transition t = path.get(i);
+      if (t.threadId == threadId){
+        return t.clock.clone();
+      }
+      for (int id : t.startedThreads){
+        if (id == threadId){
+          return t.clock.clone();
+        }
+      }
+    }
+    return new int[0];
+  }
+
+  static int getClockValue (int[] clock, int threadId){
+    return (threadId < clock.length) ? clock[threadId] : 0;
+  }
+
+  static int[] setClockValue (int[] clock, int threadId, int v){
+    if (threadId >= clock.length){
+      clock = Arrays.copyOf(clock, threadId+1);
+    }
+    clock[threadId] = v;
+    return clock;
+  }
+
+  static int[] join (int[] a, int[] b){
+    if (b.length > a.length){
+      a = Arrays.copyOf(a, b.length);
+    }
+    for (int i=0; i<b.length; i++){
+      if (b[i] > a[i]){
+        a[i] = b[i];
+      }
+    }
+    return a;
+  }
+
+  /**
+   * make sure thread 'ti' gets scheduled at the scheduling point before
+   * transition 'idx'
+   */
+  protected void addBacktrack (int idx, ThreadInfo ti){
+    for (int i=idx; i>=0; i--){
+      DPORThreadChoice cg = path.get(i).schedulingPoint;
+      if (cg != null){
+        int nBefore = cg.getNumberOfBacktracks();
+        if (!cg.addBacktrack(ti)){
+          cg.addAllBacktracks();
+        }
+        nBacktracks += cg.getNumberOfBacktracks() - nBefore;
+        return;
+      }
+    }
+  }
+}
@@ -400,7 +400,8 @@ public abstract class Search {
    * Performs the actual notification and resets the request, hence this call should only happen from within JPFs main thread
    */
   public void checkAndResetProbeRequest(){
-    if (notifyProbeListeners.compareAndSet(true, false)){
+    // the plain read is cheaper than a CAS, and almost always false
+    if (notifyProbeListeners.get() && notifyProbeListeners.compareAndSet(true, false)){
       notifySearchProbed();
     }
   }
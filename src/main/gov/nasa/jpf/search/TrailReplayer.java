@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2014, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ * All rights reserved.
+ *
+ * The Java Pathfinder core (jpf-core) platform is licensed under the
+ * Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0. 
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+package gov.nasa.jpf.search;
+
+import gov.nasa.jpf.ListenerAdapter;
+import gov.nasa.jpf.vm.ChoiceGenerator;
+import gov.nasa.jpf.vm.VM;
+
+/**
+ * listener that forces ChoiceGenerators to follow a choice trail, i.e. an
+ * array of choice indices for each ChoiceGenerator along a path. This is
+ * used to move a VM to a state that was reached by another VM instance,
+ * and works the same way as ChoiceSelector replays stored traces.
+ *
+ * Replayed ChoiceGenerators are either set done (we only want to re-execute
+ * the path), or keep their remaining choices, so that a search that resumes
+ * from the end of the trail backtracks into them the same way as the search
+ * that recorded it.
+ *
+ * To see the original choices first, this should be registered before any
+ * other VMListener (i.e. from the Search ctor)
+ */
+public class TrailReplayer extends ListenerAdapter {
+
+  int[] trail;
+  int next;
+  boolean keepChoices;
+
+  /**
+   * get the choice trail of the current path
+   */
+  public static int[] getTrail (VM vm){
+    ChoiceGenerator<?>[] cgs = vm.getSystemState().getChoiceGenerators();
+    if (cgs == null){
+      return new int[0];
+    }
+
+    int[] trail = new int[cgs.length];
+    for (int i=0; i<cgs.length; i++){
+      trail[i] = cgs[i].getProcessedNumberOfChoices() - 1;
+    }
+    return trail;
+  }
+
+  public void start (int[] trail){
+    start(trail, false);
+  }
+
+  /**
+   * @param keepChoices if true, the ChoiceGenerators along the trail can be
+   * backtracked into, i.e. their choices following the trail are explored
+   */
+  public void start (int[] trail, boolean keepChoices){
+    this.trail = trail;
+    this.keepChoices = keepChoices;
+    next = 0;
+  }
+
+  public boolean isReplaying(){
+    return (trail != null) && (next < trail.length);
+  }
+
+  @Override
+  public void choiceGeneratorAdvanced (VM vm, ChoiceGenerator<?> currentCG) {
+    if (isReplaying()){
+      int choice = trail[next++];
+
+      if (keepChoices){
+        currentCG.reset();
+        currentCG.advance(choice + 1);
+      } else {
+        // this sets the CG done, i.e. we never backtrack into it
+        currentCG.select(choice);
+      }
+    }
+  }
+}
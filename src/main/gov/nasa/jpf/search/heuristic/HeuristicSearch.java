@@ -18,11 +18,18 @@
 package gov.nasa.jpf.search.heuristic;
 
 import gov.nasa.jpf.Config;
+import gov.nasa.jpf.JPFException;
 import gov.nasa.jpf.search.Search;
+import gov.nasa.jpf.search.TrailReplayer;
+import gov.nasa.jpf.report.Statistics;
+import gov.nasa.jpf.vm.RestorableVMState;
 import gov.nasa.jpf.vm.VM;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 
 /**
@@ -31,6 +38,19 @@ import java.util.List;
  * Heuristic strategy object), and processes states in the sequence of
  * highest priorities. Note that the queue can be search-global, i.e. we might hop
  * between search levels.
+ *
+ * Since queues can get very large, we can avoid storing a RestorableVMState for
+ * each queued state (search.heuristic.replay). In this case only the states
+ * of each search.heuristic.replay.interval-th search level are stored, and the
+ * others are restored by replaying the choices that lead to them from their
+ * parent. The parent is restored the same way, and the most recently used
+ * replayed parent states are cached (search.heuristic.replay.cache_size).
+ *
+ * Replaying executes the transitions again, which is seen by VMListeners
+ * (e.g. instructionExecuted or choiceGeneratorSet notifications), but not by
+ * SearchListeners. We can't suppress these notifications since listeners
+ * might change the execution (e.g. remove ChoiceGenerators), but we reset the
+ * Statistics to what they were before the replay
  */
 public abstract class HeuristicSearch extends Search {
   
@@ -55,12 +75,41 @@ public abstract class HeuristicSearch extends Search {
    */
   protected boolean isBeamSearch;
 
+  /*
+   * do we restore states by replaying their choices from the nearest stored
+   * or cached ancestor state
+   */
+  protected boolean useReplay;
+  protected int replayInterval;
+  protected TrailReplayer replayer;
+  protected Map<HeuristicState,RestorableVMState> replayCache;
+  protected long nReplayedStates;
+
   
   public HeuristicSearch (Config config, VM vm) {
     super(config, vm);
     
     useAstar = config.getBoolean("search.heuristic.astar");
     isBeamSearch = config.getBoolean("search.heuristic.beam_search");
+
+    useReplay = config.getBoolean("search.heuristic.replay");
+    if (useReplay){
+      replayInterval = Math.max(1, config.getInt("search.heuristic.replay.interval", 8));
+
+      final int cacheSize = config.getInt("search.heuristic.replay.cache_size", 256);
+      replayCache = new LinkedHashMap<HeuristicState,RestorableVMState>(cacheSize, 0.75f, true){
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry (Map.Entry<HeuristicState,RestorableVMState> eldest){
+          return size() > cacheSize;
+        }
+      };
+
+      // has to see the CGs before anybody else
+      replayer = new TrailReplayer();
+      vm.addListener(replayer);
+    }
   }
 
   
@@ -85,6 +134,22 @@ public abstract class HeuristicSearch extends Search {
   public void setPathSensitive (boolean isPathSensitive) {
     this.isPathSensitive = isPathSensitive;
   }  
+
+  public long getNumberOfReplayedStates() {
+    return nReplayedStates;
+  }
+
+  /**
+   * the parent to use for a new HeuristicState of the current state, which
+   * is null if we have to store its RestorableVMState
+   */
+  protected HeuristicState getReplayParent () {
+    if (useReplay && parentState != null && (vm.getPathLength() % replayInterval) != 0){
+      return parentState;
+    } else {
+      return null;
+    }
+  }
   
   void backtrackToParent () {
     backtrack();
@@ -164,7 +229,23 @@ public abstract class HeuristicSearch extends Search {
 
   
   private void restoreState (HeuristicState hState) {    
-    vm.restoreState(hState.getVMState());
+    RestorableVMState vmState = hState.getVMState();
+
+    if (vmState != null){
+      vm.restoreState(vmState);
+    } else {
+      Statistics stat = (reporter != null) ? reporter.getStatistics() : null;
+      long[] statData = (stat != null) ? stat.getData() : null;
+
+      replayState(hState);
+
+      if (statData != null){ // we don't count re-executed transitions
+        stat.resetData(statData, vm);
+      }
+
+      // we are going to replay its children from here
+      replayCache.put(hState, vm.getRestorableState());
+    }
 
     // note we have to query the depth from the VM because the state is taken from the queue
     // and we have no idea when it was entered there
@@ -172,6 +253,36 @@ public abstract class HeuristicSearch extends Search {
     notifyStateRestored();
   }
    
+  /**
+   * restore the parent of hState, either from its stored or cached
+   * RestorableVMState or by replaying it, and then replay the choices that
+   * lead from there to hState
+   */
+  protected void replayState (HeuristicState hState) {
+    HeuristicState parent = hState.getParent();
+    RestorableVMState parentVmState = parent.getVMState();
+    if (parentVmState == null){
+      parentVmState = replayCache.get(parent);
+    }
+
+    if (parentVmState != null){
+      vm.restoreState(parentVmState);
+    } else {
+      replayState(parent);
+      replayCache.put(parent, vm.getRestorableState());
+    }
+
+    int[] trail = hState.getTrail();
+    replayer.start(trail);
+    while (replayer.isReplaying()){
+      if (!vm.forward()){
+        throw new JPFException("failed to replay choice trail: " + Arrays.toString(trail));
+      }
+    }
+
+    nReplayedStates++;
+  }
+
   @Override
   public void search () {
         
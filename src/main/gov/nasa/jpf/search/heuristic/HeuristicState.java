@@ -17,6 +17,7 @@
  */
 package gov.nasa.jpf.search.heuristic;
 
+import gov.nasa.jpf.vm.ChoiceGenerator;
 import gov.nasa.jpf.vm.VM;
 import gov.nasa.jpf.vm.RestorableVMState;
 
@@ -25,17 +26,68 @@ import gov.nasa.jpf.vm.RestorableVMState;
  * wrapper for states that are processed in an order that is
  * defined by a heuristic (i.e. not just depends on the shape
  * of the state graph)
+ *
+ * States can either store their RestorableVMState, or just their parent
+ * state and the choices that lead from there to this state (see
+ * search.heuristic.replay), in which case they have to be restored by
+ * replaying these choices
  */
 public abstract class HeuristicState {
   
   protected RestorableVMState vmState;
   protected int     stateId;
+
+  // only set if we don't store the vmState
+  protected HeuristicState parent;
+  protected int[] trail;
+
+  // number of ChoiceGenerators along the path to this state
+  protected int nChoiceGenerators;
     
   public HeuristicState (VM vm) {
+    this(vm, null);
+  }
+
+  /**
+   * if parent is null, this stores the RestorableVMState of the current state.
+   * Otherwise we only store the choices of the ChoiceGenerators that were
+   * processed since the parent state
+   */
+  public HeuristicState (VM vm, HeuristicState parent) {
     stateId = vm.getStateId();
-    vmState = vm.getRestorableState();
+
+    ChoiceGenerator<?> cg = vm.getChoiceGenerator();
+    nChoiceGenerators = (cg != null) ? cg.getNumberOfParents() + 1 : 0;
+
+    if (parent == null){
+      vmState = vm.getRestorableState();
+
+    } else {
+      // same encoding as TrailReplayer.getTrail(), but only for the new CGs
+      this.parent = parent;
+      trail = new int[nChoiceGenerators - parent.nChoiceGenerators];
+      for (int i=trail.length-1; i>=0; i--){
+        trail[i] = cg.getProcessedNumberOfChoices() - 1;
+        cg = cg.getPreviousChoiceGenerator();
+      }
+    }
   }
   
+  /**
+   * a replayed state that is re-created from its stored choices, e.g. if it
+   * was spilled to disk by a SpillingPriorityQueue
+   */
+  protected HeuristicState (int stateId, HeuristicState parent, int[] trail) {
+    this.stateId = stateId;
+    this.parent = parent;
+    this.trail = trail;
+
+    nChoiceGenerators = parent.nChoiceGenerators + trail.length;
+  }
+
+  /**
+   * @return null if this state has to be restored by replaying its trail
+   */
   public RestorableVMState getVMState () {
     return vmState;
   }
@@ -43,4 +95,12 @@ public abstract class HeuristicState {
   public int getStateId() {
     return stateId;
   }
+
+  public HeuristicState getParent() {
+    return parent;
+  }
+
+  public int[] getTrail() {
+    return trail;
+  }
 }
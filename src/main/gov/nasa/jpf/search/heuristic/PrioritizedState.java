@@ -34,6 +34,18 @@ public class PrioritizedState extends HeuristicState implements Comparable<Prior
     this.heuristicValue = heuristicValue;
   }
 
+  public PrioritizedState(VM vm, int heuristicValue, HeuristicState parent) {
+    super(vm, parent);
+
+    this.heuristicValue = heuristicValue;
+  }
+
+  PrioritizedState(int stateId, int heuristicValue, HeuristicState parent, int[] trail) {
+    super(stateId, parent, trail);
+
+    this.heuristicValue = heuristicValue;
+  }
+
   public int getPriority () {
     return heuristicValue;
   }
@@ -19,6 +19,7 @@
 package gov.nasa.jpf.search.heuristic;
 
 import gov.nasa.jpf.Config;
+import gov.nasa.jpf.JPFConfigException;
 import gov.nasa.jpf.util.Predicate;
 import gov.nasa.jpf.vm.ThreadInfo;
 import gov.nasa.jpf.vm.VM;
@@ -36,7 +37,14 @@ public abstract class SimplePriorityHeuristic extends HeuristicSearch {
   public SimplePriorityHeuristic (Config config, VM vm) {
     super(config,vm);
 
-    queue = new StaticPriorityQueue(config);
+    if (config.getBoolean("search.heuristic.spill")){
+      if (!useReplay){
+        throw new JPFConfigException("search.heuristic.spill requires search.heuristic.replay");
+      }
+      queue = new SpillingPriorityQueue(config);
+    } else {
+      queue = new StaticPriorityQueue(config);
+    }
     
     aliveThread = new Predicate<ThreadInfo>() {
       @Override
@@ -49,6 +57,10 @@ public abstract class SimplePriorityHeuristic extends HeuristicSearch {
 
   protected abstract int computeHeuristicValue ();
 
+  public StaticPriorityQueue getQueue() {
+    return queue;
+  }
+
   protected int computeAstarPathCost (VM vm) {
     return vm.getPathLength();
   }
@@ -71,7 +83,7 @@ public abstract class SimplePriorityHeuristic extends HeuristicSearch {
       }
     }
     
-    PrioritizedState hState = new PrioritizedState(vm,heuristicValue);
+    PrioritizedState hState = new PrioritizedState(vm,heuristicValue,getReplayParent());
     
     queue.add(hState);
     
@@ -0,0 +1,292 @@
+/*
+ * Copyright (C) 2014, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ * All rights reserved.
+ *
+ * The Java Pathfinder core (jpf-core) platform is licensed under the
+ * Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0. 
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+package gov.nasa.jpf.search.heuristic;
+
+import gov.nasa.jpf.Config;
+import gov.nasa.jpf.JPFException;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+
+/**
+ * a StaticPriorityQueue that only keeps the search.heuristic.spill.limit
+ * states with the highest priorities in memory, and writes the others to disk
+ * in sorted runs (i.e. an external memory priority queue). Retrieving the
+ * first state merges the heads of all runs with the in-memory states, hence
+ * the queue is not limited and we don't lose states.
+ *
+ * Since RestorableVMStates cannot be written to disk, this requires states
+ * that are restored by replay (search.heuristic.replay). A spilled state is
+ * stored as its priority, its id, and the choice trail from its nearest
+ * ancestor that has a RestorableVMState. These ancestors ("anchors") are kept
+ * in memory.
+ */
+@SuppressWarnings("serial")
+public class SpillingPriorityQueue extends StaticPriorityQueue {
+
+  /**
+   * a sorted run of spilled states, of which we only keep the head in memory
+   */
+  static class Run {
+    File file;
+    DataInputStream in;
+    int remaining;
+
+    // the head record
+    int heuristicValue;
+    int stateId;
+    int anchorId;
+    int[] trail;
+
+    Run (File file, int nStates) throws IOException {
+      this.file = file;
+      in = new DataInputStream( new BufferedInputStream( new FileInputStream(file)));
+      remaining = nStates;
+
+      next();
+    }
+
+    /**
+     * read the next head record
+     * @return false if the run is exhausted, in which case its file is removed
+     */
+    boolean next() throws IOException {
+      if (remaining == 0){
+        close();
+        return false;
+      }
+
+      heuristicValue = in.readInt();
+      stateId = in.readInt();
+      anchorId = in.readInt();
+      trail = new int[in.readInt()];
+      for (int i=0; i<trail.length; i++){
+        trail[i] = in.readInt();
+      }
+
+      remaining--;
+      return true;
+    }
+
+    void close() {
+      try {
+        in.close();
+      } catch (IOException iox){
+        // nothing we can do about it
+      }
+      file.delete();
+    }
+
+    // same order as PrioritizedState.compareTo()
+    int compareTo (int value, int id){
+      int diff = heuristicValue - value;
+      if (diff == 0) {
+        return (stateId - id);
+      } else {
+        return diff;
+      }
+    }
+  }
+
+  protected int memLimit;
+  protected File dir;
+
+  protected ArrayList<Run> runs = new ArrayList<Run>();
+  protected int nSpilled; // states that are currently on disk
+
+  protected ArrayList<HeuristicState> anchors = new ArrayList<HeuristicState>();
+  protected IdentityHashMap<HeuristicState,Integer> anchorIds = new IdentityHashMap<HeuristicState,Integer>();
+
+  //--- statistics
+  protected long nTotalSpilled;
+  protected int nRuns;
+
+  public SpillingPriorityQueue (Config config) {
+    super(config);
+
+    maxQueueSize = Integer.MAX_VALUE; // that's the whole point
+    memLimit = Math.max(2, config.getInt("search.heuristic.spill.limit", 100000));
+
+    String dirName = config.getString("search.heuristic.spill.dir", System.getProperty("java.io.tmpdir"));
+    dir = new File(dirName);
+  }
+
+  public long getNumberOfSpilledStates() {
+    return nTotalSpilled;
+  }
+
+  public int getNumberOfRuns() {
+    return nRuns;
+  }
+
+  @Override
+  public int size() {
+    return super.size() + nSpilled;
+  }
+
+  @Override
+  public boolean add (PrioritizedState s) {
+    boolean isAdded = super.add(s);
+
+    if (super.size() > memLimit){
+      spill();
+    }
+
+    return isAdded;
+  }
+
+  /**
+   * make sure the first state is in memory before we return it
+   */
+  @Override
+  public PrioritizedState first() {
+    Run runMin = null;
+    for (Run run : runs){
+      if (runMin == null || run.compareTo(runMin.heuristicValue, runMin.stateId) < 0){
+        runMin = run;
+      }
+    }
+
+    if (runMin != null){
+      if (super.isEmpty()){
+        load(runMin);
+      } else {
+        PrioritizedState s = super.first();
+        if (runMin.compareTo(s.heuristicValue, s.stateId) < 0){
+          load(runMin);
+        }
+      }
+    }
+
+    return super.first();
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return size() == 0;
+  }
+
+  @Override
+  public void clear() {
+    super.clear();
+
+    for (Run run : runs){
+      run.close();
+    }
+    runs.clear();
+    nSpilled = 0;
+  }
+
+  /**
+   * write the lower priority half of the in-memory states into a new run
+   */
+  protected void spill() {
+    int n = super.size() - memLimit/2;
+    PrioritizedState[] states = new PrioritizedState[n];
+    for (int i=n-1; i>=0; i--){
+      states[i] = pollLast();
+    }
+
+    try {
+      File file = File.createTempFile("jpf-queue", ".run", dir);
+      file.deleteOnExit();
+
+      DataOutputStream out = new DataOutputStream( new BufferedOutputStream( new FileOutputStream(file)));
+      try {
+        for (PrioritizedState s : states){
+          write(out, s);
+        }
+      } finally {
+        out.close();
+      }
+
+      runs.add( new Run(file, n));
+
+    } catch (IOException iox){
+      throw new JPFException("cannot spill heuristic search queue to " + dir + " : " + iox);
+    }
+
+    nSpilled += n;
+    nTotalSpilled += n;
+    nRuns++;
+  }
+
+  protected void write (DataOutputStream out, PrioritizedState s) throws IOException {
+    HeuristicState anchor = s;
+    int len = 0;
+    while (anchor.getVMState() == null){
+      len += anchor.getTrail().length;
+      anchor = anchor.getParent();
+    }
+
+    int[] trail = new int[len];
+    for (HeuristicState hs = s; hs != anchor; hs = hs.getParent()){
+      int[] t = hs.getTrail();
+      len -= t.length;
+      System.arraycopy(t, 0, trail, len, t.length);
+    }
+
+    Integer anchorId = anchorIds.get(anchor);
+    if (anchorId == null){
+      anchorId = anchors.size();
+      anchors.add(anchor);
+      anchorIds.put(anchor, anchorId);
+    }
+
+    out.writeInt(s.heuristicValue);
+    out.writeInt(s.stateId);
+    out.writeInt(anchorId);
+    out.writeInt(trail.length);
+    for (int i=0; i<trail.length; i++){
+      out.writeInt(trail[i]);
+    }
+  }
+
+  /**
+   * move the head of a run into memory
+   */
+  protected void load (Run run) {
+    HeuristicState anchor = anchors.get(run.anchorId);
+    PrioritizedState s;
+
+    if (run.trail.length == 0){ // the anchor itself was spilled
+      s = (PrioritizedState)anchor;
+    } else {
+      s = new PrioritizedState(run.stateId, run.heuristicValue, anchor, run.trail);
+    }
+
+    super.add(s);
+    nSpilled--;
+
+    try {
+      if (!run.next()){
+        runs.remove(run);
+      }
+    } catch (IOException iox){
+      throw new JPFException("cannot read spilled heuristic search queue: " + iox);
+    }
+  }
+}
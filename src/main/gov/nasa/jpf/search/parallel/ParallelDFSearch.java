@@ -0,0 +1,330 @@
+/*
+ * Copyright (C) 2014, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ * All rights reserved.
+ *
+ * The Java Pathfinder core (jpf-core) platform is licensed under the
+ * Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package gov.nasa.jpf.search.parallel;
+
+import gov.nasa.jpf.Config;
+import gov.nasa.jpf.JPFConfigException;
+import gov.nasa.jpf.JPFException;
+import gov.nasa.jpf.report.Statistics;
+import gov.nasa.jpf.search.Search;
+import gov.nasa.jpf.search.TrailReplayer;
+import gov.nasa.jpf.util.ConcurrentFingerprintTable;
+import gov.nasa.jpf.util.FingerprintTable;
+import gov.nasa.jpf.util.NameIdMap;
+import gov.nasa.jpf.vm.ChoiceGeneratorBase;
+import gov.nasa.jpf.vm.RestorableVMState;
+import gov.nasa.jpf.vm.VM;
+
+import java.io.File;
+import java.lang.reflect.InvocationTargetException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+/**
+ * a depth first search that explores the state space with a number of
+ * concurrent workers (search.parallel.workers, default is the number of
+ * available processors), which share a single FingerprintTable for state
+ * matching.
+ *
+ * Since JPF keeps a lot of state in static fields, each worker runs its own
+ * JPF instance (with a WorkerDFSearch) inside of a separate WorkerClassLoader.
+ * The workers exchange work through a WorkPool, in form of choice trails
+ * that lead from the initial state to the roots of unexplored sub-trees.
+ *
+ * This search does not execute the SUT itself, it only starts the workers,
+ * waits for them to terminate, and then replays the choice trails of the
+ * property violations they found in order to report them the same way as
+ * a DFSearch would. Since the states of different JPF instances are compared,
+ * the workers use load order independent class and method ids for state
+ * serialization (vm.serializer.stable_ids).
+ *
+ * Note that the order in which states are explored is not deterministic, i.e.
+ * which property violation is found first can differ between runs. Each
+ * worker has the overhead of its own JPF instance, trail replay and the shared
+ * table, i.e. this only pays off with several processors. On a single
+ * processor, a 38k states search took 1.4x (one worker) to 2x (four workers)
+ * the time of a DFSearch
+ */
+public class ParallelDFSearch extends Search {
+
+  // the types that are loaded by the common parent loader of all workers
+  static final String[] SHARED_CLASSES = {
+    WorkPool.class.getName(),
+    FingerprintTable.class.getName(),
+    NameIdMap.class.getName()
+  };
+
+  protected int nWorkers;
+  protected FingerprintTable fingerprints;
+  protected TrailReplayer replayer;
+
+  public ParallelDFSearch (Config config, VM vm) {
+    super(config,vm);
+
+    if (matchDepth){
+      throw new JPFConfigException("ParallelDFSearch does not support search.match_depth");
+    }
+    if (ChoiceGeneratorBase.useRandomization()){
+      throw new JPFConfigException("ParallelDFSearch does not support cg.randomize_choices");
+    }
+    if (config.getBoolean("vm.sleep_sets", false)){
+      // the sleep sets of visited states are not shared between the workers
+      throw new JPFConfigException("ParallelDFSearch does not support vm.sleep_sets");
+    }
+
+    nWorkers = config.getInt("search.parallel.workers", Runtime.getRuntime().availableProcessors());
+    if (nWorkers < 1){
+      nWorkers = 1;
+    }
+
+    fingerprints = config.getInstance("search.parallel.table.class", FingerprintTable.class,
+                                      ConcurrentFingerprintTable.class.getName());
+
+    // has to see the CGs before anybody else
+    replayer = new TrailReplayer();
+    vm.addListener(replayer);
+  }
+
+  @Override
+  public boolean requestBacktrack () {
+    return false; // we don't backtrack ourselves
+  }
+
+  @Override
+  public void search () {
+    RestorableVMState initState = vm.getRestorableState();
+
+    notifySearchStarted();
+
+    WorkPool pool = WorkPool.createPool(nWorkers, fingerprints);
+    try {
+      pool.put(new int[0]); // the initial state
+      runWorkers(pool);
+
+      Throwable failure = pool.getFailure();
+      if (failure != null){
+        throw new JPFException("parallel search worker failed: " + failure, failure);
+      }
+
+      String constraint = pool.getSearchConstraint();
+      if (constraint != null){
+        notifySearchConstraintHit(constraint);
+      }
+
+      for (int[] trail : pool.getErrorTrails()){
+        replayError(initState, trail);
+        if (done){
+          break;
+        }
+      }
+
+      if (reporter != null){
+        Statistics stat = reporter.getStatistics();
+        if (stat != null){
+          setStatisticsData(stat, pool.getStatistics());
+        }
+      }
+
+    } finally {
+      WorkPool.removePool(pool);
+    }
+
+    notifySearchFinished();
+  }
+
+  /**
+   * restore the initial state and re-execute the path of a property violation
+   * that was found by one of the workers, so that our listeners and publishers
+   * see it as if we would have found it ourselves
+   */
+  protected void replayError (RestorableVMState initState, int[] trail){
+    vm.restoreState(initState);
+
+    currentError = null;
+    replayer.start(trail);
+
+    while (replayer.isReplaying()){
+      if (!vm.forward()){
+        log.warning("failed to replay error trail");
+        return;
+      }
+    }
+
+    depth = vm.getPathLength();
+    checkPropertyViolation();
+
+    if (currentError != null){
+      notifyPropertyViolated();
+      hasPropertyTermination();
+    } else {
+      log.warning("replayed error trail did not reproduce property violation");
+    }
+  }
+
+  //--- worker management
+
+  protected void runWorkers (final WorkPool pool){
+    final URL[] cp = getWorkerClassPath();
+    final String[] args = getWorkerArgs(pool);
+    final String[] sharedClasses = getSharedClasses();
+
+    Thread[] workers = new Thread[nWorkers];
+    for (int i=0; i<nWorkers; i++){
+      workers[i] = new Thread( new Runnable(){
+        @Override
+        public void run(){
+          runWorker(pool, cp, sharedClasses, args);
+        }
+      }, "jpf-worker-" + i);
+      workers[i].start();
+    }
+
+    for (Thread t : workers){
+      try {
+        t.join();
+      } catch (InterruptedException ix){
+        pool.terminate();
+      }
+    }
+  }
+
+  /**
+   * this executes within a worker thread. All JPF objects have to be created
+   * reflectively through the WorkerClassLoader since we can't use our own
+   * (statically linked) JPF types
+   */
+  protected static void runWorker (WorkPool pool, URL[] cp, String[] sharedClasses, String[] args){
+    ClassLoader cl = new WorkerClassLoader(cp, sharedClasses, WorkPool.class.getClassLoader());
+    Thread.currentThread().setContextClassLoader(cl);
+
+    try {
+      Class<?> configCls = cl.loadClass(Config.class.getName());
+      Object conf = configCls.getConstructor(String[].class).newInstance((Object)args);
+
+      Class<?> jpfCls = cl.loadClass(gov.nasa.jpf.JPF.class.getName());
+      Runnable jpf = (Runnable)jpfCls.getConstructor(configCls).newInstance(conf);
+      jpf.run();
+
+    } catch (InvocationTargetException itx){
+      pool.setFailure(itx.getCause());
+    } catch (Throwable t){
+      pool.setFailure(t);
+    }
+  }
+
+  protected String[] getSharedClasses (){
+    String[] a = new String[SHARED_CLASSES.length + 1];
+    System.arraycopy(SHARED_CLASSES, 0, a, 0, SHARED_CLASSES.length);
+    a[SHARED_CLASSES.length] = fingerprints.getClass().getName();
+    return a;
+  }
+
+  /**
+   * the workers get our own configuration, with the search and state
+   * storage replaced
+   */
+  protected String[] getWorkerArgs (WorkPool pool){
+    ArrayList<String> args = new ArrayList<String>();
+
+    for (String key : config.getEntrySequence()){
+      String val = config.getString(key);
+      if (val != null){
+        args.add("+" + key + '=' + val);
+      }
+    }
+
+    args.add("+search.class=" + WorkerDFSearch.class.getName());
+    args.add("+search.parallel.pool=" + pool.getId());
+    if (vm.getStateSet() != null){
+      args.add("+vm.storage.class=" + SharedStateSet.class.getName());
+    }
+    args.add("+vm.serializer.stable_ids=true");
+    args.add("+report.statistics=true");
+    args.add("+report.probe_interval=0");
+
+    String[] freeArgs = config.getFreeArgs();
+    if (freeArgs != null){
+      for (String a : freeArgs){
+        args.add(a);
+      }
+    }
+
+    return args.toArray(new String[args.size()]);
+  }
+
+  protected URL[] getWorkerClassPath (){
+    LinkedHashSet<URL> urls = new LinkedHashSet<URL>();
+
+    addClassLoaderURLs(urls, ParallelDFSearch.class.getClassLoader());
+    addClassLoaderURLs(urls, config.getClassLoader());
+
+    // in case the system class loader is not a URLClassLoader
+    for (String path : System.getProperty("java.class.path").split(File.pathSeparator)){
+      if (path.length() > 0){
+        try {
+          urls.add(new File(path).toURI().toURL());
+        } catch (MalformedURLException mfux){
+          log.warning("illegal classpath element: " + path);
+        }
+      }
+    }
+
+    return urls.toArray(new URL[urls.size()]);
+  }
+
+  static void addClassLoaderURLs (LinkedHashSet<URL> urls, ClassLoader cl){
+    List<ClassLoader> chain = new ArrayList<ClassLoader>();
+    for (; cl != null; cl = cl.getParent()){
+      chain.add(0, cl); // parents first
+    }
+
+    for (ClassLoader l : chain){
+      if (l instanceof URLClassLoader){
+        for (URL url : ((URLClassLoader)l).getURLs()){
+          urls.add(url);
+        }
+      }
+    }
+  }
+
+  //--- statistics exchange (the workers have their own Statistics classes)
+
+  static void setStatisticsData (Statistics stat, List<long[]> workerData){
+    Statistics sum = new Statistics();
+    Statistics worker = new Statistics();
+
+    for (long[] d : workerData){
+      worker.setData(d);
+      sum.add(worker);
+    }
+
+    synchronized (stat){
+      sum.maxUsed = Math.max(stat.maxUsed, sum.maxUsed);
+      stat.setData(sum.getData());
+    }
+  }
+
+  @Override
+  public boolean supportsBacktrack () {
+    return false;
+  }
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright (C) 2014, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ * All rights reserved.
+ *
+ * The Java Pathfinder core (jpf-core) platform is licensed under the
+ * Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0. 
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+package gov.nasa.jpf.search.parallel;
+
+import gov.nasa.jpf.Config;
+import gov.nasa.jpf.JPFConfigException;
+import gov.nasa.jpf.util.FingerprintTable;
+import gov.nasa.jpf.vm.ConcurrentJenkinsStateSet;
+
+/**
+ * a ConcurrentJenkinsStateSet that uses the FingerprintTable of a WorkPool,
+ * i.e. states are matched across all workers of a ParallelDFSearch
+ */
+public class SharedStateSet extends ConcurrentJenkinsStateSet {
+
+  public SharedStateSet (Config conf){
+    super( getPoolFingerprintTable(conf));
+  }
+
+  static FingerprintTable getPoolFingerprintTable (Config conf){
+    WorkPool pool = WorkPool.getPool(conf.getString("search.parallel.pool"));
+    if (pool == null){
+      throw new JPFConfigException("SharedStateSet can only be used by ParallelDFSearch workers");
+    }
+
+    return pool.getFingerprintTable();
+  }
+}
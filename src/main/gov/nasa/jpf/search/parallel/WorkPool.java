@@ -0,0 +1,197 @@
+/*
+ * Copyright (C) 2014, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ * All rights reserved.
+ *
+ * The Java Pathfinder core (jpf-core) platform is licensed under the
+ * Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0. 
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+package gov.nasa.jpf.search.parallel;
+
+import gov.nasa.jpf.util.FingerprintTable;
+import gov.nasa.jpf.util.NameIdMap;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * the shared part of a ParallelDFSearch. WorkPools are exchanged between
+ * the coordinating search and its workers, each of which runs a separate
+ * JPF instance inside of its own WorkerClassLoader. This class is loaded
+ * by the common parent loader and hence MUST NOT refer to any JPF types
+ * that are not shared (basically everything except of FingerprintTables
+ * and NameIdMaps).
+ *
+ * Work items are choice trails, i.e. int[] arrays that hold the choice index
+ * for each ChoiceGenerator along a path from the initial state. Workers
+ * donate trails of unexplored sibling choices when other workers are idle
+ * (see isHungry()), and the search is done once all workers are waiting
+ * for work, or once a worker requests termination (e.g. because of a
+ * property violation)
+ */
+public class WorkPool {
+
+  static final ConcurrentHashMap<String,WorkPool> pools = new ConcurrentHashMap<String,WorkPool>();
+  static final AtomicInteger nextPoolId = new AtomicInteger();
+
+  final String id;
+  final int nWorkers;
+  final FingerprintTable fingerprints;
+  final NameIdMap stableIds = new NameIdMap(); // class and method ids of serialized states
+
+  final ArrayDeque<int[]> items = new ArrayDeque<int[]>();
+  volatile int nIdle;
+  volatile boolean isTerminated;
+
+  final List<int[]> errorTrails = new ArrayList<int[]>();
+  final List<long[]> statistics = new ArrayList<long[]>();
+  String searchConstraint;
+  Throwable failure;
+
+  public static WorkPool createPool (int nWorkers, FingerprintTable fingerprints){
+    String id = "pool-" + nextPoolId.getAndIncrement();
+    WorkPool pool = new WorkPool(id, nWorkers, fingerprints);
+    pools.put(id, pool);
+    return pool;
+  }
+
+  public static WorkPool getPool (String id){
+    return (id != null) ? pools.get(id) : null;
+  }
+
+  public static void removePool (WorkPool pool){
+    pools.remove(pool.id);
+  }
+
+  protected WorkPool (String id, int nWorkers, FingerprintTable fingerprints){
+    this.id = id;
+    this.nWorkers = nWorkers;
+    this.fingerprints = fingerprints;
+  }
+
+  public String getId(){
+    return id;
+  }
+
+  public int getNumberOfWorkers(){
+    return nWorkers;
+  }
+
+  public FingerprintTable getFingerprintTable(){
+    return fingerprints;
+  }
+
+  public NameIdMap getStableIds(){
+    return stableIds;
+  }
+
+  //--- work distribution
+
+  public synchronized void put (int[] trail){
+    items.add(trail);
+    notify();
+  }
+
+  /**
+   * get the next work item, blocking until there is one. Answers null if
+   * the search is terminated, which also happens if there are no pending
+   * items and all workers are waiting
+   */
+  public synchronized int[] take (){
+    while (!isTerminated){
+      int[] trail = items.poll();
+      if (trail != null){
+        return trail;
+      }
+
+      if (nIdle == nWorkers-1){ // everybody else is waiting, nobody can produce new items
+        terminate();
+        return null;
+      }
+
+      nIdle++;
+      try {
+        wait();
+      } catch (InterruptedException ix){
+        terminate();
+      }
+      nIdle--;
+    }
+
+    return null;
+  }
+
+  /**
+   * cheap check if other workers are waiting for items. This is not
+   * synchronized since it is called on every new state
+   */
+  public boolean isHungry (){
+    return nIdle > 0 && !isTerminated;
+  }
+
+  public synchronized void terminate (){
+    isTerminated = true;
+    notifyAll();
+  }
+
+  public boolean isTerminated(){
+    return isTerminated;
+  }
+
+  //--- results
+
+  public synchronized void addErrorTrail (int[] trail){
+    for (int[] t : errorTrails){
+      if (Arrays.equals(t, trail)){
+        return;
+      }
+    }
+    errorTrails.add(trail);
+  }
+
+  public synchronized List<int[]> getErrorTrails(){
+    return new ArrayList<int[]>(errorTrails);
+  }
+
+  public synchronized void addStatistics (long[] data){
+    statistics.add(data);
+  }
+
+  public synchronized List<long[]> getStatistics(){
+    return new ArrayList<long[]>(statistics);
+  }
+
+  public synchronized void setSearchConstraint (String details){
+    if (searchConstraint == null){
+      searchConstraint = details;
+    }
+  }
+
+  public synchronized String getSearchConstraint(){
+    return searchConstraint;
+  }
+
+  public synchronized void setFailure (Throwable t){
+    if (failure == null){
+      failure = t;
+    }
+    terminate();
+  }
+
+  public synchronized Throwable getFailure(){
+    return failure;
+  }
+}
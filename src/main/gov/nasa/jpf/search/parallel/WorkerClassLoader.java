@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2014, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ * All rights reserved.
+ *
+ * The Java Pathfinder core (jpf-core) platform is licensed under the
+ * Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0. 
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+package gov.nasa.jpf.search.parallel;
+
+import java.net.URL;
+import java.net.URLClassLoader;
+
+/**
+ * a child-first classloader that gives each ParallelDFSearch worker its own
+ * copy of JPF (JPF keeps a lot of its state in static fields, hence we cannot
+ * run several JPF instances concurrently within the same classloader).
+ *
+ * The only classes that are delegated to the parent are the system classes
+ * and the shared types that are used to exchange data between workers and
+ * the coordinating search. Note that we have to check for system classes
+ * before we look into our own URLs since the classpath might contain JPF
+ * model classes (e.g. sun.misc.SharedSecrets)
+ */
+public class WorkerClassLoader extends URLClassLoader {
+
+  protected String[] sharedClasses;
+  protected ClassLoader systemLoader; // the parent of the application class loader
+
+  public WorkerClassLoader (URL[] urls, String[] sharedClasses, ClassLoader parent){
+    super(urls, parent);
+
+    this.sharedClasses = sharedClasses;
+    systemLoader = ClassLoader.getSystemClassLoader().getParent();
+  }
+
+  protected boolean isShared (String clsName){
+    for (String s : sharedClasses){
+      if (clsName.startsWith(s)){
+        int len = s.length();
+        if (clsName.length() == len || clsName.charAt(len) == '$'){
+          return true;
+        }
+      }
+    }
+
+    return false;
+  }
+
+  @Override
+  protected synchronized Class<?> loadClass (String clsName, boolean resolve) throws ClassNotFoundException {
+    if (isShared(clsName)){
+      return super.loadClass(clsName, resolve);
+    }
+
+    Class<?> cls = findLoadedClass(clsName);
+    if (cls == null){
+      try {
+        cls = systemLoader.loadClass(clsName);
+      } catch (ClassNotFoundException cnfx){
+        try {
+          cls = findClass(clsName);
+        } catch (ClassNotFoundException cnfx1){
+          return super.loadClass(clsName, resolve); // not ours, try the parent
+        }
+      }
+    }
+
+    if (resolve){
+      resolveClass(cls);
+    }
+    return cls;
+  }
+}
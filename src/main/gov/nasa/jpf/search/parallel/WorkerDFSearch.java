@@ -0,0 +1,248 @@
+/*
+ * Copyright (C) 2014, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ * All rights reserved.
+ *
+ * The Java Pathfinder core (jpf-core) platform is licensed under the
+ * Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package gov.nasa.jpf.search.parallel;
+
+import gov.nasa.jpf.Config;
+import gov.nasa.jpf.JPFConfigException;
+import gov.nasa.jpf.JPFException;
+import gov.nasa.jpf.search.Search;
+import gov.nasa.jpf.search.TrailReplayer;
+import gov.nasa.jpf.vm.ChoiceGenerator;
+import gov.nasa.jpf.vm.RestorableVMState;
+import gov.nasa.jpf.vm.StateSerializer;
+import gov.nasa.jpf.vm.VM;
+import gov.nasa.jpf.vm.serialize.FilteringSerializer;
+
+import java.util.Arrays;
+
+/**
+ * the search that is executed by each ParallelDFSearch worker. This is a
+ * DFSearch that gets the roots of the sub-trees it has to explore as choice
+ * trails from a shared WorkPool, and donates unexplored choices of its
+ * current path if other workers are waiting for work.
+ *
+ * Workers don't report anything themselves, they just store error trails,
+ * search constraints and statistics in the WorkPool, from where the
+ * coordinating ParallelDFSearch picks them up
+ */
+public class WorkerDFSearch extends Search {
+
+  protected WorkPool pool;
+  protected TrailReplayer replayer;
+
+  protected RestorableVMState initState;
+  protected int baseDepth;
+  protected boolean depthLimitReached;
+
+  public WorkerDFSearch (Config config, VM vm) {
+    super(config,vm);
+
+    pool = WorkPool.getPool(config.getString("search.parallel.pool"));
+    if (pool == null){
+      throw new JPFConfigException("WorkerDFSearch can only be used by ParallelDFSearch");
+    }
+
+    // states are matched between workers, so we need the same class and method ids
+    StateSerializer serializer = vm.getSerializer();
+    if (serializer instanceof FilteringSerializer){
+      ((FilteringSerializer)serializer).setStableIds(pool.getStableIds());
+    }
+
+    // has to see the CGs before anybody else
+    replayer = new TrailReplayer();
+    vm.addListener(replayer);
+  }
+
+  @Override
+  public boolean requestBacktrack () {
+    doBacktrack = true;
+
+    return true;
+  }
+
+  @Override
+  public void search () {
+    if (reporter != null){
+      reporter.getPublishers().clear(); // the coordinator reports
+      reporter.getRegisteredStatistics();
+    }
+
+    initState = vm.getRestorableState();
+    notifySearchStarted();
+
+    try {
+      int[] trail;
+      while (!done && (trail = pool.take()) != null){
+        searchSubtree(trail);
+      }
+    } finally {
+      if (done){ // property violation or memory limit, stop the others
+        pool.terminate();
+      }
+    }
+
+    if (reporter != null){
+      pool.addStatistics( reporter.getStatistics().getData());
+    }
+
+    notifySearchFinished();
+  }
+
+  /**
+   * this is basically DFSearch.search(), except of that we start from the state
+   * that is reached by replaying the trail, and we don't backtrack beyond it
+   */
+  protected void searchSubtree (int[] trail){
+    boolean isInitialState = (trail.length == 0);
+
+    vm.restoreState(initState);
+    depth = 0;
+    doBacktrack = false;
+    depthLimitReached = false;
+
+    if (!isInitialState){
+      replay(trail);
+
+      if (!processAdvancedState()){
+        return;
+      }
+    }
+
+    baseDepth = depth;
+
+    while (!done && !pool.isTerminated()) {
+      if (!isInitialState &&
+          (checkAndResetBacktrackRequest() || !isNewState() || isEndState() || isIgnoredState() || depthLimitReached)) {
+        if (depth == baseDepth || !backtrack()) { // sub-tree done
+          break;
+        }
+
+        depthLimitReached = false;
+        depth--;
+        notifyStateBacktracked();
+      }
+      isInitialState = false;
+
+      if (forward()) {
+        depth++;
+
+        if (!processAdvancedState()){
+          break;
+        }
+
+      } else { // forward did not execute any instructions
+        notifyStateProcessed();
+      }
+    }
+  }
+
+  /**
+   * move from the initial state to the end of the trail. Intermediate states
+   * have already been checked by the worker that donated the trail
+   */
+  protected void replay (int[] trail){
+    currentError = null;
+    replayer.start(trail);
+
+    while (replayer.isReplaying()){
+      if (!vm.forward()){
+        throw new JPFException("failed to replay choice trail: " + Arrays.toString(trail));
+      }
+    }
+
+    depth = vm.getPathLength();
+    checkPropertyViolation();
+  }
+
+  /**
+   * the part of DFSearch.search() that follows a successful forward
+   *
+   * @return false if the search has to stop
+   */
+  protected boolean processAdvancedState (){
+    notifyStateAdvanced();
+
+    if (currentError != null){
+      pool.addErrorTrail( TrailReplayer.getTrail(vm));
+      notifyPropertyViolated();
+
+      if (hasPropertyTermination()) {
+        return false;
+      }
+    }
+
+    if (depth >= depthLimit) {
+      depthLimitReached = true;
+      notifySearchConstraintHit("depth limit reached: " + depthLimit);
+      pool.setSearchConstraint(lastSearchConstraint);
+      return true;
+    }
+
+    if (!checkStateSpaceLimit()) {
+      notifySearchConstraintHit("memory limit reached: " + minFreeMemory);
+      pool.setSearchConstraint(lastSearchConstraint);
+      done = true;
+      return false;
+    }
+
+    if (pool.isHungry() && isNewState() && !isEndState()){
+      donateWork();
+    }
+
+    return true;
+  }
+
+  /**
+   * hand out the remaining choices of the topmost ChoiceGenerator of our
+   * current path that still has some, and mark it as done so that we don't
+   * explore them ourselves. We don't split cascaded CGs since they are
+   * all advanced within the same transition
+   */
+  protected void donateWork (){
+    ChoiceGenerator<?>[] cgs = vm.getSystemState().getChoiceGenerators();
+    if (cgs == null){
+      return;
+    }
+
+    for (int i=0; i<cgs.length; i++){
+      ChoiceGenerator<?> cg = cgs[i];
+
+      if (cg.hasMoreChoices() && !cg.isCascaded() && cg.getCascadedParent() == null){
+        int[] trail = new int[i+1];
+        for (int j=0; j<i; j++){
+          trail[j] = cgs[j].getProcessedNumberOfChoices() - 1;
+        }
+
+        int n = cg.getTotalNumberOfChoices();
+        for (int k = cg.getProcessedNumberOfChoices(); k < n; k++){
+          int[] item = trail.clone();
+          item[i] = k;
+          pool.put(item);
+        }
+
+        cg.setDone();
+        return;
+      }
+    }
+  }
+
+  @Override
+  public boolean supportsBacktrack () {
+    return true;
+  }
+}
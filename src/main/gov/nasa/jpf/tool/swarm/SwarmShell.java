@@ -0,0 +1,717 @@
+/*
+ * Copyright (C) 2014, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ * All rights reserved.
+ *
+ * The Java Pathfinder core (jpf-core) platform is licensed under the
+ * Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0. 
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+package gov.nasa.jpf.tool.swarm;
+
+import gov.nasa.jpf.Config;
+import gov.nasa.jpf.JPF;
+import gov.nasa.jpf.JPFConfigException;
+import gov.nasa.jpf.JPFException;
+import gov.nasa.jpf.JPFShell;
+import gov.nasa.jpf.report.Statistics;
+import gov.nasa.jpf.util.JPFLogger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+/**
+ * a JPFShell that performs swarm verification, i.e. it runs a number of
+ * independent JPF processes that are configured differently (search class,
+ * randomization seed) and aggregates their results. This is useful for
+ * state spaces that are too large to be searched exhaustively, where a set
+ * of diversified, partial searches covers more behavior than a single one.
+ *
+ * Each worker runs a SwarmWorker, which reports to this coordinator through a
+ * socket. Errors with identical choice sequences (e.g. found by workers with
+ * the same search but different seeds) are only reported once. If
+ * swarm.stop_on_error is set, all workers are stopped once the first error
+ * has been reported.
+ *
+ * Search heuristics are search classes in JPF (e.g. .search.heuristic.MostBlocked),
+ * i.e. they are varied between workers through swarm.searches.
+ *
+ * The worker JPFs use their own Reporter/Publishers, i.e. their detailed
+ * output (e.g. error traces) is in the worker logs within swarm.log_dir. If
+ * there is no swarm.log_dir, logs are written to temporary files that are
+ * deleted once their worker has completed.
+ *
+ * The coordinator socket is only bound to the loopback interface, unless
+ * there are remote workers.
+ *
+ * Configured with
+ * <pre>
+ *   shell = gov.nasa.jpf.tool.swarm.SwarmShell
+ *   swarm.workers = 4                      # number of local worker processes
+ *   swarm.searches = .search.DFSearch,..   # search classes, cycled through workers
+ *   swarm.randomize = true                 # use cg.randomize_choices with seed swarm.seed + workerId
+ *   swarm.seed = 42
+ *   swarm.stop_on_error = true
+ *   swarm.coverage = false                 # collect executed instructions
+ *   swarm.vm_args = -Xmx1g                 # worker JVM options
+ *   swarm.log_dir = ..                     # directory for worker output (default is temp files)
+ *   swarm.port = 0                         # coordinator port, 0 means any free port
+ *   swarm.remote_workers = 0               # number of additional, manually started workers
+ * </pre>
+ */
+public class SwarmShell implements JPFShell {
+
+  static JPFLogger log = JPF.getLogger("gov.nasa.jpf.tool.swarm");
+
+  static final String SWARM_BANNER = "====================================================== ";
+
+  /**
+   * what we know about each worker
+   */
+  public static class WorkerResult {
+    int id;
+    String variant;
+    Process process;
+    File logFile;
+    boolean isTempLog;
+
+    boolean connected;
+    boolean finished;
+    boolean completed; // received DONE
+    boolean stopped;
+    int exitCode = -1;
+
+    long[] statistics;
+    int nErrors;
+
+    DataOutputStream out;
+
+    WorkerResult (int id, String variant){
+      this.id = id;
+      this.variant = variant;
+    }
+
+    public int getId(){
+      return id;
+    }
+
+    public String getVariant(){
+      return variant;
+    }
+
+    public boolean isCompleted(){
+      return completed;
+    }
+
+    public boolean isStopped(){
+      return stopped;
+    }
+
+    public long[] getStatistics(){
+      return statistics;
+    }
+
+    public int getNumberOfErrors(){
+      return nErrors;
+    }
+  }
+
+  /**
+   * an error that was found by one or more workers
+   */
+  public static class SwarmError {
+    long key;
+    String description;
+    String details;
+    int depth;
+    List<Integer> workers = new ArrayList<Integer>();
+
+    SwarmError (long key, String description, String details, int depth){
+      this.key = key;
+      this.description = description;
+      this.details = details;
+      this.depth = depth;
+    }
+
+    public String getDescription(){
+      return description;
+    }
+
+    public String getDetails(){
+      return details;
+    }
+
+    public List<Integer> getWorkers(){
+      return workers;
+    }
+  }
+
+  protected Config config;
+
+  protected int nLocalWorkers;
+  protected int nRemoteWorkers;
+  protected String[] searches;
+  protected boolean randomize;
+  protected long seed;
+  protected boolean stopOnError;
+  protected boolean collectCoverage;
+  protected String[] vmArgs;
+  protected File logDir;
+  protected int port;
+
+  protected ServerSocket serverSocket;
+  protected HashMap<Integer,WorkerResult> workers = new HashMap<Integer,WorkerResult>();
+  protected int nFinished;
+  protected boolean stopRequested;
+
+  protected LinkedHashMap<Long,SwarmError> errors = new LinkedHashMap<Long,SwarmError>();
+  protected HashMap<String,BitSet> coverage = new HashMap<String,BitSet>();
+
+  public SwarmShell (Config config){
+    this.config = config;
+
+    nLocalWorkers = config.getInt("swarm.workers", Runtime.getRuntime().availableProcessors());
+    nRemoteWorkers = config.getInt("swarm.remote_workers", 0);
+    if (nLocalWorkers + nRemoteWorkers < 1){
+      throw new JPFConfigException("no swarm workers configured");
+    }
+
+    searches = config.getStringArray("swarm.searches", new String[] { "gov.nasa.jpf.search.DFSearch" });
+    randomize = config.getBoolean("swarm.randomize", true);
+    seed = config.getLong("swarm.seed", 42);
+    stopOnError = config.getBoolean("swarm.stop_on_error", true);
+    collectCoverage = config.getBoolean("swarm.coverage", false);
+    vmArgs = config.getStringArray("swarm.vm_args", new String[0]);
+    port = config.getInt("swarm.port", 0);
+
+    String dir = config.getString("swarm.log_dir");
+    if (dir != null){
+      logDir = new File(dir);
+      if (!logDir.isDirectory() && !logDir.mkdirs()){
+        throw new JPFConfigException("cannot create swarm.log_dir: " + dir);
+      }
+    }
+  }
+
+  @Override
+  public void start (String[] args){
+    try {
+      // remote workers need to reach us from other hosts
+      InetAddress bindAddr = (nRemoteWorkers > 0) ? null : InetAddress.getLoopbackAddress();
+      serverSocket = new ServerSocket(port, 50, bindAddr);
+      port = serverSocket.getLocalPort();
+
+      startAcceptor();
+
+      for (int i=0; i<nRemoteWorkers; i++){
+        addWorker(nLocalWorkers + i, getVariant(nLocalWorkers + i));
+      }
+      if (nRemoteWorkers > 0){
+        log.info("waiting for ", Integer.toString(nRemoteWorkers), " remote workers on port ", Integer.toString(port));
+      }
+
+      for (int i=0; i<nLocalWorkers; i++){
+        launchWorker(i);
+      }
+
+      waitForWorkers();
+
+    } catch (IOException iox){
+      throw new JPFException("swarm coordinator failed: " + iox);
+
+    } finally {
+      shutdown();
+    }
+
+    deleteTempLogs();
+    printResults( new PrintWriter(System.out, true));
+  }
+
+  //--- worker configuration
+
+  protected String getSearchClass (int workerId){
+    return searches[workerId % searches.length];
+  }
+
+  protected long getSeed (int workerId){
+    return seed + workerId;
+  }
+
+  protected String getVariant (int workerId){
+    String s = getSearchClass(workerId);
+    if (randomize){
+      s += ", seed " + getSeed(workerId);
+    }
+    return s;
+  }
+
+  /**
+   * the worker gets our own config, plus its variant and coordinator settings
+   */
+  protected List<String> getWorkerArgs (int workerId){
+    ArrayList<String> args = new ArrayList<String>();
+
+    for (String key : config.getEntrySequence()){
+      if (!key.equals("shell")){
+        String val = config.getString(key);
+        if (val != null){
+          args.add("+" + key + '=' + val);
+        }
+      }
+    }
+
+    args.add("+search.class=" + getSearchClass(workerId));
+    if (randomize){
+      args.add("+cg.randomize_choices=FIXED_SEED");
+      args.add("+cg.seed=" + getSeed(workerId));
+    }
+    args.add("+swarm.worker.id=" + workerId);
+    args.add("+swarm.variant=" + getVariant(workerId));
+    args.add("+swarm.host=" + InetAddress.getLoopbackAddress().getHostAddress());
+    args.add("+swarm.port=" + port);
+    args.add("+report.statistics=true");
+
+    String[] freeArgs = config.getFreeArgs();
+    if (freeArgs != null){
+      for (String a : freeArgs){
+        args.add(a);
+      }
+    }
+
+    return args;
+  }
+
+  protected String getWorkerClassPath (){
+    LinkedHashSet<String> paths = new LinkedHashSet<String>();
+
+    addClassLoaderPaths(paths, SwarmShell.class.getClassLoader());
+    addClassLoaderPaths(paths, config.getClassLoader());
+    for (String p : System.getProperty("java.class.path").split(File.pathSeparator)){
+      if (p.length() > 0){
+        paths.add(p);
+      }
+    }
+
+    StringBuilder sb = new StringBuilder();
+    for (String p : paths){
+      if (sb.length() > 0){
+        sb.append(File.pathSeparatorChar);
+      }
+      sb.append(p);
+    }
+    return sb.toString();
+  }
+
+  static void addClassLoaderPaths (LinkedHashSet<String> paths, ClassLoader cl){
+    for (; cl != null; cl = cl.getParent()){
+      if (cl instanceof URLClassLoader){
+        for (URL url : ((URLClassLoader)cl).getURLs()){
+          if ("file".equals(url.getProtocol())){
+            paths.add(new File(url.getPath()).getPath());
+          }
+        }
+      }
+    }
+  }
+
+  protected void launchWorker (int workerId) throws IOException {
+    ArrayList<String> cmd = new ArrayList<String>();
+    cmd.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+    for (String a : vmArgs){
+      cmd.add(a);
+    }
+    cmd.add("-cp");
+    cmd.add(getWorkerClassPath());
+    cmd.add(SwarmWorker.class.getName());
+    cmd.addAll(getWorkerArgs(workerId));
+
+    File logFile = (logDir != null) ? new File(logDir, "worker-" + workerId + ".log")
+                                    : File.createTempFile("jpf-swarm-" + workerId + '-', ".log");
+
+    ProcessBuilder pb = new ProcessBuilder(cmd);
+    pb.redirectErrorStream(true);
+    pb.redirectOutput(logFile);
+
+    WorkerResult w = addWorker(workerId, getVariant(workerId));
+    w.logFile = logFile;
+    w.isTempLog = (logDir == null);
+    w.process = pb.start();
+
+    startWatcher(w);
+  }
+
+  //--- worker communication
+
+  protected synchronized WorkerResult addWorker (int id, String variant){
+    WorkerResult w = new WorkerResult(id, variant);
+    workers.put(id, w);
+    return w;
+  }
+
+  protected void startAcceptor (){
+    Thread t = new Thread( new Runnable(){
+      @Override
+      public void run(){
+        try {
+          while (true){
+            final Socket s = serverSocket.accept();
+            Thread t = new Thread( new Runnable(){
+              @Override
+              public void run(){
+                handleConnection(s);
+              }
+            }, "swarm-connection");
+            t.setDaemon(true);
+            t.start();
+          }
+        } catch (IOException iox){
+          // server socket closed
+        }
+      }
+    }, "swarm-acceptor");
+    t.setDaemon(true);
+    t.start();
+  }
+
+  /**
+   * if a local worker process terminates without connecting (e.g. because of
+   * a config error), we still have to count it as finished
+   */
+  protected void startWatcher (final WorkerResult w){
+    Thread t = new Thread( new Runnable(){
+      @Override
+      public void run(){
+        try {
+          int exitCode = w.process.waitFor();
+          synchronized (SwarmShell.this){
+            w.exitCode = exitCode;
+            if (!w.connected){
+              SwarmShell.this.wait(1000); // its HELLO might still be in transit
+              if (!w.connected){
+                log.warning("swarm worker ", Integer.toString(w.id), " terminated without connecting, see ", w.logFile);
+                setFinished(w);
+              }
+            }
+          }
+        } catch (InterruptedException ix){
+          // we are shutting down
+        }
+      }
+    }, "swarm-watcher-" + w.id);
+    t.setDaemon(true);
+    t.start();
+  }
+
+  protected void handleConnection (Socket s){
+    WorkerResult w = null;
+
+    try {
+      DataInputStream in = new DataInputStream( new BufferedInputStream(s.getInputStream()));
+      DataOutputStream out = new DataOutputStream( new BufferedOutputStream(s.getOutputStream()));
+
+      if (in.readByte() != SwarmWorker.HELLO){
+        log.warning("unknown swarm connection from ", s.getInetAddress());
+        s.close();
+        return;
+      }
+
+      int id = in.readInt();
+      String variant = in.readUTF();
+      w = connect(id, variant, out);
+
+      while (true){
+        int msg = in.readByte();
+
+        if (msg == SwarmWorker.ERROR){
+          long key = in.readLong();
+          String description = in.readUTF();
+          String details = in.readUTF();
+          int depth = in.readInt();
+          addError(w, key, description, details, depth);
+
+        } else if (msg == SwarmWorker.STATS){
+          long[] data = new long[in.readInt()];
+          for (int i=0; i<data.length; i++){
+            data[i] = in.readLong();
+          }
+          setStatistics(w, data);
+
+        } else if (msg == SwarmWorker.COVERAGE){
+          int nMethods = in.readInt();
+          for (int i=0; i<nMethods; i++){
+            String mthName = in.readUTF();
+            long[] words = new long[in.readInt()];
+            for (int j=0; j<words.length; j++){
+              words[j] = in.readLong();
+            }
+            addCoverage(mthName, BitSet.valueOf(words));
+          }
+
+        } else if (msg == SwarmWorker.DONE){
+          synchronized (this){
+            w.completed = true;
+          }
+          break;
+
+        } else {
+          log.warning("unknown message from swarm worker ", Integer.toString(id), ": ", Integer.toString(msg));
+          break;
+        }
+      }
+
+    } catch (IOException iox){
+      // worker terminated
+    } finally {
+      try {
+        s.close();
+      } catch (IOException iox){
+        // nothing to do
+      }
+      if (w != null){
+        synchronized (this){
+          setFinished(w);
+        }
+      }
+    }
+  }
+
+  protected synchronized WorkerResult connect (int id, String variant, DataOutputStream out) throws IOException {
+    WorkerResult w = workers.get(id);
+    if (w == null || w.connected){ // unexpected remote worker, or duplicated id
+      log.warning("unexpected swarm worker id ", Integer.toString(id));
+      w = new WorkerResult(id, variant); // not registered, we don't wait for it
+    }
+
+    w.variant = variant;
+    w.connected = true;
+    w.out = out;
+    notifyAll();
+
+    if (stopRequested){
+      sendStop(w);
+    }
+    return w;
+  }
+
+  protected synchronized void setFinished (WorkerResult w){
+    if (!w.finished){
+      w.finished = true;
+      w.out = null;
+      if (workers.get(w.id) == w){
+        nFinished++;
+        notifyAll();
+      }
+    }
+  }
+
+  protected synchronized void addError (WorkerResult w, long key, String description, String details, int depth){
+    SwarmError e = errors.get(key);
+    if (e == null){
+      e = new SwarmError(key, description, details, depth);
+      errors.put(key, e);
+    }
+    e.workers.add(w.id);
+    w.nErrors++;
+
+    if (stopOnError && !stopRequested){
+      stopRequested = true;
+      for (WorkerResult r : workers.values()){
+        sendStop(r);
+      }
+    }
+  }
+
+  protected void sendStop (WorkerResult w){
+    if (w.out != null && !w.finished){
+      try {
+        w.out.writeByte(SwarmWorker.STOP);
+        w.out.flush();
+        w.stopped = true;
+      } catch (IOException iox){
+        // worker already gone
+      }
+    }
+  }
+
+  protected synchronized void setStatistics (WorkerResult w, long[] data){
+    w.statistics = data;
+  }
+
+  protected synchronized void addCoverage (String mthName, BitSet insns){
+    BitSet bs = coverage.get(mthName);
+    if (bs == null){
+      coverage.put(mthName, insns);
+    } else {
+      bs.or(insns);
+    }
+  }
+
+  protected synchronized void waitForWorkers (){
+    int nWorkers = nLocalWorkers + nRemoteWorkers;
+    while (nFinished < nWorkers){
+      try {
+        wait();
+      } catch (InterruptedException ix){
+        break;
+      }
+    }
+  }
+
+  protected void shutdown (){
+    try {
+      if (serverSocket != null){
+        serverSocket.close();
+      }
+    } catch (IOException iox){
+      // nothing to do
+    }
+
+    synchronized (this){
+      for (WorkerResult w : workers.values()){
+        if (w.process != null){
+          w.process.destroy();
+        }
+      }
+    }
+  }
+
+  /**
+   * temporary logs are only kept for workers that did not complete, which
+   * are the ones we might have to look into
+   */
+  protected synchronized void deleteTempLogs (){
+    for (WorkerResult w : workers.values()){
+      if (w.isTempLog && w.completed){
+        if (w.logFile.delete()){
+          w.logFile = null;
+        } else {
+          log.warning("cannot delete swarm worker log: ", w.logFile);
+        }
+      }
+    }
+  }
+
+  //--- results
+
+  public synchronized List<SwarmError> getErrors(){
+    return new ArrayList<SwarmError>(errors.values());
+  }
+
+  public synchronized List<WorkerResult> getWorkerResults(){
+    ArrayList<WorkerResult> list = new ArrayList<WorkerResult>();
+    for (int i=0; i<nLocalWorkers + nRemoteWorkers; i++){
+      WorkerResult w = workers.get(i);
+      if (w != null){
+        list.add(w);
+      }
+    }
+    return list;
+  }
+
+  public synchronized int getCoveredInstructions(){
+    int n = 0;
+    for (BitSet bs : coverage.values()){
+      n += bs.cardinality();
+    }
+    return n;
+  }
+
+  public synchronized void printResults (PrintWriter pw){
+    Statistics sum = new Statistics();
+    Statistics stat = new Statistics();
+
+    pw.println();
+    pw.print(SWARM_BANNER);
+    pw.println("swarm workers");
+
+    for (WorkerResult w : getWorkerResults()){
+      pw.print("worker ");
+      pw.print(w.id);
+      pw.print(" (");
+      pw.print(w.variant);
+      pw.print("): ");
+
+      if (w.statistics != null){
+        stat.setData(w.statistics); // workers send their Statistics data
+        sum.add(stat);
+
+        pw.print("new=");
+        pw.print(stat.newStates);
+        pw.print(",visited=");
+        pw.print(stat.visitedStates);
+        pw.print(",instructions=");
+        pw.print(stat.insns);
+        pw.print(",errors=");
+        pw.print(w.nErrors);
+        if (w.stopped){
+          pw.print(" (stopped)");
+        }
+      } else {
+        pw.print("no results");
+      }
+      if (w.logFile != null){
+        pw.print(", log: ");
+        pw.print(w.logFile.getPath());
+      }
+      pw.println();
+    }
+
+    pw.println();
+    pw.print(SWARM_BANNER);
+    pw.println("swarm errors");
+
+    if (errors.isEmpty()){
+      pw.println("no errors detected");
+    } else {
+      int i = 1;
+      for (SwarmError e : errors.values()){
+        pw.print("error #");
+        pw.print(i++);
+        pw.print(": ");
+        pw.print(e.description);
+        pw.print(" (depth ");
+        pw.print(e.depth);
+        pw.print(", found by workers ");
+        pw.print(e.workers);
+        pw.println(')');
+        pw.println(e.details);
+      }
+    }
+
+    pw.println();
+    pw.print(SWARM_BANNER);
+    pw.println("swarm statistics");
+    pw.println("workers:            " + getWorkerResults().size());
+    pw.println("unique errors:      " + errors.size());
+    pw.println("states:             new=" + sum.newStates + ",visited=" + sum.visitedStates + " (sum of all workers)");
+    pw.println("instructions:       " + sum.insns);
+    if (collectCoverage){
+      pw.println("coverage:           " + getCoveredInstructions() + " instructions in " + coverage.size() + " methods");
+    }
+    pw.flush();
+  }
+}
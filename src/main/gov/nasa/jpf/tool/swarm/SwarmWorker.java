@@ -0,0 +1,285 @@
+/*
+ * Copyright (C) 2014, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ * All rights reserved.
+ *
+ * The Java Pathfinder core (jpf-core) platform is licensed under the
+ * Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0. 
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+package gov.nasa.jpf.tool.swarm;
+
+import gov.nasa.jpf.Config;
+import gov.nasa.jpf.Error;
+import gov.nasa.jpf.JPF;
+import gov.nasa.jpf.ListenerAdapter;
+import gov.nasa.jpf.report.Statistics;
+import gov.nasa.jpf.search.Search;
+import gov.nasa.jpf.util.JPFLogger;
+import gov.nasa.jpf.vm.ChoiceGenerator;
+import gov.nasa.jpf.vm.Instruction;
+import gov.nasa.jpf.vm.InstructionInterest;
+import gov.nasa.jpf.vm.JenkinsStateSet;
+import gov.nasa.jpf.vm.MethodInfo;
+import gov.nasa.jpf.vm.Path;
+import gov.nasa.jpf.vm.ThreadInfo;
+import gov.nasa.jpf.vm.Transition;
+import gov.nasa.jpf.vm.VM;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * the main class of the JPF processes that are launched by a SwarmShell.
+ * This runs a normal JPF with the given configuration, and reports property
+ * violations, statistics and (if swarm.coverage is set) instruction coverage
+ * to the coordinator that is specified by swarm.host and swarm.port.
+ *
+ * Workers can also be started manually on other hosts, in which case they
+ * have to be configured with the same target and a unique swarm.worker.id
+ * (the coordinator waits for swarm.remote_workers of them)
+ */
+public class SwarmWorker extends ListenerAdapter implements InstructionInterest {
+
+  static JPFLogger log = JPF.getLogger("gov.nasa.jpf.tool.swarm");
+
+  //--- message types, worker to coordinator
+  static final int HELLO = 1;     // int id, UTF variant
+  static final int ERROR = 2;     // long traceKey, UTF description, UTF details, int pathLength
+  static final int STATS = 3;     // int n, long[n]
+  static final int COVERAGE = 4;  // int nMethods, { UTF method, int nWords, long[nWords] }
+  static final int DONE = 5;
+
+  //--- coordinator to worker
+  static final int STOP = 10;
+
+  static final int MAX_TEXT = 16384;
+
+  protected int id;
+  protected JPF jpf;
+
+  protected DataOutputStream out;
+  protected DataInputStream in;
+
+  protected volatile boolean stopRequested;
+
+  protected boolean collectCoverage;
+  protected HashMap<MethodInfo,BitSet> coverage = new HashMap<MethodInfo,BitSet>();
+
+  public static void main (String[] args){
+    Config conf = JPF.createConfig(args);
+
+    try {
+      SwarmWorker worker = new SwarmWorker(conf);
+      worker.run();
+
+    } catch (IOException iox){
+      System.err.println("swarm worker communication failed: " + iox);
+      System.exit(1);
+    }
+
+    System.exit(0); // don't wait for non-daemon SUT threads
+  }
+
+  public SwarmWorker (Config conf) throws IOException {
+    id = conf.getInt("swarm.worker.id", 0);
+    collectCoverage = conf.getBoolean("swarm.coverage", false);
+
+    Socket socket = new Socket( conf.getString("swarm.host", "localhost"), conf.getInt("swarm.port"));
+    out = new DataOutputStream( new BufferedOutputStream( socket.getOutputStream()));
+    in = new DataInputStream( new BufferedInputStream( socket.getInputStream()));
+
+    synchronized (out){
+      out.writeByte(HELLO);
+      out.writeInt(id);
+      out.writeUTF( conf.getString("swarm.variant", conf.getString("search.class", "?")));
+      out.flush();
+    }
+
+    jpf = new JPF(conf);
+    jpf.addListener(this);
+  }
+
+  public void run () throws IOException {
+    Thread receiver = new Thread( new Runnable(){
+      @Override
+      public void run(){
+        receive();
+      }
+    }, "swarm-receiver");
+    receiver.setDaemon(true);
+    receiver.start();
+
+    try {
+      jpf.run();
+    } finally {
+      sendResults();
+    }
+  }
+
+  protected void receive (){
+    try {
+      while (true){
+        if (in.readByte() == STOP){
+          stopRequested = true;
+        }
+      }
+    } catch (EOFException eofx){
+      // coordinator is gone
+    } catch (IOException iox){
+      // same
+    }
+  }
+
+  protected void sendResults () throws IOException {
+    synchronized (out){
+      Statistics stat = jpf.getReporter().getStatistics();
+      if (stat != null){
+        long[] data = stat.getData();
+        out.writeByte(STATS);
+        out.writeInt(data.length);
+        for (long v : data){
+          out.writeLong(v);
+        }
+      }
+
+      if (collectCoverage){
+        out.writeByte(COVERAGE);
+        out.writeInt(coverage.size());
+        for (Map.Entry<MethodInfo,BitSet> e : coverage.entrySet()){
+          out.writeUTF(e.getKey().getFullName());
+          long[] words = e.getValue().toLongArray();
+          out.writeInt(words.length);
+          for (long w : words){
+            out.writeLong(w);
+          }
+        }
+      }
+
+      out.writeByte(DONE);
+      out.flush();
+    }
+  }
+
+  /**
+   * a hash of the choices along the error path, which is used by the
+   * coordinator to detect errors that were found by several workers.
+   * Note that we can't use choice indices since they depend on cg.randomize_choices
+   */
+  public static long getTraceKey (Error error){
+    StringBuilder sb = new StringBuilder(error.getDescription());
+
+    Path path = error.getPath();
+    if (path != null){
+      for (Transition t : path){
+        sb.append(';');
+        sb.append(t.getThreadIndex());
+
+        ChoiceGenerator<?> cg = t.getChoiceGenerator();
+        if (cg != null){
+          sb.append(',');
+          sb.append(cg.getId());
+          sb.append('=');
+
+          Object choice = cg.getNextChoice();
+          if (choice instanceof ThreadInfo){
+            sb.append(((ThreadInfo)choice).getName());
+          } else {
+            sb.append(choice);
+          }
+        }
+      }
+    }
+
+    int len = sb.length();
+    int[] chars = new int[len];
+    for (int i=0; i<len; i++){
+      chars[i] = sb.charAt(i);
+    }
+
+    return JenkinsStateSet.longLookup3Hash(chars);
+  }
+
+  static String truncate (String s){
+    if (s == null){
+      return "";
+    } else if (s.length() > MAX_TEXT){ // writeUTF can't handle more than 64k bytes
+      return s.substring(0, MAX_TEXT) + "...";
+    } else {
+      return s;
+    }
+  }
+
+  //--- listener interface
+
+  @Override
+  public void propertyViolated (Search search){
+    Error error = search.getCurrentError();
+
+    try {
+      synchronized (out){
+        out.writeByte(ERROR);
+        out.writeLong( getTraceKey(error));
+        out.writeUTF( truncate(error.getDescription()));
+        out.writeUTF( truncate(error.getDetails()));
+        out.writeInt( search.getDepth());
+        out.flush();
+      }
+    } catch (IOException iox){
+      log.warning("cannot report error to swarm coordinator: " + iox);
+    }
+  }
+
+  @Override
+  public void stateAdvanced (Search search){
+    if (stopRequested){
+      search.terminate();
+    }
+  }
+
+  @Override
+  public void stateBacktracked (Search search){
+    if (stopRequested){
+      search.terminate();
+    }
+  }
+
+  @Override
+  public boolean isInterestedIn (Instruction insn){
+    // without coverage we don't want to slow down instruction execution
+    return collectCoverage;
+  }
+
+  @Override
+  public void instructionExecuted (VM vm, ThreadInfo ti, Instruction nextInsn, Instruction executedInsn){
+    if (!collectCoverage){ // we still get notified if we are the only instruction listener
+      return;
+    }
+
+    MethodInfo mi = executedInsn.getMethodInfo();
+    if (mi != null){
+      BitSet bs = coverage.get(mi);
+      if (bs == null){
+        bs = new BitSet(mi.getNumberOfInstructions());
+        coverage.put(mi, bs);
+      }
+      bs.set(executedInsn.getInstructionIndex());
+    }
+  }
+}
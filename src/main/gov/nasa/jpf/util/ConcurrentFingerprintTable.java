@@ -0,0 +1,247 @@
+/*
+ * Copyright (C) 2014, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ * All rights reserved.
+ *
+ * The Java Pathfinder core (jpf-core) platform is licensed under the
+ * Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package gov.nasa.jpf.util;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * a lock free FingerprintTable that can be used concurrently by any number of
+ * threads.
+ *
+ * The table is split into a fixed number of segments (selected by the upper
+ * fingerprint bits), each of which is an open addressed, double hashing table
+ * like the one used by JenkinsStateSet. Slots are claimed by CAS'ing the
+ * fingerprint into an empty slot, after which the id is published in a
+ * parallel array (readers that find a matching fingerprint spin until the
+ * id is visible).
+ *
+ * Segments grow incrementally and cooperatively: once a segment table exceeds
+ * its load factor, a table with twice the capacity is linked as 'next', and
+ * every thread that subsequently adds to this segment migrates a chunk of
+ * slots before it proceeds. Empty slots of the old table are marked as MOVED
+ * during migration, so that adders which hit them continue in the next table.
+ * Since slots only go from EMPTY to a fingerprint or MOVED, two adders of the
+ * same fingerprint always end up in the same table. Growing a segment never
+ * allocates more than the new segment table, i.e. we don't need the transient
+ * 3x memory of a monolithic rehash.
+ *
+ * The two fingerprint values that are used as markers (0 and Long.MIN_VALUE)
+ * are stored separately
+ */
+public class ConcurrentFingerprintTable implements FingerprintTable {
+
+  static final long EMPTY = 0;
+  static final long MOVED = Long.MIN_VALUE;
+
+  static final double MAX_LOAD = 0.7;
+  static final int CHUNK_SIZE = 1024;
+
+  static final int DEFAULT_SEGMENTS = 64;
+  static final int DEFAULT_SEGMENT_SIZE = 4096;
+
+  static class Table {
+    final AtomicLongArray fingerprints;
+    final AtomicIntegerArray ids; // in table, 1 higher
+    final int mask;
+    final int threshold;
+
+    final AtomicInteger count = new AtomicInteger();
+    final AtomicReference<Table> next = new AtomicReference<Table>();
+
+    // migration state
+    final int nChunks;
+    final AtomicInteger nextChunk = new AtomicInteger();
+    final AtomicInteger migratedChunks = new AtomicInteger();
+
+    Table (int capacity){
+      fingerprints = new AtomicLongArray(capacity);
+      ids = new AtomicIntegerArray(capacity);
+      mask = capacity-1;
+      threshold = (int) (MAX_LOAD * capacity);
+      nChunks = (capacity + CHUNK_SIZE - 1) / CHUNK_SIZE;
+    }
+  }
+
+  final AtomicReferenceArray<Table> segments;
+  final int segmentShift;
+
+  final AtomicInteger nextId = new AtomicInteger();
+  final AtomicInteger size = new AtomicInteger();
+
+  // ids of fingerprints that collide with our markers
+  final AtomicIntegerArray markerIds = new AtomicIntegerArray(2);
+
+  public ConcurrentFingerprintTable (int nSegments, int segmentSize){
+    nSegments = Integer.highestOneBit( Math.max(nSegments, 1) * 2 - 1);
+    segmentSize = Integer.highestOneBit( Math.max(segmentSize, 16) * 2 - 1);
+
+    segments = new AtomicReferenceArray<Table>(nSegments);
+    for (int i=0; i<nSegments; i++){
+      segments.set(i, new Table(segmentSize));
+    }
+
+    segmentShift = 64 - Integer.numberOfTrailingZeros(nSegments);
+  }
+
+  public ConcurrentFingerprintTable (){
+    this(DEFAULT_SEGMENTS, DEFAULT_SEGMENT_SIZE);
+  }
+
+  @Override
+  public int reserveId() {
+    return nextId.getAndIncrement();
+  }
+
+  @Override
+  public int size() {
+    return size.get();
+  }
+
+  public int getNumberOfSegments(){
+    return segments.length();
+  }
+
+  @Override
+  public int add (long fp, int newId) {
+    if (fp == EMPTY || fp == MOVED){
+      return addMarker( (fp == EMPTY) ? 0 : 1, newId);
+    }
+
+    int segIdx = (segmentShift == 64) ? 0 : (int)(fp >>> segmentShift);
+    Table t = segments.get(segIdx);
+
+    Table tNext = t.next.get();
+    if (tNext != null){
+      helpMigrate(segIdx, t, tNext);
+    }
+
+    int id = add(t, fp, newId);
+    if (id == newId){
+      size.incrementAndGet();
+    }
+    return id;
+  }
+
+  protected int addMarker (int idx, int newId){
+    if (markerIds.compareAndSet(idx, 0, newId+1)){
+      size.incrementAndGet();
+      return newId;
+    } else {
+      return markerIds.get(idx) - 1;
+    }
+  }
+
+  /**
+   * add to the table chain starting at 't', answering the stored id
+   */
+  int add (Table t, long fp, int newId){
+    while (true){
+      int mask = t.mask;
+      int idx = (int)(fp >> 32) & mask;
+      int delta = (int)fp | 1; // must be odd!
+      Table next = null;
+
+      for (int n=0; n<=mask; n++){
+        long f = t.fingerprints.get(idx);
+
+        if (f == EMPTY){
+          if (t.fingerprints.compareAndSet(idx, EMPTY, fp)){
+            t.ids.set(idx, newId+1);
+
+            if (t.count.incrementAndGet() >= t.threshold){
+              grow(t);
+            }
+            return newId;
+          }
+          f = t.fingerprints.get(idx); // somebody else was faster, re-check
+        }
+
+        if (f == fp){
+          return getId(t, idx);
+        } else if (f == MOVED){
+          next = t.next.get();
+          break;
+        }
+
+        idx = (idx + delta) & mask;
+      }
+
+      if (next == null){ // table full without MOVED marker, can only happen during growth
+        next = grow(t);
+      }
+      t = next;
+    }
+  }
+
+  static int getId (Table t, int idx){
+    int id;
+    while ((id = t.ids.get(idx)) == 0){
+      Thread.yield(); // claimed but not yet published
+    }
+    return id-1;
+  }
+
+  /**
+   * make sure there is a next table, answering it
+   */
+  Table grow (Table t){
+    Table next = t.next.get();
+    if (next == null){
+      next = new Table( (t.mask+1) << 1);
+      if (!t.next.compareAndSet(null, next)){
+        next = t.next.get();
+      }
+    }
+    return next;
+  }
+
+  /**
+   * migrate one chunk of 't' to 'next', and replace the segment table if
+   * this was the last one
+   */
+  void helpMigrate (int segIdx, Table t, Table next){
+    int chunk = t.nextChunk.getAndIncrement();
+
+    if (chunk < t.nChunks){
+      int start = chunk * CHUNK_SIZE;
+      int end = Math.min(start + CHUNK_SIZE, t.mask+1);
+
+      for (int i=start; i<end; i++){
+        long f = t.fingerprints.get(i);
+        if (f == EMPTY){
+          if (t.fingerprints.compareAndSet(i, EMPTY, MOVED)){
+            continue;
+          }
+          f = t.fingerprints.get(i);
+        }
+
+        if (f != MOVED){
+          add(next, f, getId(t,i));
+        }
+      }
+
+      if (t.migratedChunks.incrementAndGet() == t.nChunks){
+        segments.compareAndSet(segIdx, t, next);
+      }
+    }
+  }
+}
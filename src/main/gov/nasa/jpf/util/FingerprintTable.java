@@ -0,0 +1,49 @@
+/*
+ * Copyright (C) 2014, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ * All rights reserved.
+ *
+ * The Java Pathfinder core (jpf-core) platform is licensed under the
+ * Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0. 
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+package gov.nasa.jpf.util;
+
+/**
+ * a set of 64bit state fingerprints that maps each fingerprint to a state id.
+ *
+ * Implementations are used by StateSets that have to be shared between
+ * several VM instances (e.g. parallel searches), which is why this interface
+ * (and its implementors) must not refer to any VM types. New state ids have
+ * to be reserved before the corresponding add() call, which is required to
+ * support the VM protocol of obtaining the id of the next new state before
+ * the current state is added (see VM.forward())
+ */
+public interface FingerprintTable {
+
+  /**
+   * obtain an id that can be used for a subsequent add(). Ids are unique
+   * across all callers, but reserved ids that never get added leave gaps
+   */
+  int reserveId();
+
+  /**
+   * check if there already is an entry for this fingerprint. If there is,
+   * return its id, otherwise store the fingerprint under 'newId' and
+   * return 'newId'
+   */
+  int add (long fingerprint, int newId);
+
+  /**
+   * number of stored fingerprints
+   */
+  int size();
+}
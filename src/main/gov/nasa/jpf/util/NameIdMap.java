@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) 2014, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ * All rights reserved.
+ *
+ * The Java Pathfinder core (jpf-core) platform is licensed under the
+ * Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0. 
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+package gov.nasa.jpf.util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * a thread safe, collision free mapping of names to int ids, which are
+ * handed out in the order in which names are first requested.
+ *
+ * This is used to obtain ids that do not depend on load order and are the
+ * same for several VM instances, e.g. for class and method ids of serialized
+ * states that are compared between parallel search workers. Since it can be
+ * shared between VM instances that run in different classloaders, this class
+ * must not refer to any VM types
+ */
+public class NameIdMap {
+
+  protected final HashMap<String,Integer> ids = new HashMap<String,Integer>();
+  protected final ArrayList<String> names = new ArrayList<String>(); // in id order
+
+  /**
+   * answer the id for 'name', adding it if it isn't known yet. Ids start
+   * with 1, i.e. 0 can be used by callers to mark unknown ids
+   */
+  public synchronized int getId (String name){
+    Integer id = ids.get(name);
+    if (id == null){
+      names.add(name);
+      id = names.size();
+      ids.put(name, id);
+    }
+    return id;
+  }
+
+  public synchronized int size(){
+    return names.size();
+  }
+
+  /**
+   * the known names in id order, i.e. a map that gets the same ids can be
+   * re-created (e.g. by another process) by calling getId() in this order
+   */
+  public synchronized String[] getNames(){
+    return names.toArray(new String[names.size()]);
+  }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2014, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ * All rights reserved.
+ *
+ * The Java Pathfinder core (jpf-core) platform is licensed under the
+ * Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0. 
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+package gov.nasa.jpf.util;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * a FingerprintTable that can be shared between threads by means of
+ * a global lock.
+ *
+ * This is an open addressed, double hashing table similar to the one
+ * used by JenkinsStateSet. Since ids can have gaps (see reserveId()), we
+ * keep fingerprints and ids in the table itself instead of using the id
+ * as an index into a separate fingerprint array. A zero fingerprint is
+ * used to mark empty slots, hence we store the (rare) zero value separately
+ */
+public class SynchronizedFingerprintTable implements FingerprintTable {
+
+  static final double MAX_LOAD = 0.7;
+  static final int INIT_SIZE = 65536;
+
+  final AtomicInteger nextId = new AtomicInteger();
+
+  long[] fingerprints;
+  int[] ids;  // in table, 1 higher
+
+  int size;
+  int nextRehash;
+
+  int zeroId = -1; // id of the 0 fingerprint, if any
+
+  public SynchronizedFingerprintTable (int initSize){
+    int n = Integer.highestOneBit(Math.max(initSize, 16) -1) << 1;
+    fingerprints = new long[n];
+    ids = new int[n];
+    nextRehash = (int) (MAX_LOAD * n);
+  }
+
+  public SynchronizedFingerprintTable (){
+    this(INIT_SIZE);
+  }
+
+  @Override
+  public int reserveId() {
+    return nextId.getAndIncrement();
+  }
+
+  @Override
+  public synchronized int size() {
+    return size;
+  }
+
+  @Override
+  public synchronized int add (long fp, int newId) {
+    if (fp == 0){
+      if (zeroId < 0){
+        zeroId = newId;
+        size++;
+      }
+      return zeroId;
+    }
+
+    int mask = fingerprints.length - 1;
+    int idx = (int)(fp >> 32) & mask;
+    int delta = (int)fp | 1; // must be odd!
+
+    while (ids[idx] != 0) {
+      if (fingerprints[idx] == fp){
+        return ids[idx] - 1;
+      }
+      idx = (idx + delta) & mask;
+    }
+
+    //--- only reached if fingerprint is new
+    if (size >= nextRehash){
+      rehash();
+      store(fingerprints, ids, fp, newId);
+    } else {
+      fingerprints[idx] = fp;
+      ids[idx] = newId + 1;
+    }
+
+    size++;
+    return newId;
+  }
+
+  protected void rehash (){
+    int n = fingerprints.length << 1;
+    long[] newFingerprints = new long[n];
+    int[] newIds = new int[n];
+
+    for (int i=0; i<fingerprints.length; i++){
+      if (ids[i] != 0){
+        store( newFingerprints, newIds, fingerprints[i], ids[i]-1);
+      }
+    }
+
+    fingerprints = newFingerprints;
+    ids = newIds;
+    nextRehash = (int) (MAX_LOAD * n);
+  }
+
+  static void store (long[] fingerprints, int[] ids, long fp, int id){
+    int mask = fingerprints.length - 1;
+    int idx = (int)(fp >> 32) & mask;
+    int delta = (int)fp | 1;
+
+    while (ids[idx] != 0) { // we know there are enough free slots
+      idx = (idx + delta) & mask;
+    }
+
+    fingerprints[idx] = fp;
+    ids[idx] = id + 1;
+  }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2014, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ * All rights reserved.
+ *
+ * The Java Pathfinder core (jpf-core) platform is licensed under the
+ * Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package gov.nasa.jpf.util.test;
+
+import gov.nasa.jpf.ListenerAdapter;
+import gov.nasa.jpf.search.Search;
+import gov.nasa.jpf.vm.ArrayFields;
+import gov.nasa.jpf.vm.ClassInfo;
+import gov.nasa.jpf.vm.ClassLoaderInfo;
+import gov.nasa.jpf.vm.ElementInfo;
+import gov.nasa.jpf.vm.FieldInfo;
+import gov.nasa.jpf.vm.Heap;
+import gov.nasa.jpf.vm.MJIEnv;
+
+import java.lang.reflect.Array;
+import java.util.HashMap;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * listener that records the outcomes of all end states of a search, i.e. the
+ * values of the non-final static fields of a class and the objects reachable
+ * from them. Object references are numbered in the order in which they are
+ * reached, so that outcomes don't depend on where objects were allocated.
+ *
+ * This is used by TestJPF to check if two VM configurations explore
+ * equivalent state spaces
+ */
+public class EndStateRecorder extends ListenerAdapter {
+
+  protected String clsName;
+  protected Set<String> endStates = new TreeSet<String>();
+
+  public EndStateRecorder (String clsName){
+    this.clsName = clsName;
+  }
+
+  public Set<String> getEndStates(){
+    return endStates;
+  }
+
+  @Override
+  public void stateAdvanced (Search search){
+    if (search.isEndState()){
+      ClassInfo ci = ClassLoaderInfo.getSystemResolvedClassInfo(clsName);
+      Heap heap = search.getVM().getHeap();
+      HashMap<Integer,Integer> refs = new HashMap<Integer,Integer>();
+      StringBuilder sb = new StringBuilder();
+
+      ElementInfo sei = ci.getStaticElementInfo();
+      for (FieldInfo fi : ci.getDeclaredStaticFields()){
+        if (!fi.isFinal()){ // constants are not part of the outcome
+          sb.append(fi.getName());
+          sb.append('=');
+          appendField(sb, heap, refs, sei, fi);
+          sb.append(';');
+        }
+      }
+
+      endStates.add(sb.toString());
+    }
+  }
+
+  protected void appendField (StringBuilder sb, Heap heap, HashMap<Integer,Integer> refs, ElementInfo ei, FieldInfo fi){
+    if (fi.isReference()){
+      appendObject(sb, heap, refs, ei.getReferenceField(fi));
+    } else {
+      sb.append(fi.getValueObject(ei.getFields()));
+    }
+  }
+
+  protected void appendObject (StringBuilder sb, Heap heap, HashMap<Integer,Integer> refs, int ref){
+    if (ref == MJIEnv.NULL){
+      sb.append("null");
+      return;
+    }
+
+    Integer n = refs.get(ref);
+    if (n != null){ // already seen
+      sb.append('#');
+      sb.append(n);
+      return;
+    }
+    refs.put(ref, refs.size());
+
+    ElementInfo ei = heap.get(ref);
+    if (ei.isStringObject()){
+      sb.append('"');
+      sb.append(ei.asString());
+      sb.append('"');
+
+    } else if (ei.isArray()){
+      sb.append('[');
+      if (ei.isReferenceArray()){
+        for (int i=0; i<ei.arrayLength(); i++){
+          if (i > 0){
+            sb.append(',');
+          }
+          appendObject(sb, heap, refs, ei.getReferenceElement(i));
+        }
+      } else {
+        Object values = ((ArrayFields)ei.getFields()).getValues();
+        for (int i=0; i<Array.getLength(values); i++){
+          if (i > 0){
+            sb.append(',');
+          }
+          sb.append(Array.get(values, i));
+        }
+      }
+      sb.append(']');
+
+    } else {
+      ClassInfo ci = ei.getClassInfo();
+      sb.append(ci.getName());
+      sb.append('{');
+      for (int i=0; i<ci.getNumberOfInstanceFields(); i++){
+        FieldInfo fi = ci.getInstanceField(i);
+        if (i > 0){
+          sb.append(',');
+        }
+        sb.append(fi.getName());
+        sb.append('=');
+        appendField(sb, heap, refs, ei, fi);
+      }
+      sb.append('}');
+    }
+  }
+}
@@ -40,6 +40,7 @@ import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
 
 /**
  * base class for JPF unit tests. TestJPF mostly includes JPF invocations
@@ -832,6 +833,77 @@ public abstract class TestJPF implements JPFShell  {
     }
   }
 
+  /**
+   * run JPF on the given test method of this class expecting no SuT property
+   * violations, and record the outcomes of all end states it reached (the
+   * values of our static fields and the objects reachable from them)
+   */
+  protected JPF recordEndStates (String testMethod, String... args) {
+    JPF jpf = null;
+
+    report(args);
+
+    try {
+      jpf = createJPF( setTestMethod(testMethod), args);
+      jpf.addListener( new EndStateRecorder( getClass().getName()));
+      jpf.run();
+    } catch (Throwable t) {
+      t.printStackTrace();
+      fail("JPF internal exception executing: ", args, t.toString());
+      return jpf;
+    }
+
+    List<Error> errors = jpf.getSearchErrors();
+    if ((errors != null) && (errors.size() > 0)) {
+      fail("JPF found unexpected errors: " + (errors.get(0)).getDescription());
+    }
+
+    return jpf;
+  }
+
+  protected static Set<String> getEndStates (JPF jpf){
+    return jpf.getListenerOfType(EndStateRecorder.class).getEndStates();
+  }
+
+  /**
+   * check that two recordEndStates() runs explore equivalent state spaces, i.e.
+   * reach the same end state outcomes. The same number of states does not
+   * imply this
+   */
+  protected static void assertSameEndStates (JPF expected, JPF actual){
+    Set<String> expectedEndStates = getEndStates(expected);
+    Set<String> actualEndStates = getEndStates(actual);
+
+    assertFalse("no end states recorded", expectedEndStates.isEmpty());
+    assertEquals("different end states, expected: " + expectedEndStates + " but was: " + actualEndStates,
+                 expectedEndStates, actualEndStates);
+  }
+
+  /**
+   * run testMethod with a reference and an alternative configuration, and check
+   * that both reach the same end states. Returns both JPF objects (reference
+   * first) for feature specific checks
+   */
+  protected JPF[] assertSameEndStates (String testMethod, String[] referenceArgs, String... args){
+    JPF expected = recordEndStates(testMethod, referenceArgs);
+    JPF actual = recordEndStates(testMethod, args);
+
+    assertSameEndStates(expected, actual);
+    return new JPF[] { expected, actual };
+  }
+
+  /**
+   * same as assertSameEndStates(), but also check that both configurations
+   * store the same number of distinct states
+   */
+  protected JPF[] assertSameStateSpace (String testMethod, String[] referenceArgs, String... args){
+    JPF[] jpfs = assertSameEndStates(testMethod, referenceArgs, args);
+
+    assertEquals("different number of states", jpfs[0].getVM().getStateSet().size(),
+                 jpfs[1].getVM().getStateSet().size());
+    return jpfs;
+  }
+
   /**
    * NOTE: this uses the exception class name because it might be an
    * exception type that is only known to JPF (i.e. not in the native classpath)
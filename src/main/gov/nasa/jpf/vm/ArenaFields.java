@@ -0,0 +1,233 @@
+/*
+ * Copyright (C) 2014, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ * All rights reserved.
+ *
+ * The Java Pathfinder core (jpf-core) platform is licensed under the
+ * Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0. 
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+package gov.nasa.jpf.vm;
+
+import gov.nasa.jpf.util.HashData;
+import gov.nasa.jpf.util.IntVector;
+
+import java.util.Arrays;
+
+/**
+ * value container for non-array classes that stores its values in a block of
+ * a shared FieldsArena page instead of its own int[], i.e. neither creating
+ * nor cloning an object allocates a value array
+ */
+public class ArenaFields extends Fields {
+
+  protected final FieldsArena arena;
+
+  // where our values are stored, set by the arena
+  protected int[] page;
+  protected int offset;
+  protected final int size;
+
+  public ArenaFields (FieldsArena arena, int dataSize) {
+    this.arena = arena;
+    size = dataSize;
+
+    arena.allocate(this, dataSize);
+    Arrays.fill(page, offset, offset + dataSize, 0);
+  }
+
+  /**
+   * note this creates a copy of our values
+   */
+  @Override
+  public int[] asFieldSlots() {
+    return Arrays.copyOfRange(page, offset, offset + size);
+  }
+
+  @Override
+  public int getHeapSize () {
+    return size*4;
+  }
+
+  public int size () {
+    return size;
+  }
+
+  // our low level getters and setters
+  @Override
+  public int getIntValue (int index) {
+    return page[offset + index];
+  }
+
+  @Override
+  public int getReferenceValue (int index) {
+    return page[offset + index];
+  }
+
+  @Override
+  public long getLongValue (int index) {
+    int i = offset + index;
+    return Types.intsToLong(page[i + 1], page[i]);
+  }
+
+  @Override
+  public boolean getBooleanValue (int index) {
+    return Types.intToBoolean(page[offset + index]);
+  }
+
+  @Override
+  public byte getByteValue (int index) {
+    return (byte) page[offset + index];
+  }
+
+  @Override
+  public char getCharValue (int index) {
+    return (char) page[offset + index];
+  }
+
+  @Override
+  public short getShortValue (int index) {
+    return (short) page[offset + index];
+  }
+
+  @Override
+  public float getFloatValue (int index) {
+    return Types.intToFloat(page[offset + index]);
+  }
+
+  @Override
+  public double getDoubleValue (int index) {
+    int i = offset + index;
+    return Types.intsToDouble( page[i + 1], page[i]);
+  }
+
+  //--- the field modifier methods (both instance and static)
+
+  @Override
+  public void setReferenceValue (int index, int newValue) {
+    page[offset + index] = newValue;
+  }
+
+  @Override
+  public void setBooleanValue (int index, boolean newValue) {
+    page[offset + index] = newValue ? 1 : 0;
+  }
+
+  @Override
+  public void setByteValue (int index, byte newValue) {
+    page[offset + index] = newValue;
+  }
+
+  @Override
+  public void setCharValue (int index, char newValue) {
+    page[offset + index] = newValue;
+  }
+
+  @Override
+  public void setShortValue (int index, short newValue) {
+    page[offset + index] = newValue;
+  }
+
+  @Override
+  public void setFloatValue (int index, float newValue) {
+    page[offset + index] = Types.floatToInt(newValue);
+  }
+
+  @Override
+  public void setIntValue (int index, int newValue) {
+    page[offset + index] = newValue;
+  }
+
+  @Override
+  public void setLongValue (int index, long newValue) {
+    int i = offset + index;
+    page[i] = Types.hiLong(newValue);
+    page[i + 1] = Types.loLong(newValue);
+  }
+
+  @Override
+  public void setDoubleValue (int index, double newValue) {
+    int i = offset + index;
+    page[i] = Types.hiDouble(newValue);
+    page[i + 1] = Types.loDouble(newValue);
+  }
+
+  /**
+   * Creates a clone, which gets a new block in the same arena
+   */
+  @Override
+  public ArenaFields clone () {
+    ArenaFields f = (ArenaFields) cloneFields();
+    arena.allocate(f, size);
+    System.arraycopy(page, offset, f.page, f.offset, size);
+    return f;
+  }
+
+  @Override
+  public boolean equals (Object o) {
+    if (o instanceof ArenaFields) {
+      ArenaFields other = (ArenaFields) o;
+
+      int l = size;
+      if (l != other.size) {
+        return false;
+      }
+
+      int[] p1 = page;
+      int[] p2 = other.page;
+      for (int i = offset, j = other.offset, iEnd = offset + l; i < iEnd; i++, j++) {
+        if (p1[i] != p2[j]) {
+          return false;
+        }
+      }
+
+      return super.compareAttrs(other);
+
+    } else {
+      return false;
+    }
+  }
+
+  // serialization interface
+  @Override
+  public void appendTo(IntVector v) {
+    v.append(page, offset, size);
+  }
+
+  @Override
+  public void hash (HashData hd) {
+    int[] p = page;
+    for (int i = offset, iEnd = offset + size; i < iEnd; i++) {
+      hd.add(p[i]);
+    }
+  }
+
+  @Override
+  public String toString () {
+    StringBuilder sb = new StringBuilder("ArenaFields[");
+
+    sb.append("values=");
+    sb.append('[');
+
+    for (int i = 0; i < size; i++) {
+      if (i != 0) {
+        sb.append(',');
+      }
+
+      sb.append(page[offset + i]);
+    }
+
+    sb.append(']');
+    sb.append(']');
+
+    return sb.toString();
+  }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright (C) 2014, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ * All rights reserved.
+ *
+ * The Java Pathfinder core (jpf-core) platform is licensed under the
+ * Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0. 
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+package gov.nasa.jpf.vm;
+
+import gov.nasa.jpf.Config;
+
+/**
+ * a FieldsFactory that stores the values of objects and classes in a
+ * FieldsArena, which reduces the number of objects and the GC load for
+ * programs that allocate many small objects.
+ *
+ * Arrays are not stored in the arena since they use primitive typed value
+ * arrays, which are also directly accessed by native peers. Objects with more
+ * fields than fit into an arena page fall back to NamedFields.
+ *
+ * Blocks are released when the DefaultBacktracker backtracks, which requires
+ * that Fields objects are not shared between states
+ */
+public class ArenaFieldsFactory extends DefaultFieldsFactory {
+
+  protected FieldsArena arena;
+
+  public ArenaFieldsFactory (Config conf) {
+    arena = new FieldsArena();
+  }
+
+  public FieldsArena getArena() {
+    return arena;
+  }
+
+  @Override
+  public Fields createInstanceFields (ClassInfo ci) {
+    int dataSize = ci.getInstanceDataSize();
+    if (dataSize <= FieldsArena.PAGE_SIZE) {
+      return new ArenaFields(arena, dataSize);
+    } else {
+      return new NamedFields(dataSize);
+    }
+  }
+
+  @Override
+  public Fields createStaticFields (ClassInfo ci) {
+    int dataSize = ci.getStaticDataSize();
+    if (dataSize <= FieldsArena.PAGE_SIZE) {
+      return new ArenaFields(arena, dataSize);
+    } else {
+      return new NamedFields(dataSize);
+    }
+  }
+}
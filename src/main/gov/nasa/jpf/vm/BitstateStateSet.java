@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2014, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ * All rights reserved.
+ *
+ * The Java Pathfinder core (jpf-core) platform is licensed under the
+ * Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0. 
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+package gov.nasa.jpf.vm;
+
+import gov.nasa.jpf.Config;
+
+/**
+ * a SPIN style bitstate hashing ("supertrace") StateSet. Each state sets k
+ * bits in a fixed size bit array, and a state is considered as visited if all
+ * of its bits are already set. This only uses a fixed amount of memory
+ * (2^vm.storage.bitstate.bits bits), at the cost of missing new states if
+ * their bits have all been set by other states.
+ *
+ * The k bit positions are derived from the 64 bit Jenkins hash of the state
+ * by means of double hashing (h1 + i*h2), which is as good as k independent
+ * hash functions for our purposes (see Kirsch and Mitzenmacher: "Less
+ * Hashing, Same Performance: Building a Better Bloom Filter").
+ *
+ * The omission probability is estimated from the fill ratio of the bit array
+ * at the time each new state is stored.
+ *
+ * Since we don't keep track of which states set which bits, revisited states
+ * get the id of a visited state that is derived from their hash (see
+ * getVisitedId()). This is only the id of the same state if there was no
+ * collision, and can change as we add new states
+ */
+public class BitstateStateSet extends SerializingStateSet implements LossyStateSet {
+
+  protected long[] bits;
+  protected long mask;
+  protected int k;
+
+  protected long nSetBits;
+  protected int lastStateId = -1;
+
+  // sum of the probabilities that a new state was mistaken for a visited one
+  protected double expectedOmissions;
+
+  public BitstateStateSet (Config conf){
+    int log2Bits = conf.getInt("vm.storage.bitstate.bits", 30);
+    log2Bits = Math.max( Math.min(log2Bits, 36), 6); // max long[] size
+
+    k = Math.max( conf.getInt("vm.storage.bitstate.hashes", 3), 1);
+
+    bits = new long[1 << (log2Bits - 6)];
+    mask = (1L << log2Bits) - 1;
+  }
+
+  @Override
+  public int size () {
+    return lastStateId + 1;
+  }
+
+  public long getNumberOfBits(){
+    return mask + 1;
+  }
+
+  public long getNumberOfSetBits(){
+    return nSetBits;
+  }
+
+  @Override
+  public double getOmissionProbability (){
+    return 1.0 - Math.exp(-expectedOmissions);
+  }
+
+  static long mix64 (long h){
+    h ^= (h >>> 33);
+    h *= 0xff51afd7ed558ccdL;
+    h ^= (h >>> 33);
+    h *= 0xc4ceb9fe1a85ec53L;
+    h ^= (h >>> 33);
+    return h;
+  }
+
+  @Override
+  protected int add (int[] state) {
+    return add( JenkinsStateSet.longLookup3Hash(state));
+  }
+
+  public int add (long hash){
+    long h2 = mix64(hash) | 1;
+    double fill = (double)nSetBits / (mask + 1);
+    boolean isNew = false;
+
+    long h = hash;
+    for (int i=0; i<k; i++){
+      long idx = h & mask;
+      int wi = (int)(idx >>> 6);
+      long bit = 1L << (idx & 63);
+
+      long w = bits[wi];
+      if ((w & bit) == 0){
+        bits[wi] = w | bit;
+        nSetBits++;
+        isNew = true;
+      }
+
+      h += h2;
+    }
+
+    if (isNew){
+      expectedOmissions += Math.pow(fill, k);
+      return ++lastStateId;
+    } else {
+      return getVisitedId(hash);
+    }
+  }
+
+  /**
+   * the id we report for a matched state, which has to be one of the visited
+   * states (ids >= size() are new states, and UNKNOWN_ID is the init state)
+   */
+  protected int getVisitedId (long hash){
+    return (int) Long.remainderUnsigned(hash, lastStateId + 1);
+  }
+}
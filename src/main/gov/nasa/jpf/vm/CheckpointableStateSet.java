@@ -0,0 +1,39 @@
+/*
+ * Copyright (C) 2014, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ * All rights reserved.
+ *
+ * The Java Pathfinder core (jpf-core) platform is licensed under the
+ * Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0. 
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+package gov.nasa.jpf.vm;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * a StateSet that can be written to and read from search checkpoints, so
+ * that a resumed search doesn't re-explore states
+ */
+public interface CheckpointableStateSet extends StateSet {
+
+  /**
+   * write the first 'nStates' states (in order of their ids)
+   */
+  void store (DataOutput out, int nStates) throws IOException;
+
+  /**
+   * add the states that were written by store()
+   */
+  void load (DataInput in) throws IOException;
+}
@@ -161,6 +161,14 @@ public class ClassInfo extends InfoObject implements Iterable<MethodInfo>, Gener
    */
   protected Map<String, MethodInfo> methods;
 
+  /**
+   * the resolved virtual method table (flattened, see getVTable()), and the
+   * interface method tables that have been requested so far (see getITable())
+   */
+  protected MethodInfo[] vtable;
+  protected ClassInfo[] itableIfcs;
+  protected MethodInfo[][] itables;
+
   /**
    * our instance fields.
    * Note these are NOT flattened, idx.e. only contain the declared ones
@@ -382,6 +390,7 @@ public class ClassInfo extends InfoObject implements Iterable<MethodInfo>, Gener
   public void setMethods (MethodInfo[] newMethods) {
     if (newMethods != null && newMethods.length > 0) {
       methods = new LinkedHashMap<String, MethodInfo>();
+      resetDispatchTables();
 
       for (int i = 0; i < newMethods.length; i++) {
         setMethod( newMethods[i]);
@@ -551,6 +560,7 @@ public class ClassInfo extends InfoObject implements Iterable<MethodInfo>, Gener
     checkUnresolvedNativeMethods();
 
     linkFields(); // computes field offsets
+    linkMethods(); // computes the vtable, after the native peer has replaced its methods
     
     setAssertionStatus();
     processJPFConfigAnnotation();
@@ -1088,6 +1098,112 @@ public class ClassInfo extends InfoObject implements Iterable<MethodInfo>, Gener
   }
 
   
+  //--- method dispatch tables
+
+  protected void linkMethods() {
+    getVTable();
+  }
+
+  protected void resetDispatchTables() {
+    vtable = null;
+    itableIfcs = null;
+    itables = null;
+  }
+
+  /**
+   * return the virtual method table of this class, which contains all non-constructor
+   * methods that are visible from here (i.e. getMethod(uniqueName,true) would return),
+   * indexed by MethodInfo.getVTableIndex(). Methods get the index of the (same uniqueName)
+   * method they override, hence the index of a method is valid for all subclasses.
+   *
+   * This is computed when we link the class, or on demand for ClassInfos that are not
+   * created from classfiles
+   */
+  public MethodInfo[] getVTable() {
+    if (vtable == null) {
+      vtable = createVTable();
+    }
+
+    return vtable;
+  }
+
+  protected MethodInfo[] createVTable() {
+    ArrayList<MethodInfo> table = new ArrayList<MethodInfo>();
+
+    if (superClass != null) {
+      for (MethodInfo mi : superClass.getVTable()) {
+        table.add(mi);
+      }
+    }
+
+    for (MethodInfo mi : methods.values()) {
+      if (!mi.isInitOrClinit()) {
+        MethodInfo miOverridden = (superClass != null) ? superClass.getMethod(mi.getUniqueName(), true) : null;
+
+        if (miOverridden != null && miOverridden.vtableIndex >= 0) {
+          mi.vtableIndex = miOverridden.vtableIndex;
+          table.set(mi.vtableIndex, mi);
+        } else {
+          mi.vtableIndex = table.size();
+          table.add(mi);
+        }
+      }
+    }
+
+    return table.toArray(new MethodInfo[table.size()]);
+  }
+
+  /**
+   * return the table to dispatch calls of interface methods on instances of this class.
+   * The table is indexed by the vtable indices of the interface methods, entries contain
+   * what getMethod(uniqueName,true) or getDefaultMethod(uniqueName) return, or null if
+   * the method cannot be resolved (e.g. because of conflicting default methods).
+   * Return null if we don't implement this interface.
+   *
+   * Since most interfaces are never used for calls, we compute these on demand
+   */
+  public MethodInfo[] getITable (ClassInfo ifc) {
+    ClassInfo[] ifcs = itableIfcs;
+    if (ifcs != null) {
+      for (int i=0; i<ifcs.length; i++) {
+        if (ifcs[i] == ifc) {
+          return itables[i];
+        }
+      }
+    }
+
+    if (!getAllInterfaces().contains(ifc)) {
+      return null;
+    }
+
+    MethodInfo[] ifcTable = ifc.getVTable();
+    MethodInfo[] table = new MethodInfo[ifcTable.length];
+
+    for (int i=0; i<ifcTable.length; i++) {
+      String uniqueName = ifcTable[i].getUniqueName();
+      MethodInfo mi = getMethod(uniqueName, true);
+
+      if (mi == null) {
+        try {
+          mi = getDefaultMethod(uniqueName);
+        } catch (ClassChangeException ccx) {
+          // leave it null, this has to be reported by the caller
+        }
+      }
+      table[i] = mi;
+    }
+
+    if (ifcs == null) {
+      itableIfcs = new ClassInfo[] { ifc };
+      itables = new MethodInfo[][] { table };
+    } else {
+      itableIfcs = Misc.appendElement(ifcs, ifc);
+      itables = Misc.appendElement(itables, table);
+    }
+
+    return table;
+  }
+
   public MethodInfo getDefaultMethod (String uniqueName) {
     MethodInfo mi = null;
     
@@ -1925,7 +2041,21 @@ public class ClassInfo extends InfoObject implements Iterable<MethodInfo>, Gener
    * be careful, this replaces or adds MethodInfos dynamically
    */
   public MethodInfo putDeclaredMethod (MethodInfo mi){
-    return methods.put(mi.getUniqueName(), mi);
+    MethodInfo miOld = methods.put(mi.getUniqueName(), mi);
+
+    if (vtable != null) {
+      if (miOld != null && miOld.vtableIndex >= 0) {
+        // note this does not update the vtables of already linked subclasses
+        mi.vtableIndex = miOld.vtableIndex;
+        vtable[mi.vtableIndex] = mi;
+      } else {
+        vtable = null;
+      }
+    }
+    itableIfcs = null;
+    itables = null;
+
+    return miOld;
   }
 
   public MethodInfo[] getDeclaredMethodInfos() {
@@ -2296,6 +2426,10 @@ public class ClassInfo extends InfoObject implements Iterable<MethodInfo>, Gener
     }
   }
 
+  public static FieldsFactory getFieldsFactory() {
+    return fieldsFactory;
+  }
+
   Fields createArrayFields (String type, int nElements, int typeSize, boolean isReferenceArray) {
     return fieldsFactory.createArrayFields( type, this,
                                             nElements, typeSize, isReferenceArray);
@@ -2560,6 +2694,7 @@ public class ClassInfo extends InfoObject implements Iterable<MethodInfo>, Gener
       if (methods != Collections.EMPTY_MAP){
         ci.methods = (Map<String, MethodInfo>)((HashMap<String, MethodInfo>) methods).clone();
       }
+      ci.resetDispatchTables(); // computed on demand for the cloned methods
 
       for(Map.Entry<String, MethodInfo> e: ci.methods.entrySet()) {
         MethodInfo mi = e.getValue();
@@ -465,6 +465,22 @@ public class ClassLoaderInfo
     return resolvedClasses.get(cname);
   }
 
+  /**
+   * lookup a class that was already resolved by this loader or one of its
+   * parents, i.e. this does not load classes (used by static analyses)
+   *
+   * @return null if class was not resolved yet
+   */
+  public ClassInfo findResolvedClassInfo (String cname) {
+    for (ClassLoaderInfo cl = this; cl != null; cl = cl.parent) {
+      ClassInfo ci = cl.resolvedClasses.get(cname);
+      if (ci != null) {
+        return ci;
+      }
+    }
+    return null;
+  }
+
   protected void addResolvedClass(ClassInfo ci) {
     resolvedClasses.put(ci.getName(), ci);
   }
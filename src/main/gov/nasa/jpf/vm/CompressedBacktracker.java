@@ -0,0 +1,279 @@
+/*
+ * Copyright (C) 2014, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ * All rights reserved.
+ *
+ * The Java Pathfinder core (jpf-core) platform is licensed under the
+ * Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0. 
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+package gov.nasa.jpf.vm;
+
+import gov.nasa.jpf.Config;
+import gov.nasa.jpf.JPF;
+import gov.nasa.jpf.JPFException;
+import gov.nasa.jpf.report.Reporter;
+import gov.nasa.jpf.report.Statistics;
+import gov.nasa.jpf.util.ImmutableList;
+import gov.nasa.jpf.util.JPFLogger;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+
+/**
+ * a Backtracker for very deep searches that only keeps every n-th KernelState
+ * memento on the backtrack stack (vm.backtracker.interval). The SystemState
+ * entries are small and still kept for each state, since they refer to the
+ * ChoiceGenerators of the path.
+ *
+ * If we backtrack to a state without KernelState, it is reconstructed by
+ * restoring the nearest preceding one and re-executing the transitions in
+ * between, with the current choices of their ChoiceGenerators (which did not
+ * advance since they are still on the path). Listeners are notified about the
+ * instructions of these transitions, and the CGs they register again (which
+ * are dropped afterwards). The Statistics are reset to their values before the
+ * replay, i.e. re-executed transitions are not counted twice.
+ *
+ * Each time there is less than vm.backtracker.min_free memory left (default
+ * is twice search.min_free), the interval is doubled up to
+ * vm.backtracker.max_interval, and the KernelStates on the stack that are not
+ * at a multiple of the new interval are dropped.
+ *
+ * Replayed transitions must not create threads, since the ChoiceGenerators of
+ * the path refer to the ThreadInfo objects of the original execution. We
+ * therefore always keep the KernelState of states that were entered with a
+ * change of the ThreadList.
+ *
+ * Replaying requires that transitions only depend on backtracked state, which
+ * e.g. does not hold for GlobalSharednessPolicy, Verify counters or listeners
+ * that change the program state based on their own (not backtracked) data.
+ * Replayed transitions that do not end with the same CG as the original one
+ * cause a JPFException.
+ *
+ * Since replayed transitions allocate new blocks, this pins a FieldsArena,
+ * i.e. blocks are not released on backtrack. Backtracking is only supported up
+ * to a restored RestorableState
+ */
+public class CompressedBacktracker<KState> extends DefaultBacktracker<KState> {
+
+  static JPFLogger log = JPF.getLogger("gov.nasa.jpf.vm.CompressedBacktracker");
+
+  // how often we check memory (in number of pushed states)
+  static final int CHECK_MASK = 0x3f;
+
+  protected VM vm;
+
+  // number of states on the stack
+  protected int depth;
+
+  // we keep a KernelState for each state with (depth % interval == 0)
+  protected int interval;
+  protected int maxInterval;
+  protected long minFree;
+
+  // depths at which we have to keep the KernelState regardless of interval
+  protected BitSet forced = new BitSet();
+
+  // the ThreadList array of the last pushed or restored state, to detect
+  // transitions that added or removed threads (ThreadList always copies)
+  protected ThreadInfo[] lastThreads;
+
+  // set if we backtracked, i.e. the next pushed state was pushed before and
+  // keeps its forced status
+  protected boolean reentered;
+
+  //--- statistics
+  protected long nReconstructed;
+  protected long nReplayedTransitions;
+
+  @Override
+  public void attach(VM vm) {
+    super.attach(vm);
+    this.vm = vm;
+
+    Config config = vm.getConfig();
+    interval = Math.max(1, config.getInt("vm.backtracker.interval", 16));
+    maxInterval = Math.max(interval, config.getInt("vm.backtracker.max_interval", 1024));
+    minFree = config.getMemorySize("vm.backtracker.min_free", 2 * config.getMemorySize("search.min_free", 1024<<10));
+
+    if (fieldsArena != null){
+      fieldsArena.pin();
+      fieldsArena = null;
+    }
+  }
+
+  public int getInterval() {
+    return interval;
+  }
+
+  public long getNumberOfReconstructedStates() {
+    return nReconstructed;
+  }
+
+  public long getNumberOfReplayedTransitions() {
+    return nReplayedTransitions;
+  }
+
+  @Override
+  public void pushKernelState () {
+    KState data = null;
+    ThreadInfo[] threads = vm.getThreadList().threads;
+    boolean force = (threads != lastThreads) || (reentered && forced.get(depth));
+
+    forced.set(depth, force);
+    lastThreads = threads;
+    reentered = false;
+
+    if (force || depth % interval == 0){
+      data = restorer.getRestorableData();
+    } else {
+      // without a memento, frames and objects don't get frozen and are modified
+      // in place, i.e. we don't get the change notification that invalidates
+      // cached serializer and restorer data when they are cloned
+      vm.kernelStateChanged();
+    }
+
+    kstack = new ImmutableList<KState>(data, kstack);
+    depth++;
+
+    if ((depth & CHECK_MASK) == 0 && interval < maxInterval){
+      checkMemory();
+    }
+  }
+
+  @Override
+  protected void backtrackKernelState() {
+    KState data = kstack.head;
+
+    if (data != null){
+      restorer.restore(data);
+    } else {
+      reconstructKernelState();
+    }
+
+    kstack = kstack.tail;
+    depth--;
+
+    lastThreads = vm.getThreadList().threads;
+    reentered = true;
+  }
+
+  /**
+   * restore the nearest KernelState below the stack top, and re-execute the
+   * transitions that lead from there to the top state. Note the sstack still
+   * has the entry of the transition we backtrack from
+   */
+  protected void reconstructKernelState() {
+    ArrayList<Object> transitions = new ArrayList<Object>();
+    ImmutableList<KState> kl = kstack;
+    ImmutableList<Object> sl = sstack.tail;
+
+    while (kl.head == null){ // the bottom state always has one
+      transitions.add(sl.head);
+      kl = kl.tail;
+      sl = sl.tail;
+    }
+
+    restorer.restore(kl.head);
+
+    Statistics stat = getStatistics();
+    long[] statData = (stat != null) ? stat.getData() : null;
+
+    for (int i=transitions.size()-1; i>=0; i--){
+      if (!ss.replayTransition(vm, transitions.get(i))){
+        throw new JPFException("replayed transition diverged from original execution");
+      }
+
+      // same as VM.forward(), otherwise we could end up with different object refs
+      if (vm.runGc && !vm.hasPendingException()) {
+        if (ss.gcIfNeeded()) {
+          vm.processFinalizers();
+        }
+      }
+    }
+
+    if (statData != null){ // we don't count re-executed transitions
+      stat.resetData(statData, vm);
+    }
+
+    nReconstructed++;
+    nReplayedTransitions += transitions.size();
+  }
+
+  protected Statistics getStatistics() {
+    JPF jpf = vm.getJPF();
+    if (jpf != null){
+      Reporter reporter = jpf.getReporter();
+      if (reporter != null){
+        return reporter.getStatistics();
+      }
+    }
+    return null;
+  }
+
+  //--- memory pressure
+
+  protected void checkMemory() {
+    Runtime rt = Runtime.getRuntime();
+    long free = rt.maxMemory() - rt.totalMemory() + rt.freeMemory();
+
+    if (free < minFree){
+      interval = Math.min(2 * interval, maxInterval);
+      dropKernelStates();
+
+      log.info("low memory, keeping every ", interval, "th KernelState");
+    }
+  }
+
+  /**
+   * remove all KernelStates from the stack that are not at a multiple of the
+   * current interval, and were not entered with a ThreadList change
+   */
+  @SuppressWarnings("unchecked")
+  protected void dropKernelStates() {
+    Object[] data = new Object[depth];
+    ImmutableList<KState> kl = kstack;
+    for (int i=depth-1; i>=0; i--){
+      data[i] = kl.head;
+      kl = kl.tail;
+    }
+
+    ImmutableList<KState> list = null;
+    for (int i=0; i<depth; i++){
+      KState d = (i % interval == 0 || forced.get(i)) ? (KState)data[i] : null;
+      list = new ImmutableList<KState>( d, list);
+    }
+    kstack = list;
+  }
+
+  //--- restorable states
+
+  class CompressedRestorableState extends RestorableStateImpl {
+    @Override
+    void restore() {
+      super.restore();
+
+      // the CGs of the path below might have advanced since, which would
+      // break reconstruction of its KernelStates
+      kstack = null;
+      sstack = null;
+      depth = 0;
+      forced.clear();
+      lastThreads = null;
+      reentered = false;
+    }
+  }
+
+  @Override
+  public RestorableState getRestorableState() {
+    return new CompressedRestorableState();
+  }
+}
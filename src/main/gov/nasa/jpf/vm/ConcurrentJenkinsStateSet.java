@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2014, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ * All rights reserved.
+ *
+ * The Java Pathfinder core (jpf-core) platform is licensed under the
+ * Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0. 
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+package gov.nasa.jpf.vm;
+
+import gov.nasa.jpf.Config;
+import gov.nasa.jpf.util.ConcurrentFingerprintTable;
+import gov.nasa.jpf.util.FingerprintTable;
+
+/**
+ * a StateSet that stores Jenkins hashes of serialized states in a lock free
+ * ConcurrentFingerprintTable, i.e. the table can be shared between several
+ * threads without a global lock or a stop-the-world rehash. Since id
+ * reservation is per instance, each thread has to use its own
+ * ConcurrentJenkinsStateSet on top of the shared table.
+ *
+ * The VM obtains the id of the next new state through size() before it
+ * calls addCurrent(), hence we reserve the id in advance and only consume it
+ * once the state turns out to be new. If this instance is the only user of
+ * the table, state ids are consecutive as with JenkinsStateSet
+ */
+public class ConcurrentJenkinsStateSet extends SerializingStateSet {
+
+  protected FingerprintTable fingerprints;
+  protected int reservedId = -1;
+
+  public ConcurrentJenkinsStateSet (Config conf){
+    this( new ConcurrentFingerprintTable( conf.getInt("vm.storage.segments", 64),
+                                          conf.getInt("vm.storage.segment_size", 4096)));
+  }
+
+  protected ConcurrentJenkinsStateSet (FingerprintTable fingerprints){
+    this.fingerprints = fingerprints;
+  }
+
+  public FingerprintTable getFingerprintTable(){
+    return fingerprints;
+  }
+
+  @Override
+  public int size () {
+    if (reservedId < 0){
+      reservedId = fingerprints.reserveId();
+    }
+    return reservedId;
+  }
+
+  @Override
+  protected int add (int[] state) {
+    return add( JenkinsStateSet.longLookup3Hash(state));
+  }
+
+  public int add (long hash){
+    int newId = size();
+
+    int id = fingerprints.add(hash, newId);
+    if (id == newId){
+      reservedId = -1;
+    }
+
+    return id;
+  }
+}
@@ -28,11 +28,19 @@ public class DefaultBacktracker<KState> implements Backtracker {
   
   protected SystemState ss;
   protected StateRestorer<KState> restorer;
+
+  /** if Fields are stored in an arena, blocks allocated after a state are released when we backtrack to it */
+  protected FieldsArena fieldsArena;
   
   @Override
   public void attach(VM vm) {
     ss = vm.getSystemState();
     restorer = vm.getRestorer();
+
+    FieldsFactory fieldsFactory = ClassInfo.getFieldsFactory();
+    if (fieldsFactory instanceof ArenaFieldsFactory) {
+      fieldsArena = ((ArenaFieldsFactory)fieldsFactory).getArena();
+    }
   }
 
   //--- the backtrack support (depth first only)
@@ -42,6 +50,10 @@ public class DefaultBacktracker<KState> implements Backtracker {
     kstack = kstack.tail;
     
     restorer.restore(data);
+
+    if (fieldsArena != null) {
+      fieldsArena.releaseToLastMark();
+    }
   }
 
   protected void backtrackSystemState() {
@@ -78,6 +90,10 @@ public class DefaultBacktracker<KState> implements Backtracker {
   @Override
   public void pushKernelState () {
     kstack = new ImmutableList<KState>(restorer.getRestorableData(),kstack);
+
+    if (fieldsArena != null) {
+      fieldsArena.pushMark();
+    }
   }
   
   /**
@@ -121,6 +137,10 @@ public class DefaultBacktracker<KState> implements Backtracker {
   
   @Override
   public RestorableState getRestorableState() {
+    if (fieldsArena != null) {
+      // the state can be restored after we backtracked below it
+      fieldsArena.pin();
+    }
     return new RestorableStateImpl();
   }
 }
@@ -0,0 +1,327 @@
+/*
+ * Copyright (C) 2014, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ * All rights reserved.
+ *
+ * The Java Pathfinder core (jpf-core) platform is licensed under the
+ * Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0. 
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+package gov.nasa.jpf.vm;
+
+import gov.nasa.jpf.Config;
+import gov.nasa.jpf.util.IntVector;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * an OVHeap that does not store and restore the whole heap, but only the
+ * ElementInfos that were changed since the last store.
+ *
+ * The heap keeps an undo log of all ElementInfo slots that are set (new
+ * objects), replaced (defrozen clones of stored objects) or removed (gc'ed
+ * objects) during the current transition. Upon store, only the logged
+ * ElementInfos get frozen, and the memento keeps their before/after values.
+ * Since all other ElementInfos of the heap are still the frozen ones of the
+ * previous memento, mementos form a tree of deltas. Restoring a memento undoes
+ * the changes from the current state up to the common ancestor, and redoes
+ * the ones from there to the restored state, i.e. store/restore costs are
+ * proportional to the number of changed objects, not the heap size.
+ *
+ * The locking info of threads (which is not stored) has to be updated from
+ * all locked objects of a restored state, which is why mementos also keep the
+ * refs of objects that are locked or have blocked threads. This set is
+ * usually small and shared between mementos if it doesn't change.
+ *
+ * NOTE - this relies on serializers not requiring to reset sids of the
+ * objects that were not restored (see CFSerializer)
+ */
+public class DeltaHeap extends OVHeap {
+
+  static final int[] EMPTY_REFS = new int[0];
+
+  //--- state management
+  static class DeltaMemento extends GenericSGOIDHeapMemento {
+    DeltaMemento parent;
+    int depth;
+
+    // the changes that lead from the parent state to this one
+    int[] refs;
+    ElementInfo[] before;
+    ElementInfo[] after;
+
+    // objects that are locked or have threads waiting/blocked on them
+    int[] lockRefs;
+
+    int nLiveObjects;
+
+    DeltaMemento (DeltaHeap heap){
+      super(heap);
+
+      parent = heap.current;
+      depth = (parent != null) ? parent.depth + 1 : 0;
+      nLiveObjects = heap.nLiveObjects;
+
+      heap.storeChanges(this);
+      heap.current = this;
+    }
+
+    @Override
+    public Heap restore (Heap inSitu) {
+      super.restore( inSitu);
+
+      DeltaHeap heap = (DeltaHeap)inSitu;
+      heap.restoreTo(this);
+
+      return heap;
+    }
+  }
+
+  //--- instance data
+
+  // the memento of the state the pending changes are based on
+  protected DeltaMemento current;
+
+  // the pending changes of the current transition, in order
+  protected int[] changedRefs = new int[256];
+  protected ElementInfo[] changedEis = new ElementInfo[256];
+  protected int nChanges;
+  protected BitSet changed = new BitSet();
+
+  // restore buffer, refs of ElementInfos that have to be reset
+  protected IntVector restored = new IntVector(256);
+
+
+  public DeltaHeap (Config config, KernelState ks){
+    super(config, ks);
+  }
+
+  //--- the undo log
+
+  /**
+   * record the ElementInfo of a ref before its first change in the current transition
+   */
+  protected void logChange (int ref, ElementInfo ei){
+    if (!changed.get(ref)){
+      changed.set(ref);
+
+      if (nChanges == changedRefs.length){
+        int newLen = nChanges * 2;
+        changedRefs = Arrays.copyOf(changedRefs, newLen);
+        changedEis = Arrays.copyOf(changedEis, newLen);
+      }
+
+      changedRefs[nChanges] = ref;
+      changedEis[nChanges] = ei;
+      nChanges++;
+    }
+  }
+
+  protected void clearChanges (){
+    for (int i=0; i<nChanges; i++){
+      changed.clear(changedRefs[i]);
+      changedEis[i] = null;
+    }
+    nChanges = 0;
+  }
+
+  static boolean isLocked (ElementInfo ei){
+    if (ei != null){
+      Monitor m = ei.getMonitor();
+      return (m.getLockingThread() != null) || m.hasLockedThreads();
+    } else {
+      return false;
+    }
+  }
+
+  /**
+   * turn the pending changes into a delta of the memento, and freeze the
+   * changed ElementInfos
+   */
+  protected void storeChanges (DeltaMemento m){
+    int n = nChanges;
+    int[] refs = Arrays.copyOf(changedRefs, n);
+    ElementInfo[] before = Arrays.copyOf(changedEis, n);
+    ElementInfo[] after = new ElementInfo[n];
+    int[] lockRefs = (m.parent != null) ? m.parent.lockRefs : EMPTY_REFS;
+    boolean locksChanged = false;
+
+    for (int i=0; i<n; i++){
+      ElementInfo ei = elementInfos.get(refs[i]);
+      if (ei != null){
+        ei.freeze();
+      }
+      after[i] = ei;
+
+      if (isLocked(ei) != (Arrays.binarySearch(lockRefs, refs[i]) >= 0)){
+        locksChanged = true;
+      }
+    }
+
+    if (locksChanged){
+      IntVector v = new IntVector(lockRefs.length + 4);
+      for (int i=0; i<lockRefs.length; i++){
+        int ref = lockRefs[i];
+        if (!changed.get(ref)){
+          v.add(ref);
+        }
+      }
+      for (int i=0; i<n; i++){
+        if (isLocked(after[i])){
+          v.add(refs[i]);
+        }
+      }
+      lockRefs = v.toArray();
+      Arrays.sort(lockRefs);
+    }
+
+    m.refs = refs;
+    m.before = before;
+    m.after = after;
+    m.lockRefs = lockRefs;
+
+    clearChanges();
+  }
+
+  protected void setRestored (int ref, ElementInfo ei){
+    if (ei != null){
+      elementInfos.set(ref, ei);
+    } else if (elementInfos.get(ref) != null){
+      elementInfos.remove(ref);
+    }
+    restored.add(ref);
+  }
+
+  protected void undo (DeltaMemento m){
+    int[] refs = m.refs;
+    ElementInfo[] before = m.before;
+    for (int i=refs.length-1; i>=0; i--){
+      setRestored( refs[i], before[i]);
+    }
+  }
+
+  protected void redo (DeltaMemento m){
+    int[] refs = m.refs;
+    ElementInfo[] after = m.after;
+    for (int i=0; i<refs.length; i++){
+      setRestored( refs[i], after[i]);
+    }
+  }
+
+  /**
+   * undo pending changes and mementos up to the common ancestor of the
+   * current and the target state, then redo from there to the target
+   */
+  protected void restoreTo (DeltaMemento target){
+    restored.clear();
+
+    for (int i=nChanges-1; i>=0; i--){
+      setRestored( changedRefs[i], changedEis[i]);
+    }
+    clearChanges();
+
+    DeltaMemento a = current;
+    DeltaMemento b = target;
+    DeltaMemento[] redoPath = new DeltaMemento[4];
+    int nRedo = 0;
+
+    while (a != b){
+      if (a != null && (b == null || a.depth >= b.depth)){
+        undo(a);
+        a = a.parent;
+      } else {
+        if (nRedo == redoPath.length){
+          redoPath = Arrays.copyOf(redoPath, nRedo*2);
+        }
+        redoPath[nRedo++] = b;
+        b = b.parent;
+      }
+    }
+
+    for (int i=nRedo-1; i>=0; i--){
+      redo(redoPath[i]);
+    }
+
+    //--- reset the restored ElementInfos (the same what ElementInfo.restorer does)
+    for (int i=0; i<restored.size(); i++){
+      ElementInfo ei = elementInfos.get(restored.get(i));
+      if (ei != null){
+        ei.attributes &= ElementInfo.ATTR_STORE_MASK;
+        ei.sid = 0;
+        ei.markUnchanged();
+      }
+    }
+    restored.clear();
+
+    //--- the threads were already restored, so we can update their locking info
+    int[] lockRefs = target.lockRefs;
+    for (int i=0; i<lockRefs.length; i++){
+      elementInfos.get(lockRefs[i]).updateLockingInfo();
+    }
+
+    nLiveObjects = target.nLiveObjects;
+    current = target;
+  }
+
+  //--- the container interface
+
+  @Override
+  protected void set (int index, ElementInfo ei) {
+    logChange( index, elementInfos.get(index));
+    elementInfos.set(index, ei);
+  }
+
+  @Override
+  public ElementInfo getModifiable (int ref) {
+    if (ref <= 0) {
+      return null;
+    } else {
+      ElementInfo ei = elementInfos.get(ref);
+
+      if (ei != null && ei.isFrozen()) {
+        logChange( ref, ei);
+        ei = ei.deepClone();
+        elementInfos.set(ref, ei);
+        addRemembered(ref);
+      }
+
+      return ei;
+    }
+  }
+
+  @Override
+  protected void remove (int ref) {
+    logChange( ref, elementInfos.get(ref));
+    elementInfos.remove(ref);
+  }
+
+  /**
+   * objects that were not restored can still have live bits of sweeps in
+   * other paths, so we have to set them for unmarked objects before
+   * they are used to detect stale references during sweep
+   */
+  @Override
+  protected void sweep () {
+    for (ElementInfo ei : this){
+      if (!ei.isMarked()){
+        ei.setAlive(!liveBitValue);
+      }
+    }
+
+    super.sweep();
+  }
+
+  @Override
+  public Memento<Heap> getMemento(){
+    return new DeltaMemento(this);
+  }
+}
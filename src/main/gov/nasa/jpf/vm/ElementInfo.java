@@ -139,6 +139,11 @@ public abstract class ElementInfo implements Cloneable {
   // by state-matching. Value interpretation depends on the configured Serializer
   protected int sid;
 
+  // cache for the serialized field values of the object, which is only valid
+  // while the object is frozen (i.e. cannot be modified anymore). Value
+  // interpretation depends on the configured Serializer
+  protected int[] cachedSerialization;
+
 
   // helpers for state storage/restore processing, to avoid explicit iterators on
   // respective ElementInfo containers (heap,statics)
@@ -161,9 +166,13 @@ public abstract class ElementInfo implements Cloneable {
     }
   }
   static Storer storer = new Storer();
-  
+
+  // if set, the Fields and Monitor objects of frozen ElementInfos are
+  // hash-consed, i.e. states with identical object contents share them
+  static CollapsePools.AllWeak frozenPools;
   
   static boolean init (Config config) {
+    frozenPools = config.getBoolean("vm.intern_frozen", false) ? new CollapsePools.AllWeak() : null;
     return true;
   }
 
@@ -267,6 +276,16 @@ public abstract class ElementInfo implements Cloneable {
     return sid;
   }
 
+  //--- cached serializations are only supposed to be used/set by the Serializer,
+  // and only for frozen objects
+  public int[] getCachedSerialization(){
+    return cachedSerialization;
+  }
+
+  public void setCachedSerialization (int[] data){
+    cachedSerialization = data;
+  }
+
   //--- cached mementos are only supposed to be used/set by the Restorer
 
   public Memento<ElementInfo> getCachedMemento(){
@@ -357,9 +376,25 @@ public abstract class ElementInfo implements Cloneable {
   //--- freeze handling
   
   public void freeze() {
+    if (frozenPools != null && (attributes & ATTR_IS_FROZEN) == 0){
+      internContents();
+    }
     attributes |= ATTR_IS_FROZEN;
   }
 
+  /**
+   * replace our Fields and Monitor with pooled instances of the same contents.
+   * This is safe since frozen objects are never modified in place - changing
+   * them requires a deepClone() first. ArenaFields are not shared because their
+   * storage gets released on backtrack
+   */
+  protected void internContents() {
+    if (!(fields instanceof ArenaFields)){
+      fields = frozenPools.poolFields(fields);
+    }
+    monitor = frozenPools.poolMonitor(monitor);
+  }
+
   public void defreeze() {
     attributes &= ~ATTR_IS_FROZEN;
   }
@@ -1669,6 +1704,7 @@ public abstract class ElementInfo implements Cloneable {
       // referencingThreads is at least subtree global, hence doesn't need to be cloned
       
       ei.cachedMemento = null;
+      ei.cachedSerialization = null;
       ei.defreeze();
       
       return ei;
@@ -2092,6 +2128,7 @@ public abstract class ElementInfo implements Cloneable {
 
   public void restoreFields(Fields f) {
     fields = f;
+    cachedSerialization = null;
   }
 
   /**
@@ -2117,6 +2154,7 @@ public abstract class ElementInfo implements Cloneable {
     this.attributes = attributes;
     this.fields = fields;
     this.monitor = monitor;
+    cachedSerialization = null;
   }
 
   public void restoreMonitor(Monitor m) {
@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2014, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ * All rights reserved.
+ *
+ * The Java Pathfinder core (jpf-core) platform is licensed under the
+ * Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0. 
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+package gov.nasa.jpf.vm;
+
+/**
+ * a paged int store for the values of ArenaFields, which avoids allocating an
+ * int[] per object and per copy-on-write clone.
+ *
+ * Blocks are allocated by bumping a position within fixed size pages, which
+ * are never freed but reused. The position is marked when a kernel state is
+ * pushed on the backtrack stack, and reset to this mark when we backtrack,
+ * since all blocks that were allocated in between are only referenced by
+ * states that are not reachable anymore (copy-on-write only allocates new
+ * blocks, stored Fields are never modified).
+ *
+ * This does not hold anymore once states are restored out of order (e.g. by
+ * HeuristicSearch), i.e. once the arena is pinned by a RestorableState, it
+ * never releases blocks again
+ */
+public class FieldsArena {
+
+  public static final int PAGE_BITS = 16;
+  public static final int PAGE_SIZE = 1 << PAGE_BITS;
+
+  protected int[][] pages = new int[16][];
+  protected int nPages;
+
+  protected int pageIdx;   // index of the current page
+  protected int pos;       // next free slot within the current page
+  protected int[] page;    // the current page
+
+  // positions of pushed marks (pageIdx << PAGE_BITS | pos)
+  protected int[] marks = new int[64];
+  protected int nMarks;
+
+  protected boolean isPinned;
+
+  //--- statistics
+  protected long nAllocations;
+  protected long nReleasedSlots;
+  protected int maxPages;
+
+  public FieldsArena (){
+    page = newPage();
+  }
+
+  protected int[] newPage (){
+    if (nPages == pages.length){
+      int[][] a = new int[pages.length * 2][];
+      System.arraycopy(pages, 0, a, 0, nPages);
+      pages = a;
+    }
+
+    int[] p = new int[PAGE_SIZE];
+    pages[nPages++] = p;
+    if (nPages > maxPages){
+      maxPages = nPages;
+    }
+    return p;
+  }
+
+  /**
+   * allocate a block of 'size' ints and store its page and offset in f. Note
+   * the block is not cleared, it might contain values of released blocks
+   */
+  public void allocate (ArenaFields f, int size){
+    if (pos + size > PAGE_SIZE){
+      pageIdx++;
+      if (pageIdx < nPages){
+        page = pages[pageIdx];
+      } else {
+        page = newPage();
+      }
+      pos = 0;
+    }
+
+    f.page = page;
+    f.offset = pos;
+    pos += size;
+
+    nAllocations++;
+  }
+
+  //--- backtracking support
+
+  public void pushMark (){
+    if (nMarks == marks.length){
+      int[] a = new int[marks.length * 2];
+      System.arraycopy(marks, 0, a, 0, nMarks);
+      marks = a;
+    }
+    marks[nMarks++] = (pageIdx << PAGE_BITS) | pos;
+  }
+
+  /**
+   * release all blocks that were allocated since the last mark, unless
+   * the arena is pinned
+   */
+  public void releaseToLastMark (){
+    if (nMarks > 0){
+      int mark = marks[--nMarks];
+
+      if (!isPinned){
+        int markPageIdx = mark >>> PAGE_BITS;
+        int markPos = mark & (PAGE_SIZE - 1);
+
+        nReleasedSlots += (long)(pageIdx - markPageIdx) * PAGE_SIZE + (pos - markPos);
+        pageIdx = markPageIdx;
+        pos = markPos;
+        page = pages[pageIdx];
+      }
+    }
+  }
+
+  /**
+   * blocks might be referenced by states that are not on the backtrack stack
+   * anymore, don't release them
+   */
+  public void pin (){
+    isPinned = true;
+  }
+
+  public boolean isPinned (){
+    return isPinned;
+  }
+
+  //--- statistics
+
+  public long getNumberOfAllocations (){
+    return nAllocations;
+  }
+
+  /**
+   * number of ints that were released (and reused) upon backtracking
+   */
+  public long getNumberOfReleasedSlots (){
+    return nReleasedSlots;
+  }
+
+  public int getMaxNumberOfPages (){
+    return maxPages;
+  }
+
+  /**
+   * number of ints that are currently allocated
+   */
+  public long getSize (){
+    return (long)pageIdx * PAGE_SIZE + pos;
+  }
+}
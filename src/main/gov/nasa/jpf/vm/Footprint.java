@@ -0,0 +1,192 @@
+/*
+ * Copyright (C) 2014, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ * All rights reserved.
+ *
+ * The Java Pathfinder core (jpf-core) platform is licensed under the
+ * Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0. 
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+package gov.nasa.jpf.vm;
+
+import java.util.Arrays;
+
+/**
+ * the set of heap locations (instance fields, static fields, array elements
+ * and locks) that were accessed by a transition, which is used to decide if
+ * two transitions of different threads are independent, i.e. can be executed
+ * in any order with the same result.
+ *
+ * Locations are encoded as sorted longs (objRef << 33 | idx << 1 | isWrite),
+ * with idx being the field index (STATIC_FIELD bit set for static fields), the
+ * array index, or LOCK for monitor operations.
+ *
+ * A 'global' footprint is dependent on everything. This is used for transitions
+ * that change thread states (start, terminate, block, wait, notify etc.), which
+ * we don't model as locations
+ */
+public class Footprint {
+
+  public static final long STATIC_FIELD = 0x80000000L;
+  public static final long LOCK = 0x7fffffffL;
+
+  public static final Footprint GLOBAL = new Footprint(new long[0], true);
+
+  protected final long[] accesses;
+  protected final boolean isGlobal;
+
+  protected Footprint (long[] accesses, boolean isGlobal){
+    this.accesses = accesses;
+    this.isGlobal = isGlobal;
+  }
+
+  public boolean isGlobal(){
+    return isGlobal;
+  }
+
+  public int size(){
+    return accesses.length;
+  }
+
+  /**
+   * are there conflicting accesses, i.e. to the same location, at least one of them a write
+   */
+  public boolean isDependent (Footprint other){
+    if (isGlobal || other.isGlobal){
+      return true;
+    }
+
+    long[] a = accesses;
+    long[] b = other.accesses;
+    int i=0, j=0;
+
+    while (i < a.length && j < b.length){
+      long la = a[i] >> 1; // arithmetic shift keeps the sort order
+      long lb = b[j] >> 1;
+      if (la < lb){
+        i++;
+      } else if (la > lb){
+        j++;
+      } else {
+        if (((a[i] | b[j]) & 1) != 0){
+          return true;
+        }
+        i++;
+        j++;
+      }
+    }
+
+    return false;
+  }
+
+  @Override
+  public String toString(){
+    if (isGlobal){
+      return "Footprint{global}";
+    }
+
+    StringBuilder sb = new StringBuilder("Footprint{");
+    for (int i=0; i<accesses.length; i++){
+      long a = accesses[i];
+      if (i > 0){
+        sb.append(',');
+      }
+      sb.append((a & 1) != 0 ? 'W' : 'R');
+      sb.append('@');
+      sb.append(a >> 33);
+      sb.append('.');
+
+      long idx = (a >> 1) & 0xffffffffL;
+      if (idx == LOCK){
+        sb.append("lock");
+      } else if ((idx & STATIC_FIELD) != 0){
+        sb.append("static#");
+        sb.append(idx & ~STATIC_FIELD);
+      } else {
+        sb.append(idx);
+      }
+    }
+    sb.append('}');
+    return sb.toString();
+  }
+
+  /**
+   * collects the accesses of the transition that is currently executed
+   */
+  public static class Recorder {
+    protected long[] accesses = new long[64];
+    protected int nAccesses;
+    protected boolean isGlobal;
+
+    public void reset(){
+      nAccesses = 0;
+      isGlobal = false;
+    }
+
+    /**
+     * the transition has effects that are not captured by its accesses
+     */
+    public void setGlobal(){
+      isGlobal = true;
+    }
+
+    protected void add (int ref, long idx, boolean isWrite){
+      if (nAccesses == accesses.length){
+        accesses = Arrays.copyOf(accesses, nAccesses * 2);
+      }
+      accesses[nAccesses++] = ((long)ref << 33) | (idx << 1) | (isWrite ? 1 : 0);
+    }
+
+    public void addFieldAccess (int objRef, int fieldIndex, boolean isWrite){
+      add( objRef, fieldIndex, isWrite);
+    }
+
+    public void addStaticFieldAccess (int classRef, int fieldIndex, boolean isWrite){
+      add( classRef, STATIC_FIELD | fieldIndex, isWrite);
+    }
+
+    public void addArrayAccess (int arrayRef, int index, boolean isWrite){
+      add( arrayRef, index, isWrite);
+    }
+
+    /**
+     * lock, unlock, wait and notify are all treated as writes
+     */
+    public void addLockAccess (int objRef){
+      add( objRef, LOCK, true);
+    }
+
+    /**
+     * sort and compact the recorded accesses, keeping only the write access if
+     * a location was read and written
+     */
+    public Footprint getFootprint (boolean isGlobal){
+      if (isGlobal || this.isGlobal){
+        return GLOBAL;
+      }
+
+      long[] a = Arrays.copyOf(accesses, nAccesses);
+      Arrays.sort(a);
+
+      int n = 0;
+      for (int i=0; i<a.length; i++){
+        long loc = a[i] >> 1;
+        if (n > 0 && (a[n-1] >> 1) == loc){
+          a[n-1] |= a[i]; // (read,write) are sorted, keep the write bit
+        } else {
+          a[n++] = a[i];
+        }
+      }
+
+      return new Footprint( (n < a.length) ? Arrays.copyOf(a, n) : a, false);
+    }
+  }
+}
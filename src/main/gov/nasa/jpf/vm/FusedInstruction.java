@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2014, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ * All rights reserved.
+ *
+ * The Java Pathfinder core (jpf-core) platform is licensed under the
+ * Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0. 
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+package gov.nasa.jpf.vm;
+
+/**
+ * abstract base for artificial instructions that execute a straight-line sequence of
+ * bytecodes in one step (superinstructions). This is only used for sequences that
+ * cannot throw, do not access the heap and hence cannot introduce scheduling points.
+ *
+ * FusedInstructions are not part of the code array of their method, which keeps the
+ * original bytecodes for everybody who analyzes code. They are attached to the first
+ * bytecode of the sequence (see Instruction.getSuperInstruction()), and executed by
+ * ThreadInfo.executeInstruction() in its place unless any of the fused bytecodes is
+ * observed by listeners (see InstructionInterest). Jumps into the middle of a sequence
+ * just continue with the original bytecodes.
+ *
+ * FusedInstructions are never seen by listeners, and are not counted or recorded
+ * themselves, but account for the bytecodes they executed
+ */
+public abstract class FusedInstruction extends Instruction {
+
+  // the first one of the fused bytecodes
+  protected Instruction first;
+
+  // number of fused bytecodes
+  protected int nFused;
+
+  // cached result of checking listener interest, valid as long as the VM dispatchStamp does not change
+  protected int observedStamp;
+  protected boolean isObserved;
+
+  protected FusedInstruction (Instruction first, int nFused){
+    this.first = first;
+    this.nFused = nFused;
+
+    mi = first.getMethodInfo();
+    insnIndex = first.getInstructionIndex();
+    position = first.getPosition();
+  }
+
+  public int getNumberOfFusedInstructions(){
+    return nFused;
+  }
+
+  public Instruction getFusedInstruction (int i){
+    return mi.getInstruction(insnIndex + i);
+  }
+
+  /**
+   * execute the fused bytecodes on the top frame of ti
+   */
+  protected abstract void executeFused (ThreadInfo ti);
+
+  /**
+   * does any listener want to be notified about one of our fused bytecodes
+   */
+  boolean isObserved (VM vm){
+    if (observedStamp != vm.dispatchStamp){
+      isObserved = false;
+      for (int i=0; i<nFused; i++){
+        VM.InstructionDispatch d = vm.getInstructionDispatch(getFusedInstruction(i));
+        if (d.executeListeners.length > 0 || d.executedListeners.length > 0){
+          isObserved = true;
+          break;
+        }
+      }
+      observedStamp = vm.dispatchStamp;
+    }
+
+    return isObserved;
+  }
+
+  @Override
+  public Instruction execute (ThreadInfo ti) {
+    VM vm = ti.getVM();
+
+    executeFused(ti);
+
+    // we don't record ourselves, and executeInstruction() counts one
+    ti.skipInstructionLogging();
+    SystemState ss = vm.getSystemState();
+    for (int i=0; i<nFused; i++){
+      ss.recordExecutionStep( getFusedInstruction(i));
+    }
+    ti.executedInstructions += nFused-1;
+    vm.nExecutedInstructions += nFused-1;
+
+    return mi.getInstruction(insnIndex + nFused);
+  }
+
+  /**
+   * create a copy that is attached to the cloned first bytecode (see Instruction.typeSafeClone())
+   */
+  FusedInstruction cloneFor (Instruction firstClone){
+    FusedInstruction clone = (FusedInstruction) super.typeSafeClone(firstClone.getMethodInfo());
+    clone.first = firstClone;
+    clone.observedStamp = 0;
+
+    return clone;
+  }
+
+  //--- we look like the first fused bytecode to everybody else
+
+  @Override
+  public int getByteCode() {
+    return first.getByteCode();
+  }
+
+  @Override
+  public int getLength() {
+    return first.getLength();
+  }
+
+  @Override
+  public String getMnemonic() {
+    return first.getMnemonic();
+  }
+
+  @Override
+  public String toString() {
+    return first.toString();
+  }
+
+  @Override
+  public String toPostExecString() {
+    return first.toPostExecString();
+  }
+}
@@ -19,6 +19,7 @@
 package gov.nasa.jpf.vm;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
@@ -63,6 +64,10 @@ public abstract class GenericHeap implements Heap, Iterable<ElementInfo> {
       heap.internStringsMap = internStringsMap;
       heap.attributes = attributes;
       heap.liveBitValue = false; // always start with false after a restore
+
+      // all restored objects are old and frozen
+      heap.clearYoung();
+      heap.rememberedRefs.clear();
       return inSitu;
     }
   }
@@ -117,8 +122,38 @@ public abstract class GenericHeap implements Heap, Iterable<ElementInfo> {
   protected ElementInfoMarker elementInfoMarker = new ElementInfoMarker();
   
   // the number of live objects
-  // <2do> currently only defined after gc
+  // <2do> currently only defined after gc (approximated after minor gcs)
   protected int nLiveObjects;
+
+  //--- generational gc support (see gc())
+
+  protected boolean isGenerational;
+  protected int fullGcInterval;  // max number of subsequent minor gcs
+  protected int nMinorGcs;       // since the last full gc
+
+  // objects that were allocated since the last gc or state store
+  protected IntVector youngRefs = new IntVector(256);
+  protected BitSet youngSet = new BitSet();
+
+  // old objects that were modified since the last state store, i.e. might refer to young ones
+  protected IntVector rememberedRefs = new IntVector(256);
+
+  // set during minor gc marking, which does not trace old objects
+  protected boolean isMinorGc;
+
+  // once there are WeakReferences or finalizers we always do full gcs, since
+  // objects that are only reachable from old garbage would be observable
+  protected boolean hasWeakRefs;
+
+  // set while we release a method local object (see releaseLocal())
+  protected boolean isLocalRelease;
+
+  //--- gc statistics
+  protected long nFullGcsTotal;
+  protected long nMinorGcsTotal;
+  protected long nFullReleased;
+  protected long nMinorReleased;
+  protected long nLocalReleased;
   
   //--- constructors
 
@@ -135,6 +170,9 @@ public abstract class GenericHeap implements Heap, Iterable<ElementInfo> {
     if (config.getBoolean("vm.sweep",true)){
       attributes |= ATTR_GC;
     }
+
+    isGenerational = config.getBoolean("vm.gc.generational", false);
+    fullGcInterval = config.getInt("vm.gc.full_interval", 20);
   }
 
 
@@ -248,6 +286,11 @@ public abstract class GenericHeap implements Heap, Iterable<ElementInfo> {
     ElementInfo ei = createElementInfo( objref, ci, f, m, ti);
     
     set(objref, ei);
+    addYoung(objref);
+
+    if (ci.isWeakReference()){
+      hasWeakRefs = true;
+    }
 
     attributes |= ATTR_ELEMENTS_CHANGED;
 
@@ -288,6 +331,7 @@ public abstract class GenericHeap implements Heap, Iterable<ElementInfo> {
     DynamicElementInfo ei = createElementInfo( objref, ci, f, m, ti);
 
     set(objref, ei);
+    addYoung(objref);
 
     attributes |= ATTR_ELEMENTS_CHANGED;
 
@@ -553,6 +597,10 @@ public abstract class GenericHeap implements Heap, Iterable<ElementInfo> {
       return;
     }
 
+    if (isMinorGc && !youngSet.get(objref)) {
+      return; // old objects are not traced by minor gcs
+    }
+
     ElementInfo ei = get(objref);
     if (!ei.isMarked()){ // only add objects once
       ei.setMarked();
@@ -613,6 +661,7 @@ public abstract class GenericHeap implements Heap, Iterable<ElementInfo> {
         
         vm.notifyObjectReleased(ti, ei);
         remove(ei.getObjectRef());
+        nFullReleased++;
       }
     }
     
@@ -645,24 +694,220 @@ public abstract class GenericHeap implements Heap, Iterable<ElementInfo> {
     markQueue.process(elementInfoMarker);    
   }
   
+  /**
+   * if vm.gc.generational is set, this performs a minor gc unless there are
+   * WeakReferences, finalizers, or we exceeded vm.gc.full_interval subsequent
+   * minor gcs. Minor gcs only trace and sweep objects that were allocated since
+   * the last gc or state store, and treat all other objects as live.
+   * Since reference values are allocation context based and the serializer
+   * only processes reachable objects, this does not change the state space,
+   * but old objects that became unreachable are only released by the next
+   * full gc
+   */
   @Override
   public void gc() {
     vm.notifyGCBegin();
 
     weakRefs = null;
-    liveBitValue = !liveBitValue;
 
-    mark();
-    
-    // at this point all live objects are marked
-    sweep();
+    if (isGenerational && nMinorGcs < fullGcInterval && !hasWeakRefs && !vm.finalizersEnabled()){
+      isMinorGc = true;
+      markYoung();
+      sweepYoung();
+      isMinorGc = false;
+      nMinorGcs++;
+      nMinorGcsTotal++;
+
+    } else {
+      liveBitValue = !liveBitValue;
+
+      mark();
+
+      // at this point all live objects are marked
+      sweep();
+
+      cleanupWeakRefs(); // for potential nullification
 
-    cleanupWeakRefs(); // for potential nullification
+      if (isGenerational){
+        resetGenerations();
+      }
+      nMinorGcs = 0;
+      nFullGcsTotal++;
+    }
 
     vm.processPostGcActions();
     vm.notifyGCEnd();
   }
 
+  //--- generational gc
+
+  protected void addYoung (int objref){
+    if (isGenerational){
+      youngRefs.add(objref);
+      youngSet.set(objref);
+    }
+  }
+
+  protected void clearYoung (){
+    for (int i=0; i<youngRefs.size(); i++){
+      youngSet.clear(youngRefs.get(i));
+    }
+    youngRefs.clear();
+  }
+
+  /**
+   * all survivors of a full gc are old, but the ones that are not frozen can
+   * still be modified without being cloned
+   */
+  protected void resetGenerations (){
+    clearYoung();
+
+    rememberedRefs.clear();
+    for (ElementInfo ei : this){
+      if (!ei.isFrozen()){
+        rememberedRefs.add(ei.getObjectRef());
+      }
+    }
+  }
+
+  /**
+   * to be called by concrete heaps when a frozen object gets cloned for
+   * modification, i.e. is old and might get references to young objects
+   */
+  protected void addRemembered (int objref){
+    if (isGenerational){
+      rememberedRefs.add(objref);
+    }
+  }
+
+  /**
+   * mark all young objects that are reachable from roots which were changed
+   * since the last state store, or from old objects that were modified since then.
+   * Frozen frames and statics only refer to objects that existed at the last
+   * state store, i.e. are old
+   */
+  protected void markYoung () {
+    markQueue.clear();
+
+    markPinDownList();
+
+    for (ThreadInfo ti : vm.getThreadList()){
+      ti.markChangedRoots(this);
+    }
+
+    for (ClassLoaderInfo cl : vm.getClassLoaderList()){
+      for (StaticElementInfo sei : cl.getStatics().liveStatics()){
+        if (!sei.isFrozen()){
+          sei.markStaticRoot(this);
+        }
+      }
+    }
+
+    for (int i=0; i<rememberedRefs.size(); i++){
+      ElementInfo ei = get(rememberedRefs.get(i));
+      if (ei != null){
+        ei.markRecursive(this);
+      }
+    }
+
+    markQueue.process(elementInfoMarker);
+  }
+
+  protected void sweepYoung () {
+    ThreadInfo ti = vm.getCurrentThread();
+    int tid = ti.getId();
+    boolean isThreadTermination = ti.isTerminated();
+    int n = 0;
+
+    for (int i=0; i<youngRefs.size(); i++){
+      int ref = youngRefs.get(i);
+      ElementInfo ei = get(ref);
+
+      if (ei == null){
+        continue; // already released by releaseLocal()
+
+      } else if (ei.isMarked()){
+        ei.setUnmarked();
+        ei.setAlive(liveBitValue);
+
+        ei.cleanUp(this, isThreadTermination, tid);
+        n++;
+
+        rememberedRefs.add(ref); // survivors are old but not frozen
+
+      } else {
+        ei.processReleaseActions();
+
+        vm.notifyObjectReleased(ti, ei);
+        remove(ref);
+        nMinorReleased++;
+      }
+    }
+
+    clearYoung();
+
+    // old objects that were modified might refer to released ones (e.g. as lock candidates)
+    for (int i=0; i<rememberedRefs.size(); i++){
+      ElementInfo ei = get(rememberedRefs.get(i));
+      if (ei != null){
+        ei.cleanUp(this, isThreadTermination, tid);
+      }
+    }
+
+    nLiveObjects += n;
+  }
+
+  /**
+   * release an object that is known to be unreachable without a gc, which is
+   * used by EscapeAnalysis for objects that did not escape the frame in which
+   * they were allocated once this frame returns. The object might already be
+   * released if it was referenced from several slots. Objects that still have
+   * to be finalized are left to the gc (see markFinalizableObjects())
+   */
+  @Override
+  public void releaseLocal (ThreadInfo ti, int objref){
+    ElementInfo ei = get(objref);
+
+    if (ei != null && !ei.isPinnedDown() && !ei.isLocked()
+        && !(vm.finalizersEnabled() && ei.hasFinalizer() && !ei.isFinalized())){
+      isLocalRelease = true;
+      ei.processReleaseActions();
+      vm.notifyObjectReleased(ti, ei);
+      remove(objref);
+      isLocalRelease = false;
+
+      nLocalReleased++;
+    }
+  }
+
+  public boolean isMinorGc (){
+    return isMinorGc;
+  }
+
+  public boolean isLocalRelease (){
+    return isLocalRelease;
+  }
+
+  public long getNumberOfFullGcs (){
+    return nFullGcsTotal;
+  }
+
+  public long getNumberOfMinorGcs (){
+    return nMinorGcsTotal;
+  }
+
+  public long getNumberOfFullGcReleasedObjects (){
+    return nFullReleased;
+  }
+
+  public long getNumberOfMinorGcReleasedObjects (){
+    return nMinorReleased;
+  }
+
+  public long getNumberOfLocalReleasedObjects (){
+    return nLocalReleased;
+  }
+
   /**
    * clean up reference values that are stored outside of reference fields 
    * called from KernelState to process live ElementInfos after GC has finished
@@ -717,6 +962,19 @@ public abstract class GenericHeap implements Heap, Iterable<ElementInfo> {
 
   public void setStored() {
     attributes &= ~ATTR_ANY_CHANGED;
+
+    if (isGenerational){
+      // all objects of a stored state are old, and none is modified yet
+      for (int i=0; i<youngRefs.size(); i++){
+        ElementInfo ei = get(youngRefs.get(i));
+        if (ei != null){
+          ei.setAlive(liveBitValue);
+          nLiveObjects++;
+        }
+      }
+      clearYoung();
+      rememberedRefs.clear();
+    }
   }
   
   @Override
@@ -25,6 +25,7 @@ import gov.nasa.jpf.util.FieldSpecMatcher;
 import gov.nasa.jpf.util.JPFLogger;
 import gov.nasa.jpf.util.MethodSpecMatcher;
 import gov.nasa.jpf.util.TypeSpecMatcher;
+import gov.nasa.jpf.vm.bytecode.ReadOrWriteInstruction;
 import gov.nasa.jpf.vm.choice.ThreadChoiceFromSet;
 
 /**
@@ -331,6 +332,12 @@ public abstract class GenericSharednessPolicy implements SharednessPolicy, Attri
     if (newTis.isShared(ti, ei) && !ei.isShared() && !ei.isSharednessFrozen()) {
       ei = ei.getModifiableInstance();
       ei.setShared(ti, true);
+
+      // this changes the scheduling points of other threads
+      Footprint.Recorder fpr = vm.getSystemState().getFootprintRecorder();
+      if (fpr != null){
+        fpr.setGlobal();
+      }
     }
 
     if (ei.isShared() && fi != null){
@@ -418,18 +425,50 @@ public abstract class GenericSharednessPolicy implements SharednessPolicy, Attri
   
   @Override
   public ElementInfo updateObjectSharedness (ThreadInfo ti, ElementInfo ei, FieldInfo fi){
+    Footprint.Recorder fpr = vm.getSystemState().getFootprintRecorder();
+    if (fpr != null){
+      if (fi != null){
+        fpr.addFieldAccess(ei.getObjectRef(), fi.getFieldIndex(), isWriteAccess(ti));
+      } else { // lock operation
+        fpr.addLockAccess(ei.getObjectRef());
+      }
+    }
+
     return updateSharedness(ti, ei, fi);
   }
   @Override
   public ElementInfo updateClassSharedness (ThreadInfo ti, ElementInfo ei, FieldInfo fi){
+    Footprint.Recorder fpr = vm.getSystemState().getFootprintRecorder();
+    if (fpr != null){
+      fpr.addStaticFieldAccess(ei.getObjectRef(), fi.getFieldIndex(), isWriteAccess(ti));
+    }
+
     return updateSharedness(ti, ei, fi);
   }
   @Override
   public ElementInfo updateArraySharedness (ThreadInfo ti, ElementInfo ei, int idx){
+    Footprint.Recorder fpr = vm.getSystemState().getFootprintRecorder();
+    if (fpr != null){
+      fpr.addArrayAccess(ei.getObjectRef(), idx, isWriteAccess(ti));
+    }
+
     // NOTE - we don't support per-element FieldLockInfos (yet)
     return updateSharedness(ti, ei, null);
   }
 
+  /**
+   * footprint recording - the sharedness update is called from the executing
+   * field or array instruction
+   */
+  protected boolean isWriteAccess (ThreadInfo ti){
+    Instruction insn = ti.getPC();
+    if (insn instanceof ReadOrWriteInstruction){
+      return !((ReadOrWriteInstruction)insn).isRead();
+    } else {
+      return true;
+    }
+  }
+
   
   /**
    * check to determine if call site, object/class attributes and thread execution state
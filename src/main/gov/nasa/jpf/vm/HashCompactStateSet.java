@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2014, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ * All rights reserved.
+ *
+ * The Java Pathfinder core (jpf-core) platform is licensed under the
+ * Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0. 
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+package gov.nasa.jpf.vm;
+
+import gov.nasa.jpf.Config;
+import gov.nasa.jpf.JPF;
+import gov.nasa.jpf.util.JPFLogger;
+
+/**
+ * a hash compaction StateSet, which only stores 32 bit signatures of states in
+ * a fixed size open addressing table (2^vm.storage.hashcompact.size slots).
+ * The table position is computed from the upper half of the 64 bit Jenkins
+ * hash, the signature is the lower half, i.e. a new state is only missed if
+ * it has the same signature as one of the entries we compare it to.
+ *
+ * Since we don't keep full hashes, the table cannot grow. Once it reaches
+ * vm.storage.hashcompact.max_load, all further states are treated as visited,
+ * and the omission probability becomes 1.
+ *
+ * Each slot also stores the id of its state, so that revisited states (or
+ * states that collide with an entry) report the id of the matched entry. This
+ * doubles the table size to 8 bytes per slot
+ */
+public class HashCompactStateSet extends SerializingStateSet implements LossyStateSet {
+
+  static JPFLogger log = JPF.getLogger("gov.nasa.jpf.vm.HashCompactStateSet");
+
+  protected int[] signatures;
+  protected int[] ids;
+  protected int mask;
+  protected int maxEntries;
+
+  protected int lastStateId = -1;
+  protected boolean isFull;
+
+  // sum of the probabilities that a new state was mistaken for a visited one
+  protected double expectedOmissions;
+
+  public HashCompactStateSet (Config conf){
+    int log2Size = conf.getInt("vm.storage.hashcompact.size", 24);
+    log2Size = Math.max( Math.min(log2Size, 30), 4);
+
+    double maxLoad = conf.getDouble("vm.storage.hashcompact.max_load", 0.9);
+    if (maxLoad <= 0 || maxLoad >= 1.0){
+      maxLoad = 0.9;
+    }
+
+    signatures = new int[1 << log2Size];
+    ids = new int[signatures.length];
+    mask = signatures.length - 1;
+    maxEntries = (int) (maxLoad * signatures.length);
+  }
+
+  @Override
+  public int size () {
+    return lastStateId + 1;
+  }
+
+  public boolean isFull(){
+    return isFull;
+  }
+
+  @Override
+  public double getOmissionProbability (){
+    if (isFull){
+      return 1.0;
+    } else {
+      return 1.0 - Math.exp(-expectedOmissions);
+    }
+  }
+
+  @Override
+  protected int add (int[] state) {
+    return add( JenkinsStateSet.longLookup3Hash(state));
+  }
+
+  public int add (long hash){
+    int sig = (int)hash;
+    if (sig == 0){ // 0 marks empty slots
+      sig = 1;
+    }
+
+    int idx = (int)(hash >>> 32) & mask;
+    int nCompared = 0;
+
+    while (true){
+      int s = signatures[idx];
+
+      if (s == 0){
+        break;
+      } else if (s == sig){
+        return ids[idx];
+      }
+
+      nCompared++;
+      idx = (idx + 1) & mask;
+    }
+
+    //--- only reached if the state is new (or the table is full)
+    if (lastStateId+1 >= maxEntries){
+      if (!isFull){
+        log.warning("hash compaction table full, treating all further states as visited");
+        isFull = true;
+      }
+      // we have to report one of the visited states
+      return (int) Long.remainderUnsigned(hash, lastStateId + 1);
+    }
+
+    signatures[idx] = sig;
+    ids[idx] = ++lastStateId;
+    expectedOmissions += (double)nCompared / 4294967296.0; // 2^32
+
+    return lastStateId;
+  }
+}
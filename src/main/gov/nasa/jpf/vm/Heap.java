@@ -30,6 +30,13 @@ public interface Heap extends Iterable<ElementInfo> {
 
   void gc();
 
+  // release an object that is known to be unreachable without a gc (e.g. a
+  // method local object of a returning frame, see EscapeAnalysis). Heaps that
+  // don't support this just leave the object to the next gc
+  default void releaseLocal (ThreadInfo ti, int objref){
+    // nothing
+  }
+
   boolean isOutOfMemory();
 
   void setOutOfMemory(boolean isOutOfMemory);
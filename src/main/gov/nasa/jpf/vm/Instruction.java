@@ -35,6 +35,12 @@ public abstract class Instruction implements Cloneable, InstructionInterface {
 
   // property/mode specific attributes
   protected Object attr;
+
+  // the listeners to notify when executing this insn (see VM.getInstructionDispatch())
+  VM.InstructionDispatch listenerDispatch;
+
+  // optional superinstruction that executes this and the following insns in one step
+  FusedInstruction superInsn;
   
   // this is for changing from InstructionInterface types to Instruction types
   @Override
@@ -102,6 +108,14 @@ public abstract class Instruction implements Cloneable, InstructionInterface {
     return mi.getInstruction(insnIndex + 1);
   }
 
+  public FusedInstruction getSuperInstruction() {
+    return superInsn;
+  }
+
+  public void setSuperInstruction (FusedInstruction insn) {
+    superInsn = insn;
+  }
+
   @Override
   public int getInstructionIndex() {
     return insnIndex;
@@ -441,6 +455,10 @@ public abstract class Instruction implements Cloneable, InstructionInterface {
 
       // reset the method that this insn belongs to
       clone.mi = mi;
+      clone.listenerDispatch = null; // interest might depend on the method
+      if (superInsn != null) {
+        clone.superInsn = superInsn.cloneFor(clone);
+      }
     } catch (CloneNotSupportedException e) {
       e.printStackTrace();
     }
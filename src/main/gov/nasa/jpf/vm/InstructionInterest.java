@@ -0,0 +1,38 @@
+/*
+ * Copyright (C) 2014, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ * All rights reserved.
+ *
+ * The Java Pathfinder core (jpf-core) platform is licensed under the
+ * Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0. 
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+package gov.nasa.jpf.vm;
+
+/**
+ * optional interface for VMListeners that only want executeInstruction() and
+ * instructionExecuted() notifications for some instructions, e.g. for certain
+ * instruction types, or instructions of certain methods or classes.
+ *
+ * The VM asks each listener once per instruction and caches the result in
+ * a per-instruction dispatch table, i.e. the answer has to be a function of the
+ * instruction. Listeners that change their interest (e.g. after detecting an
+ * error) have to call VM.resetInstructionInterest() to invalidate the tables.
+ *
+ * VMListeners that don't implement this interface get notified for all instructions.
+ * Since the dispatch tables only pay off if there are several instruction listeners,
+ * the VM notifies a sole instruction listener directly, i.e. implementors still
+ * have to check if they are interested in the notified instruction
+ */
+public interface InstructionInterest {
+
+  boolean isInterestedIn (Instruction insn);
+}
@@ -26,10 +26,14 @@ package gov.nasa.jpf.vm;
 
 //import gov.nasa.jpf.util.LongVector;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
 /**
  * Implements StateSet based on Jenkins hashes.
  */
-public class JenkinsStateSet extends SerializingStateSet {
+public class JenkinsStateSet extends SerializingStateSet implements CheckpointableStateSet {
   static final double MAX_LOAD = 0.7;
   static final int INIT_SIZE = 65536;
 
@@ -100,7 +104,10 @@ public class JenkinsStateSet extends SerializingStateSet {
   
   @Override
   public int add (int[] val) {
-    long hash = longLookup3Hash(val); // this is the expensive part
+    return add( longLookup3Hash(val)); // this is the expensive part
+  }
+
+  public int add (long hash) {
     int i;
     
     // hash table lookup & add; open-addressed, double hashing
@@ -164,6 +171,26 @@ public class JenkinsStateSet extends SerializingStateSet {
     return lastStateId;
   }
   
+  //--- checkpoint support
+
+  @Override
+  public void store (DataOutput out, int nStates) throws IOException {
+    nStates = Math.min(nStates, lastStateId + 1);
+
+    out.writeInt(nStates);
+    for (int i=0; i<nStates; i++){
+      out.writeLong(fingerprints[i]);
+    }
+  }
+
+  @Override
+  public void load (DataInput in) throws IOException {
+    int nStates = in.readInt();
+    for (int i=0; i<nStates; i++){
+      add( in.readLong());
+    }
+  }
+
   void growFingerprint (int minSize){
     // we don't try to be fancy here
     int newSize = fingerprints.length *2;
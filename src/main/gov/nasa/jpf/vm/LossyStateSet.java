@@ -0,0 +1,33 @@
+/*
+ * Copyright (C) 2014, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ * All rights reserved.
+ *
+ * The Java Pathfinder core (jpf-core) platform is licensed under the
+ * Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0. 
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+package gov.nasa.jpf.vm;
+
+/**
+ * a StateSet that trades completeness for memory, i.e. that can report new
+ * states as already visited (e.g. bitstate hashing or hash compaction).
+ * Matched states are answered with the id of a visited state, which is not
+ * necessarily the same state if the set does not store ids (bitstate hashing)
+ */
+public interface LossyStateSet extends StateSet {
+
+  /**
+   * estimated probability that at least one new state has been mistaken
+   * for an already visited one so far
+   */
+  double getOmissionProbability();
+}
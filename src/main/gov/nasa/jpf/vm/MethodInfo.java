@@ -66,6 +66,9 @@ public class MethodInfo extends InfoObject implements GenericSignatureHolder  {
   /** a unique int assigned to this method */
   protected int globalId = -1;
 
+  /** the index of this method in the vtable of its class (see ClassInfo.getVTable()) */
+  protected int vtableIndex = -1;
+
   /**
    * this is a lazy evaluated mangled name consisting of the name and
    * arg type signature
@@ -210,6 +213,7 @@ public class MethodInfo extends InfoObject implements GenericSignatureHolder  {
    */
   public MethodInfo (MethodInfo mi) {
     globalId = mi.globalId;
+    vtableIndex = mi.vtableIndex;
     uniqueName = mi.uniqueName;
     name = mi.name;
     signature = mi.signature;
@@ -418,6 +422,10 @@ public class MethodInfo extends InfoObject implements GenericSignatureHolder  {
     return globalId;
   }
 
+  public int getVTableIndex() {
+    return vtableIndex;
+  }
+
   public DirectCallStackFrame createRunStartStackFrame (ThreadInfo ti){
     return ci.createRunStartStackFrame( ti, this);
   }
@@ -0,0 +1,450 @@
+/*
+ * Copyright (C) 2014, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ * All rights reserved.
+ *
+ * The Java Pathfinder core (jpf-core) platform is licensed under the
+ * Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0. 
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+package gov.nasa.jpf.vm;
+
+import gov.nasa.jpf.JPF;
+import gov.nasa.jpf.util.JPFLogger;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * a ClassLoader that generates and defines a NativeMethodInvoker class per
+ * native peer method, which directly calls the peer method instead of going
+ * through Method.invoke(). The generated invoke() method corresponds to
+ *
+ *   public Object invoke (NativePeer peer, Object[] args) throws InvocationTargetException {
+ *     try {
+ *       return Integer.valueOf( ((JPF_x_Y)peer).foo( (MJIEnv)args[0], ((Integer)args[1]).intValue(), ..));
+ *     } catch (Throwable t) {
+ *       throw new InvocationTargetException(t);
+ *     }
+ *   }
+ *
+ * i.e. arguments are unboxed and the result is boxed according to the
+ * primitive signature of the peer method, and we don't have to do any
+ * of the access and argument checks of reflection calls. Note that argument
+ * type mismatches therefore show up as InvocationTargetExceptions, not
+ * IllegalArgumentExceptions.
+ *
+ * We generate plain (version 49) classfiles so that we don't need StackMapTables.
+ * If a method cannot be called from a generated class (e.g. because it is
+ * declared in a non-public class), createInvoker() returns null and the
+ * caller has to fall back to reflection
+ */
+public class NativeInvokerGenerator extends ClassLoader {
+
+  static JPFLogger logger = JPF.getLogger("gov.nasa.jpf.vm.NativePeer");
+
+  static final String INVOKER_PACKAGE = "gov.nasa.jpf.vm.";
+  static final String INVOKER_IFC = "gov/nasa/jpf/vm/NativeMethodInvoker";
+  static final String INVOKE_DESC = "(Lgov/nasa/jpf/vm/NativePeer;[Ljava/lang/Object;)Ljava/lang/Object;";
+
+  //--- the opcodes we use
+  static final int ACONST_NULL = 0x01;
+  static final int ICONST_0 = 0x03;
+  static final int BIPUSH = 0x10;
+  static final int SIPUSH = 0x11;
+  static final int ALOAD_0 = 0x2a;
+  static final int ALOAD_1 = 0x2b;
+  static final int ALOAD_2 = 0x2c;
+  static final int ALOAD_3 = 0x2d;
+  static final int AALOAD = 0x32;
+  static final int ASTORE_3 = 0x4e;
+  static final int DUP = 0x59;
+  static final int ARETURN = 0xb0;
+  static final int RETURN = 0xb1;
+  static final int INVOKEVIRTUAL = 0xb6;
+  static final int INVOKESPECIAL = 0xb7;
+  static final int INVOKESTATIC = 0xb8;
+  static final int NEW = 0xbb;
+  static final int ATHROW = 0xbf;
+  static final int CHECKCAST = 0xc0;
+
+  /**
+   * a minimal classfile constant pool
+   */
+  static class ConstantPool {
+    static final int CONSTANT_Utf8 = 1;
+    static final int CONSTANT_Class = 7;
+    static final int CONSTANT_Methodref = 10;
+    static final int CONSTANT_NameAndType = 12;
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    HashMap<String,Integer> entries = new HashMap<String,Integer>();
+    int next = 1;
+
+    int utf8 (String s) throws IOException {
+      String key = "U" + s;
+      Integer idx = entries.get(key);
+      if (idx == null){
+        out.writeByte(CONSTANT_Utf8);
+        out.writeUTF(s);
+        idx = add(key);
+      }
+      return idx;
+    }
+
+    int cls (String internalName) throws IOException {
+      String key = "C" + internalName;
+      Integer idx = entries.get(key);
+      if (idx == null){
+        int nameIdx = utf8(internalName);
+        out.writeByte(CONSTANT_Class);
+        out.writeShort(nameIdx);
+        idx = add(key);
+      }
+      return idx;
+    }
+
+    int methodRef (String owner, String name, String desc) throws IOException {
+      String key = "M" + owner + '.' + name + desc;
+      Integer idx = entries.get(key);
+      if (idx == null){
+        int clsIdx = cls(owner);
+        int nameIdx = utf8(name);
+        int descIdx = utf8(desc);
+
+        out.writeByte(CONSTANT_NameAndType);
+        out.writeShort(nameIdx);
+        out.writeShort(descIdx);
+        int ntIdx = add("N" + name + desc);
+
+        out.writeByte(CONSTANT_Methodref);
+        out.writeShort(clsIdx);
+        out.writeShort(ntIdx);
+        idx = add(key);
+      }
+      return idx;
+    }
+
+    private int add (String key){
+      int idx = next++;
+      entries.put(key, idx);
+      return idx;
+    }
+  }
+
+  /**
+   * the parts of a generated method we have to keep track of
+   */
+  static class Code {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    ArrayList<int[]> handlers = new ArrayList<int[]>();
+
+    int pc() {
+      return bytes.size();
+    }
+
+    void op (int opcode) throws IOException {
+      out.writeByte(opcode);
+    }
+
+    void op (int opcode, int cpIdx) throws IOException {
+      out.writeByte(opcode);
+      out.writeShort(cpIdx);
+    }
+
+    void pushInt (int i) throws IOException {
+      if (i <= 5){
+        out.writeByte(ICONST_0 + i);
+      } else if (i <= Byte.MAX_VALUE){
+        out.writeByte(BIPUSH);
+        out.writeByte(i);
+      } else {
+        out.writeByte(SIPUSH);
+        out.writeShort(i);
+      }
+    }
+
+    // catch type 0 means any Throwable
+    void addHandler (int startPc, int endPc, int handlerPc){
+      handlers.add( new int[] {startPc, endPc, handlerPc, 0});
+    }
+
+    void writeTo (DataOutputStream os, ConstantPool cp, int maxStack, int maxLocals) throws IOException {
+      byte[] code = bytes.toByteArray();
+
+      os.writeShort( cp.utf8("Code"));
+      os.writeInt( 12 + code.length + handlers.size() * 8);
+      os.writeShort(maxStack);
+      os.writeShort(maxLocals);
+      os.writeInt(code.length);
+      os.write(code);
+      os.writeShort(handlers.size());
+      for (int[] h : handlers){
+        for (int i=0; i<h.length; i++){
+          os.writeShort(h[i]);
+        }
+      }
+      os.writeShort(0); // no code attributes
+    }
+  }
+
+  // we keep the generated invokers for subsequent JPF runs (with the same peer
+  // ClassLoader), so that they don't have to be re-generated and re-compiled
+  protected HashMap<Method,NativeMethodInvoker> invokers = new HashMap<Method,NativeMethodInvoker>();
+
+  protected int nClasses;  // defined, including the ones that failed verification
+  protected int nInvokers;
+
+  public NativeInvokerGenerator (ClassLoader parent){
+    super(parent);
+  }
+
+  public int getNumberOfInvokers() {
+    return nInvokers;
+  }
+
+  /**
+   * @return a generated invoker for mth, or null if we can't generate one
+   */
+  public NativeMethodInvoker createInvoker (Method mth) {
+    if (invokers.containsKey(mth)){
+      return invokers.get(mth);
+    }
+
+    NativeMethodInvoker invoker = generateInvoker(mth);
+    invokers.put(mth, invoker); // also remember failures
+    return invoker;
+  }
+
+  protected NativeMethodInvoker generateInvoker (Method mth) {
+    if (!canInvoke(mth)){
+      return null;
+    }
+
+    String clsName = INVOKER_PACKAGE + "NativeInvoker$" + mth.getDeclaringClass().getSimpleName()
+                         + '$' + mth.getName() + '$' + nClasses++;
+    try {
+      byte[] b = generate(clsName.replace('.', '/'), mth);
+      Class<?> cls = defineClass(clsName, b, 0, b.length);
+
+      // this is where the verifier kicks in
+      NativeMethodInvoker invoker = (NativeMethodInvoker) cls.newInstance();
+      nInvokers++;
+      return invoker;
+
+    } catch (Throwable t) { // IOException, LinkageError, SecurityException and whatever else
+      logger.warning("failed to generate invoker for ", mth, " : ", t);
+      return null;
+    }
+  }
+
+  protected boolean canInvoke (Method mth) {
+    Class<?> cls = mth.getDeclaringClass();
+
+    if (!Modifier.isPublic(mth.getModifiers()) || !isAccessible(cls) || cls.isInterface()){
+      return false;
+    }
+
+    for (Class<?> t : mth.getParameterTypes()){
+      if (!isAccessible(t)){
+        return false;
+      }
+    }
+
+    return isAccessible(mth.getReturnType());
+  }
+
+  protected boolean isAccessible (Class<?> cls){
+    while (cls.isArray()){
+      cls = cls.getComponentType();
+    }
+
+    if (cls.isPrimitive()){
+      return true;
+
+    } else {
+      // the generated class is in another runtime package, but it would be
+      // too expensive to check all enclosing classes
+      return Modifier.isPublic(cls.getModifiers()) && (cls.getEnclosingClass() == null);
+    }
+  }
+
+  protected byte[] generate (String clsName, Method mth) throws IOException {
+    ConstantPool cp = new ConstantPool();
+    ByteArrayOutputStream body = new ByteArrayOutputStream();
+    DataOutputStream os = new DataOutputStream(body);
+
+    int thisIdx = cp.cls(clsName);
+    int superIdx = cp.cls("java/lang/Object");
+    int ifcIdx = cp.cls(INVOKER_IFC);
+
+    os.writeShort(Modifier.PUBLIC | Modifier.FINAL | 0x20); // ACC_SUPER
+    os.writeShort(thisIdx);
+    os.writeShort(superIdx);
+    os.writeShort(1);
+    os.writeShort(ifcIdx);
+    os.writeShort(0); // no fields
+
+    os.writeShort(2);
+    generateCtor(os, cp);
+    generateInvoke(os, cp, mth);
+
+    os.writeShort(0); // no class attributes
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    out.writeInt(0xcafebabe);
+    out.writeShort(0);  // minor
+    out.writeShort(49); // major
+    out.writeShort(cp.next);
+    cp.bytes.writeTo(out);
+    body.writeTo(out);
+
+    return bytes.toByteArray();
+  }
+
+  protected void generateCtor (DataOutputStream os, ConstantPool cp) throws IOException {
+    Code code = new Code();
+    code.op(ALOAD_0);
+    code.op(INVOKESPECIAL, cp.methodRef("java/lang/Object", "<init>", "()V"));
+    code.op(RETURN);
+
+    os.writeShort(Modifier.PUBLIC);
+    os.writeShort(cp.utf8("<init>"));
+    os.writeShort(cp.utf8("()V"));
+    os.writeShort(1);
+    code.writeTo(os, cp, 1, 1);
+  }
+
+  protected void generateInvoke (DataOutputStream os, ConstantPool cp, Method mth) throws IOException {
+    Code code = new Code();
+    String owner = getInternalName(mth.getDeclaringClass());
+    boolean isStatic = Modifier.isStatic(mth.getModifiers());
+    Class<?>[] paramTypes = mth.getParameterTypes();
+    int nSlots = 0;
+
+    if (!isStatic){
+      code.op(ALOAD_1);
+      code.op(CHECKCAST, cp.cls(owner));
+      nSlots++;
+    }
+
+    for (int i=0; i<paramTypes.length; i++){
+      Class<?> t = paramTypes[i];
+
+      code.op(ALOAD_2);
+      code.pushInt(i);
+      code.op(AALOAD);
+
+      if (t.isPrimitive()){
+        String box = getBoxName(t);
+        String desc = getDescriptor(t);
+        code.op(CHECKCAST, cp.cls(box));
+        code.op(INVOKEVIRTUAL, cp.methodRef(box, t.getName() + "Value", "()" + desc));
+        nSlots += (t == long.class || t == double.class) ? 2 : 1;
+
+      } else {
+        if (t != Object.class){
+          code.op(CHECKCAST, cp.cls(getInternalName(t)));
+        }
+        nSlots++;
+      }
+    }
+
+    int startInvoke = code.pc();
+    code.op( isStatic ? INVOKESTATIC : INVOKEVIRTUAL, cp.methodRef(owner, mth.getName(), getDescriptor(mth)));
+    int endInvoke = code.pc();
+
+    Class<?> rt = mth.getReturnType();
+    if (rt == void.class){
+      code.op(ACONST_NULL);
+    } else if (rt.isPrimitive()){
+      String box = getBoxName(rt);
+      code.op(INVOKESTATIC, cp.methodRef(box, "valueOf", "(" + getDescriptor(rt) + ")L" + box + ';'));
+    }
+    code.op(ARETURN);
+
+    // wrap everything that is thrown from within the peer method
+    int handlerPc = code.pc();
+    code.op(ASTORE_3);
+    code.op(NEW, cp.cls("java/lang/reflect/InvocationTargetException"));
+    code.op(DUP);
+    code.op(ALOAD_3);
+    code.op(INVOKESPECIAL, cp.methodRef("java/lang/reflect/InvocationTargetException", "<init>", "(Ljava/lang/Throwable;)V"));
+    code.op(ATHROW);
+    code.addHandler(startInvoke, endInvoke, handlerPc);
+
+    os.writeShort(Modifier.PUBLIC);
+    os.writeShort(cp.utf8("invoke"));
+    os.writeShort(cp.utf8(INVOKE_DESC));
+    os.writeShort(1);
+    // the unboxing of the last parameter needs two more stack slots, and the handler needs three
+    code.writeTo(os, cp, Math.max(nSlots + 2, 3), 4);
+  }
+
+  //--- type name helpers
+
+  static String getInternalName (Class<?> cls){
+    return cls.getName().replace('.', '/');
+  }
+
+  static String getDescriptor (Class<?> cls){
+    if (cls.isPrimitive()){
+      if (cls == int.class) return "I";
+      if (cls == boolean.class) return "Z";
+      if (cls == byte.class) return "B";
+      if (cls == char.class) return "C";
+      if (cls == short.class) return "S";
+      if (cls == long.class) return "J";
+      if (cls == float.class) return "F";
+      if (cls == double.class) return "D";
+      return "V";
+
+    } else if (cls.isArray()){
+      return getInternalName(cls);
+
+    } else {
+      return "L" + getInternalName(cls) + ';';
+    }
+  }
+
+  static String getDescriptor (Method mth){
+    StringBuilder sb = new StringBuilder();
+    sb.append('(');
+    for (Class<?> t : mth.getParameterTypes()){
+      sb.append( getDescriptor(t));
+    }
+    sb.append(')');
+    sb.append( getDescriptor(mth.getReturnType()));
+
+    return sb.toString();
+  }
+
+  static String getBoxName (Class<?> cls){
+    if (cls == int.class) return "java/lang/Integer";
+    if (cls == boolean.class) return "java/lang/Boolean";
+    if (cls == byte.class) return "java/lang/Byte";
+    if (cls == char.class) return "java/lang/Character";
+    if (cls == short.class) return "java/lang/Short";
+    if (cls == long.class) return "java/lang/Long";
+    if (cls == float.class) return "java/lang/Float";
+    if (cls == double.class) return "java/lang/Double";
+
+    throw new IllegalArgumentException("not a primitive value type: " + cls);
+  }
+}
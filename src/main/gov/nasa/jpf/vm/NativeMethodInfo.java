@@ -43,9 +43,28 @@ public class NativeMethodInfo extends MethodInfo {
     }
   }
 
+  /**
+   * the fallback if we can't generate an invoker class for the native method
+   */
+  static class ReflectionInvoker implements NativeMethodInvoker {
+    Method mth;
+
+    ReflectionInvoker (Method mth){
+      this.mth = mth;
+    }
+
+    @Override
+    public Object invoke (NativePeer peer, Object[] args) throws IllegalAccessException, InvocationTargetException {
+      return mth.invoke(peer, args);
+    }
+  }
+
   protected Method mth; // the native method to enter in lieu
   protected NativePeer peer;
 
+  // created upon first execution, since most peer methods never get called
+  protected NativeMethodInvoker invoker;
+
   public NativeMethodInfo (MethodInfo mi, Method mth, NativePeer peer){
     super(mi);  // <2do> do we want any operands or locals?
 
@@ -90,6 +109,20 @@ public class NativeMethodInfo extends MethodInfo {
     return mth;
   }
 
+  public NativeMethodInvoker getInvoker() {
+    if (invoker == null) {
+      NativeInvokerGenerator gen = NativePeer.invokerGenerator;
+      if (gen != null) {
+        invoker = gen.createInvoker(mth);
+      }
+      if (invoker == null) {
+        invoker = new ReflectionInvoker(mth);
+      }
+    }
+
+    return invoker;
+  }
+
   @Override
   public String getStackTraceSource() {
     if (peer != null){
@@ -121,8 +154,9 @@ public class NativeMethodInfo extends MethodInfo {
     try {
       args = nativeFrame.getArguments();
 
-      // this is the reflection call into the native peer
-      ret = mth.invoke(peer, args);
+      // this is the call into the native peer, which is either done by a
+      // generated class or by reflection
+      ret = getInvoker().invoke(peer, args);
 
       if (env.hasException()) {
         // even though we should prefer throwing normal exceptionHandlers,
@@ -27,8 +27,14 @@ import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 
 
@@ -50,8 +56,21 @@ public class NativePeer implements Cloneable {
   static Config config;
   static boolean noOrphanMethods;
 
+  // if set, NativeMethodInfos call their peer methods through generated classes
+  static NativeInvokerGenerator invokerGenerator;
+
   static String[] peerPackages;
 
+  // peer class names (or NO_PEER) of model classes we already looked up. Most model
+  // classes don't have peers, and probing all peerPackages for them causes a lot of
+  // ClassNotFoundExceptions. This is kept between JPF runs within the same host VM as
+  // long as the peer packages and the classpath of our loader do not change.
+  // Since several JPF instances might run concurrently, this is a concurrent map
+  // that is only replaced while holding the NativePeer class lock
+  static final String NO_PEER = "";
+  static volatile ConcurrentHashMap<String,String> peerClassNames;
+  static List<Object> peerClassNamesKey;
+
   ClassInfo ci;
   Class<?> peerClass;
   HashMap<String, Method> methods;
@@ -66,6 +85,16 @@ public class NativePeer implements Cloneable {
     config = conf;
     noOrphanMethods = conf.getBoolean("vm.no_orphan_methods", false);
 
+    initPeerClassNames(conf.getBoolean("vm.cache_class_data", false));
+
+    if (conf.getBoolean("vm.generate_peer_invokers", false)) {
+      if (invokerGenerator == null || invokerGenerator.getParent() != loader) {
+        invokerGenerator = new NativeInvokerGenerator(loader);
+      }
+    } else {
+      invokerGenerator = null;
+    }
+
     return true;
   }
 
@@ -85,7 +114,66 @@ public class NativePeer implements Cloneable {
     return packages;
   }
 
+  static synchronized void initPeerClassNames (boolean cacheNames) {
+    if (cacheNames) {
+      List<Object> key = getPeerLookupKey(loader, peerPackages);
+      if (peerClassNames == null || !key.equals(peerClassNamesKey)) {
+        peerClassNames = new ConcurrentHashMap<String,String>();
+        peerClassNamesKey = key;
+      }
+    } else {
+      peerClassNames = null;
+      peerClassNamesKey = null;
+    }
+  }
+
+  /**
+   * what determines the peer classes we find. Each JPF run might use a new JPFClassLoader,
+   * but as long as it has the same parent and classpath it also finds the same peer classes
+   */
+  static List<Object> getPeerLookupKey (ClassLoader cl, String[] packages) {
+    ArrayList<Object> key = new ArrayList<Object>();
+    Collections.addAll(key, (Object[])packages);
+
+    for (; cl != null; cl = cl.getParent()) {
+      if (cl instanceof URLClassLoader) {
+        for (URL url : ((URLClassLoader)cl).getURLs()) {
+          key.add(url.toExternalForm());
+        }
+      } else {
+        key.add(cl);
+      }
+    }
+
+    return key;
+  }
+
   static Class<?> locatePeerCls (String clsName) {
+    ConcurrentHashMap<String,String> names = peerClassNames;
+
+    if (names != null) {
+      String pcn = names.get(clsName);
+      if (pcn == NO_PEER) {
+        return null;
+      } else if (pcn != null) {
+        try {
+          return loader.loadClass(pcn);
+        } catch (ClassNotFoundException cnfx) {
+          // the classfile went away, look it up again
+        }
+      }
+    }
+
+    Class<?> peerCls = findPeerCls(clsName);
+
+    if (names != null) {
+      names.put(clsName, (peerCls != null) ? peerCls.getName() : NO_PEER);
+    }
+
+    return peerCls;
+  }
+
+  static Class<?> findPeerCls (String clsName) {
     String cn = "JPF_" + clsName.replace('.', '_');
 
     for (int i=0; i<peerPackages.length; i++) {
@@ -71,6 +71,12 @@ public abstract class NativeStackFrame extends StackFrame {
     return sf;
   }
 
+  // the registers are not covered by undo records, so we always clone
+  @Override
+  protected boolean isLoggable() {
+    return false;
+  }
+
   @Override
   public boolean isNative() {
     return true;
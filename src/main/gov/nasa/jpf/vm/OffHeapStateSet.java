@@ -0,0 +1,251 @@
+/*
+ * Copyright (C) 2014, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ * All rights reserved.
+ *
+ * The Java Pathfinder core (jpf-core) platform is licensed under the
+ * Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package gov.nasa.jpf.vm;
+
+import gov.nasa.jpf.Config;
+import gov.nasa.jpf.JPFException;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+
+/**
+ * a StateSet for very large state spaces that keeps its fingerprint table
+ * outside of the Java heap, either in direct ByteBuffers or (if
+ * vm.storage.offheap.dir is set) in a memory mapped file, which lets the OS
+ * page out parts of the table that are not used.
+ *
+ * The table is a fixed size, linear probing hash table of 8 byte slots. Each
+ * slot holds 32 bits of the Jenkins hash and the state id (the other hash
+ * bits determine the slot position). With the default max load factor of 0.75
+ * this needs less than 11 bytes per state. Since mapped files are sparse, it
+ * is cheap to configure a large vm.storage.offheap.capacity upfront (e.g.
+ * 1.4e9 slots for 1e9 states).
+ *
+ * If the table gets too full, we don't rehash but add another table with
+ * twice the capacity, i.e. we never need a full size temporary copy, and
+ * there is no GC overhead for the table itself. Lookups check all tables,
+ * so capacity should be configured to avoid this.
+ *
+ * Note that comparing only 32 bits (plus the position) is slightly less
+ * precise than JenkinsStateSet, which compares full 64 bit hashes
+ */
+public class OffHeapStateSet extends SerializingStateSet {
+
+  static final int SEGMENT_SHIFT = 27; // 1GB per segment
+  static final long SEGMENT_SLOTS = 1L << SEGMENT_SHIFT;
+  static final long SEGMENT_MASK = SEGMENT_SLOTS - 1;
+
+  static final long MAX_CAPACITY = 0xffffffffL; // per table, see range reduction
+
+  /**
+   * a fixed size open addressing table that is split into segments of at
+   * most SEGMENT_SLOTS slots, since buffers cannot exceed 2GB
+   */
+  static class Table {
+    final long capacity;
+    final long maxEntries;
+    long nEntries;
+
+    final LongBuffer[] segments;
+
+    Table (long capacity, double maxLoad, RandomAccessFile file, long fileOffset) throws IOException {
+      this.capacity = capacity;
+      maxEntries = (long) (capacity * maxLoad);
+
+      int nSegments = (int) ((capacity + SEGMENT_MASK) >>> SEGMENT_SHIFT);
+      segments = new LongBuffer[nSegments];
+
+      for (int i=0; i<nSegments; i++){
+        long nSlots = Math.min(SEGMENT_SLOTS, capacity - ((long)i << SEGMENT_SHIFT));
+        ByteBuffer buf;
+
+        if (file != null){
+          long pos = fileOffset + ((long)i << (SEGMENT_SHIFT + 3));
+          buf = file.getChannel().map(FileChannel.MapMode.READ_WRITE, pos, nSlots << 3);
+        } else {
+          buf = ByteBuffer.allocateDirect( (int)(nSlots << 3));
+        }
+
+        segments[i] = buf.order(ByteOrder.nativeOrder()).asLongBuffer();
+      }
+    }
+
+    final long get (long idx){
+      return segments[(int)(idx >>> SEGMENT_SHIFT)].get( (int)(idx & SEGMENT_MASK));
+    }
+
+    final void set (long idx, long v){
+      segments[(int)(idx >>> SEGMENT_SHIFT)].put( (int)(idx & SEGMENT_MASK), v);
+    }
+
+    /**
+     * answer the stored id of the state with this hash, or -1 if it is not
+     * in the table. If 'newId' is >= 0, the state is added if it is new
+     */
+    long lookup (long hash, long newId){
+      int check = (int)hash;
+      long idx = ((hash >>> 32) * capacity) >>> 32; // range reduction
+
+      while (true){
+        long slot = get(idx);
+
+        if (slot == 0){
+          if (newId >= 0){
+            set(idx, ((long)check << 32) | (newId + 1));
+            nEntries++;
+          }
+          return -1;
+        }
+
+        if ((int)(slot >>> 32) == check){
+          return (slot & 0xffffffffL) - 1;
+        }
+
+        if (++idx == capacity){
+          idx = 0;
+        }
+      }
+    }
+  }
+
+  protected double maxLoad;
+  protected File storageFile;
+  protected RandomAccessFile file;
+  protected long fileSize;
+
+  protected ArrayList<Table> tables = new ArrayList<Table>();
+  protected Table current;
+
+  protected int lastStateId = -1;
+
+  public OffHeapStateSet (Config conf){
+    long capacity = conf.getLong("vm.storage.offheap.capacity", 1L << 22);
+    capacity = Math.max( Math.min(capacity, MAX_CAPACITY), 1024);
+    maxLoad = conf.getDouble("vm.storage.offheap.max_load", 0.75);
+    if (maxLoad <= 0 || maxLoad >= 1.0){
+      maxLoad = 0.75;
+    }
+
+    String dir = conf.getString("vm.storage.offheap.dir");
+    if (dir != null){
+      try {
+        storageFile = File.createTempFile("jpf-states", ".bin", new File(dir));
+        storageFile.deleteOnExit();
+        file = new RandomAccessFile(storageFile, "rw");
+      } catch (IOException iox){
+        throw new JPFException("cannot create state storage file in " + dir + " : " + iox);
+      }
+    }
+
+    current = addTable(capacity);
+  }
+
+  protected Table addTable (long capacity){
+    try {
+      if (file != null){
+        file.setLength( fileSize + (capacity << 3)); // sparse, doesn't allocate disk blocks
+      }
+
+      Table t = new Table(capacity, maxLoad, file, fileSize);
+      fileSize += (capacity << 3);
+      tables.add(t);
+      return t;
+
+    } catch (IOException iox){
+      throw new JPFException("cannot extend state storage: " + iox);
+    }
+  }
+
+  /**
+   * close and delete the storage file, and drop our buffers. There is no
+   * explicit unmap or free for mapped and direct buffers, their memory is
+   * released once they are garbage collected
+   */
+  @Override
+  public void cleanUp (){
+    tables.clear();
+    current = null;
+
+    if (file != null){
+      try {
+        file.close();
+      } catch (IOException iox){
+        // nothing we can do, it's deleted on exit
+      }
+      file = null;
+      storageFile.delete();
+    }
+  }
+
+  public File getStorageFile(){
+    return storageFile;
+  }
+
+  @Override
+  public int size () {
+    return lastStateId + 1;
+  }
+
+  public long getCapacity(){
+    long n = 0;
+    for (Table t : tables){
+      n += t.capacity;
+    }
+    return n;
+  }
+
+  @Override
+  protected int add (int[] state) {
+    return add( JenkinsStateSet.longLookup3Hash(state));
+  }
+
+  public int add (long hash){
+    // check the full tables first, they don't change anymore
+    for (Table t : tables){
+      if (t != current){
+        long id = t.lookup(hash, -1);
+        if (id >= 0){
+          return (int)id;
+        }
+      }
+    }
+
+    if (current.nEntries >= current.maxEntries){
+      long id = current.lookup(hash, -1);
+      if (id >= 0){
+        return (int)id;
+      }
+      current = addTable( Math.min(current.capacity * 2, MAX_CAPACITY));
+    }
+
+    int newId = lastStateId + 1;
+    long id = current.lookup(hash, newId);
+    if (id >= 0){
+      return (int)id;
+    }
+
+    lastStateId = newId;
+    return newId;
+  }
+}
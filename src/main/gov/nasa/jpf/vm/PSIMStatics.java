@@ -0,0 +1,255 @@
+/*
+ * Copyright (C) 2014, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ * All rights reserved.
+ *
+ * The Java Pathfinder core (jpf-core) platform is licensed under the
+ * Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0. 
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+package gov.nasa.jpf.vm;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+
+import gov.nasa.jpf.Config;
+import gov.nasa.jpf.util.IntTable;
+import gov.nasa.jpf.util.PSIntMap;
+
+/**
+ * Statics implementation that uses a PersistentStagingMsbIntMap as the underlying container.
+ *
+ * This is intended for SUTs with a large number of loaded classes, for which OVStatics
+ * spends most of its store/restore time in processing and copying all StaticElementInfos.
+ * Since the map is persistent, snapshots only have to freeze the StaticElementInfos that
+ * were created or cloned since the last snapshot, and restoring just means to reset the map.
+ *
+ * The only per-object work that remains on restore is to update the locking info of
+ * the threads (which is not stored separately, see ElementInfo.updateLockingInfo()).
+ * We keep the StaticElementInfos with a busy monitor in a second persistent map, so that
+ * we don't have to look at the (unchanged and frozen) others
+ */
+public class PSIMStatics implements Statics {
+
+  static class PSIMMemento implements Memento<Statics> {
+    PSIntMap<StaticElementInfo> eiSnap;
+    PSIntMap<ElementInfo> lockedSnap;
+
+    PSIMMemento (PSIMStatics statics){
+      statics.storeChanged();
+
+      // no need to transform anything, they are persistent
+      eiSnap = statics.elementInfos;
+      lockedSnap = statics.lockedInfos;
+    }
+
+    @Override
+    public Statics restore(Statics inSitu) {
+      PSIMStatics statics = (PSIMStatics) inSitu;
+      statics.elementInfos = eiSnap;
+      statics.lockedInfos = lockedSnap;
+      statics.changed.clear();
+
+      statics.lockedInfos.process( ElementInfo.restorer);
+
+      return statics;
+    }
+  }
+
+  protected PSIntMap<StaticElementInfo> elementInfos;
+
+  // the subset of elementInfos that have a locking thread or threads blocked on them
+  protected PSIntMap<ElementInfo> lockedInfos;
+
+  // the ElementInfos that were created or cloned since the last snapshot
+  protected ArrayList<ElementInfo> changed;
+
+  // search global class ids (for this ClassLoader only), see OVStatics
+  protected int nextId;
+  protected IntTable<String> ids;
+
+
+  //--- construction
+
+  public PSIMStatics (Config conf) {
+    elementInfos = new PSIntMap<StaticElementInfo>();
+    lockedInfos = new PSIntMap<ElementInfo>();
+    changed = new ArrayList<ElementInfo>();
+
+    nextId = 0;
+    ids = new IntTable<String>();
+  }
+
+  protected int computeId (ClassInfo ci) {
+    String clsName = ci.getName();
+    IntTable.Entry<String> e = ids.get(clsName);
+    if (e == null) {
+      int id = nextId++;
+      ids.put( clsName, id);
+      return id;
+
+    } else {
+      return e.val;
+    }
+  }
+
+  protected StaticElementInfo createStaticElementInfo (int id, ClassInfo ci, ThreadInfo ti, ElementInfo eiClsObj) {
+    Fields   f = ci.createStaticFields();
+    Monitor  m = new Monitor();
+
+    StaticElementInfo ei = new StaticElementInfo( id, ci, f, m, ti, eiClsObj);
+
+    ci.initializeStaticData(ei, ti);
+
+    return ei;
+  }
+
+  protected void set (int id, StaticElementInfo ei) {
+    elementInfos = elementInfos.set(id, ei);
+    changed.add(ei);
+  }
+
+  @Override
+  public StaticElementInfo newClass (ClassInfo ci, ThreadInfo ti, ElementInfo eiClsObj) {
+    assert (eiClsObj != null);
+
+    int id = computeId( ci);
+
+    StaticElementInfo ei = createStaticElementInfo( id, ci, ti, eiClsObj);
+    set(id, ei);
+
+    return ei;
+  }
+
+  @Override
+  public StaticElementInfo newStartupClass (ClassInfo ci, ThreadInfo ti) {
+    int id = computeId( ci);
+
+    StaticElementInfo ei = createStaticElementInfo( id, ci, ti, null);
+    set(id, ei);
+
+    return ei;
+  }
+
+
+  //--- accessors
+
+  @Override
+  public StaticElementInfo get(int id) {
+    return elementInfos.get(id);
+  }
+
+  @Override
+  public StaticElementInfo getModifiable(int id) {
+    StaticElementInfo ei = elementInfos.get(id);
+
+    if (ei.isFrozen()) {
+      ei = (StaticElementInfo)ei.deepClone();
+      // freshly created ElementInfos are not frozen, so we don't have to defreeze
+      set(id, ei);
+    }
+
+    return ei;
+  }
+
+  //--- housekeeping
+
+  @Override
+  public void cleanUpDanglingReferences (Heap heap) {
+    ThreadInfo ti = ThreadInfo.getCurrentThread();
+    int tid = ti.getId();
+    boolean isThreadTermination = ti.isTerminated();
+
+    for (ElementInfo e : this) {
+      e.cleanUp( heap, isThreadTermination, tid);
+    }
+  }
+
+  //--- state restoration
+
+  /**
+   * freeze everything that was created or cloned since the last snapshot, and
+   * update the lockedInfos accordingly. Monitors of frozen ElementInfos can't change,
+   * so this is all we have to look at
+   */
+  protected void storeChanged() {
+    int n = changed.size();
+    if (n > 0) {
+      for (int i = 0; i < n; i++) {
+        ElementInfo ei = changed.get(i);
+
+        int id = ei.getObjectRef();
+
+        // skip duplicates and replaced ones
+        if (!ei.isFrozen() && elementInfos.get(id) == ei) {
+          ei.freeze();
+
+          Monitor m = ei.getMonitor();
+          if (m.getLockingThread() != null || m.hasLockedThreads()) {
+            lockedInfos = lockedInfos.set(id, ei);
+          } else if (lockedInfos.get(id) != null) {
+            lockedInfos = lockedInfos.remove(id);
+          }
+        }
+      }
+      changed.clear();
+    }
+  }
+
+  @Override
+  public Memento<Statics> getMemento(MementoFactory factory) {
+    return factory.getMemento(this);
+  }
+
+  @Override
+  public Memento<Statics> getMemento() {
+    return new PSIMMemento(this);
+  }
+
+  @Override
+  public Iterator<ElementInfo> iterator(){
+    final Iterator<StaticElementInfo> it = elementInfos.iterator();
+
+    return new Iterator<ElementInfo>(){
+      @Override
+      public boolean hasNext(){
+        return it.hasNext();
+      }
+
+      @Override
+      public ElementInfo next(){
+        return it.next();
+      }
+
+      @Override
+      public void remove(){
+        throw new UnsupportedOperationException("PSIMStatics elements can't be removed");
+      }
+    };
+  }
+
+  @Override
+  public void markRoots(Heap heap) {
+    for (StaticElementInfo ei : liveStatics()){
+      ei.markStaticRoot(heap);
+    }
+  }
+
+  @Override
+  public Iterable<StaticElementInfo> liveStatics() {
+    return elementInfos;
+  }
+
+  @Override
+  public int size() {
+    return elementInfos.size();
+  }
+}
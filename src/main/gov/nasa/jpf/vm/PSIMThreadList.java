@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2014, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ * All rights reserved.
+ *
+ * The Java Pathfinder core (jpf-core) platform is licensed under the
+ * Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0. 
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+package gov.nasa.jpf.vm;
+
+import gov.nasa.jpf.Config;
+import gov.nasa.jpf.util.PSIntMap;
+
+/**
+ * a ThreadList that shares its state between snapshots, instead of storing
+ * a new array of ThreadInfo mementos for each of them.
+ *
+ * Our threads array is never modified in place (add/remove create new ones),
+ * hence mementos can just keep a reference to it. The ThreadInfo mementos
+ * are stored in a PersistentStagingMsbIntMap that is indexed by position in
+ * this array, i.e. snapshots only have to update the entries of threads that
+ * have changed. If the array changes, we start a new map.
+ *
+ * Note that restoring still has to visit all threads, since the ThreadInfo
+ * mementos also reset the lock info that gets re-computed by the heap
+ * and statics restorers (see ElementInfo.updateLockingInfo())
+ */
+public class PSIMThreadList extends ThreadList {
+
+  static class PSIMTListMemento implements Memento<ThreadList> {
+    ThreadInfo[] threads;
+    PSIntMap<Memento<ThreadInfo>> tiMementos;
+    int maxTid;
+
+    PSIMTListMemento (PSIMThreadList tl) {
+      ThreadInfo[] threads = tl.threads;
+      PSIntMap<Memento<ThreadInfo>> tiMementos = tl.tiMementos;
+
+      if (threads != tl.storedThreads) {
+        tiMementos = new PSIntMap<Memento<ThreadInfo>>();
+      }
+
+      for (int i=0; i<threads.length; i++){
+        ThreadInfo ti = threads[i];
+        Memento<ThreadInfo> m = null;
+
+        if (!ti.hasChanged()){
+          m = ti.cachedMemento;
+        }
+        if (m == null){
+          m = ti.getMemento();
+          ti.cachedMemento = m;
+        }
+
+        if (tiMementos.get(i) != m){
+          tiMementos = tiMementos.set(i, m);
+        }
+      }
+
+      tl.storedThreads = threads;
+      tl.tiMementos = tiMementos;
+
+      this.threads = threads;
+      this.tiMementos = tiMementos;
+      this.maxTid = tl.maxTid;
+    }
+
+    @Override
+    public ThreadList restore(ThreadList inSitu){
+      PSIMThreadList tl = (PSIMThreadList)inSitu;
+
+      for (int i=0; i<threads.length; i++){
+        Memento<ThreadInfo> m = tiMementos.get(i);
+        ThreadInfo ti = m.restore(null);
+        ti.cachedMemento = m;
+        ti.tlIdx = i;
+      }
+
+      tl.threads = threads;
+      tl.maxTid = maxTid;
+
+      tl.storedThreads = threads;
+      tl.tiMementos = tiMementos;
+
+      return tl;
+    }
+  }
+
+  // the threads array and ThreadInfo mementos of the last snapshot
+  protected ThreadInfo[] storedThreads;
+  protected PSIntMap<Memento<ThreadInfo>> tiMementos;
+
+
+  protected PSIMThreadList() {
+    // nothing here
+  }
+
+  public PSIMThreadList (Config config, KernelState ks) {
+    super(config, ks);
+
+    tiMementos = new PSIntMap<Memento<ThreadInfo>>();
+  }
+
+  @Override
+  public Memento<ThreadList> getMemento(){
+    return new PSIMTListMemento(this);
+  }
+
+  @Override
+  public Object clone() {
+    PSIMThreadList other = new PSIMThreadList();
+    other.threads = new ThreadInfo[threads.length];
+
+    for (int i=0; i<threads.length; i++) {
+      other.threads[i] = (ThreadInfo) threads[i].clone();
+    }
+
+    other.tiMementos = new PSIntMap<Memento<ThreadInfo>>();
+
+    return other;
+  }
+}
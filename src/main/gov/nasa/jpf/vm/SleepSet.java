@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2014, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ * All rights reserved.
+ *
+ * The Java Pathfinder core (jpf-core) platform is licensed under the
+ * Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0. 
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+package gov.nasa.jpf.vm;
+
+/**
+ * an immutable set of threads that don't have to be scheduled in a state,
+ * together with the footprints of their pending transitions.
+ *
+ * A thread is put to sleep once its transition from some state s has been
+ * explored. It stays asleep in the successors of s that are reached by
+ * transitions of other threads, as long as these transitions are independent
+ * of its own (i.e. its transition would still be the same, and executing it
+ * would lead to states that were already covered)
+ */
+public class SleepSet {
+
+  public static final SleepSet EMPTY = new SleepSet(new int[0], new Footprint[0]);
+
+  protected final int[] threadIds;
+  protected final Footprint[] footprints;
+
+  protected SleepSet (int[] threadIds, Footprint[] footprints){
+    this.threadIds = threadIds;
+    this.footprints = footprints;
+  }
+
+  public int size(){
+    return threadIds.length;
+  }
+
+  public boolean isEmpty(){
+    return threadIds.length == 0;
+  }
+
+  public boolean contains (int threadId){
+    for (int i=0; i<threadIds.length; i++){
+      if (threadIds[i] == threadId){
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * @return a new set that includes the thread, replacing a previous entry of it
+   */
+  public SleepSet add (int threadId, Footprint fp){
+    int n = threadIds.length;
+    for (int i=0; i<n; i++){
+      if (threadIds[i] == threadId){
+        Footprint[] newFootprints = footprints.clone();
+        newFootprints[i] = fp;
+        return new SleepSet(threadIds, newFootprints);
+      }
+    }
+
+    int[] newIds = new int[n+1];
+    Footprint[] newFootprints = new Footprint[n+1];
+    System.arraycopy(threadIds, 0, newIds, 0, n);
+    System.arraycopy(footprints, 0, newFootprints, 0, n);
+    newIds[n] = threadId;
+    newFootprints[n] = fp;
+
+    return new SleepSet(newIds, newFootprints);
+  }
+
+  public SleepSet addAll (SleepSet other){
+    SleepSet s = this;
+    for (int i=0; i<other.threadIds.length; i++){
+      s = s.add(other.threadIds[i], other.footprints[i]);
+    }
+    return s;
+  }
+
+  /**
+   * @return the entries of this set whose threads are also in the other set
+   */
+  public SleepSet retainAll (SleepSet other){
+    int n = threadIds.length;
+    int[] newIds = new int[n];
+    Footprint[] newFootprints = new Footprint[n];
+    int j = 0;
+
+    for (int i=0; i<n; i++){
+      if (other.contains(threadIds[i])){
+        newIds[j] = threadIds[i];
+        newFootprints[j] = footprints[i];
+        j++;
+      }
+    }
+
+    return subset(newIds, newFootprints, j);
+  }
+
+  /**
+   * the sleep set of the state that is reached by executing a transition with
+   * the given thread and footprint, which keeps all entries of other threads
+   * that are independent of it
+   */
+  public SleepSet getIndependent (int threadId, Footprint fp){
+    int n = threadIds.length;
+    int[] newIds = new int[n];
+    Footprint[] newFootprints = new Footprint[n];
+    int j = 0;
+
+    for (int i=0; i<n; i++){
+      if (threadIds[i] != threadId && !fp.isDependent(footprints[i])){
+        newIds[j] = threadIds[i];
+        newFootprints[j] = footprints[i];
+        j++;
+      }
+    }
+
+    return subset(newIds, newFootprints, j);
+  }
+
+  protected SleepSet subset (int[] newIds, Footprint[] newFootprints, int len){
+    if (len == threadIds.length){
+      return this;
+    } else if (len == 0){
+      return EMPTY;
+    } else {
+      int[] ids = new int[len];
+      Footprint[] fps = new Footprint[len];
+      System.arraycopy(newIds, 0, ids, 0, len);
+      System.arraycopy(newFootprints, 0, fps, 0, len);
+      return new SleepSet(ids, fps);
+    }
+  }
+
+  @Override
+  public String toString(){
+    StringBuilder sb = new StringBuilder("SleepSet{");
+    for (int i=0; i<threadIds.length; i++){
+      if (i > 0){
+        sb.append(',');
+      }
+      sb.append(threadIds[i]);
+    }
+    sb.append('}');
+    return sb.toString();
+  }
+}
@@ -17,6 +17,7 @@
  */
 package gov.nasa.jpf.vm;
 
+import gov.nasa.jpf.Config;
 import gov.nasa.jpf.JPFException;
 import gov.nasa.jpf.util.BitSetN;
 import gov.nasa.jpf.util.BitSet1024;
@@ -63,6 +64,23 @@ public abstract class StackFrame implements Cloneable {
    */
   public static final int   ATTR_IS_FROZEN  = 0x100;  
   static final int ATTR_IS_REFLECTION = 0x1000;  
+
+  /**
+   * transient attributes that are used if frames are modified in place (see UndoBacktracker).
+   * ATTR_IS_LOGGED is set while slot changes have to be recorded in the undoLog,
+   * ATTR_HAS_UNDO if the undoLog contains records of this frame, and ATTR_IS_PINNED if
+   * this frame is referenced by a RestorableState, i.e. has to be cloned upon modification
+   */
+  static final int ATTR_IS_LOGGED = 0x10000;
+  static final int ATTR_HAS_UNDO = 0x20000;
+  static final int ATTR_IS_PINNED = 0x40000;
+
+  /**
+   * if set, frozen frames are not cloned upon modification but changed in
+   * place, recording the changes in this log
+   */
+  static UndoLog undoLog;
+
    /**
     * the previous StackFrame (usually the caller, null if first). To be set when
     * the frame is pushed on the ThreadInfo callstack
@@ -103,9 +121,20 @@ public abstract class StackFrame implements Cloneable {
   protected Instruction pc;         // the next insn to execute (program counter)
   protected MethodInfo mi;          // which method is executed in this frame
 
+  protected FixedBitSet loggedSlots; // slots with undo records since this frame became modifiable
+  protected int logTop;             // max top of all stored states of this frame, slots above are not part of them
+
   static final int[] EMPTY_ARRAY = new int[0];
   static final FixedBitSet EMPTY_BITSET = new BitSet64();
 
+  /**
+   * reset StackFrame statics (e.g. to reinitialize JPF)
+   */
+  static boolean init (Config config) {
+    undoLog = null;
+    return true;
+  }
+
   protected StackFrame (MethodInfo callee, int nLocals, int nOperands){
     mi = callee;
     pc = mi.getInstruction(0);
@@ -367,6 +396,7 @@ public abstract class StackFrame implements Cloneable {
 
   public void setOperand (int offset, int v, boolean isRefValue){
     int i = top-offset;
+    logSlot(i);
     slots[i] = v;
     isRef.set(i, isRefValue);
   }
@@ -487,6 +517,7 @@ public abstract class StackFrame implements Cloneable {
       if (a == null) return;
       attrs = new Object[slots.length];
     }
+    logSlot(top);
     attrs[top] = a;
   }
 
@@ -529,6 +560,7 @@ public abstract class StackFrame implements Cloneable {
         attrs = new Object[slots.length];
       }
 
+      logSlot(top);
       attrs[top] = ObjectList.add(attrs[top], a);
     }        
   }
@@ -536,6 +568,7 @@ public abstract class StackFrame implements Cloneable {
   public void removeOperandAttr (Object a){
     assert (top >= stackBase) && (a != null);
     if (attrs != null){
+      logSlot(top);
       attrs[top] = ObjectList.remove(attrs[top], a);
     }        
   }
@@ -543,6 +576,7 @@ public abstract class StackFrame implements Cloneable {
   public void replaceOperandAttr (Object oldAttr, Object newAttr){
     assert (top >= stackBase) && (oldAttr != null) && (newAttr != null);
     if (attrs != null){
+      logSlot(top);
       attrs[top] = ObjectList.replace(attrs[top], oldAttr, newAttr);
     }        
   }
@@ -595,6 +629,7 @@ public abstract class StackFrame implements Cloneable {
       if (a == null) return;
       attrs = new Object[slots.length];
     }
+    logSlot(i);
     attrs[i] = a;
   }
 
@@ -640,6 +675,7 @@ public abstract class StackFrame implements Cloneable {
       if (attrs == null) {
         attrs = new Object[slots.length];
       }
+      logSlot(i);
       attrs[i] = ObjectList.add(attrs[i],a);
     }    
   }
@@ -648,6 +684,7 @@ public abstract class StackFrame implements Cloneable {
     int i = top-offset;
     assert (i >= stackBase) && (a != null);
     if (attrs != null){
+      logSlot(i);
       attrs[i] = ObjectList.remove(attrs[i], a);
     }        
   }
@@ -656,6 +693,7 @@ public abstract class StackFrame implements Cloneable {
     int i = top-offset;
     assert (i >= stackBase) && (oldAttr != null) && (newAttr != null);
     if (attrs != null){
+      logSlot(i);
       attrs[i] = ObjectList.replace(attrs[i], oldAttr, newAttr);
     }        
   }
@@ -766,6 +804,7 @@ public abstract class StackFrame implements Cloneable {
       if (a == null) return;
       attrs = new Object[slots.length];
     }
+    logSlot(index);
     attrs[index] = a;
   }
 
@@ -813,12 +852,14 @@ public abstract class StackFrame implements Cloneable {
       if (attr == null) return;
       attrs = new Object[slots.length];
     }
+    logSlot(index);
     attrs[index] = ObjectList.add(attrs[index], attr);
   }
   
   public void removeLocalAttr (int index, Object attr){
     assert index < stackBase && attr != null;
     if (attr != null){
+      logSlot(index);
       attrs[index] = ObjectList.remove(attrs[index], attr);    
     }
   }
@@ -826,6 +867,7 @@ public abstract class StackFrame implements Cloneable {
   public void replaceLocalAttr (int index, Object oldAttr, Object newAttr){
     assert index < stackBase && oldAttr != null && newAttr != null;
     if (attrs != null){
+      logSlot(index);
       attrs[index] = ObjectList.replace(attrs[index], oldAttr, newAttr);    
     }
   }
@@ -1035,6 +1077,7 @@ public abstract class StackFrame implements Cloneable {
       VM.getVM().getSystemState().activateGC();
     }
     
+    logSlot(index);
     slots[index] = ref;
     isRef.set(index);
   }
@@ -1045,6 +1088,7 @@ public abstract class StackFrame implements Cloneable {
       VM.getVM().getSystemState().activateGC();      
     }
     
+    logSlot(index);
     slots[index] = v;
     isRef.clear(index);
   }
@@ -1063,6 +1107,7 @@ public abstract class StackFrame implements Cloneable {
     // <2do> activateGc should be replaced by local refChanged
     boolean activateGc = ref || (isRef.get(index) && (slots[index] != MJIEnv.NULL));
 
+    logSlot(index);
     slots[index] = v;
     isRef.set(index,ref);
 
@@ -1158,6 +1203,7 @@ public abstract class StackFrame implements Cloneable {
     if (attrs == null){
       attrs = new Object[slots.length];
     }
+    logSlot(i);
     attrs[i] = a;
   }
   public void addSlotAttr (int i, Object a){
@@ -1166,11 +1212,13 @@ public abstract class StackFrame implements Cloneable {
         attrs = new Object[slots.length];
       }
 
+      logSlot(i);
       attrs[i] = ObjectList.add(attrs[i], a);
     }        
   }  
   public void replaceSlotAttr (int i, Object oldAttr, Object newAttr){
     if (attrs != null){
+      logSlot(i);
       attrs[i] = ObjectList.replace(attrs[i], oldAttr, newAttr);
     }        
   }
@@ -1187,6 +1235,7 @@ public abstract class StackFrame implements Cloneable {
     // WATCH OUT: apparently, slots can change type, so we have to
     // reset the reference flag (happened in JavaSeq)
 
+    logSlots(index, index+1);
     slots[index] = Types.hiLong(v);
     isRef.clear(index);
 
@@ -1309,6 +1358,7 @@ public abstract class StackFrame implements Cloneable {
   // stack operations
   public void clearOperandStack () {
     if (attrs != null){
+      logSlots(stackBase, top);
       for (int i=stackBase; i<= top; i++){
         attrs[i] = null;
       }
@@ -1324,6 +1374,9 @@ public abstract class StackFrame implements Cloneable {
       StackFrame sf = (StackFrame) super.clone();
 
       sf.defreeze();
+      sf.attributes &= ~(ATTR_IS_LOGGED | ATTR_HAS_UNDO | ATTR_IS_PINNED);
+      sf.loggedSlots = null;
+      sf.logTop = 0;
       
       sf.slots = slots.clone();
       sf.isRef = isRef.clone();
@@ -1349,7 +1402,7 @@ public abstract class StackFrame implements Cloneable {
   }
   
   public void freeze() {
-    attributes |= ATTR_IS_FROZEN;
+    attributes = (attributes | ATTR_IS_FROZEN) & ~ATTR_IS_LOGGED;
   }
 
   public void defreeze() {
@@ -1359,6 +1412,101 @@ public abstract class StackFrame implements Cloneable {
   public boolean isFrozen() {
     return ((attributes & ATTR_IS_FROZEN) != 0);    
   }
+
+  /**
+   * return a frame that can be modified, which is either this frame if it is
+   * not frozen, or a clone of it.
+   * If there is an undoLog, frozen frames are not cloned but modified in place,
+   * recording their scalar state now and the state of each slot before its
+   * first modification, which avoids copying whole frames per transition
+   */
+  public StackFrame getModifiable() {
+    if ((attributes & ATTR_IS_FROZEN) == 0) {
+      return this;
+
+    } else if (undoLog != null && (attributes & ATTR_IS_PINNED) == 0 && isLoggable()) {
+      undoLog.logFrame(this);
+
+      attributes = (attributes & ~ATTR_IS_FROZEN) | ATTR_IS_LOGGED | ATTR_HAS_UNDO;
+      // slots above the current top might still be part of a state further
+      // down the backtrack stack, from which we would revive them
+      if (top > logTop) {
+        logTop = top;
+      }
+      if (loggedSlots == null) {
+        loggedSlots = createReferenceMap(slots.length);
+      } else {
+        loggedSlots.clear();
+      }
+      return this;
+
+    } else {
+      return clone();
+    }
+  }
+
+  /**
+   * can this frame be modified in place, i.e. is all its state covered by undo records
+   */
+  protected boolean isLoggable() {
+    return true;
+  }
+
+  /**
+   * make sure this frame is never modified in place anymore
+   */
+  public void pin() {
+    attributes |= ATTR_IS_PINNED;
+  }
+
+  public boolean hasUndoRecords() {
+    return ((attributes & ATTR_HAS_UNDO) != 0);
+  }
+
+  /**
+   * write barrier that has to be called before slot i is modified
+   */
+  protected final void logSlot (int i) {
+    if ((attributes & ATTR_IS_LOGGED) != 0) {
+      logSlotState(i);
+    }
+  }
+
+  /**
+   * write barrier for the slot range [from,to]
+   */
+  protected final void logSlots (int from, int to) {
+    if ((attributes & ATTR_IS_LOGGED) != 0) {
+      for (int i=from; i<=to; i++) {
+        logSlotState(i);
+      }
+    }
+  }
+
+  private void logSlotState (int i) {
+    if (i <= logTop && i >= 0 && !loggedSlots.get(i)) {
+      loggedSlots.set(i);
+      undoLog.logSlot(this, i, slots[i], isRef.get(i), (attrs != null) ? attrs[i] : null);
+    }
+  }
+
+  void restoreLogged (int top, int thisRef, int attributes, Instruction pc, Object frameAttr, Object[] attrs, StackFrame prev) {
+    this.top = top;
+    this.thisRef = thisRef;
+    this.attributes = attributes;
+    this.pc = pc;
+    this.frameAttr = frameAttr;
+    this.attrs = attrs;
+    this.prev = prev;
+  }
+
+  void restoreLoggedSlot (int i, int value, boolean ref, Object attr) {
+    slots[i] = value;
+    isRef.set(i, ref);
+    if (attrs != null) {
+      attrs[i] = attr;
+    }
+  }
   
   
   public void setReflection(){
@@ -1380,6 +1528,7 @@ public abstract class StackFrame implements Cloneable {
     int t= top;
 
     int td=t+1;
+    logSlot(td);
     slots[td] = slots[t];
     isRef.set(td, isRef.get(t));
 
@@ -1398,6 +1547,8 @@ public abstract class StackFrame implements Cloneable {
     int ts, td;
     int t=top;
 
+    logSlots(t+1, t+2);
+
     // duplicate A
     td = t+1; ts = t-1;
     slots[td] = slots[ts];
@@ -1428,6 +1579,8 @@ public abstract class StackFrame implements Cloneable {
     int ts, td;
     int t = top;
 
+    logSlots(t-2, t+2);
+
     // duplicate C
     ts=t; td = t+2;                              // ts=top, td=top+2
     slots[td] = c = slots[ts];
@@ -1484,6 +1637,8 @@ public abstract class StackFrame implements Cloneable {
     int ts, td;
     int t = top;
 
+    logSlots(t-3, t+2);
+
     // duplicate C
     ts = t-1; td = t+1;                          // ts=top-1, td=top+1
     slots[td] = c = slots[ts];
@@ -1548,6 +1703,8 @@ public abstract class StackFrame implements Cloneable {
     int ts, td;
     int t = top;
 
+    logSlots(t-1, t+1);
+
     // duplicate B
     ts = t; td = t+1;
     slots[td] = b = slots[ts];
@@ -1587,6 +1744,8 @@ public abstract class StackFrame implements Cloneable {
     int ts, td;
     int t = top;
 
+    logSlots(t-2, t+1);
+
     // duplicate C
     ts = t; td = t+1;
     slots[td] = c = slots[ts];
@@ -1835,6 +1994,8 @@ public abstract class StackFrame implements Cloneable {
   public void swap () {
     int t = top-1;
 
+    logSlots(t, top);
+
     int v = slots[top];
     boolean isTopRef = isRef.get(top);
 
@@ -1984,6 +2145,7 @@ public abstract class StackFrame implements Cloneable {
 
     if (attrs != null){
       i = top;
+      logSlots(i-1, i);
       attrs[i--] = null; // not really required
       attrs[i--] = null; // that's where the attribute should be
     }
@@ -2000,6 +2162,7 @@ public abstract class StackFrame implements Cloneable {
 
     if (attrs != null){
       i = top;
+      logSlots(i-1, i);
       attrs[i--] = null; // not really required
       attrs[i--] = null; // that's where the attribute should be
     }
@@ -2038,6 +2201,7 @@ public abstract class StackFrame implements Cloneable {
     }
 
     if (attrs != null){  // just to avoid memory leaks
+      logSlots(t+1, top);
       for (int i=top; i>t; i--){
         attrs[i] = null;
       }
@@ -2050,6 +2214,7 @@ public abstract class StackFrame implements Cloneable {
     int v = slots[top];
 
     if (attrs != null){ // just to avoid memory leaks
+      logSlot(top);
       attrs[top] = null;
     }
 
@@ -2071,6 +2236,7 @@ public abstract class StackFrame implements Cloneable {
     }
 
     if (attrs != null){ // just to avoid memory leaks
+      logSlot(top);
       attrs[top] = null;
     }
 
@@ -2085,6 +2251,7 @@ public abstract class StackFrame implements Cloneable {
   
   public void pushLocal (int index) {
     top++;
+    logSlot(top);
     slots[top] = slots[index];
     isRef.set(top, isRef.get(index));
 
@@ -2096,6 +2263,8 @@ public abstract class StackFrame implements Cloneable {
   public void pushLongLocal (int index){
     int t = top;
 
+    logSlots(t+1, t+2);
+
     slots[++t] = slots[index];
     isRef.clear(t);
     slots[++t] = slots[index+1];
@@ -2110,6 +2279,8 @@ public abstract class StackFrame implements Cloneable {
   }
 
   public void storeOperand (int index){
+    logSlot(index);
+    logSlot(top);
     slots[index] = slots[top];
     isRef.set( index, isRef.get(top));
 
@@ -2125,6 +2296,8 @@ public abstract class StackFrame implements Cloneable {
     int t = top-1;
     int i = index;
 
+    logSlots(index, index+1);
+    logSlots(t, t+1);
     slots[i] = slots[t];
     isRef.clear(i);
 
@@ -2144,6 +2317,7 @@ public abstract class StackFrame implements Cloneable {
 
   public void push (int v){
     top++;
+    logSlot(top);
     slots[top] = v;
     isRef.clear(top);
 
@@ -2154,6 +2328,7 @@ public abstract class StackFrame implements Cloneable {
 
   public void pushRef (int ref){
     top++;
+    logSlot(top);
     slots[top] = ref;
     isRef.set(top);
 
@@ -2168,6 +2343,7 @@ public abstract class StackFrame implements Cloneable {
 
   public void push (int v, boolean ref) {
     top++;
+    logSlot(top);
     slots[top] = v;
     isRef.set(top, ref);
 
@@ -29,4 +29,11 @@ public interface StateSerializer {
   
   
   void addNativeStateHolder (NativeStateHolder nsh);
+
+  /**
+   * called after the JPF run is finished, to release resources such as threads
+   */
+  default void cleanUp (){
+    // nothing
+  }
 }
@@ -39,5 +39,12 @@ public interface StateSet {
    * how many states already in the set.  also, index of next newly-added state.
    */
   int size ();
+
+  /**
+   * called after the JPF run is finished, to release resources such as files
+   */
+  default void cleanUp (){
+    // nothing
+  }
 }
 
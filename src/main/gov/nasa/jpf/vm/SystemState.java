@@ -19,10 +19,13 @@ package gov.nasa.jpf.vm;
 
 import gov.nasa.jpf.Config;
 import gov.nasa.jpf.JPFException;
+import gov.nasa.jpf.util.SparseObjVector;
 import gov.nasa.jpf.util.TypeSpecMatcher;
 import gov.nasa.jpf.vm.choice.BreakGenerator;
+import gov.nasa.jpf.vm.choice.ThreadChoiceFromSet;
 
 import java.io.PrintWriter;
+import java.util.Arrays;
 import java.util.LinkedHashMap;
 
 
@@ -227,6 +230,13 @@ public class SystemState {
 
   /** CG types for which we extend transitions if the CG has only non-rescheduling single choices */
   TypeSpecMatcher extendTransitions;
+
+  /** records the footprint of the current transition if we use sleep sets (null otherwise) */
+  Footprint.Recorder footprintRecorder;
+  int[] entryThreadStates;
+
+  /** the (non-empty) sleep sets with which stored states were visited, indexed by state id */
+  SparseObjVector<SleepSet> visitedSleepSets;
   
   /**
    * Creates a new system state.
@@ -245,6 +255,11 @@ public class SystemState {
     }
 
     extendTransitions = TypeSpecMatcher.create(config.getStringArray("vm.extend_transitions"));
+
+    if (config.getBoolean("vm.sleep_sets", false)){
+      footprintRecorder = new Footprint.Recorder();
+      visitedSleepSets = new SparseObjVector<SleepSet>();
+    }
     // recordSteps is set later by VM, first we need a reporter (which requires the VM)
   }
 
@@ -527,6 +542,20 @@ public class SystemState {
     }
   }
 
+  /**
+   * replace the current 'nextCg' with another CG for the same instruction,
+   * e.g. from within a choiceGeneratorRegistered() notification. Other than
+   * removeNextChoiceGenerator() followed by setNextChoiceGenerator(), this
+   * keeps the cascade structure and does not notify listeners again
+   */
+  public void replaceNextChoiceGenerator (ChoiceGenerator<?> cg){
+    if (nextCg != null){
+      cg.setContext(execThread);
+      cg.setPreviousChoiceGenerator(nextCg.getPreviousChoiceGenerator());
+      nextCg = cg;
+    }
+  }
+
   /**
    * remove the whole chain of currently registered nextCGs
    */
@@ -762,7 +791,170 @@ public class SystemState {
     trail = new Transition(curCg, execThread);
     entryAtomicLevel = atomicLevel; // store before we start to enter
 
-    execThread.executeTransition(this);    
+    if (footprintRecorder != null){
+      ThreadChoiceFromSet tcg = getSleepSetCG(curCg);
+      int tid = execThread.getId();
+      ThreadList tl = vm.getThreadList();
+
+      footprintRecorder.reset();
+      entryThreadStates = getThreadStates(tl);
+
+      execThread.executeTransition(this);
+
+      updateSleepSets(tcg, tid, footprintRecorder.getFootprint( !Arrays.equals(entryThreadStates, getThreadStates(tl))));
+
+    } else {
+      execThread.executeTransition(this);
+    }
+  }
+
+  /**
+   * re-execute the transition of a stored backtrack data entry with the current
+   * choice of its ChoiceGenerator, i.e. without advancing it. This is used by
+   * Backtrackers that don't keep a KernelState for each state and have to
+   * reconstruct it from a preceding one, which has to be restored by the caller.
+   *
+   * CGs registered by the re-executed transition are dropped since the path
+   * already has the original ones, which we need to keep their progress.
+   * Returns false if the transition did not end with the same CG as the
+   * original one, i.e. if it depends on state that is not backtracked
+   */
+  public boolean replayTransition (VM vm, Object backtrackData){
+    Memento m = (Memento) backtrackData;
+    backtrackTo(backtrackData);
+
+    if (!retainAttributes){
+      isIgnored = false;
+      isForced = false;
+      isInteresting = false;
+      isBoring = false;
+    }
+    restorers = null;
+
+    setExecThread( vm);
+    trail = new Transition(curCg, execThread);
+    entryAtomicLevel = atomicLevel;
+
+    try {
+      execThread.executeTransition(this);
+    } catch (UncaughtException x) {
+      // same as in VM.forward(), we still executed the transition
+    }
+
+    boolean isSame = isSameCG(nextCg, m.nextCg);
+    removeAllNextChoiceGenerators();
+
+    return isSame;
+  }
+
+  static boolean isSameCG (ChoiceGenerator<?> cg, ChoiceGenerator<?> cgOrig){
+    if (cg == null || cgOrig == null){
+      return cg == cgOrig;
+    }
+
+    return cg.getClass() == cgOrig.getClass() && cg.getThreadInfo() == cgOrig.getThreadInfo()
+            && cg.getId().equals(cgOrig.getId()) && isSameInsn(cg.getInsn(), cgOrig.getInsn());
+  }
+
+  // synthetic (direct call) instructions are created anew for each execution
+  static boolean isSameInsn (Instruction insn, Instruction insnOrig){
+    if (insn == insnOrig){
+      return true;
+    } else if (insn == null || insnOrig == null){
+      return false;
+    } else {
+      return insn.getClass() == insnOrig.getClass() && insn.getInstructionIndex() == insnOrig.getInstructionIndex()
+              && insn.getMethodInfo().getFullName().equals(insnOrig.getMethodInfo().getFullName());
+    }
+  }
+
+  //--- sleep set support
+
+  public Footprint.Recorder getFootprintRecorder(){
+    return footprintRecorder;
+  }
+
+  /**
+   * the CG if this is a sleep set aware scheduling point that is not cascaded
+   * with other CGs of the same state, null otherwise
+   */
+  protected ThreadChoiceFromSet getSleepSetCG (ChoiceGenerator<?> cg){
+    if (cg instanceof ThreadChoiceFromSet && ((ThreadChoiceFromSet)cg).isSchedulingPoint()){
+      ChoiceGenerator<?> cgPrev = cg.getPreviousChoiceGenerator();
+      if (cgPrev == null || !cgPrev.isCascaded()){
+        return (ThreadChoiceFromSet)cg;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * called by the VM after the current state was stored or matched by the
+   * StateSet. Since a stored state is only explored for the threads that were
+   * not asleep when it was visited, we can't simply backtrack if it is matched
+   * with a smaller sleep set. In this case we force the state and only schedule
+   * the threads that were asleep before but are not asleep now
+   */
+  public void matchSleepSet (int stateId, boolean isNewState){
+    ThreadChoiceFromSet ncg = getSleepSetCG(nextCg);
+    SleepSet sleeping = SleepSet.EMPTY;
+    if (ncg != null && ncg.getSleepSet() != null){
+      sleeping = ncg.getSleepSet();
+    }
+
+    if (isNewState){
+      if (!sleeping.isEmpty()){
+        visitedSleepSets.set(stateId, sleeping);
+      }
+
+    } else {
+      SleepSet visited = visitedSleepSets.get(stateId);
+      if (visited != null){
+        SleepSet stillSleeping = visited.retainAll(sleeping);
+
+        if (ncg != null && stillSleeping.size() < visited.size()){
+          if (!isForced){
+            ncg.setSleepSet(sleeping);
+            ncg.setRevisitedSleepSet(visited);
+            isForced = true;
+          }
+
+          if (stillSleeping.isEmpty()){
+            visitedSleepSets.remove(stateId);
+          } else {
+            visitedSleepSets.set(stateId, stillSleeping);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * any thread state change (start, termination, blocking, wait, notify etc.)
+   * makes a transition dependent on all others
+   */
+  protected int[] getThreadStates (ThreadList tl){
+    int[] states = new int[tl.length()];
+    int i = 0;
+    for (ThreadInfo ti : tl){
+      states[i++] = ti.getState().ordinal();
+    }
+    return states;
+  }
+
+  /**
+   * compute the sleep set for the nextCg from the candidates of the CG that
+   * started the transition, and record the transition as explored there
+   */
+  protected void updateSleepSets (ThreadChoiceFromSet tcg, int tid, Footprint fp){
+    if (tcg != null){
+      ThreadChoiceFromSet ncg = getSleepSetCG(nextCg);
+      if (ncg != null){
+        ncg.setSleepSet( tcg.getSleepCandidates().getIndependent(tid, fp));
+      }
+
+      tcg.addExplored(tid, fp);
+    }
   }
 
   /**
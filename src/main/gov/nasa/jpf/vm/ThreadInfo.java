@@ -450,6 +450,46 @@ public class ThreadInfo extends InfoObject
     }
   }
 
+  /**
+   * make sure the current frames are never modified in place, which is required
+   * if they are referenced by a RestorableState (see UndoBacktracker). Frames
+   * that have undo records are changed when backtracking, so we replace them
+   * and all frames above with clones
+   */
+  void pinFrames() {
+    StackFrame last = null;
+    for (StackFrame frame = top; frame != null; frame = frame.getPrevious()) {
+      if (frame.hasUndoRecords()) {
+        last = frame;
+      }
+    }
+
+    if (last != null) {
+      StackFrame newTop = null;
+      StackFrame fLast = null;
+      for (StackFrame frame = top; ; frame = frame.getPrevious()) {
+        StackFrame f = frame.clone();
+        if (fLast == null) {
+          newTop = f;
+        } else {
+          fLast.setPrevious(f);
+        }
+        fLast = f;
+
+        if (frame == last) {
+          break;
+        }
+      }
+
+      top = newTop;
+      markTfChanged(top);
+    }
+
+    for (StackFrame frame = top; frame != null; frame = frame.getPrevious()) {
+      frame.pin();
+    }
+  }
+
   //--- cached mementos are only supposed to be accessed from the Restorer
 
   public Memento<ThreadInfo> getCachedMemento(){
@@ -976,7 +1016,7 @@ public class ThreadInfo extends InfoObject
     for (StackFrame frame = top; frame != null; frame = frame.getPrevious()){
       if (!frame.isSynthetic()){
         if (frame.isFrozen()) {
-          StackFrame newFrame = frame.clone();
+          StackFrame newFrame = frame.getModifiable();
           
           if (frame == top) {
             frame = newFrame;
@@ -988,7 +1028,7 @@ public class ThreadInfo extends InfoObject
             for (StackFrame f = getModifiableTopFrame(); f != frame; f = f
                 .getPrevious()) {
               if (f.isFrozen()) {
-                f = f.clone();
+                f = f.getModifiable();
                 if (fLast != null) {
                   fLast.setPrevious(f);
                 }
@@ -1899,9 +1939,21 @@ public class ThreadInfo extends InfoObject
       log.fine( pc.getMethodInfo().getFullName() + " " + pc.getPosition() + " : " + pc);
     }
 
+    // execute a sequence of fused insns in one step if nobody is watching them. Note
+    // we don't set the superinstruction as our pc, it is never seen outside of here
+    FusedInstruction superInsn = pc.superInsn;
+    if (superInsn != null && !superInsn.isObserved(vm)) {
+      pc = superInsn;
+    }
+
+    // the listeners that are interested in this insn, which usually are none
+    VM.InstructionDispatch dispatch = vm.getInstructionDispatch(pc);
+
     // this is the pre-execution notification, during which a listener can perform
     // on-the-fly instrumentation or even replace the instruction alltogether
-    vm.notifyExecuteInstruction(this, pc);
+    if (dispatch.executeListeners.length > 0) {
+      vm.notifyExecuteInstruction(this, pc, dispatch.executeListeners);
+    }
 
     if ((pendingSUTExceptionRequest == null) && ((attributes & ATTR_SKIP_INSN_EXEC) == 0)){
         try {
@@ -1913,13 +1965,16 @@ public class ThreadInfo extends InfoObject
 
     // we also count the skipped ones
     executedInstructions++;
+    vm.nExecutedInstructions++;
     
     if ((attributes & ATTR_SKIP_INSN_LOG) == 0) {
       ss.recordExecutionStep(pc);
     }
 
     // here we have our post exec bytecode exec observation point
-    vm.notifyInstructionExecuted(this, pc, nextPc);
+    if (dispatch.executedListeners.length > 0) {
+      vm.notifyInstructionExecuted(this, pc, nextPc, dispatch.executedListeners);
+    }
     
     // since this is part of the inner execution loop, it is a convenient place to check for probes
     vm.getSearch().checkAndResetProbeRequest();
@@ -2597,6 +2652,28 @@ public class ThreadInfo extends InfoObject
   }
 
 
+  /**
+   * same as markRoots(), but skips frozen frames, which can only refer to objects
+   * that existed when the state was stored (used by minor gcs)
+   */
+  void markChangedRoots (Heap heap) {
+    heap.markThreadRoot(objRef, id);
+
+    if (targetRef != MJIEnv.NULL) {
+      heap.markThreadRoot(targetRef,id);
+    }
+
+    if (pendingException != null){
+      heap.markThreadRoot(pendingException.getExceptionReference(), id);
+    }
+
+    for (StackFrame frame = top; frame != null; frame = frame.getPrevious()){
+      if (!frame.isFrozen()) {
+        frame.markThreadRoots(heap, id);
+      }
+    }
+  }
+
   /**
    * replace the top frame - this is a dangerous method that should only
    * be used from Restoreres and to restore operators and locals in post-execution notifications
@@ -2650,7 +2727,7 @@ public class ThreadInfo extends InfoObject
     popFrame();
 
     if (top.isFrozen()) {
-      top = top.clone();
+      top = top.getModifiable();
     }
     
     return top;
@@ -3243,7 +3320,7 @@ public class ThreadInfo extends InfoObject
    */
   public StackFrame getModifiableTopFrame () {
     if (top.isFrozen()) {
-      top = top.clone();
+      top = top.getModifiable();
       markTfChanged(top);
     }
     return top;
@@ -3275,7 +3352,7 @@ public class ThreadInfo extends InfoObject
       done = (f == frame);
       
       if (f.isFrozen()){
-        f = f.clone();
+        f = f.getModifiable();
         if (newTop == null){
           newTop = f;
         } else {
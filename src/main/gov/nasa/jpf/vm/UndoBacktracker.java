@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2014, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ * All rights reserved.
+ *
+ * The Java Pathfinder core (jpf-core) platform is licensed under the
+ * Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0. 
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+package gov.nasa.jpf.vm;
+
+/**
+ * a Backtracker that does not clone StackFrames when they are modified after
+ * a state was stored, but changes them in place and records undo information
+ * in an UndoLog: the scalar state of a frame (top, pc, attributes etc.) when it
+ * first gets modified within a transition, and the old value, reference flag
+ * and attribute of each slot when it is first written within this transition.
+ * Slots above the top of all stored states of a frame are not recorded since
+ * they are not part of any state we can backtrack to. Backtracking first undoes the records of the last
+ * transition, and then restores the kernel state memento, which still refers
+ * to the same frame objects.
+ *
+ * This avoids copying whole frames in each transition, which is expensive for
+ * programs with large frames (e.g. deep recursion with many locals).
+ *
+ * Fields of heap objects are not covered by undo records since ElementInfos
+ * are shared between heap mementos and therefore still have to be
+ * copied-on-write. Use a DeltaHeap to reduce the costs of storing the heap.
+ *
+ * RestorableStates (e.g. used by HeuristicSearch) pin the current frames so
+ * that they are cloned upon modification, but backtracking is only supported
+ * up to the restored state
+ */
+public class UndoBacktracker<KState> extends DefaultBacktracker<KState> {
+
+  protected VM vm;
+  protected UndoLog undoLog;
+
+  @Override
+  public void attach(VM vm) {
+    super.attach(vm);
+    this.vm = vm;
+
+    undoLog = new UndoLog();
+    StackFrame.undoLog = undoLog;
+  }
+
+  public UndoLog getUndoLog() {
+    return undoLog;
+  }
+
+  @Override
+  protected void backtrackKernelState() {
+    undoLog.undoToLastMark();
+    super.backtrackKernelState();
+  }
+
+  @Override
+  public void pushKernelState () {
+    super.pushKernelState();
+    undoLog.pushMark();
+  }
+
+  @Override
+  public RestorableState getRestorableState() {
+    for (ThreadInfo ti : vm.getThreadList()){
+      ti.pinFrames();
+    }
+    return super.getRestorableState();
+  }
+
+  @Override
+  public void restoreState (RestorableState state) {
+    undoLog.clear();
+    super.restoreState(state);
+
+    // the frames of the states below the restored one were not pinned
+    kstack = null;
+    sstack = null;
+  }
+}
@@ -0,0 +1,206 @@
+/*
+ * Copyright (C) 2014, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ * All rights reserved.
+ *
+ * The Java Pathfinder core (jpf-core) platform is licensed under the
+ * Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0. 
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+package gov.nasa.jpf.vm;
+
+/**
+ * a compact log of undo records for StackFrames that are modified in place
+ * (see UndoBacktracker).
+ *
+ * Records are stored in two growing arrays, one for primitive values and one
+ * for references, with the last int of each record being its tag. There are
+ * two types of records:
+ *
+ *   FRAME : the scalar state of a frame before it became modifiable
+ *           ints: top, thisRef, attributes, tag
+ *           objs: frame, pc, frameAttr, attrs, prev
+ *
+ *   SLOT  : the value, reference flag and attribute of a slot before its first
+ *           modification since the frame became modifiable
+ *           ints: value, tag (slot index << 2 | isRef << 1 | SLOT)
+ *           objs: frame, attr
+ *
+ * Marks partition the log into the records of subsequent transitions. Undoing
+ * to a mark processes records in reverse order, i.e. slot records are undone
+ * before the frame record of the same frame
+ */
+public class UndoLog {
+
+  static final int SLOT = 0;
+  static final int FRAME = 1;
+
+  static final int SLOT_INTS = 2;
+  static final int SLOT_OBJS = 2;
+  static final int FRAME_INTS = 4;
+  static final int FRAME_OBJS = 5;
+
+  protected int[] ints = new int[1024];
+  protected int nInts;
+
+  protected Object[] objs = new Object[1024];
+  protected int nObjs;
+
+  // nInts values of pushed marks
+  protected int[] marks = new int[64];
+  protected int nMarks;
+
+  //--- statistics
+  protected long nFrameRecords;
+  protected long nSlotRecords;
+
+  protected void ensureCapacity (int nNewInts, int nNewObjs){
+    if (nInts + nNewInts > ints.length){
+      int[] a = new int[ints.length * 2];
+      System.arraycopy(ints, 0, a, 0, nInts);
+      ints = a;
+    }
+    if (nObjs + nNewObjs > objs.length){
+      Object[] a = new Object[objs.length * 2];
+      System.arraycopy(objs, 0, a, 0, nObjs);
+      objs = a;
+    }
+  }
+
+  public void logFrame (StackFrame frame){
+    ensureCapacity(FRAME_INTS, FRAME_OBJS);
+
+    int[] ints = this.ints;
+    int i = nInts;
+    ints[i++] = frame.top;
+    ints[i++] = frame.thisRef;
+    ints[i++] = frame.attributes;
+    ints[i++] = FRAME;
+    nInts = i;
+
+    Object[] objs = this.objs;
+    i = nObjs;
+    objs[i++] = frame;
+    objs[i++] = frame.pc;
+    objs[i++] = frame.frameAttr;
+    objs[i++] = frame.attrs;
+    objs[i++] = frame.prev;
+    nObjs = i;
+
+    nFrameRecords++;
+  }
+
+  public void logSlot (StackFrame frame, int idx, int value, boolean isRef, Object attr){
+    ensureCapacity(SLOT_INTS, SLOT_OBJS);
+
+    ints[nInts++] = value;
+    ints[nInts++] = (idx << 2) | (isRef ? 2 : 0) | SLOT;
+
+    objs[nObjs++] = frame;
+    objs[nObjs++] = attr;
+
+    nSlotRecords++;
+  }
+
+  /**
+   * start a new transition. All frames that became modifiable during the
+   * previous one are frozen again, which ends their slot logging and makes
+   * sure the next modification creates a new frame record
+   */
+  public void pushMark (){
+    int lastMark = (nMarks > 0) ? marks[nMarks-1] : 0;
+
+    for (int i=nInts, j=nObjs; i > lastMark; ){
+      int tag = ints[i-1];
+      if ((tag & 1) == FRAME){
+        i -= FRAME_INTS;
+        j -= FRAME_OBJS;
+        ((StackFrame)objs[j]).freeze();
+      } else {
+        i -= SLOT_INTS;
+        j -= SLOT_OBJS;
+      }
+    }
+
+    if (nMarks == marks.length){
+      int[] a = new int[marks.length * 2];
+      System.arraycopy(marks, 0, a, 0, nMarks);
+      marks = a;
+    }
+    marks[nMarks++] = nInts;
+  }
+
+  public boolean hasMarks (){
+    return nMarks > 0;
+  }
+
+  /**
+   * undo all records since the last mark, and remove the mark
+   */
+  public void undoToLastMark (){
+    int mark = marks[--nMarks];
+
+    int[] ints = this.ints;
+    Object[] objs = this.objs;
+    int i = nInts;
+    int j = nObjs;
+
+    while (i > mark){
+      int tag = ints[i-1];
+
+      if ((tag & 1) == FRAME){
+        i -= FRAME_INTS;
+        j -= FRAME_OBJS;
+        StackFrame frame = (StackFrame) objs[j];
+        frame.restoreLogged( ints[i], ints[i+1], ints[i+2],
+                             (Instruction)objs[j+1], objs[j+2], (Object[])objs[j+3], (StackFrame)objs[j+4]);
+        for (int k=0; k<FRAME_OBJS; k++){
+          objs[j+k] = null;
+        }
+
+      } else {
+        i -= SLOT_INTS;
+        j -= SLOT_OBJS;
+        StackFrame frame = (StackFrame) objs[j];
+        frame.restoreLoggedSlot( tag >>> 2, ints[i], (tag & 2) != 0, objs[j+1]);
+        objs[j] = null;
+        objs[j+1] = null;
+      }
+    }
+
+    nInts = i;
+    nObjs = j;
+  }
+
+  /**
+   * discard all records and marks without undoing them
+   */
+  public void clear (){
+    for (int j=0; j<nObjs; j++){
+      objs[j] = null;
+    }
+    nInts = 0;
+    nObjs = 0;
+    nMarks = 0;
+  }
+
+  public int size (){
+    return nInts;
+  }
+
+  public long getNumberOfFrameRecords (){
+    return nFrameRecords;
+  }
+
+  public long getNumberOfSlotRecords (){
+    return nSlotRecords;
+  }
+}
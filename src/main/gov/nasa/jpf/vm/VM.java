@@ -22,6 +22,8 @@ import gov.nasa.jpf.JPF;
 import gov.nasa.jpf.JPFConfigException;
 import gov.nasa.jpf.JPFException;
 import gov.nasa.jpf.JPFListenerException;
+import gov.nasa.jpf.ListenerAdapter;
+import gov.nasa.jpf.PropertyListenerAdapter;
 import gov.nasa.jpf.jvm.ClassFile;
 import gov.nasa.jpf.vm.FinalizerThreadInfo;
 import gov.nasa.jpf.search.Search;
@@ -33,10 +35,13 @@ import gov.nasa.jpf.util.Predicate;
 import java.io.PrintWriter;
 import java.nio.ByteOrder;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 
 /**
@@ -119,10 +124,46 @@ public abstract class VM {
   /** optional serializer to support stateSet */
   protected StateSerializer serializer;
 
+  /** number of executed (non-hidden) instructions, including skipped ones */
+  protected long nExecutedInstructions;
+
   /** potential execution listeners. We keep them in a simple array to avoid
    creating objects on each notification */
   protected VMListener[] listeners = new VMListener[0];
 
+  /**
+   * the listeners to notify before and after executing a specific instruction. These
+   * are cached in the Instructions and are only valid for the stamp they were created with.
+   * We only keep one instance per distinct combination of listeners
+   */
+  static class InstructionDispatch {
+    final int stamp;
+    final VMListener[] executeListeners;
+    final VMListener[] executedListeners;
+
+    InstructionDispatch (int stamp, VMListener[] executeListeners, VMListener[] executedListeners){
+      this.stamp = stamp;
+      this.executeListeners = executeListeners;
+      this.executedListeners = executedListeners;
+    }
+  }
+
+  // Instructions can outlive VMs, and VMs can run concurrently (e.g. ParallelDFSearch
+  // workers), hence the stamps have to be globally unique
+  static final AtomicInteger nextDispatchStamp = new AtomicInteger(1);
+
+  protected int dispatchStamp;
+  protected ArrayList<InstructionDispatch> dispatches = new ArrayList<InstructionDispatch>();
+
+  // the listeners that override executeInstruction() / instructionExecuted()
+  protected VMListener[] executeListeners = new VMListener[0];
+  protected VMListener[] executedListeners = new VMListener[0];
+
+  // per instruction dispatch only pays off for several instruction listeners that
+  // are not all interested in all insns, otherwise we notify all of them directly
+  protected boolean useInstructionDispatch;
+  protected InstructionDispatch allInstructionListeners = new InstructionDispatch(0, executeListeners, executedListeners);
+
   /** did we get a new transition */
   protected boolean transitionOccurred;
 
@@ -247,6 +288,7 @@ public abstract class VM {
     ClassLoaderInfo.init(config);
     ClassInfo.init(config);
     ThreadInfo.init(config);
+    StackFrame.init(config);
     ElementInfo.init(config);
     MethodInfo.init(config);
     NativePeer.init(config);
@@ -265,7 +307,12 @@ public abstract class VM {
    * called after the JPF run is finished. Shouldn't be public, but is called by JPF
    */
   public void cleanUp(){
-    // nothing yet
+    if (serializer != null){
+      serializer.cleanUp();
+    }
+    if (stateSet != null){
+      stateSet.cleanUp();
+    }
   }
   
   protected boolean getPlatformEndianness (Config config){
@@ -658,9 +705,14 @@ public abstract class VM {
     }
   }
   
+  public long getNumberOfExecutedInstructions() {
+    return nExecutedInstructions;
+  }
+
   public void addListener (VMListener newListener) {
     log.info("VMListener added: ", newListener);
     listeners = Misc.appendElement(listeners, newListener);
+    updateInstructionListeners();
   }
 
   public boolean hasListenerOfType (Class<?> listenerCls) {
@@ -673,6 +725,123 @@ public abstract class VM {
   
   public void removeListener (VMListener removeListener) {
     listeners = Misc.removeElement(listeners, removeListener);
+    updateInstructionListeners();
+  }
+
+  //--- per instruction listener dispatch
+
+  protected void updateInstructionListeners() {
+    ArrayList<VMListener> execute = new ArrayList<VMListener>();
+    ArrayList<VMListener> executed = new ArrayList<VMListener>();
+
+    for (VMListener l : listeners) {
+      if (overrides(l, "executeInstruction", VM.class, ThreadInfo.class, Instruction.class)) {
+        execute.add(l);
+      }
+      if (overrides(l, "instructionExecuted", VM.class, ThreadInfo.class, Instruction.class, Instruction.class)) {
+        executed.add(l);
+      }
+    }
+
+    executeListeners = execute.toArray(new VMListener[execute.size()]);
+    executedListeners = executed.toArray(new VMListener[executed.size()]);
+
+    allInstructionListeners = new InstructionDispatch(0, executeListeners, executedListeners);
+    useInstructionDispatch = hasSelectiveInstructionListeners(execute, executed);
+
+    resetInstructionInterest();
+  }
+
+  /**
+   * are there at least two instruction listeners, one of them implementing
+   * InstructionInterest. With just one listener, looking up the dispatch table
+   * for each insn costs about as much as notifying it
+   */
+  protected static boolean hasSelectiveInstructionListeners (List<VMListener> execute, List<VMListener> executed) {
+    LinkedHashSet<VMListener> all = new LinkedHashSet<VMListener>(execute);
+    all.addAll(executed);
+
+    if (all.size() > 1) {
+      for (VMListener l : all) {
+        if (l instanceof InstructionInterest) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  /**
+   * does the listener class implement the notification, i.e. does not just inherit
+   * the empty one from the listener adapters
+   */
+  protected static boolean overrides (VMListener listener, String mthName, Class<?>... argTypes) {
+    try {
+      Class<?> declaringCls = listener.getClass().getMethod(mthName, argTypes).getDeclaringClass();
+      return (declaringCls != ListenerAdapter.class) && (declaringCls != PropertyListenerAdapter.class);
+
+    } catch (NoSuchMethodException nsmx) {
+      return true; // can't happen, but better safe than sorry
+    }
+  }
+
+  /**
+   * invalidate all per instruction dispatch tables, which has to be called by
+   * InstructionInterest listeners that change their interest
+   */
+  public void resetInstructionInterest() {
+    dispatchStamp = nextDispatchStamp.getAndIncrement();
+    dispatches.clear();
+  }
+
+  InstructionDispatch getInstructionDispatch (Instruction insn) {
+    if (!useInstructionDispatch) {
+      return allInstructionListeners;
+    }
+
+    InstructionDispatch d = insn.listenerDispatch;
+
+    if (d == null || d.stamp != dispatchStamp) {
+      d = createInstructionDispatch(insn);
+      insn.listenerDispatch = d;
+    }
+
+    return d;
+  }
+
+  protected InstructionDispatch createInstructionDispatch (Instruction insn) {
+    VMListener[] execute, executed;
+
+    if (insn instanceof FusedInstruction) {
+      // never seen by listeners, it checks the fused insns itself
+      execute = executed = new VMListener[0];
+    } else {
+      execute = getInterestedListeners(executeListeners, insn);
+      executed = getInterestedListeners(executedListeners, insn);
+    }
+
+    for (InstructionDispatch d : dispatches) {
+      if (Arrays.equals(d.executeListeners, execute) && Arrays.equals(d.executedListeners, executed)) {
+        return d;
+      }
+    }
+
+    InstructionDispatch d = new InstructionDispatch(dispatchStamp, execute, executed);
+    dispatches.add(d);
+    return d;
+  }
+
+  protected VMListener[] getInterestedListeners (VMListener[] candidates, Instruction insn) {
+    int n = 0;
+    VMListener[] a = new VMListener[candidates.length];
+
+    for (VMListener l : candidates) {
+      if (!(l instanceof InstructionInterest) || ((InstructionInterest) l).isInterestedIn(insn)) {
+        a[n++] = l;
+      }
+    }
+
+    return (n == a.length) ? a : Arrays.copyOf(a, n);
   }
 
   public void setTraceReplay (boolean isReplay) {
@@ -788,6 +957,10 @@ public abstract class VM {
   }
 
   protected void notifyExecuteInstruction (ThreadInfo ti, Instruction insn) {
+    notifyExecuteInstruction(ti, insn, listeners);
+  }
+
+  protected void notifyExecuteInstruction (ThreadInfo ti, Instruction insn, VMListener[] listeners) {
     try {
       for (int i = 0; i < listeners.length; i++) {
         listeners[i].executeInstruction(this, ti, insn);
@@ -802,6 +975,10 @@ public abstract class VM {
   }
 
   protected void notifyInstructionExecuted (ThreadInfo ti, Instruction insn, Instruction nextInsn) {
+    notifyInstructionExecuted(ti, insn, nextInsn, listeners);
+  }
+
+  protected void notifyInstructionExecuted (ThreadInfo ti, Instruction insn, Instruction nextInsn, VMListener[] listeners) {
     try {
       //listener.instructionExecuted(this);
       for (int i = 0; i < listeners.length; i++) {
@@ -1745,6 +1922,10 @@ public abstract class VM {
           int id = stateSet.addCurrent();
           ss.setId(id);
 
+          if (ss.getFootprintRecorder() != null){
+            ss.matchSleepSet(id, (id == newStateId));
+          }
+
         } else { // this is 'state-less' model checking, i.e. we don't match states
           ss.setId(++newStateId); // but we still should have states numbered in case listeners use the id
         }
@@ -69,6 +69,16 @@ public abstract class FieldInstruction extends Instruction implements ReadOrWrit
   }
   
   public abstract FieldInfo getFieldInfo();
+
+  /**
+   * the FieldInfo if it was already resolved, null otherwise. As opposed to
+   * getFieldInfo(), this does not load or register classes and can therefore
+   * be used to look at pending instructions of other threads
+   */
+  public FieldInfo peekFieldInfo(){
+    return fi;
+  }
+
   @Override
   public abstract boolean isRead();
   
@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2014, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ * All rights reserved.
+ *
+ * The Java Pathfinder core (jpf-core) platform is licensed under the
+ * Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0. 
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+package gov.nasa.jpf.vm.choice;
+
+import gov.nasa.jpf.vm.ThreadInfo;
+
+import java.io.PrintWriter;
+import java.util.BitSet;
+
+/**
+ * a scheduling point for dynamic partial order reduction (DPOR). Instead of
+ * all its runnable threads, this CG only explores the threads of its
+ * 'backtrack' set, which initially contains just one thread, and is extended
+ * by the search once it detects races between transitions that follow this
+ * scheduling point. Since the backtrack set can grow while the CG is on the
+ * stack, 'hasMoreChoices()' is re-evaluated when the search backtracks to it
+ */
+public class DPORThreadChoice extends ThreadChoiceFromSet {
+
+  protected BitSet backtrack;
+  protected BitSet done;
+
+  /**
+   * @param tiPreferred the thread that is explored first (e.g. the one that
+   * caused the scheduling point, to avoid context switches), if it is runnable
+   */
+  public DPORThreadChoice (ThreadChoiceFromSet cg, ThreadInfo tiPreferred){
+    super(cg.getId());
+
+    values = cg.getChoices();
+    isSchedulingPoint = cg.isSchedulingPoint();
+
+    backtrack = new BitSet(values.length);
+    done = new BitSet(values.length);
+
+    if (values.length > 0){
+      int idx = indexOf(tiPreferred);
+      backtrack.set( (idx >= 0) ? idx : 0);
+    }
+  }
+
+  public int indexOf (ThreadInfo ti){
+    if (ti != null){
+      int id = ti.getId();
+      for (int i=0; i<values.length; i++){
+        if (values[i].getId() == id){
+          return i;
+        }
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * add a thread to the backtrack set
+   *
+   * @return false if this thread is not runnable at this scheduling point
+   */
+  public boolean addBacktrack (ThreadInfo ti){
+    int idx = indexOf(ti);
+    if (idx >= 0){
+      backtrack.set(idx);
+      return true;
+    } else {
+      return false;
+    }
+  }
+
+  public void addAllBacktracks (){
+    backtrack.set(0, values.length);
+  }
+
+  public int getNumberOfBacktracks(){
+    return backtrack.cardinality();
+  }
+
+  protected int nextBacktrack (){
+    for (int i = backtrack.nextSetBit(0); i >= 0; i = backtrack.nextSetBit(i+1)){
+      if (!done.get(i)){
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  @Override
+  public boolean hasMoreChoices () {
+    return !isDone && (nextBacktrack() >= 0);
+  }
+
+  @Override
+  public void advance () {
+    int idx = nextBacktrack();
+    if (idx >= 0){
+      count = idx;
+      done.set(idx);
+    }
+  }
+
+  @Override
+  public void select (int choiceIndex) {
+    count = choiceIndex;
+    done.set(choiceIndex);
+    setDone();
+  }
+
+  @Override
+  public void reset () {
+    super.reset();
+    done.clear();
+  }
+
+  @Override
+  public int getProcessedNumberOfChoices () {
+    return done.cardinality();
+  }
+
+  @Override
+  public DPORThreadChoice randomize () {
+    return this; // the exploration order is determined by the backtrack set
+  }
+
+  @Override
+  public void printOn (PrintWriter pw) {
+    super.printOn(pw);
+    pw.print(",backtrack=");
+    pw.print(backtrack);
+  }
+}
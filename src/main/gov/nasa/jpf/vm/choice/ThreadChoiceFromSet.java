@@ -18,6 +18,8 @@
 package gov.nasa.jpf.vm.choice;
 
 import gov.nasa.jpf.vm.ChoiceGeneratorBase;
+import gov.nasa.jpf.vm.Footprint;
+import gov.nasa.jpf.vm.SleepSet;
 import gov.nasa.jpf.vm.ThreadChoiceGenerator;
 import gov.nasa.jpf.vm.ThreadInfo;
 
@@ -30,6 +32,11 @@ public class ThreadChoiceFromSet extends ChoiceGeneratorBase<ThreadInfo> impleme
   protected boolean isSchedulingPoint;
   protected ThreadInfo[] values;
   protected int count;
+
+  // sleep set support (only used if vm.sleep_sets is set, see SystemState)
+  protected SleepSet sleepSet; // threads we don't have to schedule in this state
+  protected SleepSet explored; // threads we already did schedule, with their footprints
+  protected SleepSet revisited; // if the state was visited before, the threads that were asleep then
     
   protected ThreadChoiceFromSet (String id){
     super(id);
@@ -71,6 +78,7 @@ public class ThreadChoiceFromSet extends ChoiceGeneratorBase<ThreadInfo> impleme
   @Override
   public void reset () {
     count = -1;
+    explored = null;
 
     isDone = false;
   }
@@ -88,7 +96,11 @@ public class ThreadChoiceFromSet extends ChoiceGeneratorBase<ThreadInfo> impleme
 
   @Override
   public boolean hasMoreChoices () {
-    return (!isDone && (count < values.length-1));
+    if (sleepSet == null){
+      return (!isDone && (count < values.length-1));
+    } else {
+      return (!isDone && (nextAwake(count+1) < values.length));
+    }
   }
 
 
@@ -103,8 +115,88 @@ public class ThreadChoiceFromSet extends ChoiceGeneratorBase<ThreadInfo> impleme
   @Override
   public void advance () {    
     if (count < values.length-1) { // at least one choice left
-      count++;
+      if (sleepSet == null){
+        count++;
+      } else {
+        int idx = nextAwake(count+1);
+        if (idx < values.length){
+          count = idx;
+        }
+      }
+    }
+  }
+
+  //--- sleep sets
+
+  protected int nextAwake (int idx){
+    while (idx < values.length && isSkipped(values[idx].getId())){
+      idx++;
+    }
+    return idx;
+  }
+
+  protected boolean isSkipped (int threadId){
+    if (sleepSet.contains(threadId)){
+      return true;
+    } else {
+      // all threads that were awake during a previous visit were already explored
+      return (revisited != null) && !revisited.contains(threadId);
+    }
+  }
+
+  /**
+   * set the threads that don't need to be scheduled here. This has to be
+   * called before this CG is advanced for the first time
+   */
+  public void setSleepSet (SleepSet sleepSet){
+    this.sleepSet = sleepSet;
+  }
+
+  public SleepSet getSleepSet (){
+    return sleepSet;
+  }
+
+  /**
+   * set the sleep set with which the state of this CG was visited before. Only
+   * the threads that were asleep then, but are not in our own sleep set are
+   * scheduled. This has to be called before this CG is advanced for the first time
+   */
+  public void setRevisitedSleepSet (SleepSet revisited){
+    this.revisited = revisited;
+  }
+
+  /**
+   * the sleep set of this CG plus the threads that were already explored,
+   * i.e. the candidates for the sleep set of the next successor state
+   */
+  public SleepSet getSleepCandidates (){
+    SleepSet s = (sleepSet != null) ? sleepSet : SleepSet.EMPTY;
+    if (explored != null){
+      s = s.addAll(explored);
+    }
+    return s;
+  }
+
+  /**
+   * record that a transition of thread 'threadId' with footprint 'fp' was executed from here
+   */
+  public void addExplored (int threadId, Footprint fp){
+    if (explored == null){
+      explored = SleepSet.EMPTY;
+    }
+    explored = explored.add(threadId, fp);
+  }
+
+  public int getNumberOfSleepingChoices (){
+    int n = 0;
+    if (sleepSet != null){
+      for (int i=0; i<values.length; i++){
+        if (sleepSet.contains(values[i].getId())){
+          n++;
+        }
+      }
     }
+    return n;
   }
 
   @Override
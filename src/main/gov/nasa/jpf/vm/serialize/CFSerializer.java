@@ -47,25 +47,29 @@ import gov.nasa.jpf.vm.ThreadList;
  */
 public class CFSerializer extends FilteringSerializer {
 
-  // we flip this on every serialization, which helps us to avoid passes
-  // over the serialized objects to reset their sids. This works by resetting
-  // the sid to 0 upon backtrack, and counting either upwards from 1 or downwards
-  // from -1, but store the absolute value in the serialization stream
-  boolean positiveSid;
+  // sids are counted upwards across serialization runs, and each run starts
+  // with a new sidBase. Objects with a sid below sidBase were not seen in the
+  // current run, which avoids passes over the serialized objects to reset
+  // their sids, and does not depend on the Heap resetting the sids of all its
+  // objects upon backtrack (it only has to do so for objects it restores).
+  // The canonical value of a reference is its sid relative to sidBase
+  static final int MAX_SID_BASE = 0x40000000;
 
-  int sidCount;
+  int sidBase;
+  int sidCount = 1;
 
   @Override
   protected void initReferenceQueue() {
     super.initReferenceQueue();
 
-    if (positiveSid){
-      positiveSid = false;
-      sidCount = -1;
-    } else {
-      positiveSid = true;
+    if (sidCount >= MAX_SID_BASE){ // start over, but then we have to reset the current objects
+      for (ElementInfo ei : heap){
+        ei.setSid(0);
+      }
       sidCount = 1;
     }
+
+    sidBase = sidCount;
   }
 
   // might be overriden in subclasses to conditionally queue objects
@@ -75,30 +79,29 @@ public class CFSerializer extends FilteringSerializer {
 
   @Override
   public void processReference(int objref) {
+    buf.add( getCanonicalReferenceValue(objref));
+  }
+
+  /**
+   * answer the canonical value of a reference, which is the (relative) sid
+   * of the referenced object. If the object was not seen before in this
+   * serialization run, it gets the next sid and is queued
+   */
+  protected int getCanonicalReferenceValue (int objref){
     if (objref == MJIEnv.NULL) {
-      buf.add(MJIEnv.NULL);
+      return MJIEnv.NULL;
 
     } else {
       ElementInfo ei = heap.get(objref);
       int sid = ei.getSid();
 
-      if (positiveSid){ // count sid upwards from 1
-        if (sid <= 0){  // not seen before in this serialization run
-          sid = sidCount++;
-          ei.setSid(sid);
-          queueReference(ei);
-        }
-      } else { // count sid downwards from -1
-        if (sid >= 0){ // not seen before in this serialization run
-          sid = sidCount--;
-          ei.setSid(sid);
-          queueReference(ei);
-        }
-        sid = -sid;
+      if (sid < sidBase){ // not seen before in this serialization run
+        sid = sidCount++;
+        ei.setSid(sid);
+        queueReference(ei);
       }
 
-      // note that we always add the absolute sid value
-      buf.add(sid);
+      return sid - sidBase + 1;
     }
   }
   
@@ -113,7 +116,7 @@ public class CFSerializer extends FilteringSerializer {
   
   @Override
   protected void serializeFrame(StackFrame frame){
-    buf.add(frame.getMethodInfo().getGlobalId());
+    buf.add(getSerializedMethodId(frame.getMethodInfo()));
 
     Instruction pc = frame.getPC();
     buf.add( pc != null ? pc.getInstructionIndex() : -1);
@@ -140,6 +143,6 @@ public class CFSerializer extends FilteringSerializer {
   
   @Override
   protected int getSerializedReferenceValue (ElementInfo ei){
-    return Math.abs(ei.getSid());
+    return ei.getSid() - sidBase + 1;
   }
 }
@@ -296,7 +296,7 @@ public class DynamicAbstractionSerializer extends FilteringSerializer {
     ClassInfo ci = ei.getClassInfo();
 
     if (StringSetMatcher.isMatch(ci.getName(), includeClasses, excludeClasses)) {
-      buf.add(ci.getUniqueId());
+      buf.add(getSerializedClassId(ci));
 
       if (fields instanceof ArrayFields) { // not filtered
         processArrayFields((ArrayFields) fields);
@@ -337,6 +337,9 @@ public class DynamicAbstractionSerializer extends FilteringSerializer {
     Fields fields = sei.getFields();
 
     if (StringSetMatcher.isMatch(ci.getName(), includeClasses, excludeClasses)) {
+      if (useStableIds){
+        buf.add(getSerializedClassId(ci));
+      }
       buf.add(sei.getStatus());
 
       FinalBitSet filtered = getStaticFilterMask(ci);
@@ -366,8 +369,9 @@ public class DynamicAbstractionSerializer extends FilteringSerializer {
   @Override
   protected void serializeStatics(Statics statics){
     // we don't care about the number of statics entries
+    Iterable<StaticElementInfo> list = useStableIds ? getStableStatics(statics) : statics.liveStatics();
 
-    for (StaticElementInfo sei : statics.liveStatics()) {
+    for (StaticElementInfo sei : list) {
       serializeClass(sei);
     }
   }
@@ -22,10 +22,12 @@ import gov.nasa.jpf.util.ArrayObjectQueue;
 import gov.nasa.jpf.util.BitArray;
 import gov.nasa.jpf.util.FinalBitSet;
 import gov.nasa.jpf.util.IntVector;
+import gov.nasa.jpf.util.NameIdMap;
 import gov.nasa.jpf.util.ObjVector;
 import gov.nasa.jpf.util.ObjectQueue;
 import gov.nasa.jpf.util.Processor;
 import gov.nasa.jpf.vm.AbstractSerializer;
+import gov.nasa.jpf.vm.ArenaFields;
 import gov.nasa.jpf.vm.ArrayFields;
 import gov.nasa.jpf.vm.ClassInfo;
 import gov.nasa.jpf.vm.ClassLoaderInfo;
@@ -34,6 +36,7 @@ import gov.nasa.jpf.vm.FieldInfo;
 import gov.nasa.jpf.vm.Fields;
 import gov.nasa.jpf.vm.Heap;
 import gov.nasa.jpf.vm.Instruction;
+import gov.nasa.jpf.vm.JenkinsStateSet;
 import gov.nasa.jpf.vm.MJIEnv;
 import gov.nasa.jpf.vm.VM;
 import gov.nasa.jpf.vm.MethodInfo;
@@ -45,6 +48,9 @@ import gov.nasa.jpf.vm.Statics;
 import gov.nasa.jpf.vm.ThreadInfo;
 import gov.nasa.jpf.vm.ThreadList;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 
@@ -59,6 +65,10 @@ public class FilteringSerializer extends AbstractSerializer implements Reference
   // indexed by method globalId
   final ObjVector<FramePolicy> methodCache = new ObjVector<FramePolicy>();
 
+  // indexed by method globalId, only used if we serialize stable ids
+  final IntVector stableMethodIds = new IntVector();
+  final HashMap<ClassInfo,Long> stableClassIds = new HashMap<ClassInfo,Long>();
+
   //--- search global bitmask caches
   final HashMap<ClassInfo,FinalBitSet> instanceRefMasks = new HashMap<ClassInfo,FinalBitSet>();
   final HashMap<ClassInfo,FinalBitSet> staticRefMasks   = new HashMap<ClassInfo,FinalBitSet>();
@@ -70,6 +80,39 @@ public class FilteringSerializer extends AbstractSerializer implements Reference
 
   protected transient IntVector buf = new IntVector(4096);
 
+  // do we cache the serialized field values of frozen objects? Since frozen
+  // ElementInfos are never modified (a modification creates a new ElementInfo),
+  // this means we only have to filter the fields of objects that changed since
+  // the last state was stored, and otherwise can use block operations to copy
+  // the cached values
+  protected boolean useFieldCache;
+
+  // do we replace the non-reference values of cached objects by their 64bit
+  // hash? This reduces the size of the serialized state (which then has to be
+  // hashed by the StateSet) for large objects, at the cost of an additional
+  // (small) chance of hash collisions
+  protected boolean useFieldHashes;
+  protected transient IntVector fieldBuf = new IntVector(256);
+  protected transient IntVector refPosBuf = new IntVector(64);
+
+  // do we serialize name based class and method ids that don't depend on the
+  // class load order? This is required if states are compared between different
+  // VM instances (e.g. by ParallelDFSearch workers), and makes us tag static
+  // fields with their class id since the Statics order also depends on load order.
+  // Ids are handed out by a (collision free) NameIdMap, which is shared between
+  // all serializers whose states are compared
+  protected boolean useStableIds;
+  protected NameIdMap stableIds;
+  final ArrayList<StaticElementInfo> stableStatics = new ArrayList<StaticElementInfo>();
+  final Comparator<StaticElementInfo> stableClassOrder = new Comparator<StaticElementInfo>() {
+    @Override
+    public int compare (StaticElementInfo a, StaticElementInfo b){
+      long ida = getSerializedClassId(a.getClassInfo());
+      long idb = getSerializedClassId(b.getClassInfo());
+      return (ida < idb) ? -1 : ((ida == idb) ? 0 : 1);
+    }
+  };
+
   // the reference queue for heap traversal
   protected ObjectQueue<ElementInfo> refQueue;
   
@@ -85,6 +128,63 @@ public class FilteringSerializer extends AbstractSerializer implements Reference
       filter = new DefaultFilterConfiguration();
     }
     filter.init(vm.getConfig());
+
+    useStableIds = vm.getConfig().getBoolean("vm.serializer.stable_ids", false);
+    if (useStableIds && stableIds == null){
+      stableIds = new NameIdMap(); // only our own, until somebody sets a shared one
+    }
+    useFieldCache = vm.getConfig().getBoolean("vm.serializer.cache_fields", false);
+    useFieldHashes = useFieldCache && vm.getConfig().getBoolean("vm.serializer.hash_fields", false);
+  }
+
+  /**
+   * set the map that provides our name based class and method ids, which has
+   * to be shared by all serializers whose states are compared with each other
+   */
+  public void setStableIds (NameIdMap map){
+    stableIds = map;
+    stableClassIds.clear();
+    stableMethodIds.clear();
+  }
+
+  public NameIdMap getStableIds(){
+    return stableIds;
+  }
+
+  protected long getSerializedClassId (ClassInfo ci){
+    if (useStableIds){
+      Long id = stableClassIds.get(ci);
+      if (id == null){
+        int nameId = stableIds.getId(ci.getName());
+        id = ((long)ci.getClassLoaderInfo().getId() << 32) | nameId;
+        stableClassIds.put(ci, id);
+      }
+      return id;
+    } else {
+      return ci.getUniqueId();
+    }
+  }
+
+  protected int getSerializedMethodId (MethodInfo mi){
+    if (useStableIds){
+      int mid = mi.getGlobalId();
+      if (mid < 0){
+        return getStableMethodId(mi);
+      }
+
+      int id = stableMethodIds.get(mid);
+      if (id == 0){
+        id = getStableMethodId(mi);
+        stableMethodIds.set(mid, id);
+      }
+      return id;
+    } else {
+      return mi.getGlobalId();
+    }
+  }
+
+  protected int getStableMethodId (MethodInfo mi){
+    return stableIds.getId(mi.getClassInfo().getClassLoaderInfo().getId() + ":" + mi.getFullName());
   }
 
   protected FramePolicy getFramePolicy(MethodInfo mi) {
@@ -224,19 +324,214 @@ public class FilteringSerializer extends AbstractSerializer implements Reference
     // we would have to blank the filtered slots and then visit the
     // non-filtered reference slots, i.e. do two iterations over
     // the mask bit sets
-    int[] values = fields.asFieldSlots();
-    for (int i = 0; i < values.length; i++) {
+    if (fields instanceof ArenaFields){
+      // asFieldSlots() would copy the values out of the arena
+      int n = ci.getInstanceDataSize();
+      for (int i = 0; i < n; i++) {
+        if (!filtered.get(i)) {
+          int v = fields.getIntValue(i);
+          if (refs.get(i)) {
+            processReference(v);
+          } else {
+            buf.add(v);
+          }
+        }
+      }
+
+    } else {
+      int[] values = fields.asFieldSlots();
+      for (int i = 0; i < values.length; i++) {
+        if (!filtered.get(i)) {
+          int v = values[i];
+          if (refs.get(i)) {
+            processReference(v);
+          } else {
+            buf.add(v);
+          }
+        }
+      }
+    }
+  }
+
+  //--- field caches
+
+  /**
+   * answer the serialized field values of an object, which is either the cached
+   * data (if the object is frozen) or computed from its fields.
+   *
+   * The data starts with the number of reference values and their positions,
+   * followed by the values in serialization order (with the concrete reference
+   * values). If we use field hashes, it is the number of references, the
+   * hash of the other values and the reference values. Since this doesn't depend
+   * on any other object, subclasses can canonicalize references when appending
+   * the data (see appendFieldData)
+   */
+  protected int[] getFieldData (ElementInfo ei){
+    boolean isFrozen = ei.isFrozen();
+    int[] data = isFrozen ? ei.getCachedSerialization() : null;
+
+    if (data == null){
+      fieldBuf.clear();
+      refPosBuf.clear();
+
+      Fields fields = ei.getFields();
+      if (fields instanceof ArrayFields) {
+        collectArrayFields((ArrayFields)fields);
+      } else {
+        collectNamedFields(ei.getClassInfo(), fields);
+      }
+
+      data = createFieldData();
+      if (isFrozen){
+        ei.setCachedSerialization(data);
+      }
+    }
+
+    return data;
+  }
+
+  /**
+   * the static counterpart, which also includes the class init status
+   */
+  protected int[] getStaticFieldData (StaticElementInfo sei){
+    boolean isFrozen = sei.isFrozen();
+    int[] data = isFrozen ? sei.getCachedSerialization() : null;
+
+    if (data == null){
+      fieldBuf.clear();
+      refPosBuf.clear();
+
+      fieldBuf.add(sei.getStatus());
+      collectStaticFields(sei.getClassInfo(), sei.getFields());
+
+      data = createFieldData();
+      if (isFrozen){
+        sei.setCachedSerialization(data);
+      }
+    }
+
+    return data;
+  }
+
+  protected void collectArrayFields (ArrayFields afields){
+    fieldBuf.add(afields.arrayLength());
+
+    if (afields.isReferenceArray()) {
+      int[] values = afields.asReferenceArray();
+      for (int i = 0; i < values.length; i++) {
+        refPosBuf.add(fieldBuf.size());
+        fieldBuf.add(values[i]);
+      }
+    } else {
+      afields.appendTo(fieldBuf);
+    }
+  }
+
+  protected void collectNamedFields (ClassInfo ci, Fields fields){
+    FinalBitSet filtered = getInstanceFilterMask(ci);
+    FinalBitSet refs = getInstanceRefMask(ci);
+
+    if (fields instanceof ArenaFields){
+      // asFieldSlots() would copy the values out of the arena
+      int n = ci.getInstanceDataSize();
+      for (int i = 0; i < n; i++) {
+        if (!filtered.get(i)) {
+          if (refs.get(i)) {
+            refPosBuf.add(fieldBuf.size());
+          }
+          fieldBuf.add(fields.getIntValue(i));
+        }
+      }
+
+    } else {
+      int[] values = fields.asFieldSlots();
+      for (int i = 0; i < values.length; i++) {
+        if (!filtered.get(i)) {
+          if (refs.get(i)) {
+            refPosBuf.add(fieldBuf.size());
+          }
+          fieldBuf.add(values[i]);
+        }
+      }
+    }
+  }
+
+  protected void collectStaticFields (ClassInfo ci, Fields fields){
+    FinalBitSet filtered = getStaticFilterMask(ci);
+    FinalBitSet refs = getStaticRefMask(ci);
+
+    int max = ci.getStaticDataSize();
+    for (int i = 0; i < max; i++) {
       if (!filtered.get(i)) {
-        int v = values[i];
         if (refs.get(i)) {
-          processReference(v);
-        } else {
-          buf.add(v);
+          refPosBuf.add(fieldBuf.size());
         }
+        fieldBuf.add(fields.getIntValue(i));
+      }
+    }
+  }
+
+  protected int[] createFieldData (){
+    int nRefs = refPosBuf.size();
+
+    if (useFieldHashes){
+      int[] values = fieldBuf.toArray();
+      int[] data = new int[3 + nRefs];
+
+      data[0] = nRefs;
+      for (int i=0; i<nRefs; i++){
+        int pos = refPosBuf.get(i);
+        data[i+3] = values[pos];
+        values[pos] = 0; // the layout is determined by the class and array length
+      }
+
+      long h = JenkinsStateSet.longLookup3Hash(values);
+      data[1] = (int)(h >>> 32);
+      data[2] = (int)h;
+
+      return data;
+
+    } else {
+      int[] data = new int[1 + nRefs + fieldBuf.size()];
+
+      data[0] = nRefs;
+      for (int i=0; i<nRefs; i++){
+        data[i+1] = refPosBuf.get(i) + nRefs + 1;
       }
+      fieldBuf.dumpTo(data, nRefs + 1);
+
+      return data;
     }
   }
 
+  /**
+   * append the field values to the serialization buffer, processing the
+   * references in order. Unless we use field hashes, this produces the same
+   * data as the direct field serialization
+   */
+  protected void appendFieldData (int[] data){
+    int nRefs = data[0];
+
+    if (useFieldHashes){
+      buf.add(data[1], data[2]);
+      for (int i=3; i<data.length; i++){
+        processReference(data[i]);
+      }
+      return;
+    }
+
+    int pos = nRefs + 1;
+
+    for (int i=1; i<=nRefs; i++){
+      int refPos = data[i];
+      buf.append(data, pos, refPos - pos);
+      processReference(data[refPos]);
+      pos = refPos + 1;
+    }
+
+    buf.append(data, pos, data.length - pos);
+  }
+
   // needs to be public because of ElementInfoProcessor interface
   // NOTE: we don't serialize the monitor state here since this is
   // redundant to the thread locking state (which we will do after the heap).
@@ -247,9 +542,12 @@ public class FilteringSerializer extends AbstractSerializer implements Reference
   public void process (ElementInfo ei) {
     Fields fields = ei.getFields();
     ClassInfo ci = ei.getClassInfo();
-    buf.add(ci.getUniqueId());
+    buf.add(getSerializedClassId(ci));
 
-    if (fields instanceof ArrayFields) { // not filtered
+    if (useFieldCache){
+      appendFieldData( getFieldData(ei));
+
+    } else if (fields instanceof ArrayFields) { // not filtered
       processArrayFields((ArrayFields)fields);
 
     } else { // named fields, filtered
@@ -306,7 +604,7 @@ public class FilteringSerializer extends AbstractSerializer implements Reference
   **/
 
   protected void serializeFrame(StackFrame frame){
-    buf.add(frame.getMethodInfo().getGlobalId());
+    buf.add(getSerializedMethodId(frame.getMethodInfo()));
 
     // there can be (rare) cases where a listener sets a null nextPc in
     // a frame that is still on the stack
@@ -407,18 +705,53 @@ public class FilteringSerializer extends AbstractSerializer implements Reference
   }
 
   protected void serializeStatics(Statics statics){
-    buf.add(statics.size());
+    if (useStableIds){
+      List<StaticElementInfo> list = getStableStatics(statics);
+      buf.add(list.size());
+
+      for (StaticElementInfo sei : list) {
+        serializeClass(sei);
+      }
+
+    } else {
+      buf.add(statics.size());
+
+      for (StaticElementInfo sei : statics.liveStatics()) {
+        serializeClass(sei);
+      }
+    }
+  }
 
+  /**
+   * the Statics order is the class load order, which can differ between VM
+   * instances. Since this also determines the order in which we encounter
+   * references, we have to sort by our load order independent class ids
+   */
+  protected List<StaticElementInfo> getStableStatics (Statics statics){
+    stableStatics.clear();
     for (StaticElementInfo sei : statics.liveStatics()) {
-      serializeClass(sei);
+      stableStatics.add(sei);
     }
+
+    Collections.sort(stableStatics, stableClassOrder);
+    return stableStatics;
   }
 
   protected void serializeClass (StaticElementInfo sei){
-    buf.add(sei.getStatus());
-
     Fields fields = sei.getFields();
     ClassInfo ci = sei.getClassInfo();
+
+    if (useStableIds){
+      buf.add(getSerializedClassId(ci));
+    }
+
+    if (useFieldCache){
+      appendFieldData( getStaticFieldData(sei));
+      return;
+    }
+
+    buf.add(sei.getStatus());
+
     FinalBitSet filtered = getStaticFilterMask(ci);
     FinalBitSet refs = getStaticRefMask(ci);
     int max = ci.getStaticDataSize();
@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2014, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ * All rights reserved.
+ *
+ * The Java Pathfinder core (jpf-core) platform is licensed under the
+ * Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0. 
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+package gov.nasa.jpf.jvm;
+
+import gov.nasa.jpf.jvm.JVMClassFileContainer.JVMClassFileMatch;
+import gov.nasa.jpf.util.test.TestJPF;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.jar.JarOutputStream;
+import java.util.zip.ZipEntry;
+
+import org.junit.Test;
+
+/**
+ * unit test for the classfile data cache of JarClassFileContainers
+ */
+public class JarClassFileContainerTest extends TestJPF {
+
+  static void createJar (File file, byte[] data) throws IOException {
+    JarOutputStream os = new JarOutputStream(new FileOutputStream(file));
+    try {
+      os.putNextEntry(new ZipEntry("x/y/Z.class"));
+      os.write(data);
+      os.closeEntry();
+    } finally {
+      os.close();
+    }
+  }
+
+  static byte[] getData (File file) throws Exception {
+    JarClassFileContainer container = new JarClassFileContainer(file);
+    JVMClassFileMatch match = (JVMClassFileMatch)container.getMatch("x.y.Z");
+    assertTrue(match != null);
+    return match.getData();
+  }
+
+  @Test
+  public void testCachedData () throws Exception {
+    File file = File.createTempFile("JarClassFileContainerTest", ".jar");
+    boolean cacheData = JarClassFileContainer.cacheData;
+
+    try {
+      JarClassFileContainer.cacheData = true;
+      createJar(file, new byte[] { 1, 2, 3 });
+
+      byte[] data1 = getData(file);
+      byte[] data2 = getData(file); // a new container, like in a subsequent JPF run
+      assertSame(data1, data2);
+
+      // a changed jar file invalidates the cached data
+      createJar(file, new byte[] { 4, 5, 6, 7 });
+      file.setLastModified(file.lastModified() + 2000);
+
+      byte[] data3 = getData(file);
+      assertTrue(data3 != data1);
+      assertEquals(4, data3.length);
+      assertEquals(4, data3[0]);
+
+      // no sharing if the cache is disabled
+      JarClassFileContainer.cacheData = false;
+      assertTrue(getData(file) != getData(file));
+
+    } finally {
+      JarClassFileContainer.cacheData = cacheData;
+      JarClassFileContainer.clearCache();
+      file.delete();
+    }
+  }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2014, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ * All rights reserved.
+ *
+ * The Java Pathfinder core (jpf-core) platform is licensed under the
+ * Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0. 
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+package gov.nasa.jpf.test.basic;
+
+import gov.nasa.jpf.JPF;
+import gov.nasa.jpf.ListenerAdapter;
+import gov.nasa.jpf.report.Statistics;
+import gov.nasa.jpf.util.test.TestJPF;
+import gov.nasa.jpf.vm.ClassInfo;
+import gov.nasa.jpf.jvm.bytecode.JVMReturnInstruction;
+import gov.nasa.jpf.vm.Instruction;
+import gov.nasa.jpf.vm.InstructionInterest;
+import gov.nasa.jpf.vm.MethodInfo;
+import gov.nasa.jpf.vm.ThreadInfo;
+import gov.nasa.jpf.vm.VM;
+
+import org.junit.Test;
+
+/**
+ * regression test for superinstructions that fuse sequences of thread local bytecodes
+ */
+public class FusedInstructionTest extends TestJPF {
+
+  static final String FUSE = "+jvm.fuse_basic_blocks=true";
+  static final String NO_FUSE = "+jvm.fuse_basic_blocks=false";
+
+  /**
+   * collects the number of superinstructions in our compute() method
+   */
+  public static class FusedCounter extends ListenerAdapter {
+    int nFused;
+
+    @Override
+    public void classLoaded (VM vm, ClassInfo ci){
+      if (ci.getName().equals(FusedInstructionTest.class.getName())){
+        MethodInfo mi = ci.getMethod("compute(IJ)J", false);
+        for (Instruction insn : mi.getInstructions()){
+          if (insn.getSuperInstruction() != null){
+            nFused++;
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * only interested in returns. Together with another selective listener this
+   * makes the VM use per instruction dispatch, i.e. fused sequences that none
+   * of them is interested in can be executed
+   */
+  public static class ReturnCounter extends ListenerAdapter implements InstructionInterest {
+    long nReturns;
+
+    @Override
+    public boolean isInterestedIn (Instruction insn){
+      return (insn instanceof JVMReturnInstruction);
+    }
+
+    @Override
+    public void instructionExecuted (VM vm, ThreadInfo ti, Instruction nextInsn, Instruction executedInsn){
+      nReturns++;
+    }
+  }
+
+  // covers local var access, int/long arithmetic, conversions, (wide) iinc,
+  // and jumps into the middle of fused sequences
+  static long compute (int a, long b){
+    int x = a * 3 + 7;
+    int y = (x << 3) ^ (x >>> 2) | (a & 0xff);
+    y = -y - (y >> 1);
+    for (int i=0; i<10; i++){
+      x += i * y;
+      x -= 200;
+    }
+    long l = b * 5L + x;
+    l = (l << 7) ^ (l >>> 3) | (l >> 1);
+    l = -l - 1L;
+    l &= 0x7fffffffffffL;
+    byte bt = (byte) (x + y);
+    char c = (char) (x - y);
+    short s = (short) (x * y);
+    int k = 70000;
+    k += 300;
+    k -= 1;
+    int t = bt + c + s + (int) l + k;
+    int[] dummy = null;
+    return l + t + (dummy == null ? 1 : 0);
+  }
+
+  @Test
+  public void testCompute (){
+    if (verifyNoPropertyViolation(FUSE)){
+      // values computed on the host VM
+      assertEquals( 53945931294022L, compute(42, 1234567890123L));
+      assertEquals( 536956948L, compute(-17, -99L));
+    }
+  }
+
+  //--- host side checks
+
+  JPF run (String... args){
+    String[] a = args.clone();
+    a[0] = "+listener=" + Statistics.class.getName() + ',' + FusedCounter.class.getName() + ',' + args[0];
+
+    return noPropertyViolation( setTestMethod("testCompute"), a);
+  }
+
+  @Test
+  public void testFusedCount (){
+    if (!isJPFRun()){
+      String listeners = InstructionInterestTest.InvokeCounter.class.getName() + ',' + ReturnCounter.class.getName();
+      JPF unfused = run(listeners, NO_FUSE);
+      JPF fused = run(listeners, FUSE);
+
+      assertEquals( 0, unfused.getListenerOfType(FusedCounter.class).nFused);
+      assertTrue( fused.getListenerOfType(FusedCounter.class).nFused > 0);
+
+      // invokes are not fused, so all of them should be observed
+      assertEquals( unfused.getListenerOfType(InstructionInterestTest.InvokeCounter.class).nExecuted,
+                    fused.getListenerOfType(InstructionInterestTest.InvokeCounter.class).nExecuted);
+      assertEquals( 0, fused.getListenerOfType(InstructionInterestTest.InvokeCounter.class).nOther);
+      assertEquals( unfused.getListenerOfType(ReturnCounter.class).nReturns,
+                    fused.getListenerOfType(ReturnCounter.class).nReturns);
+
+      // fused insns still count as executed
+      assertEquals( unfused.getListenerOfType(Statistics.class).insns,
+                    fused.getListenerOfType(Statistics.class).insns);
+    }
+  }
+
+  @Test
+  public void testObserved (){
+    if (!isJPFRun()){
+      // this one wants to see all insns, i.e. fused sequences have to be executed one by one
+      JPF unfused = run(InstructionInterestTest.InsnCounter.class.getName(), NO_FUSE);
+      JPF fused = run(InstructionInterestTest.InsnCounter.class.getName(), FUSE);
+
+      assertTrue( fused.getListenerOfType(FusedCounter.class).nFused > 0);
+
+      InstructionInterestTest.InsnCounter c1 = unfused.getListenerOfType(InstructionInterestTest.InsnCounter.class);
+      InstructionInterestTest.InsnCounter c2 = fused.getListenerOfType(InstructionInterestTest.InsnCounter.class);
+      assertEquals( c1.nInsns, c2.nInsns);
+
+      assertEquals( c2.nInsns, fused.getListenerOfType(Statistics.class).insns);
+    }
+  }
+}
@@ -0,0 +1,234 @@
+/*
+ * Copyright (C) 2014, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ * All rights reserved.
+ *
+ * The Java Pathfinder core (jpf-core) platform is licensed under the
+ * Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0. 
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+package gov.nasa.jpf.test.basic;
+
+import gov.nasa.jpf.JPF;
+import gov.nasa.jpf.ListenerAdapter;
+import gov.nasa.jpf.jvm.bytecode.JVMInvokeInstruction;
+import gov.nasa.jpf.report.Statistics;
+import gov.nasa.jpf.search.Search;
+import gov.nasa.jpf.util.test.TestJPF;
+import gov.nasa.jpf.vm.Instruction;
+import gov.nasa.jpf.vm.InstructionInterest;
+import gov.nasa.jpf.vm.ThreadInfo;
+import gov.nasa.jpf.vm.VM;
+import gov.nasa.jpf.vm.Verify;
+
+import org.junit.Test;
+
+/**
+ * regression test for per instruction listener dispatch, i.e. listeners that
+ * only get notified for the instructions they declared interest in
+ */
+public class InstructionInterestTest extends TestJPF {
+
+  /**
+   * counts all executed insns, and the invokes among them
+   */
+  public static class InsnCounter extends ListenerAdapter {
+    long nInsns;
+    long nInvokes;
+
+    @Override
+    public void instructionExecuted (VM vm, ThreadInfo ti, Instruction nextInsn, Instruction executedInsn){
+      nInsns++;
+      if (executedInsn instanceof JVMInvokeInstruction){
+        nInvokes++;
+      }
+    }
+  }
+
+  /**
+   * only wants to see invokes. It still has to check, since a sole instruction
+   * listener gets notified about all insns
+   */
+  public static class InvokeCounter extends ListenerAdapter implements InstructionInterest {
+    long nExecute;
+    long nExecuted;
+    long nOther; // notifications for insns we are not interested in
+
+    @Override
+    public boolean isInterestedIn (Instruction insn){
+      return (insn instanceof JVMInvokeInstruction);
+    }
+
+    @Override
+    public void executeInstruction (VM vm, ThreadInfo ti, Instruction insnToExecute){
+      if (isInterestedIn(insnToExecute)){
+        nExecute++;
+      } else {
+        nOther++;
+      }
+    }
+
+    @Override
+    public void instructionExecuted (VM vm, ThreadInfo ti, Instruction nextInsn, Instruction executedInsn){
+      if (isInterestedIn(executedInsn)){
+        nExecuted++;
+      } else {
+        nOther++;
+      }
+    }
+  }
+
+  /**
+   * changes its interest once it has seen a certain number of insns
+   */
+  public static class LateListener extends ListenerAdapter implements InstructionInterest {
+    boolean isActive;
+    long nExecuted;
+    long nActive;
+
+    @Override
+    public boolean isInterestedIn (Instruction insn){
+      return isActive || (insn instanceof JVMInvokeInstruction);
+    }
+
+    @Override
+    public void instructionExecuted (VM vm, ThreadInfo ti, Instruction nextInsn, Instruction executedInsn){
+      nExecuted++;
+      if (isActive){
+        nActive++;
+      } else if (nExecuted == 100){
+        isActive = true;
+        vm.resetInstructionInterest();
+      }
+    }
+  }
+
+  static int fib (int n){
+    return (n < 2) ? n : fib(n-1) + fib(n-2);
+  }
+
+  static void compute (){
+    int n = Verify.getInt(5, 7);
+    assert fib(n) > 0;
+  }
+
+  /**
+   * requests a probe after a number of insns, and checks the Statistics insns
+   * when we get notified (which is after the Statistics got notified)
+   */
+  public static class Prober extends ListenerAdapter {
+    long nInsns;
+    long nProbeInsns = -1;
+    long nStatInsns = -1;
+
+    @Override
+    public void instructionExecuted (VM vm, ThreadInfo ti, Instruction nextInsn, Instruction executedInsn){
+      if (++nInsns == 1000){
+        vm.getSearch().probeSearch();
+      }
+    }
+
+    @Override
+    public void searchProbed (Search search){
+      if (nProbeInsns < 0){
+        nProbeInsns = nInsns;
+        nStatInsns = search.getVM().getNextListenerOfType(Statistics.class, null).insns;
+      }
+    }
+  }
+
+  @Test
+  public void runCompute (){
+    if (verifyNoPropertyViolation()){
+      compute();
+    }
+  }
+
+  //--- host side checks
+
+  JPF run (String... listeners){
+    StringBuilder sb = new StringBuilder("+listener=");
+    for (int i=0; i<listeners.length; i++){
+      if (i > 0){
+        sb.append(',');
+      }
+      String l = listeners[i];
+      sb.append( (l.indexOf('.') < 0) ? getClass().getName() + '$' + l : l);
+    }
+
+    // the Reporter needs Statistics to publish probes
+    return noPropertyViolation( setTestMethod("runCompute"), sb.toString(), "+report.statistics=true");
+  }
+
+  @Test
+  public void testInterestedOnly (){
+    if (!isJPFRun()){
+      JPF jpf = run("InsnCounter", "InvokeCounter");
+      InsnCounter all = jpf.getListenerOfType(InsnCounter.class);
+      InvokeCounter invokes = jpf.getListenerOfType(InvokeCounter.class);
+
+      assertTrue( all.nInvokes > 0);
+      assertEquals( all.nInvokes, invokes.nExecuted);
+      assertEquals( invokes.nExecute, invokes.nExecuted);
+      assertEquals( 0, invokes.nOther);
+      assertTrue( all.nInsns > all.nInvokes);
+    }
+  }
+
+  @Test
+  public void testSoleListener (){
+    if (!isJPFRun()){
+      // no per instruction dispatch, we get notified directly
+      InvokeCounter sole = run("InvokeCounter").getListenerOfType(InvokeCounter.class);
+      InvokeCounter shared = run("InsnCounter", "InvokeCounter").getListenerOfType(InvokeCounter.class);
+
+      assertTrue( sole.nExecuted > 0);
+      assertEquals( shared.nExecuted, sole.nExecuted);
+      assertEquals( shared.nExecute, sole.nExecute);
+    }
+  }
+
+  @Test
+  public void testResetInterest (){
+    if (!isJPFRun()){
+      JPF jpf = run("InsnCounter", "LateListener");
+      InsnCounter all = jpf.getListenerOfType(InsnCounter.class);
+      LateListener late = jpf.getListenerOfType(LateListener.class);
+
+      assertTrue( late.isActive);
+      assertTrue( late.nActive > 0);
+      assertTrue( late.nExecuted < all.nInsns);
+      assertTrue( late.nExecuted > all.nInvokes);
+    }
+  }
+
+  @Test
+  public void testStatisticsInsns (){
+    if (!isJPFRun()){
+      JPF jpf = run("InsnCounter", Statistics.class.getName());
+      InsnCounter all = jpf.getListenerOfType(InsnCounter.class);
+      Statistics stat = jpf.getListenerOfType(Statistics.class);
+
+      assertEquals( all.nInsns, stat.insns);
+    }
+  }
+
+  @Test
+  public void testProbedStatisticsInsns (){
+    if (!isJPFRun()){
+      JPF jpf = run(Statistics.class.getName(), "Prober");
+      Prober prober = jpf.getListenerOfType(Prober.class);
+
+      assertEquals( 1000, prober.nProbeInsns);
+      assertEquals( prober.nProbeInsns, prober.nStatInsns);
+    }
+  }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2014, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ * All rights reserved.
+ *
+ * The Java Pathfinder core (jpf-core) platform is licensed under the
+ * Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0. 
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+package gov.nasa.jpf.test.basic;
+
+import gov.nasa.jpf.util.test.TestJPF;
+import gov.nasa.jpf.vm.ClassInfo;
+import gov.nasa.jpf.vm.ClassLoaderInfo;
+import gov.nasa.jpf.vm.MethodInfo;
+import gov.nasa.jpf.vm.NativeInvokerGenerator;
+import gov.nasa.jpf.vm.NativeMethodInfo;
+import gov.nasa.jpf.vm.NativeMethodInvoker;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/**
+ * regression test for the generated native peer invokers (vm.generate_peer_invokers),
+ * which have to behave like their reflection based counterparts
+ */
+public class NativeInvokerTest extends TestJPF {
+
+  static final String GENERATE = "+vm.generate_peer_invokers=true";
+  static final String REFLECT = "+vm.generate_peer_invokers=false";
+
+  static int callNatives (int n){
+    String s = "the quick brown fox";
+    AtomicInteger ai = new AtomicInteger();
+    int sum = 0;
+
+    for (int i=0; i<n; i++){
+      sum += s.indexOf('q');          // int args
+      sum += s.charAt(4);             // char result
+      if (s.startsWith("the")){       // reference args, boolean result
+        ai.incrementAndGet();
+      }
+      ai.compareAndSet(i+1, i+1);
+    }
+
+    assert ai.get() == n;
+    assert s.substring(4, 9).equals("quick");
+    assert String.valueOf(42L).equals("42");       // long args
+    assert String.valueOf(1.5).equals("1.5");      // double args
+
+    return sum;
+  }
+
+  @Test
+  public void testGeneratedInvokers (){
+    if (verifyNoPropertyViolation(GENERATE)){
+      int sum = callNatives(10);
+      assert sum == 10 * (4 + 'q');
+    }
+  }
+
+  @Test
+  public void testReflectionInvokers (){
+    if (verifyNoPropertyViolation(REFLECT)){
+      int sum = callNatives(10);
+      assert sum == 10 * (4 + 'q');
+    }
+  }
+
+  //--- host side checks
+
+  @Test
+  public void testInvokersAreGenerated (){
+    if (!isJPFRun()){
+      noPropertyViolation( setTestMethod("testGeneratedInvokers"), GENERATE);
+
+      ClassInfo ci = ClassLoaderInfo.getSystemResolvedClassInfo("java.lang.String");
+      MethodInfo mi = ci.getMethod("indexOf(I)I", false);
+      assertTrue( mi instanceof NativeMethodInfo);
+
+      NativeMethodInvoker invoker = ((NativeMethodInfo)mi).getInvoker();
+      assertTrue( invoker.getClass().getClassLoader() instanceof NativeInvokerGenerator);
+    }
+  }
+
+  @Test
+  public void testGeneratedCalls () throws Exception {
+    if (!isJPFRun()){
+      NativeInvokerGenerator gen = new NativeInvokerGenerator(getClass().getClassLoader());
+      JPF_gov_nasa_jpf_test_basic_MJITest peer = new JPF_gov_nasa_jpf_test_basic_MJITest();
+      Class<?> cls = peer.getClass();
+
+      // primitive arguments of all sizes, boxed result
+      Method mth = cls.getMethod("nativeInstanceMethod", gov.nasa.jpf.vm.MJIEnv.class, int.class,
+                                 double.class, char.class, boolean.class, int.class);
+      NativeMethodInvoker invoker = gen.createInvoker(mth);
+      assertTrue( invoker != null);
+      Object[] args = { null, 0, 2.0, '?', true, 40 };
+      assertEquals( mth.invoke(peer, args), invoker.invoke(peer, args));
+      assertEquals( Integer.valueOf(42), invoker.invoke(peer, args));
+
+      // exceptions are wrapped just like with reflection
+      mth = cls.getMethod("nativeCrash", gov.nasa.jpf.vm.MJIEnv.class, int.class);
+      invoker = gen.createInvoker(mth);
+      try {
+        invoker.invoke(peer, new Object[] { null, 0 });
+        fail("peer exception not wrapped");
+      } catch (InvocationTargetException itx){
+        assertTrue( itx.getTargetException() instanceof NullPointerException);
+      }
+
+      assertEquals( 2, gen.getNumberOfInvokers());
+    }
+  }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2014, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ * All rights reserved.
+ *
+ * The Java Pathfinder core (jpf-core) platform is licensed under the
+ * Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0. 
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+package gov.nasa.jpf.test.mc.basic;
+
+import gov.nasa.jpf.util.test.TestJPF;
+import gov.nasa.jpf.vm.Verify;
+
+import org.junit.Test;
+
+/**
+ * regression test for ArenaFieldsFactory, which has to produce the same state
+ * space as DefaultFieldsFactory, and must not release arena blocks that are
+ * still referenced by stored states
+ */
+public class ArenaFieldsTest extends TestJPF {
+
+  static final String ARENA = "+vm.fields_factory.class=.vm.ArenaFieldsFactory";
+  static final String DEFAULT = "+vm.fields_factory.class=.vm.DefaultFieldsFactory";
+
+  static class Point {
+    int x;
+    long y;
+    double z;
+    Point next;
+
+    Point (int x, Point next){
+      this.x = x;
+      this.y = x * 1000L;
+      this.z = x / 2.0;
+      this.next = next;
+    }
+
+    boolean isConsistent(){
+      return y == x * 1000L && z == x / 2.0;
+    }
+  }
+
+  static int nCreated;
+  static Point list; // the objects that are still alive in the end state
+
+  /**
+   * allocate and modify small objects in each transition. If blocks of stored
+   * objects get released and reused upon backtracking, values don't match
+   */
+  static void allocateSmallObjects (int nObjects, int nSteps){
+    Point head = null;
+    for (int i=0; i<nObjects; i++){
+      head = new Point(i, head);
+    }
+
+    for (int i=0; i<nSteps; i++){
+      int c = Verify.getInt(0, 2);
+
+      Point p = head;
+      for (int j=0; j<c; j++){
+        p = p.next;
+      }
+      p.x += 2;
+      p.y += 2000L;
+      p.z += 1.0;
+
+      head = new Point(c, head); // new object in each transition
+      nCreated++;
+
+      for (Point q = head; q != null; q = q.next){
+        assert q.isConsistent() : "inconsistent object: " + q.x + "," + q.y + "," + q.z;
+      }
+    }
+
+    list = head;
+  }
+
+  @Test
+  public void testSmallObjects(){
+    if (verifyNoPropertyViolation(ARENA)){
+      allocateSmallObjects( 50, 4);
+    }
+  }
+
+  @Test
+  public void testStatics(){
+    if (verifyNoPropertyViolation(ARENA)){
+      nCreated = 0;
+      for (int i=0; i<3; i++){
+        if (Verify.getBoolean()){
+          nCreated++;
+        }
+      }
+      assert nCreated >= 0 && nCreated <= 3 : "wrong static value: " + nCreated;
+    }
+  }
+
+  @Test
+  public void testRestoredStates(){
+    // restored states have to be independent of backtracking
+    if (verifyNoPropertyViolation(ARENA, "+search.class=.search.heuristic.BFSHeuristic")){
+      allocateSmallObjects( 20, 3);
+    }
+  }
+
+  //--- compare with DefaultFieldsFactory
+
+  @Test
+  public void testSameStateSpace(){
+    if (!isJPFRun()){
+      for (String m : new String[] { "testSmallObjects", "testStatics" }){
+        assertSameStateSpace(m, new String[] { DEFAULT }, ARENA);
+      }
+    }
+  }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2014, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ * All rights reserved.
+ *
+ * The Java Pathfinder core (jpf-core) platform is licensed under the
+ * Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0. 
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+package gov.nasa.jpf.test.mc.basic;
+
+import gov.nasa.jpf.Config;
+import gov.nasa.jpf.JPF;
+import gov.nasa.jpf.report.Statistics;
+import gov.nasa.jpf.search.Search;
+import gov.nasa.jpf.search.SearchListenerAdapter;
+import gov.nasa.jpf.util.JPFSiteUtils;
+import gov.nasa.jpf.util.test.TestJPF;
+import gov.nasa.jpf.vm.Verify;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Test;
+
+/**
+ * regression test for resuming DFSearch from checkpoints (search.checkpoint,
+ * search.resume)
+ *
+ * this runs JPF directly since we need several runs that share a checkpoint file
+ */
+public class CheckpointTest extends TestJPF {
+
+  public static class Target {
+    public static void main (String[] args){
+      int a = Verify.getInt(0, 4);
+      int[] d = new int[3];
+      d[a % 3] = a;
+
+      int b = Verify.getInt(0, 4);
+      d[b % 3] += b;
+
+      assert (d[0] + d[1] + d[2]) != 8 : "found it"; // only for the last choices
+    }
+  }
+
+  /**
+   * terminates the search after a given number of new states
+   */
+  static class Stopper extends SearchListenerAdapter {
+    int nStates;
+
+    Stopper (int nStates){
+      this.nStates = nStates;
+    }
+
+    @Override
+    public void stateAdvanced (Search search){
+      if (search.isNewState() && search.getVM().getStateId() >= nStates){
+        search.terminate();
+      }
+    }
+  }
+
+  JPF createJPF (String... args){
+    String[] a = new String[args.length + 5];
+    a[0] = "+target=" + Target.class.getName();
+    a[1] = "+vm.serializer.stable_ids=true";
+    a[2] = "+report.statistics=true";
+    a[3] = "+report.console.finished=";
+    a[4] = "+report.console.property_violation=";
+    System.arraycopy(args, 0, a, 5, args.length);
+
+    Config conf = JPF.createConfig(a);
+
+    String projectId = JPFSiteUtils.getCurrentProjectId();
+    if (projectId != null) {
+      String testCp = conf.getString(projectId + ".test_classpath");
+      if (testCp != null) {
+        conf.append("classpath", testCp, ",");
+      }
+    }
+
+    return new JPF(conf);
+  }
+
+  Statistics runFull (String... args){
+    JPF jpf = createJPF(args);
+    jpf.run();
+    return jpf.getReporter().getStatistics();
+  }
+
+  @Test
+  public void testResume () throws IOException {
+    if (!isJPFRun()){
+      File cpFile = File.createTempFile("jpf-checkpoint", ".bin");
+      try {
+        Statistics full = runFull("+search.multiple_errors=true");
+        long nFull = full.newStates;
+
+        for (int n=2; n<nFull; n+=3){
+          JPF jpf = createJPF("+search.multiple_errors=true", "+search.checkpoint=" + cpFile.getPath(),
+                              "+search.checkpoint.interval=0");
+          jpf.addSearchListener(new Stopper(n));
+          jpf.run();
+          assertTrue("checkpointed search did not stop", jpf.getReporter().getStatistics().newStates < nFull);
+
+          Statistics resumed = runFull("+search.multiple_errors=true", "+search.resume=" + cpFile.getPath());
+          assertEquals("wrong number of states after resume from " + n, nFull, resumed.newStates);
+          assertEquals("replayed instructions counted after resume from " + n, full.insns, resumed.insns);
+        }
+      } finally {
+        cpFile.delete();
+      }
+    }
+  }
+
+  @Test
+  public void testResumeError () throws IOException {
+    if (!isJPFRun()){
+      File cpFile = File.createTempFile("jpf-checkpoint", ".bin");
+      try {
+        JPF jpf = createJPF("+search.checkpoint=" + cpFile.getPath(), "+search.checkpoint.interval=0");
+        jpf.addSearchListener(new Stopper(3));
+        jpf.run();
+        assertTrue("found error before checkpoint", jpf.getSearchErrors().isEmpty());
+
+        jpf = createJPF("+search.resume=" + cpFile.getPath());
+        jpf.run();
+        assertEquals("resumed search did not find error", 1, jpf.getSearchErrors().size());
+
+      } finally {
+        cpFile.delete();
+      }
+    }
+  }
+}
@@ -0,0 +1,229 @@
+/*
+ * Copyright (C) 2014, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ * All rights reserved.
+ *
+ * The Java Pathfinder core (jpf-core) platform is licensed under the
+ * Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0. 
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+package gov.nasa.jpf.test.mc.basic;
+
+import gov.nasa.jpf.JPF;
+import gov.nasa.jpf.report.Statistics;
+import gov.nasa.jpf.util.TypeRef;
+import gov.nasa.jpf.util.test.TestJPF;
+import gov.nasa.jpf.vm.CompressedBacktracker;
+import gov.nasa.jpf.vm.Verify;
+
+import org.junit.Test;
+
+/**
+ * regression test for CompressedBacktracker, which has to reconstruct states
+ * without KernelState by re-executing transitions, and produce the same state
+ * space as DefaultBacktracker
+ */
+public class CompressedBacktrackerTest extends TestJPF {
+
+  static final String COMPRESSED = "+vm.backtracker.class=.vm.CompressedBacktracker";
+  static final String DEFAULT = "+vm.backtracker.class=.vm.DefaultBacktracker";
+  static final String INTERVAL = "+vm.backtracker.interval=3";
+
+  static int result, threadResult; // end state outcomes of the test methods
+
+  static class Node {
+    int value;
+    Node next;
+
+    Node (int value, Node next){
+      this.value = value;
+      this.next = next;
+    }
+  }
+
+  static Node list;
+
+  /**
+   * choices on the way back from the recursion, with heap objects that are
+   * allocated and modified in the replayed transitions
+   */
+  static int recurse (int depth, int maxDepth){
+    int a = depth * 3;
+    list = new Node(a, list);
+
+    if (depth < maxDepth){
+      int r = recurse(depth+1, maxDepth);
+
+      if (depth % 2 == 0){
+        a += Verify.getInt(0, 2);
+        list.value += a;
+      }
+
+      assert a >= depth * 3 && a <= depth * 3 + 2 : "wrong local a: " + a;
+      return r + a;
+
+    } else {
+      return a + Verify.getInt(0, 1);
+    }
+  }
+
+  @Test
+  public void testRecursion(){
+    if (verifyNoPropertyViolation(COMPRESSED, INTERVAL)){
+      list = null;
+      int r = recurse(0, 6);
+      assert r >= 63 && r <= 63 + 4*2 + 1;
+      result = r;
+
+      int n = 0;
+      for (Node node = list; node != null; node = node.next){
+        n++;
+      }
+      assert n == 7 : "wrong list length: " + n;
+    }
+  }
+
+  static int count;
+
+  @Test
+  public void testThreads(){
+    if (verifyNoPropertyViolation(COMPRESSED, INTERVAL)){
+      count = 0;
+      Thread t = new Thread(){
+        @Override
+        public void run(){
+          int local = 0;
+          for (int i=0; i<2; i++){
+            synchronized (CompressedBacktrackerTest.class){
+              local += count;
+              count++;
+            }
+          }
+          assert local >= 0 && local <= 5;
+          threadResult = local;
+        }
+      };
+      t.start();
+
+      int local = 0;
+      for (int i=0; i<2; i++){
+        synchronized (CompressedBacktrackerTest.class){
+          local += count;
+          count++;
+        }
+      }
+      assert local >= 0 && local <= 5;
+      result = local;
+    }
+  }
+
+  @Test
+  public void testDeltaHeap(){
+    if (verifyNoPropertyViolation(COMPRESSED, INTERVAL, "+vm.heap.class=.vm.DeltaHeap")){
+      list = null;
+      int r = recurse(0, 6);
+      assert r >= 63 && r <= 63 + 4*2 + 1;
+    }
+  }
+
+  @Test
+  public void testRecursionBFS(){
+    if (verifyNoPropertyViolation(COMPRESSED, INTERVAL, "+search.class=.search.heuristic.BFSHeuristic")){
+      list = null;
+      int r = recurse(0, 6);
+      assert r >= 63 && r <= 63 + 4*2 + 1;
+    }
+  }
+
+  /**
+   * a long path with a choice at its end and at its beginning
+   */
+  @Test
+  public void testLongPath(){
+    if (verifyNoPropertyViolation(COMPRESSED)){
+      int a = Verify.getInt(0, 1);
+      for (int i=0; i<300; i++){
+        count = i;
+        Verify.breakTransition("longPath");
+      }
+      int b = Verify.getInt(0, 1);
+      assert count == 299 && (a + b) <= 2;
+      result = a + b;
+    }
+  }
+
+  static class Container {
+    static int data;
+  }
+
+  static class Racer extends Thread {
+    @Override
+    public void run(){
+      Container.data++;
+    }
+  }
+
+  /**
+   * GlobalSharednessPolicy does not backtrack the sharedness of objects, i.e.
+   * replayed transitions can break at other points than the original ones
+   */
+  @Test
+  public void testDivergingReplay() throws InterruptedException {
+    if (verifyJPFException( new TypeRef("gov.nasa.jpf.JPFException"), COMPRESSED, INTERVAL, "+pass_exceptions",
+                            "+vm.scheduler.sharedness.class=.vm.GlobalSharednessPolicy")){
+      Racer t1 = new Racer();
+      Racer t2 = new Racer();
+      t1.start();
+      t2.start();
+      t1.join();
+      t2.join();
+    }
+  }
+
+  //--- host side checks
+
+  @Test
+  public void testSameStateSpace(){
+    if (!isJPFRun()){
+      String stats = "+report.statistics=true";
+      String[] methods = { "testRecursion", "testThreads", "testLongPath" };
+
+      for (String m : methods){
+        JPF[] jpfs = assertSameStateSpace(m, new String[] { DEFAULT, INTERVAL, stats }, COMPRESSED, INTERVAL, stats);
+        JPF jpf = jpfs[0];
+        JPF jpfCompressed = jpfs[1];
+
+        CompressedBacktracker<?> bt = (CompressedBacktracker<?>) jpfCompressed.getVM().getBacktracker();
+        assertTrue( bt.getNumberOfReplayedTransitions() > 0);
+
+        // replayed transitions are executed again, but should not be counted
+        Statistics stat = jpf.getReporter().getStatistics();
+        Statistics statCompressed = jpfCompressed.getReporter().getStatistics();
+        assertEquals( stat.insns, statCompressed.insns);
+        assertEquals( stat.nNewObjects, statCompressed.nNewObjects);
+        assertEquals( stat.gcCycles, statCompressed.gcCycles);
+      }
+    }
+  }
+
+  @Test
+  public void testLowMemory(){
+    if (!isJPFRun()){
+      // pretend we are always low on memory
+      JPF jpf = noPropertyViolation( setTestMethod("testLongPath"), COMPRESSED, "+vm.backtracker.interval=1",
+                                     "+vm.backtracker.max_interval=8", "+vm.backtracker.min_free=1000000M");
+
+      CompressedBacktracker<?> bt = (CompressedBacktracker<?>) jpf.getVM().getBacktracker();
+      assertEquals( 8, bt.getInterval());
+      assertTrue( bt.getNumberOfReconstructedStates() > 0);
+    }
+  }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2014, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ * All rights reserved.
+ *
+ * The Java Pathfinder core (jpf-core) platform is licensed under the
+ * Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0. 
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+package gov.nasa.jpf.test.mc.basic;
+
+import gov.nasa.jpf.util.test.TestJPF;
+import gov.nasa.jpf.vm.Verify;
+
+import org.junit.Test;
+
+/**
+ * regression test for DeltaHeap, which has to produce the same state space
+ * as OVHeap
+ */
+public class DeltaHeapTest extends TestJPF {
+
+  static final String DELTA_HEAP = "+vm.heap.class=.vm.DeltaHeap";
+  static final String OV_HEAP = "+vm.heap.class=.vm.OVHeap";
+
+  static class Node {
+    int value;
+    Node next;
+
+    Node (int value, Node next){
+      this.value = value;
+      this.next = next;
+    }
+  }
+
+  static Node[] root; // keeps the list alive after the test method returns
+
+  static Node[] createList (int len){
+    Node[] nodes = new Node[len];
+    Node head = null;
+    for (int i=0; i<len; i++){
+      head = new Node(i, head);
+      nodes[len-1-i] = head;
+    }
+    return nodes;
+  }
+
+  static int sum (Node head){
+    int s = 0;
+    for (Node n = head; n != null; n = n.next){
+      s += n.value;
+    }
+    return s;
+  }
+
+  /**
+   * change a few objects of a deep heap in each transition, and create some
+   * garbage. If a backtrack does not restore the list, the sum does not match
+   */
+  static void mutateDeepHeap (int len, int nSteps, int nChoices){
+    Node[] nodes = createList(len);
+    root = nodes;
+    int expected = sum(nodes[0]);
+
+    for (int i=0; i<nSteps; i++){
+      int c = Verify.getInt(0, nChoices-1);
+
+      nodes[(c * len) / nChoices].value++;
+      expected++;
+
+      if (c == 0){
+        Node n = nodes[len-1];
+        nodes[len-1] = new Node( n.value, null); // old tail becomes garbage
+        nodes[len-2].next = nodes[len-1];
+      }
+    }
+
+    assert sum(nodes[0]) == expected : "list sum does not match, expected: " + expected + ", got: " + sum(nodes[0]);
+  }
+
+  @Test
+  public void testDeepHeap(){
+    if (verifyNoPropertyViolation(DELTA_HEAP)){
+      mutateDeepHeap( 200, 4, 3);
+    }
+  }
+
+  //--- locking info has to be restored for objects that were not changed
+
+  static final Object lockA = new Object();
+  static final Object lockB = new Object();
+  static int count;
+
+  @Test
+  public void testLocking(){
+    if (verifyNoPropertyViolation(DELTA_HEAP)){
+      Thread t = new Thread(){
+        @Override
+        public void run(){
+          synchronized (lockA){
+            count++;
+          }
+        }
+      };
+      t.start();
+
+      synchronized (lockA){
+        count++;
+      }
+
+      try {
+        t.join();
+      } catch (InterruptedException ix){
+        fail("unexpected interrupt");
+      }
+
+      assert count == 2;
+    }
+  }
+
+  @Test
+  public void testDeadlock(){
+    if (verifyDeadlock(DELTA_HEAP)){
+      Thread t = new Thread(){
+        @Override
+        public void run(){
+          synchronized (lockB){
+            synchronized (lockA){
+              count++;
+            }
+          }
+        }
+      };
+      t.start();
+
+      synchronized (lockA){
+        synchronized (lockB){
+          count++;
+        }
+      }
+    }
+  }
+
+  //--- compare with OVHeap
+
+  @Test
+  public void testSameStateSpace(){
+    if (!isJPFRun()){
+      for (String m : new String[] { "testDeepHeap", "testLocking" }){
+        assertSameStateSpace(m, new String[] { OV_HEAP }, DELTA_HEAP);
+      }
+    }
+  }
+}
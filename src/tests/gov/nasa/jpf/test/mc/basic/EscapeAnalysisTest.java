@@ -0,0 +1,270 @@
+/*
+ * Copyright (C) 2014, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ * All rights reserved.
+ *
+ * The Java Pathfinder core (jpf-core) platform is licensed under the
+ * Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0. 
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+package gov.nasa.jpf.test.mc.basic;
+
+import gov.nasa.jpf.JPF;
+import gov.nasa.jpf.ListenerAdapter;
+import gov.nasa.jpf.util.test.TestJPF;
+import gov.nasa.jpf.vm.GenericHeap;
+import gov.nasa.jpf.vm.MethodInfo;
+import gov.nasa.jpf.vm.ThreadInfo;
+import gov.nasa.jpf.vm.VM;
+import gov.nasa.jpf.vm.Verify;
+
+import org.junit.Test;
+
+/**
+ * regression test for releasing method local objects upon return
+ * (vm.gc.release_locals), which must not release objects that escape their
+ * frame, and has to produce the same state space as without it
+ */
+public class EscapeAnalysisTest extends TestJPF {
+
+  static final String RELEASE = "+vm.gc.release_locals=true";
+  static final String NO_RELEASE = "+vm.gc.release_locals=false";
+
+  static class Vec {
+    int x, y;
+
+    Vec (int x, int y){
+      this.x = x;
+      this.y = y;
+    }
+
+    Vec add (Vec other){
+      return new Vec(x + other.x, y + other.y); // returned, escapes
+    }
+
+    int dot (Vec other){
+      return x * other.x + y * other.y;
+    }
+  }
+
+  static class Holder {
+    Vec vec;
+  }
+
+  static Vec global;
+  static Vec[] globals = new Vec[2];
+
+  // does not escape
+  static int localDot (int a, int b){
+    Vec v = new Vec(a, b);
+    Vec w = new Vec(b, a);
+    int[] tmp = new int[2];
+    tmp[0] = v.dot(w);
+    tmp[1] = v.dot(v);
+    return tmp[0] + tmp[1];
+  }
+
+  // does not escape in a loop, only the last objects are released on return
+  static int localLoop (int n){
+    int s = 0;
+    for (int i=0; i<n; i++){
+      Vec v = new Vec(i, i);
+      s += v.x + v.y;
+    }
+    return s;
+  }
+
+  // a local object that holds another local object
+  static int localHolder (int a){
+    Holder h = new Holder();
+    Vec v = new Vec(a, a);
+    h.vec = v; // v escapes into h
+    return h.vec.x;
+  }
+
+  static Vec returned (int a){
+    Vec v = new Vec(a, 0);
+    Vec w = new Vec(0, a);
+    return v.add(w);
+  }
+
+  static void storedStatic (int a){
+    Vec v = new Vec(a, a);
+    global = v;
+  }
+
+  static void storedArray (int a){
+    Vec v = new Vec(a, -a);
+    globals[1] = v;
+  }
+
+  static Holder holder = new Holder();
+
+  static void storedField (int a){
+    Vec v = new Vec(-a, a);
+    holder.vec = v;
+  }
+
+  static void locked (int a){
+    Vec v = new Vec(a, a);
+    synchronized (v){
+      global = new Vec(v.x, v.y);
+    }
+  }
+
+  static Object passedToUnknown (Object o){
+    StringBuilder sb = new StringBuilder();
+    sb.append(o); // might store its argument
+    return sb;
+  }
+
+  static void thrown (int a){
+    try {
+      throw new IllegalStateException("bad " + a);
+    } catch (IllegalStateException x){
+      global = new Vec(a, 2*a);
+    }
+  }
+
+  static void allCases (){
+    int a = Verify.getInt(1, 2);
+
+    assert localDot(a, 3) == 6*a + a*a + 9;
+    assert localLoop(a+2) == (a+2) * (a+1);
+    assert localHolder(a) == a;
+
+    Vec r = returned(a);
+    assert r.x == a && r.y == a;
+
+    storedStatic(a);
+    assert global.x == a;
+
+    storedArray(a);
+    assert globals[1].y == -a;
+
+    storedField(a);
+    assert holder.vec.x == -a;
+
+    locked(a);
+    assert global.y == a;
+
+    Vec v = new Vec(a, a);
+    assert passedToUnknown(v) != null;
+    assert v.x == a;
+
+    thrown(a);
+    assert global.y == 2*a;
+
+    if (Verify.getBoolean()){ // frame that spans a transition
+      Vec w = new Vec(a, a);
+      Verify.getBoolean();
+      assert w.dot(w) == 2*a*a;
+    }
+  }
+
+  @Test
+  public void testAllCases(){
+    if (verifyNoPropertyViolation(RELEASE)){
+      allCases();
+    }
+  }
+
+  @Test
+  public void testGenerational(){
+    if (verifyNoPropertyViolation(RELEASE, "+vm.gc.generational=true")){
+      allCases();
+    }
+  }
+
+  @Test
+  public void testThreads(){
+    if (verifyNoPropertyViolation(RELEASE)){
+      Thread t = new Thread(){
+        @Override
+        public void run(){
+          assert localDot(1, 2) == 9;
+          storedStatic(1);
+        }
+      };
+      t.start();
+
+      assert localDot(2, 1) == 9;
+      try {
+        t.join();
+      } catch (InterruptedException ix){
+        fail("unexpected interrupt");
+      }
+      assert global.x == 1;
+    }
+  }
+
+  //--- objects with finalizers are not released before they are finalized
+
+  static class Finalizable {
+    int x = 42;
+
+    @Override
+    protected void finalize() throws Throwable {
+      x = 0;
+    }
+  }
+
+  // does not escape, but has a finalizer
+  static int localFinalizable (){
+    Finalizable f = new Finalizable();
+    return f.x;
+  }
+
+  public static class FinalizeCounter extends ListenerAdapter {
+    static int nFinalized;
+
+    @Override
+    public void methodEntered (VM vm, ThreadInfo ti, MethodInfo mi){
+      if (mi.getName().equals("finalize") && mi.getClassName().endsWith("$Finalizable")){
+        nFinalized++;
+      }
+    }
+  }
+
+  @Test
+  public void testFinalizer(){
+    if (verifyNoPropertyViolation(RELEASE, "+vm.process_finalizers=true",
+                                  "+listener=.test.mc.basic.EscapeAnalysisTest$FinalizeCounter")){
+      assert localFinalizable() == 42;
+      System.gc();
+      Thread.yield();
+
+    } else {
+      assertEquals( 1, FinalizeCounter.nFinalized);
+    }
+  }
+
+  //--- compare with normal gc
+
+  @Test
+  public void testSameStateSpace(){
+    if (!isJPFRun()){
+      String stats = "+report.statistics=true";
+      JPF[] jpfs = assertSameStateSpace("testAllCases", new String[] { NO_RELEASE, stats }, RELEASE, stats);
+      JPF jpf = jpfs[0];
+      JPF jpfRelease = jpfs[1];
+      assertEquals( jpf.getReporter().getStatistics().endStates,
+                    jpfRelease.getReporter().getStatistics().endStates);
+
+      GenericHeap heap = (GenericHeap) jpfRelease.getVM().getHeap();
+      assertTrue( heap.getNumberOfLocalReleasedObjects() > 0);
+      assertEquals( heap.getNumberOfLocalReleasedObjects(),
+                    jpfRelease.getReporter().getStatistics().nLocalReleasedObjects);
+
+      assertEquals( 0, ((GenericHeap) jpf.getVM().getHeap()).getNumberOfLocalReleasedObjects());
+    }
+  }
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright (C) 2014, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ * All rights reserved.
+ *
+ * The Java Pathfinder core (jpf-core) platform is licensed under the
+ * Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0. 
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+package gov.nasa.jpf.test.mc.basic;
+
+import gov.nasa.jpf.JPF;
+import gov.nasa.jpf.util.test.TestJPF;
+import gov.nasa.jpf.vm.GenericHeap;
+import gov.nasa.jpf.vm.Verify;
+
+import java.lang.ref.WeakReference;
+
+import org.junit.Test;
+
+/**
+ * regression test for minor gcs of GenericHeap (vm.gc.generational), which must
+ * not release live objects and produce the same state space as full gcs
+ */
+public class GenerationalGCTest extends TestJPF {
+
+  static final String GENERATIONAL = "+vm.gc.generational=true";
+  static final String FULL = "+vm.gc.generational=false";
+
+  static class Node {
+    int value;
+    Node next;
+    Object data;
+
+    Node (int value, Node next){
+      this.value = value;
+      this.next = next;
+      data = new int[] { value }; // young object referenced from a young one
+    }
+
+    int getData(){
+      return ((int[])data)[0];
+    }
+  }
+
+  static Node list; // static root
+
+  /**
+   * create young garbage in each transition, store young objects in old ones
+   * (which requires the remembered set), and drop old objects
+   */
+  static void mutateList (int len, int nSteps){
+    Node head = null;
+    for (int i=0; i<len; i++){
+      head = new Node(i, head);
+    }
+    list = head;
+    int sum = len * (len-1) / 2;
+
+    for (int i=0; i<nSteps; i++){
+      int c = Verify.getInt(0, 2);
+
+      for (int j=0; j<10; j++){
+        new Node(j, null); // garbage
+      }
+
+      Node n = list;
+      for (int j=0; j<c; j++){
+        n = n.next;
+      }
+
+      // old object refers to young one
+      n.data = new int[] { n.value };
+
+      if (c == 2){ // drop an old object
+        sum -= list.value;
+        list = list.next;
+      }
+
+      int s = 0;
+      for (Node m = list; m != null; m = m.next){
+        assert m.getData() == m.value : "wrong data of node " + m.value;
+        s += m.value;
+      }
+      assert s == sum : "wrong sum: " + s + ", expected: " + sum;
+    }
+  }
+
+  @Test
+  public void testMutateList(){
+    if (verifyNoPropertyViolation(GENERATIONAL)){
+      mutateList( 20, 4);
+    }
+  }
+
+  @Test
+  public void testDeltaHeap(){
+    if (verifyNoPropertyViolation(GENERATIONAL, "+vm.heap.class=.vm.DeltaHeap")){
+      mutateList( 20, 4);
+    }
+  }
+
+  @Test
+  public void testPSIMHeap(){
+    if (verifyNoPropertyViolation(GENERATIONAL, "+vm.heap.class=.vm.PSIMHeap")){
+      mutateList( 20, 4);
+    }
+  }
+
+  static int count;
+
+  @Test
+  public void testThreads(){
+    if (verifyNoPropertyViolation(GENERATIONAL)){
+      count = 0;
+      final Object lock = new Object();
+
+      Thread t = new Thread(){
+        @Override
+        public void run(){
+          Node n = new Node(1, null);
+          synchronized (lock){
+            count += n.getData();
+          }
+        }
+      };
+      t.start();
+
+      Node n = new Node(2, null);
+      synchronized (lock){
+        count += n.getData();
+      }
+
+      try {
+        t.join();
+      } catch (InterruptedException ix){
+        fail("unexpected interrupt");
+      }
+
+      assert count == 3;
+    }
+  }
+
+  @Test
+  public void testWeakReferences(){
+    if (verifyNoPropertyViolation(GENERATIONAL)){
+      Object o = new Object();
+      WeakReference<Object> ref = new WeakReference<Object>(o);
+
+      Verify.getBoolean();
+      assert ref.get() == o;
+
+      o = null;
+      Verify.getBoolean(); // this has to be a full gc since we have weak references
+      assert ref.get() == null;
+    }
+  }
+
+  //--- compare with full gcs
+
+  @Test
+  public void testSameStateSpace(){
+    if (!isJPFRun()){
+      JPF[] jpfs = assertSameStateSpace("testMutateList", new String[] { FULL }, GENERATIONAL);
+      JPF full = jpfs[0];
+      JPF gen = jpfs[1];
+      assertEquals( full.getVM().getStateCount(), gen.getVM().getStateCount());
+
+      GenericHeap heap = (GenericHeap) gen.getVM().getHeap();
+      assertTrue( heap.getNumberOfMinorGcs() > 0);
+      assertTrue( heap.getNumberOfMinorGcReleasedObjects() > 0);
+
+      assertSameStateSpace("testThreads", new String[] { FULL }, GENERATIONAL);
+    }
+  }
+
+  @Test
+  public void testOldGarbage(){
+    if (!isJPFRun()){
+      // old objects are only released by full gcs
+      JPF jpf = noPropertyViolation( setTestMethod("testMutateList"), GENERATIONAL, "+vm.gc.full_interval=2");
+
+      GenericHeap heap = (GenericHeap) jpf.getVM().getHeap();
+      assertTrue( heap.getNumberOfFullGcs() > 0);
+      assertTrue( heap.getNumberOfMinorGcs() > 0);
+    }
+  }
+}
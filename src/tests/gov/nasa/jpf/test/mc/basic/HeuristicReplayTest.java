@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2014, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ * All rights reserved.
+ *
+ * The Java Pathfinder core (jpf-core) platform is licensed under the
+ * Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0. 
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+package gov.nasa.jpf.test.mc.basic;
+
+import gov.nasa.jpf.JPF;
+import gov.nasa.jpf.report.Statistics;
+import gov.nasa.jpf.search.heuristic.HeuristicSearch;
+import gov.nasa.jpf.util.test.TestJPF;
+import gov.nasa.jpf.vm.Verify;
+
+import org.junit.Test;
+
+/**
+ * regression test for HeuristicSearch states that are restored by replaying
+ * their choices (search.heuristic.replay)
+ */
+public class HeuristicReplayTest extends TestJPF {
+
+  static final String BFS = "+search.class=.search.heuristic.BFSHeuristic";
+  static final String REPLAY = "+search.heuristic.replay=true";
+  static final String INTERVAL = "+search.heuristic.replay.interval=3";
+  static final String CACHE = "+search.heuristic.replay.cache_size=2";
+
+  static int count;
+  static int result; // end state outcome of the test methods
+
+  @Test
+  public void testChoices(){
+    if (verifyNoPropertyViolation(BFS, REPLAY, INTERVAL, CACHE)){
+      int sum = 0;
+      for (int i=0; i<6; i++){
+        sum = sum * 2 + Verify.getInt(0, 1);
+        Verify.breakTransition("step");
+      }
+      assert sum >= 0 && sum < 64;
+      result = sum;
+    }
+  }
+
+  @Test
+  public void testThreads(){
+    if (verifyNoPropertyViolation(BFS, REPLAY, INTERVAL, CACHE)){
+      count = 0;
+      Thread t = new Thread(){
+        @Override
+        public void run(){
+          for (int i=0; i<2; i++){
+            synchronized (HeuristicReplayTest.class){
+              count++;
+              result = count; // depends on the interleaving
+            }
+          }
+        }
+      };
+      t.start();
+
+      for (int i=0; i<2; i++){
+        synchronized (HeuristicReplayTest.class){
+          count++;
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testError(){
+    if (verifyAssertionError(BFS, REPLAY, INTERVAL, CACHE)){
+      int a = 0;
+      for (int i=0; i<5; i++){
+        a += Verify.getInt(0, 2);
+      }
+      assert a < 10 : "got it";
+    }
+  }
+
+  //--- host side checks
+
+  @Test
+  public void testSameStateSpace(){
+    if (!isJPFRun()){
+      String stats = "+report.statistics=true";
+      String[] methods = { "testChoices", "testThreads" };
+
+      for (String m : methods){
+        JPF[] jpfs = assertSameStateSpace(m, new String[] { BFS, stats }, BFS, REPLAY, INTERVAL, CACHE, stats);
+        JPF jpf = jpfs[0];
+        JPF jpfReplay = jpfs[1];
+
+        HeuristicSearch search = (HeuristicSearch) jpfReplay.getSearch();
+        assertTrue( search.getNumberOfReplayedStates() > 0);
+
+        // replayed transitions are executed again, but should not be counted
+        Statistics stat = jpf.getReporter().getStatistics();
+        Statistics statReplay = jpfReplay.getReporter().getStatistics();
+        assertEquals( stat.newStates, statReplay.newStates);
+        assertEquals( stat.visitedStates, statReplay.visitedStates);
+        assertEquals( stat.threadCGs, statReplay.threadCGs);
+        assertEquals( stat.dataCGs, statReplay.dataCGs);
+        assertEquals( stat.breakTransitionCGs, statReplay.breakTransitionCGs);
+        assertEquals( stat.nNewObjects, statReplay.nNewObjects);
+        assertEquals( stat.insns, statReplay.insns);
+      }
+    }
+  }
+}
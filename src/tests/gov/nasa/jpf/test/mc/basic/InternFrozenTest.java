@@ -0,0 +1,170 @@
+/*
+ * Copyright (C) 2014, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ * All rights reserved.
+ *
+ * The Java Pathfinder core (jpf-core) platform is licensed under the
+ * Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0. 
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+package gov.nasa.jpf.test.mc.basic;
+
+import gov.nasa.jpf.JPF;
+import gov.nasa.jpf.util.test.TestJPF;
+import gov.nasa.jpf.vm.ElementInfo;
+import gov.nasa.jpf.vm.Fields;
+import gov.nasa.jpf.vm.Monitor;
+import gov.nasa.jpf.vm.Verify;
+
+import java.util.HashMap;
+
+import org.junit.Test;
+
+/**
+ * regression test for hash-consing the Fields and Monitors of frozen objects
+ * (vm.intern_frozen), which must not leak changes of one object into another
+ * object that shares its contents, and has to produce the same state space
+ */
+public class InternFrozenTest extends TestJPF {
+
+  static final String INTERN = "+vm.intern_frozen=true";
+  static final String NO_INTERN = "+vm.intern_frozen=false";
+
+  static class Point {
+    int x, y;
+
+    Point (int x, int y){
+      this.x = x;
+      this.y = y;
+    }
+  }
+
+  static int[] a, b;
+  static Point p, q;
+
+  static void modifyShared (){
+    a = new int[] { 1, 2, 3 };
+    b = new int[] { 1, 2, 3 };
+    p = new Point(1, 2);
+    q = new Point(1, 2);
+
+    if (Verify.getBoolean()){ // a and b are frozen and share their Fields now
+      a[0] = 42;
+      p.x = 42;
+      Verify.getBoolean();
+      assert b[0] == 1;
+      assert q.x == 1;
+
+      b[0] = 42; // equal again
+      Verify.getBoolean();
+      assert a[0] == 42 && b[0] == 42;
+      b[1] = -1;
+      assert a[1] == 2;
+
+    } else {
+      assert a[0] == 1 && b[0] == 1;
+      assert p.x == 1 && q.x == 1;
+    }
+  }
+
+  static void lockShared (){
+    p = new Point(3, 4);
+    q = new Point(3, 4);
+
+    Thread t = new Thread(){
+      @Override
+      public void run(){
+        synchronized (p){
+          p.x++;
+        }
+      }
+    };
+    t.start();
+
+    synchronized (q){
+      q.y++;
+    }
+    try {
+      t.join();
+    } catch (InterruptedException ix){
+      fail("unexpected interrupt");
+    }
+
+    assert p.x == 4 && p.y == 4;
+    assert q.x == 3 && q.y == 5;
+  }
+
+  @Test
+  public void testModifyShared(){
+    if (verifyNoPropertyViolation(INTERN)){
+      modifyShared();
+    }
+  }
+
+  @Test
+  public void testLockShared(){
+    if (verifyNoPropertyViolation(INTERN)){
+      lockShared();
+    }
+  }
+
+  //--- host side checks
+
+  @Test
+  public void testFrozenAreShared(){
+    if (!isJPFRun()){
+      JPF jpf = noPropertyViolation( setTestMethod("testModifyShared"), INTERN);
+
+      HashMap<Fields,Fields> fields = new HashMap<Fields,Fields>();
+      HashMap<Monitor,Monitor> monitors = new HashMap<Monitor,Monitor>();
+      int nSharedFields = 0;
+
+      for (ElementInfo ei : jpf.getVM().getHeap()){
+        if (ei.isFrozen()){
+          Fields f = ei.getFields();
+          Fields pooled = fields.get(f);
+          if (pooled == null){
+            fields.put(f, f);
+          } else {
+            assertSame(pooled, f);
+            nSharedFields++;
+          }
+
+          Monitor m = ei.getMonitor();
+          Monitor pooledMonitor = monitors.get(m);
+          if (pooledMonitor == null){
+            monitors.put(m, m);
+          } else {
+            assertSame(pooledMonitor, m);
+          }
+        }
+      }
+
+      assertTrue(nSharedFields > 0);
+    }
+  }
+
+  @Test
+  public void testSameStateSpace(){
+    if (!isJPFRun()){
+      String stats = "+report.statistics=true";
+      String[] methods = { "testModifyShared", "testLockShared" };
+
+      for (String m : methods){
+        JPF[] jpfs = assertSameStateSpace(m, new String[] { NO_INTERN, stats }, INTERN, stats);
+        JPF jpf = jpfs[0];
+        JPF jpfIntern = jpfs[1];
+        assertEquals( jpf.getReporter().getStatistics().endStates,
+                      jpfIntern.getReporter().getStatistics().endStates);
+      }
+    }
+  }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2014, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ * All rights reserved.
+ *
+ * The Java Pathfinder core (jpf-core) platform is licensed under the
+ * Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0. 
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+package gov.nasa.jpf.test.mc.basic;
+
+import gov.nasa.jpf.util.test.TestJPF;
+import gov.nasa.jpf.vm.Verify;
+
+import org.junit.Test;
+
+/**
+ * regression test for ParallelCFSerializer, which has to match the same
+ * states as CFSerializer
+ */
+public class ParallelCFSerializerTest extends TestJPF {
+
+  static final String SERIALIZER = "+vm.serializer.class=.vm.serialize.ParallelCFSerializer";
+  static final String THRESHOLD = "+vm.serializer.parallel.threshold=1";
+  static final String THREADS = "+vm.serializer.parallel.threads=2";
+
+  static class Node {
+    int v;
+    Node next;
+
+    Node (int v, Node next){
+      this.v = v;
+      this.next = next;
+    }
+  }
+
+  Node list;
+  Node[] nodes = new Node[16];
+
+  public ParallelCFSerializerTest (){
+    for (int i=0; i<nodes.length; i++){
+      list = new Node(i, list);
+      nodes[i] = list;
+    }
+  }
+
+  // the choices 0..2 and 3..5 produce the same (heap symmetric) states
+  void modify (){
+    switch (Verify.getInt(0, 5)){
+    case 0:
+      nodes[3] = new Node(42, null);
+      break;
+    case 1: case 4:
+      nodes[7].v = 1;
+      break;
+    case 2: case 5:
+      list = list.next;
+      break;
+    case 3:
+      nodes[3] = new Node(42, null);
+    }
+  }
+
+  @Test
+  public void testMatching (){
+    if (!isJPFRun()){
+      Verify.resetCounter(0);
+    }
+
+    if (verifyNoPropertyViolation(SERIALIZER, THRESHOLD, THREADS)){
+      Verify.breakTransition("store");
+      modify();
+      Verify.breakTransition("match");
+      Verify.breakTransition("re-match");
+      Verify.incrementCounter(0);
+    }
+
+    if (!isJPFRun()){
+      assertEquals(3, Verify.getCounter(0));
+    }
+  }
+
+  @Test
+  public void testMatchingFieldHashes (){
+    if (!isJPFRun()){
+      Verify.resetCounter(0);
+    }
+
+    if (verifyNoPropertyViolation(SERIALIZER, THRESHOLD, THREADS, "+vm.serializer.hash_fields=true")){
+      Verify.breakTransition("store");
+      modify();
+      Verify.breakTransition("match");
+      Verify.breakTransition("re-match");
+      Verify.incrementCounter(0);
+    }
+
+    if (!isJPFRun()){
+      assertEquals(3, Verify.getCounter(0));
+    }
+  }
+
+  @Test
+  public void testRace (){
+    if (verifyAssertionError(SERIALIZER, THRESHOLD, THREADS)){
+      Thread t = new Thread(){
+        @Override
+        public void run(){
+          nodes[0].v++;
+        }
+      };
+      t.start();
+      nodes[0].v++;
+
+      try {
+        t.join();
+      } catch (InterruptedException ix){}
+
+      assert nodes[0].v == 2 : "lost update";
+    }
+  }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2014, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ * All rights reserved.
+ *
+ * The Java Pathfinder core (jpf-core) platform is licensed under the
+ * Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0. 
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+package gov.nasa.jpf.test.mc.basic;
+
+import gov.nasa.jpf.util.test.TestJPF;
+import gov.nasa.jpf.vm.Verify;
+
+import org.junit.Test;
+
+/**
+ * regression test for gov.nasa.jpf.search.parallel.ParallelDFSearch
+ *
+ * note that we can't use Verify counters here since each worker runs its
+ * own JPF instance inside of its own classloader
+ */
+public class ParallelDFSearchTest extends TestJPF {
+
+  static final String SEARCH = "+search.class=.search.parallel.ParallelDFSearch";
+
+  static int data;
+
+  @Test
+  public void testNoViolation() {
+    if (verifyNoPropertyViolation(SEARCH, "+search.parallel.workers=3")){
+      int a = Verify.getInt(0, 5);
+      int b = Verify.getInt(0, 5);
+      assert a + b <= 10 : "wrong sum";
+    }
+  }
+
+  @Test
+  public void testDataAssertion() {
+    if (verifyAssertionError(SEARCH, "+search.parallel.workers=4")){
+      int a = Verify.getInt(0, 20);
+      boolean b = Verify.getBoolean();
+
+      assert !(a == 17 && b) : "found it";
+    }
+  }
+
+  @Test
+  public void testThreadAssertion() {
+    if (verifyAssertionError(SEARCH, "+search.parallel.workers=2")){
+      data = 0;
+
+      Thread t1 = new Thread( new Runnable(){
+        @Override
+        public void run(){
+          data++;
+        }
+      });
+      Thread t2 = new Thread( new Runnable(){
+        @Override
+        public void run(){
+          data++;
+        }
+      });
+
+      t1.start();
+      t2.start();
+
+      try {
+        t1.join();
+        t2.join();
+      } catch (InterruptedException ix){
+        fail("unexpected interrupt");
+      }
+
+      assert data == 2 : "lost update";
+    }
+  }
+
+  static final Object lock1 = new Object();
+  static final Object lock2 = new Object();
+
+  @Test
+  public void testDeadlock() {
+    if (verifyDeadlock(SEARCH, "+search.parallel.workers=4")){
+      Thread t = new Thread( new Runnable(){
+        @Override
+        public void run(){
+          synchronized (lock2){
+            synchronized (lock1){
+              data++;
+            }
+          }
+        }
+      });
+      t.start();
+
+      synchronized (lock1){
+        synchronized (lock2){
+          data++;
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) 2014, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ * All rights reserved.
+ *
+ * The Java Pathfinder core (jpf-core) platform is licensed under the
+ * Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0. 
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+package gov.nasa.jpf.test.mc.basic;
+
+import gov.nasa.jpf.JPF;
+import gov.nasa.jpf.util.test.TestJPF;
+import gov.nasa.jpf.vm.Verify;
+
+import org.junit.Test;
+
+/**
+ * regression test for the persistent Statics and ThreadList implementations
+ * (PSIMStatics, PSIMThreadList), which have to restore the same states as
+ * OVStatics and ThreadList, and hence produce the same state space
+ */
+public class PersistentStaticsTest extends TestJPF {
+
+  static final String[] PERSISTENT = {
+    "+vm.statics.class=gov.nasa.jpf.vm.PSIMStatics",
+    "+vm.threadlist.class=gov.nasa.jpf.vm.PSIMThreadList",
+    "+report.statistics=true"
+  };
+  static final String[] DEFAULT = {
+    "+vm.statics.class=gov.nasa.jpf.vm.OVStatics",
+    "+vm.threadlist.class=gov.nasa.jpf.vm.ThreadList",
+    "+report.statistics=true"
+  };
+
+  static int result; // end state outcome of the test methods
+
+  static class A {
+    static int x;
+  }
+
+  static class B {
+    static int y = 42; // only initialized on some paths
+  }
+
+  static class Counter {
+    static int count;
+
+    static synchronized void inc(){
+      count++;
+    }
+  }
+
+  static void modifyStatics (){
+    int i = Verify.getInt(0, 2);
+    A.x = i;
+
+    if (Verify.getBoolean()){
+      assert B.y == 42;
+      B.y = A.x;
+    }
+
+    Verify.getBoolean(); // state with unchanged statics
+    assert A.x == i;
+
+    if (i == 2){
+      A.x++;
+      Verify.getBoolean();
+      assert A.x == 3;
+    }
+
+    result = A.x;
+  }
+
+  static void startThreads (){
+    Thread[] threads = new Thread[3];
+    for (int i=0; i<threads.length; i++){
+      threads[i] = new Thread(){
+        @Override
+        public void run(){
+          Counter.inc();
+        }
+      };
+      threads[i].start();
+    }
+
+    for (Thread t : threads){
+      try {
+        t.join();
+      } catch (InterruptedException ix){
+        fail("unexpected interrupt");
+      }
+    }
+
+    assert Counter.count == threads.length;
+    result = Counter.count;
+  }
+
+  @Test
+  public void testModifyStatics(){
+    if (verifyNoPropertyViolation(PERSISTENT)){
+      modifyStatics();
+    }
+  }
+
+  @Test
+  public void testStartThreads(){
+    if (verifyNoPropertyViolation(PERSISTENT)){
+      startThreads();
+    }
+  }
+
+  //--- host side checks
+
+  @Test
+  public void testSameStateSpace(){
+    if (!isJPFRun()){
+      String[] methods = { "testModifyStatics", "testStartThreads" };
+
+      for (String m : methods){
+        JPF[] jpfs = assertSameStateSpace(m, DEFAULT, PERSISTENT);
+        JPF jpf = jpfs[0];
+        JPF jpfPersistent = jpfs[1];
+        assertEquals( jpf.getReporter().getStatistics().endStates,
+                      jpfPersistent.getReporter().getStatistics().endStates);
+        assertEquals( jpf.getReporter().getStatistics().backtracked,
+                      jpfPersistent.getReporter().getStatistics().backtracked);
+      }
+    }
+  }
+}
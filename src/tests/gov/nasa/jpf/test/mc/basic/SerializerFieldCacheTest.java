@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2014, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ * All rights reserved.
+ *
+ * The Java Pathfinder core (jpf-core) platform is licensed under the
+ * Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0. 
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+package gov.nasa.jpf.test.mc.basic;
+
+import gov.nasa.jpf.util.test.TestJPF;
+import gov.nasa.jpf.vm.Verify;
+
+import org.junit.Test;
+
+/**
+ * regression test for cached field serialization - objects that are modified
+ * after their serialization got cached have to produce new states, and
+ * equal modifications have to produce matching states
+ */
+public class SerializerFieldCacheTest extends TestJPF {
+
+  static class Cell {
+    int v;
+    Cell next;
+  }
+
+  static int sv;
+
+  int[] a = new int[8];
+  Cell c = new Cell();
+
+  // the choices 0..2 and 3..5 produce the same states
+  void modify (){
+    switch (Verify.getInt(0, 5)){
+    case 0: case 3:
+      a[1] = 1;
+      break;
+    case 1: case 4:
+      c.v = 1;
+      break;
+    default:
+      sv = 1;
+    }
+  }
+
+  @Test
+  public void testFieldCache (){
+    if (!isJPFRun()){
+      Verify.resetCounter(0);
+    }
+
+    if (verifyNoPropertyViolation("+vm.serializer.cache_fields=true")){
+      Verify.breakTransition("store"); // make sure everything gets frozen
+      modify();
+      Verify.breakTransition("match");
+      Verify.breakTransition("re-match"); // now the modified objects are frozen too
+      Verify.incrementCounter(0);
+    }
+
+    if (!isJPFRun()){
+      assertEquals(3, Verify.getCounter(0));
+    }
+  }
+
+  @Test
+  public void testNoFieldCache (){
+    if (!isJPFRun()){
+      Verify.resetCounter(0);
+    }
+
+    if (verifyNoPropertyViolation("+vm.serializer.cache_fields=false")){
+      Verify.breakTransition("store");
+      modify();
+      Verify.breakTransition("match");
+      Verify.breakTransition("re-match"); // now the modified objects are frozen too
+      Verify.incrementCounter(0);
+    }
+
+    if (!isJPFRun()){
+      assertEquals(3, Verify.getCounter(0));
+    }
+  }
+
+  @Test
+  public void testFieldHashes (){
+    if (!isJPFRun()){
+      Verify.resetCounter(0);
+    }
+
+    if (verifyNoPropertyViolation("+vm.serializer.cache_fields=true", "+vm.serializer.hash_fields=true")){
+      Verify.breakTransition("store");
+      modify();
+      Verify.breakTransition("match");
+      Verify.breakTransition("re-match"); // now the modified objects are frozen too
+      Verify.incrementCounter(0);
+    }
+
+    if (!isJPFRun()){
+      assertEquals(3, Verify.getCounter(0));
+    }
+  }
+
+  @Test
+  public void testFilteringFieldHashes (){
+    if (!isJPFRun()){
+      Verify.resetCounter(0);
+    }
+
+    if (verifyNoPropertyViolation("+vm.serializer.class=.vm.serialize.FilteringSerializer",
+                                  "+vm.serializer.cache_fields=true", "+vm.serializer.hash_fields=true")){
+      Verify.breakTransition("store");
+      modify();
+      Verify.breakTransition("match");
+      Verify.breakTransition("re-match"); // now the modified objects are frozen too
+      Verify.incrementCounter(0);
+    }
+
+    if (!isJPFRun()){
+      assertEquals(3, Verify.getCounter(0));
+    }
+  }
+}
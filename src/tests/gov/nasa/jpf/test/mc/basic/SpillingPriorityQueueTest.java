@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2014, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ * All rights reserved.
+ *
+ * The Java Pathfinder core (jpf-core) platform is licensed under the
+ * Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0. 
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+package gov.nasa.jpf.test.mc.basic;
+
+import gov.nasa.jpf.JPF;
+import gov.nasa.jpf.search.heuristic.SimplePriorityHeuristic;
+import gov.nasa.jpf.search.heuristic.SpillingPriorityQueue;
+import gov.nasa.jpf.util.TypeRef;
+import gov.nasa.jpf.util.test.TestJPF;
+import gov.nasa.jpf.vm.Verify;
+
+import org.junit.Test;
+
+/**
+ * regression test for heuristic searches with a SpillingPriorityQueue, which
+ * writes low priority states to disk
+ */
+public class SpillingPriorityQueueTest extends TestJPF {
+
+  static final String BFS = "+search.class=.search.heuristic.BFSHeuristic";
+  static final String SPILL = "+search.heuristic.spill=true";
+  static final String LIMIT = "+search.heuristic.spill.limit=4";
+  static final String REPLAY = "+search.heuristic.replay=true";
+  static final String INTERVAL = "+search.heuristic.replay.interval=3";
+
+  static int result; // end state outcome of testChoices
+
+  @Test
+  public void testChoices(){
+    if (verifyNoPropertyViolation(BFS, SPILL, LIMIT, REPLAY, INTERVAL)){
+      int sum = 0;
+      for (int i=0; i<6; i++){
+        sum = sum * 3 + Verify.getInt(0, 2);
+        Verify.breakTransition("step");
+      }
+      assert sum >= 0 && sum < 729;
+      result = sum;
+    }
+  }
+
+  @Test
+  public void testError(){
+    if (verifyAssertionError(BFS, SPILL, LIMIT, REPLAY, INTERVAL)){
+      int a = 0;
+      for (int i=0; i<5; i++){
+        a += Verify.getInt(0, 2);
+      }
+      assert a < 10 : "got it";
+    }
+  }
+
+  @Test
+  public void testRequiresReplay(){
+    if (verifyJPFException( new TypeRef("gov.nasa.jpf.JPFConfigException"), BFS, SPILL, "+pass_exceptions")){
+      Verify.getBoolean();
+    }
+  }
+
+  //--- host side checks
+
+  @Test
+  public void testSameStateSpace(){
+    if (!isJPFRun()){
+      JPF jpfSpill = assertSameStateSpace("testChoices", new String[] { BFS }, BFS, SPILL, LIMIT, REPLAY, INTERVAL)[1];
+
+      SpillingPriorityQueue queue = (SpillingPriorityQueue) ((SimplePriorityHeuristic)jpfSpill.getSearch()).getQueue();
+      assertTrue( queue.getNumberOfRuns() > 1);
+      assertTrue( queue.getNumberOfSpilledStates() > 0);
+      assertEquals( 0, queue.size());
+    }
+  }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2014, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ * All rights reserved.
+ *
+ * The Java Pathfinder core (jpf-core) platform is licensed under the
+ * Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0. 
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+package gov.nasa.jpf.test.mc.basic;
+
+import gov.nasa.jpf.Config;
+import gov.nasa.jpf.JPF;
+import gov.nasa.jpf.tool.swarm.SwarmShell;
+import gov.nasa.jpf.util.JPFSiteUtils;
+import gov.nasa.jpf.util.test.TestJPF;
+import gov.nasa.jpf.vm.Verify;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * regression test for gov.nasa.jpf.tool.swarm.SwarmShell
+ *
+ * this launches JPF worker processes, i.e. it can't use the normal TestJPF
+ * verify..() methods
+ */
+public class SwarmTest extends TestJPF {
+
+  public static class DataTarget {
+    public static void main (String[] args){
+      int a = Verify.getInt(0, 9);
+      int b = Verify.getInt(0, 9);
+      assert !(a == 7 && b == 3) : "found it";
+    }
+  }
+
+  /**
+   * DFSearch explores the 'false' choice first, and then never gets out of
+   * the loop since each iteration is a new state, i.e. a DFSearch worker can
+   * only terminate by being stopped. A BFSHeuristic worker finds the error
+   * at depth 1
+   */
+  public static class StopTarget {
+    public static void main (String[] args){
+      if (Verify.getBoolean()){
+        assert false : "found it";
+      } else {
+        for (int i=0; ; i++){
+          Verify.getBoolean();
+        }
+      }
+    }
+  }
+
+  SwarmShell createShell (String target, String... args){
+    String[] a = new String[args.length + 3];
+    a[0] = "+target=" + target;
+    a[1] = "+shell=" + SwarmShell.class.getName();
+    a[2] = "+swarm.workers=2";
+    System.arraycopy(args, 0, a, 3, args.length);
+
+    Config conf = JPF.createConfig(a);
+
+    String projectId = JPFSiteUtils.getCurrentProjectId();
+    if (projectId != null) {
+      String testCp = conf.getString(projectId + ".test_classpath");
+      if (testCp != null) {
+        conf.append("classpath", testCp, ",");
+      }
+    }
+
+    return new SwarmShell(conf);
+  }
+
+  void printResults (SwarmShell shell){
+    StringWriter sw = new StringWriter();
+    shell.printResults(new PrintWriter(sw));
+    System.out.println(sw);
+  }
+
+  @Test
+  public void testDuplicateErrors (){
+    if (!isJPFRun()){
+      SwarmShell shell = createShell(DataTarget.class.getName(), "+swarm.stop_on_error=false");
+      shell.start(new String[0]);
+
+      assertEquals("wrong number of unique errors", 1, shell.getErrors().size());
+      assertEquals("error not found by all workers", 2, shell.getErrors().get(0).getWorkers().size());
+
+      for (SwarmShell.WorkerResult w : shell.getWorkerResults()){
+        assertTrue("worker did not complete: " + w.getId(), w.isCompleted());
+      }
+    }
+  }
+
+  @Test
+  public void testStopOnError (){
+    if (!isJPFRun()){
+      SwarmShell shell = createShell(StopTarget.class.getName(), "+swarm.randomize=false", "+swarm.coverage=true",
+                                     "+swarm.searches=.search.DFSearch,.search.heuristic.BFSHeuristic");
+      shell.start(new String[0]);
+
+      assertEquals("wrong number of unique errors", 1, shell.getErrors().size());
+      assertTrue("no coverage", shell.getCoveredInstructions() > 0);
+
+      List<SwarmShell.WorkerResult> results = shell.getWorkerResults();
+      SwarmShell.WorkerResult dfs = results.get(0);
+      SwarmShell.WorkerResult bfs = results.get(1);
+
+      assertTrue("BFS worker did not complete", bfs.isCompleted());
+      assertEquals("BFS worker did not find error", 1, bfs.getNumberOfErrors());
+
+      assertTrue("DFS worker did not complete", dfs.isCompleted());
+      assertEquals("DFS worker found error", 0, dfs.getNumberOfErrors());
+      assertTrue("DFS worker was not stopped", dfs.isStopped());
+    }
+  }
+}
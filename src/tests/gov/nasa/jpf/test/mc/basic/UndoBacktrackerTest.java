@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2014, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ * All rights reserved.
+ *
+ * The Java Pathfinder core (jpf-core) platform is licensed under the
+ * Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0. 
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+package gov.nasa.jpf.test.mc.basic;
+
+import gov.nasa.jpf.util.test.TestJPF;
+import gov.nasa.jpf.vm.Verify;
+
+import org.junit.Test;
+
+/**
+ * regression test for UndoBacktracker, which has to restore stack frames that
+ * were modified in place, and produce the same state space as DefaultBacktracker
+ */
+public class UndoBacktrackerTest extends TestJPF {
+
+  static final String UNDO = "+vm.backtracker.class=.vm.UndoBacktracker";
+  static final String DEFAULT = "+vm.backtracker.class=.vm.DefaultBacktracker";
+
+  static int result, threadResult; // end state outcomes of the test methods
+
+  /**
+   * choices on the way back from the recursion, i.e. we backtrack into frames
+   * at different depths that have already been modified. If a frame is not
+   * restored, the locals don't match
+   */
+  static int recurse (int depth, int maxDepth){
+    int a = depth * 3;
+    long b = depth * 1000L;
+    double c = depth / 2.0;
+
+    if (depth < maxDepth){
+      int r = recurse(depth+1, maxDepth);
+
+      if (depth % 2 == 0){
+        a += Verify.getInt(0, 2); // on top of the operand stack
+        b += a;
+      }
+
+      assert a >= depth * 3 && a <= depth * 3 + 2 : "wrong local a: " + a;
+      assert b == depth * 1000L || b == depth * 1000L + a : "wrong local b: " + b;
+      assert c == depth / 2.0 : "wrong local c: " + c;
+
+      return r + a;
+
+    } else {
+      return a + Verify.getInt(0, 1);
+    }
+  }
+
+  @Test
+  public void testRecursion(){
+    if (verifyNoPropertyViolation(UNDO)){
+      int r = recurse(0, 6);
+      assert r >= 63 && r <= 63 + 4*2 + 1;
+      result = r;
+    }
+  }
+
+  static int sum3 (int a, int b, int c){
+    return a + b + c;
+  }
+
+  /**
+   * operand slots that are popped in one transition and overwritten in the
+   * next one are not part of the intermediate state, but still have to be
+   * restored when we backtrack to the state before
+   */
+  @Test
+  public void testOperandStackReuse(){
+    if (verifyNoPropertyViolation(UNDO)){
+      int x = 1;
+      int r = x + sum3(x, 2, Verify.getInt(0, 1));
+      int s = Verify.getInt(0, 1);
+      int t = r + (s * (x + (x + 3)));
+
+      assert r == 4 || r == 5 : "wrong r: " + r;
+      assert t == r || t == r + 5 : "wrong t: " + t;
+    }
+  }
+
+  @Test
+  public void testExceptions(){
+    if (verifyNoPropertyViolation(UNDO)){
+      int n = 0;
+      for (int i=0; i<3; i++){
+        try {
+          if (Verify.getBoolean()){
+            throw new IllegalStateException("boom");
+          }
+          n++;
+        } catch (IllegalStateException x){
+          n += 10;
+        }
+      }
+      assert n == 3 || n == 12 || n == 21 || n == 30 : "wrong n: " + n;
+      result = n;
+    }
+  }
+
+  static int count;
+
+  @Test
+  public void testThreads(){
+    if (verifyNoPropertyViolation(UNDO)){
+      count = 0;
+      Thread t = new Thread(){
+        @Override
+        public void run(){
+          int local = 0;
+          for (int i=0; i<2; i++){
+            local += count;
+            count++;
+          }
+          assert local >= 0 && local <= 6;
+          threadResult = local;
+        }
+      };
+      t.start();
+
+      int local = 0;
+      for (int i=0; i<2; i++){
+        local += count;
+        count++;
+      }
+      assert local >= 0 && local <= 6;
+      result = local;
+    }
+  }
+
+  @Test
+  public void testRecursionBFS(){
+    // restored states have to be independent of frames that are modified in place
+    if (verifyNoPropertyViolation(UNDO, "+search.class=.search.heuristic.BFSHeuristic")){
+      int r = recurse(0, 6);
+      assert r >= 63 && r <= 63 + 4*2 + 1;
+    }
+  }
+
+  //--- compare with DefaultBacktracker
+
+  @Test
+  public void testSameStateSpace(){
+    if (!isJPFRun()){
+      for (String m : new String[] { "testRecursion", "testExceptions", "testThreads" }){
+        assertSameStateSpace(m, new String[] { DEFAULT }, UNDO);
+      }
+    }
+  }
+}
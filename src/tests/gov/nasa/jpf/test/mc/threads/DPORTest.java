@@ -0,0 +1,295 @@
+/*
+ * Copyright (C) 2014, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ * All rights reserved.
+ *
+ * The Java Pathfinder core (jpf-core) platform is licensed under the
+ * Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0. 
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+package gov.nasa.jpf.test.mc.threads;
+
+import gov.nasa.jpf.util.test.TestJPF;
+import gov.nasa.jpf.vm.Verify;
+
+import org.junit.Test;
+
+/**
+ * regression test for the stateless DPOR search
+ */
+public class DPORTest extends TestJPF {
+
+  static final String SEARCH = "+search.class=gov.nasa.jpf.search.DPORSearch";
+  static final String NO_STORAGE = "+vm.storage.class=";
+
+  static int counter;
+
+  static class Incrementer extends Thread {
+    @Override
+    public void run(){
+      int c = counter;
+      counter = c + 1;
+    }
+  }
+
+  @Test
+  public void testLostUpdate () throws InterruptedException {
+    if (verifyAssertionError(SEARCH, NO_STORAGE)){
+      counter = 0;
+      Thread t1 = new Incrementer();
+      Thread t2 = new Incrementer();
+      t1.start();
+      t2.start();
+      t1.join();
+      t2.join();
+
+      assert counter == 2 : "lost update";
+    }
+  }
+
+  static final Object lock = new Object();
+
+  static class SyncIncrementer extends Thread {
+    @Override
+    public void run(){
+      synchronized (lock){
+        int c = counter;
+        counter = c + 1;
+      }
+    }
+  }
+
+  @Test
+  public void testSynchronizedUpdate () throws InterruptedException {
+    if (verifyNoPropertyViolation(SEARCH, NO_STORAGE)){
+      counter = 0;
+      Thread t1 = new SyncIncrementer();
+      Thread t2 = new SyncIncrementer();
+      t1.start();
+      t2.start();
+      t1.join();
+      t2.join();
+
+      assert counter == 2 : "lost update";
+    }
+  }
+
+  static class Data {
+    int a, b, c;
+  }
+
+  static class Writer extends Thread {
+    Data d = new Data();
+
+    @Override
+    public void run(){
+      d.a = 1;
+      d.b = 2;
+      d.c = d.a + d.b;
+    }
+  }
+
+  @Test
+  public void testIndependentThreads () throws InterruptedException {
+    if (!isJPFRun()){
+      Verify.resetCounter(0);
+    }
+
+    if (verifyNoPropertyViolation(SEARCH, NO_STORAGE)){
+      Writer w1 = new Writer();
+      Writer w2 = new Writer();
+      w1.start();
+      w2.start();
+      w1.join();
+      w2.join();
+
+      Verify.incrementCounter(0);
+    }
+
+    if (!isJPFRun()){
+      // without DPOR, a stateless search of this takes minutes
+      int n = Verify.getCounter(0);
+      if (n == 0 || n > 50){
+        fail("wrong number of end states: " + n);
+      }
+    }
+  }
+
+  //--- lock acquisition order
+
+  static int x, y, z;
+  static final Object lock2 = new Object();
+
+  /**
+   * the threads don't race for x outside of the lock, i.e. the order in which
+   * they acquire it is the only thing that can change the outcome
+   */
+  @Test
+  public void testLockOrder () throws InterruptedException {
+    if (verifyAssertionError(SEARCH, NO_STORAGE)){
+      Thread t1 = new Thread(){
+        @Override
+        public void run(){
+          synchronized (lock){
+            x = 1;
+          }
+        }
+      };
+      Thread t2 = new Thread(){
+        @Override
+        public void run(){
+          synchronized (lock){
+            if (x == 1) y = 1;
+          }
+        }
+      };
+
+      t1.start();
+      t2.start();
+      t1.join();
+      t2.join();
+
+      assert y == 1 : "t2 acquired lock first";
+    }
+  }
+
+  @Test
+  public void testLockOrderDeadlock () throws InterruptedException {
+    if (verifyDeadlock(SEARCH, NO_STORAGE)){
+      Thread t = new Thread(){
+        @Override
+        public void run(){
+          synchronized (lock){
+            synchronized (lock2){
+              x++;
+            }
+          }
+        }
+      };
+      t.start();
+
+      synchronized (lock2){
+        synchronized (lock){
+          y++;
+        }
+      }
+      t.join();
+    }
+  }
+
+  //--- end states, which have to be the same as for a DFSearch
+
+  @Test
+  public void testLockedUpdates () throws InterruptedException {
+    if (verifyNoPropertyViolation(SEARCH, NO_STORAGE)){
+      Thread t1 = new Thread(){
+        @Override
+        public void run(){
+          synchronized (lock){
+            x = 1;
+          }
+          z = 10;
+        }
+      };
+      Thread t2 = new Thread(){
+        @Override
+        public void run(){
+          synchronized (lock){
+            if (x == 1) y = 1;
+          }
+          if (z == 10) z = y;
+        }
+      };
+
+      t1.start();
+      t2.start();
+      t1.join();
+      t2.join();
+    }
+  }
+
+  @Test
+  public void testNestedLocks () throws InterruptedException {
+    if (verifyNoPropertyViolation(SEARCH, NO_STORAGE)){
+      Thread t1 = new Thread(){
+        @Override
+        public void run(){
+          synchronized (lock){
+            x = 1;
+            synchronized (lock2){
+              y = x + 1;
+            }
+          }
+        }
+      };
+      Thread t2 = new Thread(){
+        @Override
+        public void run(){
+          synchronized (lock2){
+            z = y;
+          }
+          synchronized (lock){
+            x = z + 2;
+          }
+        }
+      };
+
+      t1.start();
+      t2.start();
+      t1.join();
+      t2.join();
+    }
+  }
+
+  static boolean ready;
+
+  @Test
+  public void testWaitNotify () throws InterruptedException {
+    if (verifyNoPropertyViolation(SEARCH, NO_STORAGE)){
+      Thread t = new Thread(){
+        @Override
+        public void run(){
+          synchronized (lock){
+            while (!ready){
+              try {
+                lock.wait();
+              } catch (InterruptedException ix){
+                return;
+              }
+            }
+            y = x;
+          }
+          z = 1;
+        }
+      };
+      t.start();
+
+      x = 1;
+      synchronized (lock){
+        ready = true;
+        lock.notify();
+      }
+      x = 2;
+      t.join();
+    }
+  }
+
+  @Test
+  public void testSameEndStates (){
+    if (!isJPFRun()){
+      String[] dfs = {};
+
+      for (String m : new String[] { "testSynchronizedUpdate", "testLockedUpdates", "testNestedLocks", "testWaitNotify" }){
+        assertSameEndStates(m, dfs, SEARCH, NO_STORAGE);
+      }
+    }
+  }
+}
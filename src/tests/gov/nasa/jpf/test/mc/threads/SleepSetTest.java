@@ -0,0 +1,171 @@
+/*
+ * Copyright (C) 2014, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ * All rights reserved.
+ *
+ * The Java Pathfinder core (jpf-core) platform is licensed under the
+ * Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0. 
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+package gov.nasa.jpf.test.mc.threads;
+
+import gov.nasa.jpf.report.Statistics;
+import gov.nasa.jpf.search.Search;
+import gov.nasa.jpf.util.test.TestJPF;
+
+import org.junit.Test;
+
+/**
+ * regression test for sleep set reduction (vm.sleep_sets)
+ */
+public class SleepSetTest extends TestJPF {
+
+  static final String SLEEP_SETS = "+vm.sleep_sets=true";
+
+  public static class StatisticsCollector extends Statistics {
+    static long pruned;
+
+    @Override
+    public void searchFinished (Search search){
+      super.searchFinished(search);
+      pruned = prunedTransitions;
+    }
+  }
+
+  static final String LISTENER = "+listener=gov.nasa.jpf.test.mc.threads.SleepSetTest$StatisticsCollector";
+
+  //--- independent threads
+
+  static int a, b;
+
+  static class WriterA extends Thread {
+    @Override
+    public void run(){
+      a = 1;
+      a = 2;
+      a = 3;
+    }
+  }
+
+  static class WriterB extends Thread {
+    @Override
+    public void run(){
+      b = 1;
+      b = 2;
+      b = 3;
+    }
+  }
+
+  void runWriters () throws InterruptedException {
+    Thread t1 = new WriterA();
+    Thread t2 = new WriterB();
+    t1.start();
+    t2.start();
+    t1.join();
+    t2.join();
+
+    assert a == 3 && b == 3;
+  }
+
+  @Test
+  public void testIndependentWriters () throws InterruptedException {
+    if (verifyNoPropertyViolation(SLEEP_SETS, LISTENER)){
+      runWriters();
+    }
+
+    if (!isJPFRun()){
+      if (StatisticsCollector.pruned == 0){
+        fail("no transitions pruned");
+      }
+    }
+  }
+
+  //--- dependent threads
+
+  static int counter;
+
+  static class Incrementer extends Thread {
+    @Override
+    public void run(){
+      int c = counter;
+      counter = c + 1;
+    }
+  }
+
+  @Test
+  public void testLostUpdate () throws InterruptedException {
+    if (verifyAssertionError(SLEEP_SETS)){
+      counter = 0;
+      Thread t1 = new Incrementer();
+      Thread t2 = new Incrementer();
+      t1.start();
+      t2.start();
+      t1.join();
+      t2.join();
+
+      assert counter == 2 : "lost update";
+    }
+  }
+
+  //--- end states
+
+  static int x, y, z;
+
+  /**
+   * racing threads with end states that are only reached through states which
+   * were visited before with a different sleep set
+   */
+  @Test
+  public void testRacingThreads () throws InterruptedException {
+    if (verifyNoPropertyViolation(SLEEP_SETS)){
+      Thread t1 = new Thread(){
+        @Override
+        public void run(){
+          int r0 = z;
+          if (r0 > 1) x = 6;
+        }
+      };
+      Thread t2 = new Thread(){
+        @Override
+        public void run(){
+          x = 3;
+          int r1 = x;
+          y = r1 + 1;
+          y = 1;
+        }
+      };
+      Thread t3 = new Thread(){
+        @Override
+        public void run(){
+          x = 2;
+          x = 2;
+          int r2 = x;
+          z = r2 + 1;
+        }
+      };
+
+      t1.start();
+      t2.start();
+      t3.start();
+      t1.join();
+      t2.join();
+      t3.join();
+    }
+  }
+
+  @Test
+  public void testSameEndStates (){
+    if (!isJPFRun()){
+      assertSameEndStates("testRacingThreads", new String[0], SLEEP_SETS, LISTENER);
+      assertTrue( StatisticsCollector.pruned > 0);
+    }
+  }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2014, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ * All rights reserved.
+ *
+ * The Java Pathfinder core (jpf-core) platform is licensed under the
+ * Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0. 
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+package gov.nasa.jpf.test.vm.basic;
+
+import gov.nasa.jpf.util.test.TestJPF;
+
+import org.junit.Test;
+
+/**
+ * regression test for virtual and interface calls with polymorphic (2, 4 and
+ * 8 receiver types) call sites. See src/examples/PolymorphicCalls for a
+ * benchmark
+ */
+public class PolymorphicCallTest extends TestJPF {
+
+  interface Shape {
+    int id();
+
+    default int scaled (int f){
+      return id() * f;
+    }
+  }
+
+  static abstract class Base implements Shape {
+    abstract int area();
+
+    int twice(){
+      return 2 * area();
+    }
+  }
+
+  static class S0 extends Base { @Override int area(){ return 1; } @Override public int id(){ return 10; } }
+  static class S1 extends Base { @Override int area(){ return 2; } @Override public int id(){ return 11; } }
+  static class S2 extends Base { @Override int area(){ return 3; } @Override public int id(){ return 12; } }
+  static class S3 extends Base { @Override int area(){ return 4; } @Override public int id(){ return 13; } }
+  static class S4 extends Base { @Override int area(){ return 5; } @Override public int id(){ return 14; } }
+  static class S5 extends Base { @Override int area(){ return 6; } @Override public int id(){ return 15; } }
+  static class S6 extends S5   { @Override int area(){ return 7; } }
+  static class S7 extends S6   {
+    @Override int area(){ return 8; }
+    @Override public int id(){ return 17; }
+    @Override public int scaled (int f){ return -f; }
+  }
+
+  // not a Base, but a Shape
+  static class Other implements Shape {
+    @Override public int id(){ return 100; }
+  }
+
+  static Base[] createShapes (int nTypes, int n){
+    Base[] types = { new S0(), new S1(), new S2(), new S3(), new S4(), new S5(), new S6(), new S7() };
+    Base[] a = new Base[n];
+    for (int i=0; i<n; i++){
+      a[i] = types[i % nTypes];
+    }
+    return a;
+  }
+
+  static int sumAreas (Base[] a){
+    int sum = 0;
+    for (int i=0; i<a.length; i++){
+      sum += a[i].area(); // invokevirtual
+    }
+    return sum;
+  }
+
+  static int sumIds (Shape[] a){
+    int sum = 0;
+    for (int i=0; i<a.length; i++){
+      sum += a[i].id(); // invokeinterface
+    }
+    return sum;
+  }
+
+  static int sumScaled (Shape[] a){
+    int sum = 0;
+    for (int i=0; i<a.length; i++){
+      sum += a[i].scaled(2); // invokeinterface, default method except for S7
+    }
+    return sum;
+  }
+
+  @Test
+  public void testVirtual (){
+    if (verifyNoPropertyViolation()){
+      assertEquals( 3 * 8, sumAreas(createShapes(2, 16)));
+      assertEquals( 10 * 4, sumAreas(createShapes(4, 16)));
+      assertEquals( 36 * 2, sumAreas(createShapes(8, 16)));
+
+      // inherited method that calls the polymorphic one
+      Base[] a = createShapes(8, 8);
+      int sum = 0;
+      for (Base b : a){
+        sum += b.twice();
+      }
+      assertEquals( 72, sum);
+    }
+  }
+
+  @Test
+  public void testInterface (){
+    if (verifyNoPropertyViolation()){
+      assertEquals( 21 * 8, sumIds(createShapes(2, 16)));
+      assertEquals( 46 * 4, sumIds(createShapes(4, 16)));
+      assertEquals( 107 * 2, sumIds(createShapes(8, 16))); // S6 inherits id() from S5
+
+      Shape[] a = { new S0(), new Other(), new S7(), new Other(), new S0() };
+      assertEquals( 10 + 100 + 17 + 100 + 10, sumIds(a));
+    }
+  }
+
+  @Test
+  public void testDefault (){
+    if (verifyNoPropertyViolation()){
+      Shape[] a = { new S0(), new S7(), new Other(), new S6(), new S7() };
+      assertEquals( 20 - 2 + 200 + 30 - 2, sumScaled(a));
+      assertEquals( 2 * (107 - 17) - 2, sumScaled(createShapes(8, 8)));
+    }
+  }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2014, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ * All rights reserved.
+ *
+ * The Java Pathfinder core (jpf-core) platform is licensed under the
+ * Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0. 
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+package gov.nasa.jpf.util;
+
+import gov.nasa.jpf.util.test.TestJPF;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * regression test for ConcurrentFingerprintTable
+ */
+public class ConcurrentFingerprintTableTest extends TestJPF {
+
+  @Test
+  public void testSequentialAdd () {
+    ConcurrentFingerprintTable tbl = new ConcurrentFingerprintTable(4, 16);
+    int n = 10000;
+
+    for (int i=0; i<n; i++){
+      long fp = fingerprint(i);
+      int id = tbl.reserveId();
+      assertEquals(id, tbl.add(fp, id));
+    }
+    assertEquals(n, tbl.size());
+
+    // they should all be there, and not change their ids
+    for (int i=0; i<n; i++){
+      int id = tbl.reserveId();
+      assertEquals(i, tbl.add(fingerprint(i), id));
+    }
+    assertEquals(n, tbl.size());
+  }
+
+  @Test
+  public void testMarkerValues () {
+    ConcurrentFingerprintTable tbl = new ConcurrentFingerprintTable();
+
+    assertEquals(0, tbl.add(0L, 0));
+    assertEquals(1, tbl.add(Long.MIN_VALUE, 1));
+    assertEquals(0, tbl.add(0L, 2));
+    assertEquals(1, tbl.add(Long.MIN_VALUE, 2));
+    assertEquals(2, tbl.size());
+  }
+
+  @Test
+  public void testConcurrentAdd () throws InterruptedException {
+    final ConcurrentFingerprintTable tbl = new ConcurrentFingerprintTable(2, 16);
+    final int n = 50000;
+    final int nThreads = 4;
+    final int[][] results = new int[nThreads][n];
+
+    Thread[] threads = new Thread[nThreads];
+    for (int t=0; t<nThreads; t++){
+      final int[] res = results[t];
+      final long seed = t;
+
+      threads[t] = new Thread() {
+        @Override
+        public void run(){
+          // every thread adds the same fingerprints, in a different order
+          int[] order = new int[n];
+          for (int i=0; i<n; i++){
+            order[i] = i;
+          }
+          Random r = new Random(seed);
+          for (int i=n-1; i>0; i--){
+            int j = r.nextInt(i+1);
+            int tmp = order[i]; order[i] = order[j]; order[j] = tmp;
+          }
+
+          int newId = tbl.reserveId();
+          for (int i=0; i<n; i++){
+            int k = order[i];
+            int id = tbl.add(fingerprint(k), newId);
+            if (id == newId){
+              newId = tbl.reserveId();
+            }
+            res[k] = id;
+          }
+        }
+      };
+    }
+
+    for (Thread t : threads){
+      t.start();
+    }
+    for (Thread t : threads){
+      t.join();
+    }
+
+    assertEquals(n, tbl.size());
+
+    // all threads have to see the same id for the same fingerprint
+    for (int i=0; i<n; i++){
+      for (int t=1; t<nThreads; t++){
+        assertEquals(results[0][i], results[t][i]);
+      }
+    }
+  }
+
+  static long fingerprint (int i){
+    long h = i * 0x9e3779b97f4a7c15L;
+    return h ^ (h >>> 29);
+  }
+}
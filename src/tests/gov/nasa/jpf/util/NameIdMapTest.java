@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2014, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ * All rights reserved.
+ *
+ * The Java Pathfinder core (jpf-core) platform is licensed under the
+ * Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0. 
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+package gov.nasa.jpf.util;
+
+import gov.nasa.jpf.util.test.TestJPF;
+
+import org.junit.Test;
+
+/**
+ * regression test for NameIdMap
+ */
+public class NameIdMapTest extends TestJPF {
+
+  @Test
+  public void testCollidingNames () {
+    NameIdMap map = new NameIdMap();
+
+    // same String.hashCode()
+    assertEquals("Aa".hashCode(), "BB".hashCode());
+    int a = map.getId("Aa");
+    int b = map.getId("BB");
+
+    assertTrue(a > 0 && b > 0);
+    assertTrue(a != b);
+    assertEquals(a, map.getId("Aa"));
+    assertEquals(b, map.getId("BB"));
+    assertEquals(2, map.size());
+  }
+
+  @Test
+  public void testRecreate () {
+    NameIdMap map = new NameIdMap();
+    String[] names = { "x.Y", "x.Y.foo()V", "java.lang.Object", "x.Z" };
+
+    for (String name : names){
+      map.getId(name);
+    }
+
+    NameIdMap other = new NameIdMap();
+    for (String name : map.getNames()){
+      other.getId(name);
+    }
+
+    // requested in a different order, but we should get the same ids
+    for (int i=names.length-1; i>=0; i--){
+      assertEquals(map.getId(names[i]), other.getId(names[i]));
+    }
+  }
+
+  @Test
+  public void testConcurrentAdd () throws InterruptedException {
+    final NameIdMap map = new NameIdMap();
+    final int n = 1000;
+    final int[][] ids = new int[4][n];
+
+    Thread[] threads = new Thread[ids.length];
+    for (int i=0; i<threads.length; i++){
+      final int[] tids = ids[i];
+      threads[i] = new Thread(){
+        @Override
+        public void run(){
+          for (int j=0; j<n; j++){
+            tids[j] = map.getId("name-" + j);
+          }
+        }
+      };
+      threads[i].start();
+    }
+    for (Thread t : threads){
+      t.join();
+    }
+
+    assertEquals(n, map.size());
+    for (int i=1; i<ids.length; i++){
+      for (int j=0; j<n; j++){
+        assertEquals(ids[0][j], ids[i][j]);
+      }
+    }
+  }
+}
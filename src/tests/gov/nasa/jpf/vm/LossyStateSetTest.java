@@ -0,0 +1,209 @@
+/*
+ * Copyright (C) 2014, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ * All rights reserved.
+ *
+ * The Java Pathfinder core (jpf-core) platform is licensed under the
+ * Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0. 
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+package gov.nasa.jpf.vm;
+
+import gov.nasa.jpf.Config;
+import gov.nasa.jpf.JPF;
+import gov.nasa.jpf.search.Search;
+import gov.nasa.jpf.util.StateExtensionClient;
+import gov.nasa.jpf.util.StateExtensionListener;
+import gov.nasa.jpf.util.test.TestJPF;
+
+import org.junit.Test;
+
+/**
+ * unit test for BitstateStateSet and HashCompactStateSet
+ */
+public class LossyStateSetTest extends TestJPF {
+
+  static long hash (int i){
+    return JenkinsStateSet.longLookup3Hash( new int[] { i, i*31, 42 });
+  }
+
+  @Test
+  public void testBitstate () {
+    Config conf = new Config( new String[] { "+vm.storage.bitstate.bits=24", "+vm.storage.bitstate.hashes=3" });
+    BitstateStateSet set = new BitstateStateSet(conf);
+    int n = 1000;
+
+    for (int i=0; i<n; i++){
+      assertEquals(i, set.add(hash(i)));
+    }
+    for (int i=0; i<n; i++){
+      int id = set.add(hash(i));
+      assertTrue( id >= 0 && id < n); // a visited state
+    }
+
+    assertEquals(n, set.size());
+    double p = set.getOmissionProbability();
+    assertTrue( p > 0 && p < 1e-6);
+  }
+
+  @Test
+  public void testSaturatedBitstate () {
+    Config conf = new Config( new String[] { "+vm.storage.bitstate.bits=10", "+vm.storage.bitstate.hashes=2" });
+    BitstateStateSet set = new BitstateStateSet(conf);
+
+    for (int i=0; i<10000; i++){
+      set.add(hash(i));
+    }
+
+    assertTrue( set.size() < 10000); // we must have lost states
+    assertTrue( set.getOmissionProbability() > 0.9);
+  }
+
+  @Test
+  public void testHashCompaction () {
+    Config conf = new Config( new String[] { "+vm.storage.hashcompact.size=16" });
+    HashCompactStateSet set = new HashCompactStateSet(conf);
+    int n = 10000;
+
+    for (int i=0; i<n; i++){
+      assertEquals(i, set.add(hash(i)));
+    }
+    for (int i=0; i<n; i++){
+      assertEquals(i, set.add(hash(i))); // the id of the matched entry
+    }
+
+    assertEquals(n, set.size());
+    assertFalse( set.isFull());
+    double p = set.getOmissionProbability();
+    assertTrue( p >= 0 && p < 1e-3);
+  }
+
+  @Test
+  public void testFullHashCompaction () {
+    Config conf = new Config( new String[] { "+vm.storage.hashcompact.size=8", "+vm.storage.hashcompact.max_load=0.5" });
+    HashCompactStateSet set = new HashCompactStateSet(conf);
+
+    for (int i=0; i<1000; i++){
+      int id = set.add(hash(i));
+      assertTrue( id >= 0 && id < 128);
+    }
+
+    assertEquals(128, set.size());
+    assertTrue( set.isFull());
+    assertTrue( set.getOmissionProbability() == 1.0);
+  }
+
+  //--- the search should still find errors
+
+  @Test
+  public void testBitstateSearch () {
+    if (verifyAssertionError("+vm.storage.class=.vm.BitstateStateSet", "+vm.storage.bitstate.bits=20")){
+      int a = Verify.getInt(0, 5);
+      int b = Verify.getInt(0, 5);
+      assert (a + b) != 9 : "found it";
+    }
+  }
+
+  @Test
+  public void testHashCompactSearch () {
+    if (verifyAssertionError("+vm.storage.class=.vm.HashCompactStateSet", "+vm.storage.hashcompact.size=16")){
+      int a = Verify.getInt(0, 5);
+      int b = Verify.getInt(0, 5);
+      assert (a + b) != 9 : "found it";
+    }
+  }
+
+  //--- revisited states have to report valid ids, e.g. for state extensions
+
+  /**
+   * stores the search depth as the state extension, which has to be the depth
+   * we backtrack to (revisits in our test program are at the same depth)
+   */
+  public static class DepthExtensionListener extends StateExtensionListener<Integer> {
+    static Search search;
+    static int nRevisits, nInvalidIds, nMismatches, nInitMismatches;
+
+    static class DepthClient implements StateExtensionClient<Integer> {
+      @Override
+      public Integer getStateExtension() {
+        return (search != null) ? search.getDepth() : 0;
+      }
+
+      @Override
+      public void restore (Integer depth) {
+        if (depth != search.getDepth()){
+          nMismatches++;
+          if (search.getDepth() == 0){
+            nInitMismatches++;
+          }
+        }
+      }
+
+      @Override
+      public void registerListener (JPF jpf) {
+        // we are configured as a listener
+      }
+    }
+
+    public DepthExtensionListener (){
+      super( new DepthClient());
+    }
+
+    @Override
+    public void searchStarted (Search s) {
+      search = s;
+      nRevisits = nInvalidIds = nMismatches = nInitMismatches = 0;
+    }
+
+    @Override
+    public void stateAdvanced (Search s) {
+      if (!s.isNewState()){
+        nRevisits++;
+        if (s.getStateId() < 0 || s.getStateId() >= s.getVM().getStateSet().size()){
+          nInvalidIds++;
+        }
+      }
+      super.stateAdvanced(s);
+    }
+  }
+
+  static int x;
+
+  void revisitStates (){
+    x = Verify.getInt(0, 3) % 2; // 0,2 and 1,3 lead to the same states
+    x += Verify.getInt(0, 1);
+  }
+
+  @Test
+  public void testHashCompactRevisits () {
+    if (verifyNoPropertyViolation("+vm.storage.class=.vm.HashCompactStateSet", "+vm.storage.hashcompact.size=16",
+                                  "+listener=.vm.LossyStateSetTest$DepthExtensionListener")){
+      revisitStates();
+    } else {
+      assertTrue( DepthExtensionListener.nRevisits > 0);
+      assertEquals( 0, DepthExtensionListener.nInvalidIds);
+      assertEquals( 0, DepthExtensionListener.nMismatches);
+    }
+  }
+
+  @Test
+  public void testBitstateRevisits () {
+    if (verifyNoPropertyViolation("+vm.storage.class=.vm.BitstateStateSet", "+vm.storage.bitstate.bits=20",
+                                  "+listener=.vm.LossyStateSetTest$DepthExtensionListener")){
+      revisitStates();
+    } else {
+      // bitstate ids of revisited states are only valid, not necessarily the right ones
+      assertTrue( DepthExtensionListener.nRevisits > 0);
+      assertEquals( 0, DepthExtensionListener.nInvalidIds);
+      assertEquals( 0, DepthExtensionListener.nInitMismatches);
+    }
+  }
+}
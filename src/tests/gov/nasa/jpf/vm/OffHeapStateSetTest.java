@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2014, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ * All rights reserved.
+ *
+ * The Java Pathfinder core (jpf-core) platform is licensed under the
+ * Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0. 
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+package gov.nasa.jpf.vm;
+
+import gov.nasa.jpf.Config;
+import gov.nasa.jpf.util.test.TestJPF;
+
+import java.io.File;
+
+import org.junit.Test;
+
+/**
+ * unit test for OffHeapStateSet
+ */
+public class OffHeapStateSetTest extends TestJPF {
+
+  static long hash (int i){
+    return JenkinsStateSet.longLookup3Hash( new int[] { i, i*31, 42 });
+  }
+
+  void checkAddAndLookup (OffHeapStateSet set, int n){
+    for (int i=0; i<n; i++){
+      int id = set.size();
+      assertEquals(id, set.add(hash(i)));
+    }
+    assertEquals(n, set.size());
+
+    for (int i=0; i<n; i++){
+      assertEquals(i, set.add(hash(i)));
+    }
+    assertEquals(n, set.size());
+  }
+
+  @Test
+  public void testDirectBuffer () {
+    Config conf = new Config( new String[] { "+vm.storage.offheap.capacity=100000" });
+    OffHeapStateSet set = new OffHeapStateSet(conf);
+
+    checkAddAndLookup(set, 50000);
+    assertEquals(100000, set.getCapacity());
+  }
+
+  @Test
+  public void testGrowth () {
+    Config conf = new Config( new String[] { "+vm.storage.offheap.capacity=1024" });
+    OffHeapStateSet set = new OffHeapStateSet(conf);
+
+    checkAddAndLookup(set, 20000);
+    assertTrue( set.getCapacity() > 20000);
+  }
+
+  @Test
+  public void testMappedFile () {
+    String dir = System.getProperty("java.io.tmpdir");
+    Config conf = new Config( new String[] { "+vm.storage.offheap.capacity=4096",
+                                             "+vm.storage.offheap.dir=" + dir });
+    OffHeapStateSet set = new OffHeapStateSet(conf);
+
+    checkAddAndLookup(set, 10000);
+
+    File f = set.getStorageFile();
+    assertTrue(f.exists());
+    set.cleanUp();
+    assertFalse(f.exists());
+  }
+}